@@ -0,0 +1,93 @@
+package at.ac.univie.mminf.luceneSKOS.benchmarks;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.ac.univie.mminf.luceneSKOS.skos.impl.MeSHEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SKOSEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat.Profile;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotWriter;
+
+/**
+ * Measures the time to set up an engine from scratch, that is parsing,
+ * entailing and indexing the vocabulary or compiling its snapshot, and the
+ * time to load an existing snapshot
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class EngineBuildBenchmark {
+
+  @Param({"1000", "30000"})
+  public int concepts;
+
+  @Param({Vocabularies.LUCENE, Vocabularies.MESH, "snapshot-compile",
+      "snapshot-load"})
+  public String backend;
+
+  private String vocabulary;
+
+  private File target;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws IOException {
+    vocabulary = Vocabularies.vocabulary(concepts).getPath();
+    target = new File(Vocabularies.getDataDir(), "build-" + backend);
+    FileUtils.deleteQuietly(target);
+    if ("snapshot-load".equals(backend)) {
+      FileUtils.copyFile(Vocabularies.snapshot(concepts), target);
+    }
+  }
+
+  @Benchmark
+  public Object build() throws IOException {
+    if (Vocabularies.LUCENE.equals(backend)) {
+      return new SKOSEngineImpl(Vocabularies.MATCH_VERSION, vocabulary,
+          target, false);
+    } else if (Vocabularies.MESH.equals(backend)) {
+      return new MeSHEngineImpl(Vocabularies.MATCH_VERSION, vocabulary,
+          target, false);
+    } else if ("snapshot-compile".equals(backend)) {
+      return SnapshotWriter.compile(vocabulary, new File(target, "generated"
+          + SnapshotFormat.SUFFIX), Profile.MESH);
+    } else {
+      return new SnapshotEngineImpl(target);
+    }
+  }
+}
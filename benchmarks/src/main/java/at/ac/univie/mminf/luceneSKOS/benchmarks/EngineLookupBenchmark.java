@@ -0,0 +1,116 @@
+package at.ac.univie.mminf.luceneSKOS.benchmarks;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.util.VocabularyGenerator;
+
+/**
+ * Measures the lookups of the engine backends
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EngineLookupBenchmark {
+
+  /** The number of lookup keys cycled through */
+  private static final int SAMPLES = 1024;
+
+  @Param({"1000", "30000"})
+  public int concepts;
+
+  @Param({Vocabularies.LUCENE, Vocabularies.MESH, Vocabularies.SNAPSHOT_HEAP,
+      Vocabularies.SNAPSHOT_MAPPED})
+  public String backend;
+
+  private SKOSEngine engine;
+
+  private String[] labels;
+
+  private String[] uris;
+
+  /** The position in the lookup keys, per benchmark thread */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+
+    int next() {
+      next = (next + 1) % SAMPLES;
+      return next;
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    engine = Vocabularies.engine(backend, concepts);
+
+    VocabularyGenerator generator = Vocabularies.generator(concepts);
+    Random random = new Random(SAMPLES);
+    labels = new String[SAMPLES];
+    uris = new String[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      int concept = random.nextInt(concepts);
+      // one in eight lookups misses
+      labels[i] = i % 8 == 0 ? "missing" + i : generator.getPrefLabel(concept);
+      uris[i] = generator.getConceptURI(concept);
+    }
+  }
+
+  @Benchmark
+  public String[] getConcepts(Cursor cursor) throws IOException {
+    return engine.getConcepts(labels[cursor.next()]);
+  }
+
+  @Benchmark
+  public String[] getPrefLabels(Cursor cursor) throws IOException {
+    return engine.getPrefLabels(uris[cursor.next()]);
+  }
+
+  @Benchmark
+  public String[] getAltLabels(Cursor cursor) throws IOException {
+    return engine.getAltLabels(uris[cursor.next()]);
+  }
+
+  @Benchmark
+  public String[] getBroaderLabels(Cursor cursor) throws IOException {
+    return engine.getBroaderLabels(uris[cursor.next()]);
+  }
+
+  @Benchmark
+  public String[] getNarrowerLabels(Cursor cursor) throws IOException {
+    return engine.getNarrowerLabels(uris[cursor.next()]);
+  }
+}
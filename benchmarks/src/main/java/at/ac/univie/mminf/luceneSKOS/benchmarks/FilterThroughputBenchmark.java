@@ -0,0 +1,131 @@
+package at.ac.univie.mminf.luceneSKOS.benchmarks;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.MeSHAnalyzer;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer;
+import at.ac.univie.mminf.luceneSKOS.skos.MeSHEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.util.VocabularyGenerator;
+
+/**
+ * Measures the throughput of the expansion filters in input tokens per
+ * second, running the analyzer chains the filters are used in
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilterThroughputBenchmark {
+
+  /** The number of input tokens per invocation */
+  private static final int TOKENS = 1000;
+
+  /** The share of input tokens in concept mentions */
+  private static final double MENTION_DENSITY = 0.3;
+
+  /*
+   * The filters
+   */
+  static final String SKOS_LABEL = "SKOSLabelFilter";
+  static final String SKOS_URI = "SKOSURIFilter";
+  static final String MESH_LABEL = "MeSHLabelFilter";
+
+  @Param({"1000", "30000"})
+  public int concepts;
+
+  @Param({SKOS_LABEL, SKOS_URI, MESH_LABEL})
+  public String filter;
+
+  @Param({Vocabularies.MESH, Vocabularies.SNAPSHOT_HEAP})
+  public String backend;
+
+  private Analyzer analyzer;
+
+  /** The input, either one text or one URI per token */
+  private String[] input;
+
+  @Setup
+  public void setUp() throws IOException {
+    SKOSEngine engine = Vocabularies.engine(backend, concepts);
+    VocabularyGenerator generator = Vocabularies.generator(concepts);
+
+    if (SKOS_URI.equals(filter)) {
+      analyzer = new SKOSAnalyzer(Vocabularies.MATCH_VERSION, engine,
+          SKOSAnalyzer.ExpansionType.URI);
+      // URI fields hold a single URI, which is a single token
+      input = new String[TOKENS];
+      for (int i = 0; i < TOKENS; i++) {
+        input[i] = generator.getConceptURI((i * 7919) % concepts);
+      }
+    } else {
+      if (SKOS_LABEL.equals(filter)) {
+        analyzer = new SKOSAnalyzer(Vocabularies.MATCH_VERSION, engine,
+            SKOSAnalyzer.ExpansionType.LABEL);
+      } else if (MESH_LABEL.equals(filter)) {
+        analyzer = new MeSHAnalyzer(Vocabularies.MATCH_VERSION,
+            (MeSHEngine) engine, MeSHAnalyzer.ExpansionType.LABEL);
+      } else {
+        throw new IllegalArgumentException("Unknown filter " + filter);
+      }
+      input = new String[] {generator.text(TOKENS, MENTION_DENSITY,
+          new Random(concepts))};
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TOKENS)
+  public int analyze() throws IOException {
+    int tokens = 0;
+    for (String value : input) {
+      TokenStream stream = analyzer.tokenStream("field", new StringReader(
+          value));
+      try {
+        stream.reset();
+        while (stream.incrementToken()) {
+          tokens++;
+        }
+        stream.end();
+      } finally {
+        stream.close();
+      }
+    }
+    return tokens;
+  }
+}
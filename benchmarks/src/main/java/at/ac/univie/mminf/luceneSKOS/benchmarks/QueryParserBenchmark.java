@@ -0,0 +1,91 @@
+package at.ac.univie.mminf.luceneSKOS.benchmarks;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSStandardQueryParser;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.util.VocabularyGenerator;
+
+/**
+ * Measures the latency of parsing queries with term expansion
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryParserBenchmark {
+
+  /** The number of queries cycled through */
+  private static final int SAMPLES = 256;
+
+  @Param({"1000", "30000"})
+  public int concepts;
+
+  @Param({Vocabularies.LUCENE, Vocabularies.SNAPSHOT_HEAP})
+  public String backend;
+
+  /** The number of words per query */
+  @Param({"1", "4"})
+  public int words;
+
+  private SKOSStandardQueryParser parser;
+
+  private String[] queries;
+
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    SKOSEngine engine = Vocabularies.engine(backend, concepts);
+    parser = new SKOSStandardQueryParser(new SKOSAnalyzer(
+        Vocabularies.MATCH_VERSION, engine, SKOSAnalyzer.ExpansionType.LABEL));
+
+    VocabularyGenerator generator = Vocabularies.generator(concepts);
+    Random random = new Random(SAMPLES);
+    queries = new String[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      queries[i] = generator.text(words, 0.5, random);
+    }
+  }
+
+  @Benchmark
+  public Query parse() throws QueryNodeException {
+    next = (next + 1) % SAMPLES;
+    return parser.parse(queries[next], "field");
+  }
+}
@@ -0,0 +1,95 @@
+package at.ac.univie.mminf.luceneSKOS.benchmarks;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.ac.univie.mminf.luceneSKOS.search.ConceptSuggester;
+import at.ac.univie.mminf.luceneSKOS.search.ConceptSuggester.Suggestion;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.util.VocabularyGenerator;
+
+/**
+ * Measures the latency of suggesting concepts by label prefixes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SuggesterBenchmark {
+
+  /** The number of prefixes cycled through */
+  private static final int SAMPLES = 256;
+
+  @Param({"1000", "30000"})
+  public int concepts;
+
+  /** The number of characters per prefix */
+  @Param({"1", "3"})
+  public int length;
+
+  private ConceptSuggester suggester;
+
+  private String[] prefixes;
+
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    SKOSEngine engine = Vocabularies.engine(Vocabularies.SNAPSHOT_HEAP,
+        concepts);
+    VocabularyGenerator generator = Vocabularies.generator(concepts);
+    Random random = new Random(SAMPLES);
+
+    // skewed popularity, like usage counts
+    ConceptSuggester.Builder builder = ConceptSuggester.builder();
+    for (int i = 0; i < concepts; i++) {
+      builder.setWeight(generator.getConceptURI(i),
+          (long) Math.pow(random.nextInt(1000), 2));
+    }
+    suggester = builder.addAll(engine).build();
+
+    prefixes = new String[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      String label = generator.getPrefLabel(random.nextInt(concepts));
+      prefixes[i] = label.substring(0, Math.min(length, label.length()));
+    }
+  }
+
+  @Benchmark
+  public List<Suggestion> lookup() {
+    next = (next + 1) % SAMPLES;
+    return suggester.lookup(prefixes[next], 10);
+  }
+}
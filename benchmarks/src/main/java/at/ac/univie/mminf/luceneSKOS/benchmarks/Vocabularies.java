@@ -0,0 +1,107 @@
+package at.ac.univie.mminf.luceneSKOS.benchmarks;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.util.Version;
+
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.MeSHEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SKOSEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl.Storage;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat.Profile;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotWriter;
+import at.ac.univie.mminf.luceneSKOS.util.VocabularyGenerator;
+
+/**
+ * Provides the generated vocabularies, engines and texts the benchmarks run
+ * against. Generated files are kept below the directory given by the system
+ * property {@value #DATA_DIR_PROPERTY} and reused by later runs.
+ */
+final class Vocabularies {
+
+  static final Version MATCH_VERSION = Version.LUCENE_45;
+
+  static final String DATA_DIR_PROPERTY = "benchmark.dataDir";
+
+  /*
+   * The engine backends
+   */
+  static final String LUCENE = "lucene";
+  static final String MESH = "mesh";
+  static final String SNAPSHOT_HEAP = "snapshot-heap";
+  static final String SNAPSHOT_MAPPED = "snapshot-mapped";
+
+  private Vocabularies() {}
+
+  static File getDataDir() {
+    return new File(System.getProperty(DATA_DIR_PROPERTY,
+        "target/benchmark-data"));
+  }
+
+  /** Returns the generator for a vocabulary of the given size */
+  static VocabularyGenerator generator(int concepts) {
+    VocabularyGenerator generator = new VocabularyGenerator();
+    generator.setConcepts(concepts);
+    return generator;
+  }
+
+  /** Returns the generated vocabulary of the given size */
+  static File vocabulary(int concepts) throws IOException {
+    File file = new File(getDataDir(), "generated-" + concepts + ".n3");
+    if (!file.exists()) {
+      generator(concepts).write(file);
+    }
+    return file;
+  }
+
+  /** Returns the snapshot of the generated vocabulary of the given size */
+  static File snapshot(int concepts) throws IOException {
+    File file = new File(getDataDir(), "generated-" + concepts
+        + SnapshotFormat.SUFFIX);
+    if (!file.exists()) {
+      SnapshotWriter.compile(vocabulary(concepts).getPath(), file,
+          Profile.MESH);
+    }
+    return file;
+  }
+
+  /**
+   * Sets up an engine for the generated vocabulary of the given size, reusing
+   * a persisted index or snapshot
+   */
+  static SKOSEngine engine(String backend, int concepts) throws IOException {
+    // the backends must not share an index, as it depends on the engine
+    File indexRoot = new File(getDataDir(), "index-" + backend);
+    if (LUCENE.equals(backend)) {
+      return new SKOSEngineImpl(MATCH_VERSION, vocabulary(concepts).getPath(),
+          indexRoot, false);
+    } else if (MESH.equals(backend)) {
+      return new MeSHEngineImpl(MATCH_VERSION, vocabulary(concepts).getPath(),
+          indexRoot, false);
+    } else if (SNAPSHOT_HEAP.equals(backend)) {
+      return new SnapshotEngineImpl(snapshot(concepts), Storage.HEAP);
+    } else if (SNAPSHOT_MAPPED.equals(backend)) {
+      return new SnapshotEngineImpl(snapshot(concepts), Storage.MAPPED);
+    }
+    throw new IllegalArgumentException("Unknown backend " + backend);
+  }
+}
@@ -19,6 +19,8 @@
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
@@ -26,18 +28,19 @@
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.payloads.PayloadHelper;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.util.AttributeSource;
-import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRef;
 
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSTypePayload.Encoding;
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute;
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.InstrumentedSKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics;
+import at.ac.univie.mminf.luceneSKOS.skos.MeSHEngine;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
-import at.ac.univie.mminf.luceneSKOS.skos.impl.MeSHEngineImpl;
 
 /**
  * A SKOS-specific TokenFilter implementation
@@ -48,7 +51,7 @@ public abstract class AbstractMeSHFilter extends TokenFilter {
   protected Stack<ExpandedTerm> termStack;
   
   /* an engine delivering SKOS concepts */
-  protected MeSHEngineImpl engine;
+  protected MeSHEngine engine;
   
   /* the skos types to expand to */
   protected Set<SKOSType> types;
@@ -71,6 +74,30 @@ public abstract class AbstractMeSHFilter extends TokenFilter {
   /* the analyzer to use when parsing */
   protected final Analyzer analyzer;
   
+  /* the metrics of an instrumented engine, or null */
+  protected final SKOSMetrics metrics;
+
+  /* the layout of the payloads holding the term types */
+  protected Encoding payloadEncoding = Encoding.INT;
+  
+  /* whether multi-word expansions are emitted as token sequences */
+  protected boolean tokenGraph = false;
+  
+  /* the number of input tokens matched by the terms on the stack */
+  protected int matchLength = 1;
+  
+  /* the words of multi-word expansions for the following positions */
+  private final TokenGraph graph;
+  
+  /* the labels and terms expanded at the current position */
+  private final LabelDedup dedup = new LabelDedup();
+  
+  /* limits the number of terms expanded */
+  protected ExpansionBudget budget = ExpansionBudget.UNLIMITED;
+  
+  /* the terms expanded for the current field value */
+  private ExpansionBudget.Usage usage = budget.newUsage();
+  
   /**
    * Constructor
    * 
@@ -81,12 +108,13 @@ public abstract class AbstractMeSHFilter extends TokenFilter {
    * @param type
    *          the skos types to expand to
    */
-  public AbstractMeSHFilter(TokenStream input, MeSHEngineImpl engine,
+  public AbstractMeSHFilter(TokenStream input, MeSHEngine engine,
       Analyzer analyzer, SKOSType... types) {
     super(input);
     termStack = new Stack<ExpandedTerm>();
     this.engine = engine;
     this.analyzer = analyzer;
+    this.metrics = InstrumentedSKOSEngine.getMetrics(engine);
     
     if (types != null && types.length > 0) {
       this.types = new TreeSet<SKOSType>(Arrays.asList(types));
@@ -99,6 +127,7 @@ public AbstractMeSHFilter(TokenStream input, MeSHEngineImpl engine,
     this.posIncrAtt = addAttribute(PositionIncrementAttribute.class);
     this.payloadAtt = addAttribute(PayloadAttribute.class);
     this.skosAtt = addAttribute(SKOSTypeAttribute.class);
+    this.graph = new TokenGraph(this);
   }
   
   /**
@@ -109,28 +138,143 @@ public AbstractMeSHFilter(TokenStream input, MeSHEngineImpl engine,
   @Override
   public abstract boolean incrementToken() throws IOException;
   
+  /**
+   * Sets the layout of the payloads holding the types of the expanded terms,
+   * {@link Encoding#INT} by default
+   */
+  public void setPayloadEncoding(Encoding payloadEncoding) {
+    this.payloadEncoding = payloadEncoding;
+  }
+  
+  public Encoding getPayloadEncoding() {
+    return payloadEncoding;
+  }
+  
+  /**
+   * Sets whether multi-word labels are emitted as sequences of words at
+   * consecutive positions, each with its own postings, rather than as single
+   * terms joining the words by spaces. Their last word spans the remaining
+   * matched tokens (see PositionLengthAttribute).
+   */
+  public void setTokenGraph(boolean tokenGraph) {
+    this.tokenGraph = tokenGraph;
+  }
+  
+  public boolean isTokenGraph() {
+    return tokenGraph;
+  }
+  
+  /**
+   * Sets the limits of the number of terms expanded, none by default
+   */
+  public void setExpansionBudget(ExpansionBudget budget) {
+    this.budget = budget == null ? ExpansionBudget.UNLIMITED : budget;
+    this.usage = this.budget.newUsage();
+  }
+  
+  public ExpansionBudget getExpansionBudget() {
+    return budget;
+  }
+  
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    termStack.clear();
+    graph.reset();
+    dedup.clear();
+    usage.reset();
+  }
+  
+  /**
+   * Emits the next word of a multi-word expansion due at the current
+   * position, if the stream is a token graph
+   * 
+   * @return false if there is none
+   */
+  protected boolean incrementGraph() {
+    return graph.next();
+  }
+  
+  /**
+   * To be called with the attributes of each input token returned, before
+   * looking up its expansions, so that the words of multi-word expansions are
+   * stacked onto it and its expansions are told apart from those of the
+   * previous position
+   */
+  protected void inputToken() {
+    graph.inputToken();
+    dedup.position(termAtt);
+  }
+  
+  /**
+   * Emits the words of multi-word expansions reaching beyond the last input
+   * token, once the input is exhausted
+   * 
+   * @return false if there are none left, i.e. at the end of the stream
+   */
+  protected boolean endGraph() {
+    return graph.flush();
+  }
+  
+  /**
+   * Truncates the terms on the stack to the expansion budget, keeping the
+   * terms whose types rank first
+   */
+  protected void applyBudget() {
+    int allowed = usage.allow(termStack.size(), metrics);
+    if (allowed < termStack.size()) {
+      Collections.sort(termStack, PRIORITY);
+      termStack.setSize(allowed);
+    }
+  }
+  
   /**
    * Replaces the current term (attributes) with term (attributes) from the
-   * stack
+   * stack, skipping terms eliminated by the analyzer and terms already
+   * emitted at this position
    * 
+   * @return false if there were no terms left to emit
    * @throws IOException
    */
-  protected void processTermOnStack() throws IOException {
-    ExpandedTerm expandedTerm = termStack.pop();
-    
-    String term = expandedTerm.getTerm();
-    
-    SKOSType termType = expandedTerm.getTermType();
+  protected boolean processTermOnStack() throws IOException {
+    ExpandedTerm expandedTerm = null;
     
     String sTerm = "";
+    String[] words = null;
     
-    try {
-      sTerm = analyze(analyzer, term, new CharsRef()).toString();
-    } catch (IllegalArgumentException e) {
-      // skip this term
-      return;
+    while (expandedTerm == null) {
+      if (termStack.isEmpty()) {
+        return false;
+      }
+      expandedTerm = termStack.pop();
+      
+      boolean added;
+      try {
+        if (tokenGraph) {
+          words = TokenGraph.analyzeWords(analyzer, expandedTerm.getTerm());
+          added = dedup.addTerm(words);
+        } else {
+          sTerm = analyze(analyzer, expandedTerm.getTerm(), new CharsRef())
+              .toString();
+          added = dedup.addTerm(sTerm);
+        }
+      } catch (IllegalArgumentException e) {
+        // skip this term
+        expandedTerm = null;
+        continue;
+      }
+      
+      if (!added) {
+        /* another label analyzed to the same term */
+        if (metrics != null) {
+          metrics.duplicateDropped();
+        }
+        expandedTerm = null;
+      }
     }
     
+    SKOSType termType = expandedTerm.getTermType();
+    
     /*
      * copies the values of all attribute implementations from this state into
      * the implementations of the target stream
@@ -152,13 +296,23 @@ protected void processTermOnStack() throws IOException {
      * sets the type of the expanded term (pref, alt, broader, narrower, etc.)
      */
     skosAtt.setSkosType(termType);
+    if (metrics != null) {
+      metrics.expanded(termType);
+    }
     
     /*
      * converts the SKOS Attribute to a payload, which is propagated to the
      * index
      */
-    byte[] bytes = PayloadHelper.encodeInt(skosAtt.getSkosType().ordinal());
-    payloadAtt.setPayload(new BytesRef(bytes));
+    payloadAtt.setPayload(SKOSTypePayload.encode(skosAtt.getSkosType(),
+        payloadEncoding));
+    
+    if (words != null) {
+      /* lays out the words at the following positions */
+      graph.expand(words, matchLength);
+    }
+    
+    return true;
   }
   
   /* Snipped from Solr's SynonymMap */
@@ -199,21 +353,37 @@ public static CharsRef analyze(Analyzer analyzer, String text, CharsRef reuse)
   }
   
   /**
-   * Pushes a given set of labels onto the stack
+   * Pushes a given set of labels onto the stack, leaving out the labels
+   * already pushed for the current token (see {@link LabelDedup})
    * 
    * @param labels
    * @param type
+   * @return the number of labels pushed
    */
-  protected void pushLabelsToStack(String[] labels, SKOSType type) {
+  protected int pushLabelsToStack(String[] labels, SKOSType type) {
     
+    int pushed = 0;
     if (labels != null) {
       for (String label : labels) {
-        termStack.push(new ExpandedTerm(label, type));
+        if (dedup.addLabel(label)) {
+          termStack.push(new ExpandedTerm(label, type));
+          pushed++;
+        } else if (metrics != null) {
+          metrics.duplicateSkipped();
+        }
       }
     }
+    return pushed;
     
   }
   
+  /* orders expanded terms by the priority of their types */
+  private static final Comparator<ExpandedTerm> PRIORITY = new Comparator<ExpandedTerm>() {
+    public int compare(ExpandedTerm term1, ExpandedTerm term2) {
+      return ExpansionBudget.compare(term1.getTermType(), term2.getTermType());
+    }
+  };
+  
   /**
    * Helper class for capturing terms and term types
    */
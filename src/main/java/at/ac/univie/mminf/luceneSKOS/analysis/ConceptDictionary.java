@@ -0,0 +1,372 @@
+package at.ac.univie.mminf.luceneSKOS.analysis;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.util.Version;
+
+import at.ac.univie.mminf.luceneSKOS.metrics.InstrumentedSKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelSource;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelSource.LabelVisitor;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * The labels of a vocabulary compiled into an Aho-Corasick automaton over
+ * words, for the {@link ConceptTaggerFilter} to find all labels in a token
+ * stream in a single pass.
+ *
+ * Labels are split into words by the analyzer given to the {@link Builder},
+ * which should analyze like the tokenizer and filters in front of the tagger.
+ * Each token costs a hash lookup of its word and, amortized, a constant number
+ * of transitions, whatever the size of the vocabulary.
+ *
+ * Dictionaries are immutable and can be shared between filters.
+ */
+public final class ConceptDictionary {
+
+  /** The state of the automaton before any word */
+  static final int ROOT = 0;
+
+  /* the ids of the words of all labels */
+  private final CharArrayMap<Integer> words;
+
+  /* the state reached from the root by each word id, or -1 */
+  private final int[] rootNext;
+
+  /* the word ids leading on from each other state, sorted, or null */
+  private final int[][] nextWords;
+
+  /* the states the words of nextWords lead to */
+  private final int[][] nextStates;
+
+  /* the number of words leading to each state */
+  private final int[] depth;
+
+  /* the state of the longest proper suffix of each state */
+  private final int[] fail;
+
+  /* the next state along the failure links ending a label, or -1 */
+  private final int[] output;
+
+  /* the ids of the concepts of the label ending at each state, or null */
+  private final int[][] concepts;
+
+  private final String[] conceptURIs;
+
+  private final int labelCount;
+
+  private ConceptDictionary(CharArrayMap<Integer> words, int[] rootNext,
+      int[][] nextWords, int[][] nextStates, int[] depth, int[][] concepts,
+      String[] conceptURIs, int labelCount) {
+    this.words = words;
+    this.rootNext = rootNext;
+    this.nextWords = nextWords;
+    this.nextStates = nextStates;
+    this.depth = depth;
+    this.concepts = concepts;
+    this.conceptURIs = conceptURIs;
+    this.labelCount = labelCount;
+
+    int states = depth.length;
+    this.fail = new int[states];
+    this.output = new int[states];
+    Arrays.fill(output, -1);
+
+    /* sets the failure links breadth-first, shorter states first */
+    int[] queue = new int[states];
+    int head = 0;
+    int tail = 0;
+    for (int state : rootNext) {
+      if (state >= 0) {
+        fail[state] = ROOT;
+        queue[tail++] = state;
+      }
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      if (nextWords[state] == null) {
+        continue;
+      }
+      for (int i = 0; i < nextWords[state].length; i++) {
+        int word = nextWords[state][i];
+        int child = nextStates[state][i];
+        int suffix = fail[state];
+        int target = transition(suffix, word);
+        while (target < 0 && suffix != ROOT) {
+          suffix = fail[suffix];
+          target = transition(suffix, word);
+        }
+        fail[child] = target < 0 ? ROOT : target;
+        output[child] = concepts[fail[child]] != null ? fail[child]
+            : output[fail[child]];
+        queue[tail++] = child;
+      }
+    }
+  }
+
+  /**
+   * Returns a new builder splitting labels into words with the given analyzer
+   */
+  public static Builder builder(Analyzer analyzer) {
+    return new Builder(analyzer);
+  }
+
+  /**
+   * Compiles all labels of an engine, which must be a {@link LabelSource}
+   * 
+   * @throws IllegalArgumentException
+   *           if the engine cannot list its labels
+   */
+  public static ConceptDictionary compile(SKOSEngine engine, Analyzer analyzer)
+      throws IOException {
+    return builder(analyzer).addAll(engine).build();
+  }
+
+  /** Returns the number of distinct labels */
+  public int getLabelCount() {
+    return labelCount;
+  }
+
+  /** Returns the number of concepts carrying any of the labels */
+  public int getConceptCount() {
+    return conceptURIs.length;
+  }
+
+  /** Returns the number of states of the automaton */
+  public int getStateCount() {
+    return depth.length;
+  }
+
+  /**
+   * Returns the state reached from the given one by the given word
+   */
+  int step(int state, char[] word, int length) {
+    Integer id = words.get(word, 0, length);
+    if (id == null) {
+      return ROOT;
+    }
+    int target = transition(state, id);
+    while (target < 0 && state != ROOT) {
+      state = fail[state];
+      target = transition(state, id);
+    }
+    return target < 0 ? ROOT : target;
+  }
+
+  private int transition(int state, int word) {
+    if (state == ROOT) {
+      return rootNext[word];
+    }
+    int[] keys = nextWords[state];
+    if (keys == null) {
+      return -1;
+    }
+    int i = Arrays.binarySearch(keys, word);
+    return i < 0 ? -1 : nextStates[state][i];
+  }
+
+  /** Returns the number of words of the longest label prefix ending here */
+  int depth(int state) {
+    return depth[state];
+  }
+
+  /** Returns the next shorter state ending a label, or -1 */
+  int output(int state) {
+    return output[state];
+  }
+
+  /** Returns the ids of the concepts of the label ending here, or null */
+  int[] concepts(int state) {
+    return concepts[state];
+  }
+
+  String getConceptURI(int conceptId) {
+    return conceptURIs[conceptId];
+  }
+
+  /**
+   * Collects labels for a {@link ConceptDictionary}
+   */
+  public static final class Builder {
+
+    private final Analyzer analyzer;
+
+    private final Map<String,Integer> wordIds = new HashMap<String,Integer>();
+
+    /* the transitions of each state by word id, null for none */
+    private final List<Map<Integer,Integer>> transitions = new ArrayList<Map<Integer,Integer>>();
+
+    private final List<Integer> depths = new ArrayList<Integer>();
+
+    /* the concepts of the label ending at each state, null for none */
+    private final List<Set<Integer>> stateConcepts = new ArrayList<Set<Integer>>();
+
+    private final Map<String,Integer> conceptIds = new HashMap<String,Integer>();
+
+    private final List<String> conceptURIs = new ArrayList<String>();
+
+    private int labelCount;
+
+    private Builder(Analyzer analyzer) {
+      this.analyzer = analyzer;
+      newState(0);
+    }
+
+    private int newState(int depth) {
+      transitions.add(null);
+      depths.add(depth);
+      stateConcepts.add(null);
+      return depths.size() - 1;
+    }
+
+    /**
+     * Adds a label of a concept
+     * 
+     * @return false if the label was eliminated by the analyzer or had been
+     *         added for the concept before
+     */
+    public boolean add(String label, String conceptURI) throws IOException {
+      String[] labelWords;
+      try {
+        labelWords = TokenGraph.analyzeWords(analyzer, label);
+      } catch (IllegalArgumentException e) {
+        return false;
+      }
+
+      int state = ROOT;
+      for (String word : labelWords) {
+        Integer id = wordIds.get(word);
+        if (id == null) {
+          id = wordIds.size();
+          wordIds.put(word, id);
+        }
+        Map<Integer,Integer> next = transitions.get(state);
+        if (next == null) {
+          next = new HashMap<Integer,Integer>(4);
+          transitions.set(state, next);
+        }
+        Integer target = next.get(id);
+        if (target == null) {
+          target = newState(depths.get(state) + 1);
+          next.put(id, target);
+        }
+        state = target;
+      }
+
+      Integer conceptId = conceptIds.get(conceptURI);
+      if (conceptId == null) {
+        conceptId = conceptURIs.size();
+        conceptIds.put(conceptURI, conceptId);
+        conceptURIs.add(conceptURI);
+      }
+      Set<Integer> concepts = stateConcepts.get(state);
+      if (concepts == null) {
+        concepts = new LinkedHashSet<Integer>(2);
+        stateConcepts.set(state, concepts);
+        labelCount++;
+      }
+      return concepts.add(conceptId);
+    }
+
+    /**
+     * Adds all labels of an engine, which must be a {@link LabelSource}
+     * 
+     * @throws IllegalArgumentException
+     *           if the engine cannot list its labels
+     */
+    public Builder addAll(SKOSEngine engine) throws IOException {
+      if (engine instanceof InstrumentedSKOSEngine) {
+        engine = ((InstrumentedSKOSEngine) engine).getDelegate();
+      }
+      if (!(engine instanceof LabelSource)) {
+        throw new IllegalArgumentException(engine.getClass().getName()
+            + " cannot list its labels");
+      }
+      ((LabelSource) engine).visitLabels(new LabelVisitor() {
+        public void visit(String label, String conceptURI) throws IOException {
+          add(label, conceptURI);
+        }
+      });
+      return this;
+    }
+
+    public ConceptDictionary build() {
+      CharArrayMap<Integer> words = new CharArrayMap<Integer>(
+          Version.LUCENE_45, wordIds.size(), false);
+      for (Map.Entry<String,Integer> word : wordIds.entrySet()) {
+        words.put(word.getKey(), word.getValue());
+      }
+
+      int states = depths.size();
+      int[] rootNext = new int[wordIds.size()];
+      Arrays.fill(rootNext, -1);
+      int[][] nextWords = new int[states][];
+      int[][] nextStates = new int[states][];
+      int[] depth = new int[states];
+      int[][] concepts = new int[states][];
+
+      for (int state = 0; state < states; state++) {
+        depth[state] = depths.get(state);
+
+        Map<Integer,Integer> next = transitions.get(state);
+        if (next != null) {
+          int[] keys = new int[next.size()];
+          int i = 0;
+          for (Integer key : next.keySet()) {
+            keys[i++] = key;
+          }
+          Arrays.sort(keys);
+          if (state == ROOT) {
+            for (int key : keys) {
+              rootNext[key] = next.get(key);
+            }
+          } else {
+            nextWords[state] = keys;
+            nextStates[state] = new int[keys.length];
+            for (i = 0; i < keys.length; i++) {
+              nextStates[state][i] = next.get(keys[i]);
+            }
+          }
+        }
+
+        Set<Integer> ids = stateConcepts.get(state);
+        if (ids != null) {
+          concepts[state] = new int[ids.size()];
+          int i = 0;
+          for (Integer id : ids) {
+            concepts[state][i++] = id;
+          }
+        }
+      }
+
+      return new ConceptDictionary(words, rootNext, nextWords, nextStates,
+          depth, concepts, conceptURIs.toArray(new String[conceptURIs.size()]),
+          labelCount);
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+package at.ac.univie.mminf.luceneSKOS.analysis;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.util.Version;
+
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * An analyzer for a field holding the concepts mentioned by a text: the text
+ * is split by a StandardTokenizer, lower cased and tagged by a
+ * {@link ConceptTaggerFilter}.
+ */
+public class ConceptTaggerAnalyzer extends Analyzer {
+
+  private final Version matchVersion;
+
+  private final ConceptDictionary dictionary;
+
+  public ConceptTaggerAnalyzer(Version matchVersion,
+      ConceptDictionary dictionary) {
+    this.matchVersion = matchVersion;
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Compiles the labels of the given engine, split into words like the text
+   */
+  public ConceptTaggerAnalyzer(Version matchVersion, SKOSEngine skosEngine)
+      throws IOException {
+    this(matchVersion, ConceptDictionary.compile(skosEngine,
+        new StandardAnalyzer(matchVersion, CharArraySet.EMPTY_SET)));
+  }
+
+  public ConceptDictionary getDictionary() {
+    return dictionary;
+  }
+
+  @Override
+  protected TokenStreamComponents createComponents(String fieldName,
+      Reader reader) {
+    Tokenizer source = new StandardTokenizer(matchVersion, reader);
+    return new TokenStreamComponents(source, new ConceptTaggerFilter(
+        new LowerCaseFilter(matchVersion, source), dictionary));
+  }
+
+}
@@ -0,0 +1,221 @@
+package at.ac.univie.mminf.luceneSKOS.analysis;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+/**
+ * A Lucene TokenFilter that annotates a token stream with the concepts whose
+ * labels it mentions, for a field holding the concept URIs of a document.
+ *
+ * The tokens are matched against all labels of a {@link ConceptDictionary} at
+ * once, in time linear in the number of tokens. Matches do not overlap: of the
+ * labels starting at the leftmost position, the longest one wins, and the next
+ * match is searched after its end. For each match, a token holding the URI of
+ * each concept with that label is emitted, with the offsets and positions of
+ * the matched words. Words not part of a label are dropped.
+ */
+public final class ConceptTaggerFilter extends TokenFilter {
+
+  /** The token type of the emitted concept URIs */
+  public static final String TYPE_CONCEPT = "<CONCEPT>";
+
+  private final ConceptDictionary dictionary;
+
+  private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+  private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+
+  private final PositionIncrementAttribute posIncrAtt = addAttribute(PositionIncrementAttribute.class);
+
+  private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+
+  private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
+
+  /* start offset, end offset and position of the tokens from index first on */
+  private final List<int[]> tokens = new ArrayList<int[]>();
+
+  /* the index of the first buffered token */
+  private int first;
+
+  /* the number of tokens consumed */
+  private int count;
+
+  /* the position of the last token consumed */
+  private int position;
+
+  /* the state of the automaton after the last token */
+  private int state;
+
+  /* the longest match found starting at each token index: end index, state */
+  private final TreeMap<Integer,int[]> matches = new TreeMap<Integer,int[]>();
+
+  /* the first token index a match may still start at */
+  private int cursor;
+
+  /* the decided matches: start/end offset, start/end position, state */
+  private final LinkedList<int[]> decided = new LinkedList<int[]>();
+
+  /* the next concept of the head of decided to emit */
+  private int next;
+
+  /* the position of the last concept emitted */
+  private int lastPosition;
+
+  private boolean exhausted;
+
+  public ConceptTaggerFilter(TokenStream input, ConceptDictionary dictionary) {
+    super(input);
+    this.dictionary = dictionary;
+    init();
+  }
+
+  public ConceptDictionary getDictionary() {
+    return dictionary;
+  }
+
+  @Override
+  public boolean incrementToken() throws IOException {
+    while (decided.isEmpty()) {
+      if (exhausted) {
+        return false;
+      }
+      if (input.incrementToken()) {
+        consume();
+      } else {
+        exhausted = true;
+        decide(Integer.MAX_VALUE);
+      }
+    }
+    emit();
+    return true;
+  }
+
+  /**
+   * Feeds the current input token to the automaton and records the labels
+   * ending with it
+   */
+  private void consume() {
+    position += posIncrAtt.getPositionIncrement();
+    tokens.add(new int[] {offsetAtt.startOffset(), offsetAtt.endOffset(),
+        position});
+    int index = count++;
+
+    state = dictionary.step(state, termAtt.buffer(), termAtt.length());
+    int s = dictionary.concepts(state) != null ? state : dictionary
+        .output(state);
+    for (; s >= 0; s = dictionary.output(s)) {
+      int start = index - dictionary.depth(s) + 1;
+      int[] match = matches.get(start);
+      // labels ending later are longer
+      if (start >= cursor && (match == null || match[0] < index)) {
+        matches.put(start, new int[] {index, s});
+      }
+    }
+
+    decide(count - dictionary.depth(state));
+  }
+
+  /**
+   * Decides the matches starting before the given token index, from which no
+   * label can start anymore
+   */
+  private void decide(int frontier) {
+    Map.Entry<Integer,int[]> entry = matches.ceilingEntry(cursor);
+    while (entry != null && entry.getKey() < frontier) {
+      int start = entry.getKey();
+      int end = entry.getValue()[0];
+      int[] from = token(start);
+      int[] to = token(end);
+      decided.add(new int[] {from[0], to[1], from[2], to[2],
+          entry.getValue()[1]});
+      cursor = end + 1;
+      entry = matches.ceilingEntry(cursor);
+    }
+    // no label can start before the frontier anymore
+    cursor = Math.max(cursor, Math.min(frontier, count));
+    matches.headMap(cursor).clear();
+
+    if (cursor > first) {
+      tokens.subList(0, cursor - first).clear();
+      first = cursor;
+    }
+  }
+
+  private int[] token(int index) {
+    return tokens.get(index - first);
+  }
+
+  /**
+   * Emits the next concept of the head of the decided matches
+   */
+  private void emit() {
+    int[] match = decided.getFirst();
+    int[] concepts = dictionary.concepts(match[4]);
+
+    clearAttributes();
+    termAtt.append(dictionary.getConceptURI(concepts[next]));
+    offsetAtt.setOffset(match[0], match[1]);
+    typeAtt.setType(TYPE_CONCEPT);
+    if (next == 0) {
+      posIncrAtt.setPositionIncrement(match[2] - lastPosition);
+      lastPosition = match[2];
+    } else {
+      posIncrAtt.setPositionIncrement(0);
+    }
+    posLenAtt.setPositionLength(match[3] - match[2] + 1);
+
+    if (++next == concepts.length) {
+      decided.removeFirst();
+      next = 0;
+    }
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    init();
+  }
+
+  private void init() {
+    tokens.clear();
+    first = 0;
+    count = 0;
+    position = -1;
+    state = ConceptDictionary.ROOT;
+    matches.clear();
+    cursor = 0;
+    decided.clear();
+    next = 0;
+    lastPosition = -1;
+    exhausted = false;
+  }
+
+}
@@ -0,0 +1,252 @@
+package at.ac.univie.mminf.luceneSKOS.analysis;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics;
+
+/**
+ * Limits the number of terms the filters expand to per position (input
+ * token), per field value (token stream) and per document, so that a
+ * concept with thousands of narrower labels does not blow up the index.
+ *
+ * When a limit is hit, the labels of a position are kept in the order of
+ * their types: pref, alt and hidden labels first, then broader and narrower
+ * labels, each by hierarchy distance, then related labels (see
+ * {@link #compare(SKOSType, SKOSType)}).
+ *
+ * The filters cannot tell where a document ends, so the document budget
+ * only applies between {@link #startDocument()} and {@link #endDocument()},
+ * called by the indexing thread around each document (in Solr, by the
+ * ExpansionBudgetUpdateProcessorFactory). It is shared by all fields of
+ * the document.
+ *
+ * Budgets are immutable and can be shared between filters.
+ */
+public final class ExpansionBudget {
+
+  /**
+   * The limits of a budget
+   */
+  public enum Limit {
+    POSITION, VALUE, DOCUMENT
+  }
+
+  /** A budget without limits */
+  public static final ExpansionBudget UNLIMITED = new ExpansionBudget(0, 0, 0);
+
+  /* the rank of each type, by ordinal */
+  private static final int[] RANKS = new int[SKOSType.values().length];
+
+  /* the distance ranked for the transitive types, beyond the leveled ones */
+  private static final int TRANSITIVE_DISTANCE = 13;
+
+  static {
+    for (SKOSType type : SKOSType.values()) {
+      String name = type.name();
+      int rank;
+      if (type == SKOSType.PREF) {
+        rank = 0;
+      } else if (type == SKOSType.ALT) {
+        rank = 1;
+      } else if (type == SKOSType.HIDDEN) {
+        rank = 2;
+      } else if (name.startsWith("BROADER")) {
+        rank = 100 + distance(name.substring("BROADER".length()));
+      } else if (name.startsWith("NARROWER")) {
+        rank = 200 + distance(name.substring("NARROWER".length()));
+      } else {
+        rank = 300;
+      }
+      RANKS[type.ordinal()] = rank;
+    }
+  }
+
+  private static int distance(String suffix) {
+    if (suffix.length() == 0) {
+      return 1;
+    }
+    if (suffix.equals("TRANSITIVE")) {
+      return TRANSITIVE_DISTANCE;
+    }
+    return Integer.parseInt(suffix);
+  }
+
+  /* the expansions counted for the document of the current thread */
+  private static final ThreadLocal<int[]> DOCUMENT = new ThreadLocal<int[]>();
+
+  private final int maxPerPosition;
+
+  private final int maxPerValue;
+
+  private final int maxPerDocument;
+
+  /**
+   * @param maxPerPosition
+   *          the maximum number of terms expanded per input token, or 0 for
+   *          no limit
+   * @param maxPerValue
+   *          the maximum number of terms expanded per field value, or 0 for
+   *          no limit
+   * @param maxPerDocument
+   *          the maximum number of terms expanded per document, or 0 for no
+   *          limit
+   */
+  public ExpansionBudget(int maxPerPosition, int maxPerValue,
+      int maxPerDocument) {
+    this.maxPerPosition = Math.max(0, maxPerPosition);
+    this.maxPerValue = Math.max(0, maxPerValue);
+    this.maxPerDocument = Math.max(0, maxPerDocument);
+  }
+
+  public int getMaxPerPosition() {
+    return maxPerPosition;
+  }
+
+  public int getMaxPerValue() {
+    return maxPerValue;
+  }
+
+  public int getMaxPerDocument() {
+    return maxPerDocument;
+  }
+
+  /**
+   * Returns whether any limit is set
+   */
+  public boolean isLimited() {
+    return maxPerPosition > 0 || maxPerValue > 0 || maxPerDocument > 0;
+  }
+
+  /**
+   * Compares two types by the order in which their labels are kept, the
+   * labels to keep first
+   */
+  public static int compare(SKOSType type1, SKOSType type2) {
+    int rank1 = RANKS[type1.ordinal()];
+    int rank2 = RANKS[type2.ordinal()];
+    return rank1 < rank2 ? -1 : (rank1 == rank2 ? 0 : 1);
+  }
+
+  /**
+   * Starts counting the expansions of a document in the current thread
+   */
+  public static void startDocument() {
+    DOCUMENT.set(new int[1]);
+  }
+
+  /**
+   * Stops counting the expansions of a document in the current thread
+   */
+  public static void endDocument() {
+    DOCUMENT.remove();
+  }
+
+  /**
+   * Returns the number of terms expanded in the current thread since
+   * {@link #startDocument()}, or -1 if no document was started
+   */
+  public static int getDocumentExpansions() {
+    int[] document = DOCUMENT.get();
+    return document == null ? -1 : document[0];
+  }
+
+  /**
+   * Returns a new usage of this budget, for a single field value at a time
+   */
+  public Usage newUsage() {
+    return new Usage();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ExpansionBudget)) {
+      return false;
+    }
+    ExpansionBudget other = (ExpansionBudget) obj;
+    return maxPerPosition == other.maxPerPosition
+        && maxPerValue == other.maxPerValue
+        && maxPerDocument == other.maxPerDocument;
+  }
+
+  @Override
+  public int hashCode() {
+    return (31 * maxPerPosition + maxPerValue) * 31 + maxPerDocument;
+  }
+
+  @Override
+  public String toString() {
+    return "ExpansionBudget(position=" + maxPerPosition + ", value="
+        + maxPerValue + ", document=" + maxPerDocument + ")";
+  }
+
+  /**
+   * Counts the terms expanded for a field value, to be reset with the token
+   * stream
+   */
+  public final class Usage {
+
+    private int value;
+
+    private Usage() {}
+
+    /**
+     * Returns how many of the terms wanted at a position the budget allows,
+     * and takes them from it. Records the terms left out with the given
+     * metrics, if any.
+     */
+    public int allow(int wanted, SKOSMetrics metrics) {
+      int allowed = wanted;
+      Limit limit = null;
+      if (maxPerPosition > 0 && allowed > maxPerPosition) {
+        allowed = maxPerPosition;
+        limit = Limit.POSITION;
+      }
+      if (maxPerValue > 0 && allowed > maxPerValue - value) {
+        allowed = Math.max(0, maxPerValue - value);
+        limit = Limit.VALUE;
+      }
+      int[] document = DOCUMENT.get();
+      if (maxPerDocument > 0 && document != null
+          && allowed > maxPerDocument - document[0]) {
+        allowed = Math.max(0, maxPerDocument - document[0]);
+        limit = Limit.DOCUMENT;
+      }
+
+      value += allowed;
+      if (document != null) {
+        document[0] += allowed;
+      }
+      if (limit != null && metrics != null) {
+        metrics.truncated(limit, wanted - allowed);
+      }
+      return allowed;
+    }
+
+    public int getValueExpansions() {
+      return value;
+    }
+
+    public void reset() {
+      value = 0;
+    }
+  }
+
+}
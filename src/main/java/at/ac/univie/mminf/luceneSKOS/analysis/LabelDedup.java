@@ -0,0 +1,100 @@
+package at.ac.univie.mminf.luceneSKOS.analysis;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Keeps track of the labels expanded at the current position, so that a label
+ * reached through several concepts or relations, e.g. as broader and as
+ * broader transitive label, is analyzed and emitted only once.
+ *
+ * Labels are compared before analysis by a normalized form (lower case, words
+ * separated by single spaces), which the filters' analyzers do not tell
+ * apart. The analyzed terms are compared once more, as different labels may
+ * still analyze to the same term. The input token counts as emitted.
+ */
+final class LabelDedup {
+
+  /* the normalized labels stacked at the current position */
+  private final Set<String> labels = new HashSet<String>();
+
+  /* the terms emitted at the current position */
+  private final Set<String> terms = new HashSet<String>();
+
+  /**
+   * Moves on to the position of the given input token
+   */
+  void position(CharSequence token) {
+    clear();
+    String term = token.toString();
+    labels.add(normalize(term));
+    terms.add(term);
+    terms.add(term.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * @return false if an equal label was added at this position before
+   */
+  boolean addLabel(String label) {
+    return labels.add(normalize(label));
+  }
+
+  /**
+   * @return false if the analyzed term was emitted at this position before
+   */
+  boolean addTerm(String term) {
+    return terms.add(term);
+  }
+
+  /**
+   * Like {@link #addTerm(String)} for the words of a multi-word term
+   */
+  boolean addTerm(String[] words) {
+    StringBuilder builder = new StringBuilder(words[0]);
+    for (int i = 1; i < words.length; i++) {
+      builder.append(' ').append(words[i]);
+    }
+    return terms.add(builder.toString());
+  }
+
+  void clear() {
+    labels.clear();
+    terms.clear();
+  }
+
+  static String normalize(String label) {
+    StringBuilder builder = new StringBuilder(label.length());
+    boolean space = false;
+    for (int i = 0; i < label.length(); i++) {
+      char c = label.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = builder.length() > 0;
+      } else {
+        if (space) {
+          builder.append(' ');
+          space = false;
+        }
+        builder.append(Character.toLowerCase(c));
+      }
+    }
+    return builder.toString();
+  }
+
+}
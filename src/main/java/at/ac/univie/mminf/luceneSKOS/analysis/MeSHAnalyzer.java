@@ -24,7 +24,6 @@
 import org.apache.lucene.analysis.core.LowerCaseFilter;
 import org.apache.lucene.analysis.core.StopAnalyzer;
 import org.apache.lucene.analysis.core.StopFilter;
-import org.apache.lucene.analysis.miscellaneous.RemoveDuplicatesTokenFilter;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.standard.StandardFilter;
 import org.apache.lucene.analysis.standard.StandardTokenizer;
@@ -32,7 +31,9 @@
 import org.apache.lucene.analysis.util.StopwordAnalyzerBase;
 import org.apache.lucene.util.Version;
 
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSTypePayload.Encoding;
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.skos.MeSHEngine;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngineFactory;
 import at.ac.univie.mminf.luceneSKOS.skos.impl.MeSHEngineImpl;
@@ -79,7 +80,7 @@ public enum ExpansionType {
   private SKOSType[] types = ALT_MESH_TYPES;
   
   /** A SKOS Engine instance */
-  protected MeSHEngineImpl skosEngine;
+  protected MeSHEngine skosEngine;
   
   /** The size of the buffer used for multi-term prediction */
   protected int bufferSize = SKOSLabelFilter.DEFAULT_BUFFER_SIZE;
@@ -89,6 +90,12 @@ public enum ExpansionType {
   
   private int maxTokenLength = DEFAULT_MAX_TOKEN_LENGTH;
   
+  private Encoding payloadEncoding = Encoding.INT;
+  
+  private boolean tokenGraph = false;
+  
+  private ExpansionBudget expansionBudget = ExpansionBudget.UNLIMITED;
+  
   /**
    * An unmodifiable set containing some common English words that are usually
    * not useful for searching.
@@ -96,19 +103,19 @@ public enum ExpansionType {
   public static final CharArraySet STOP_WORDS_SET = StopAnalyzer.ENGLISH_STOP_WORDS_SET;
   
   public MeSHAnalyzer(Version matchVersion, CharArraySet stopWords,
-		  MeSHEngineImpl skosEngine, ExpansionType expansionType) {
+		  MeSHEngine skosEngine, ExpansionType expansionType) {
     super(matchVersion, stopWords);
     this.skosEngine = skosEngine;
     this.expansionType = expansionType;
   }
   
-  public MeSHAnalyzer(Version matchVersion, MeSHEngineImpl skosEngine,
+  public MeSHAnalyzer(Version matchVersion, MeSHEngine skosEngine,
       ExpansionType expansionType) {
     this(matchVersion, STOP_WORDS_SET, skosEngine, expansionType);
   }
   
   public MeSHAnalyzer(Version matchVersion, Reader stopwords,
-		  MeSHEngineImpl skosEngine, ExpansionType expansionType) throws IOException {
+		  MeSHEngine skosEngine, ExpansionType expansionType) throws IOException {
     this(matchVersion, loadStopwordSet(stopwords, matchVersion), skosEngine,
         expansionType);
   }
@@ -171,30 +178,87 @@ public int getMaxTokenLength() {
     return maxTokenLength;
   }
   
+  /**
+   * Sets the layout of the payloads holding the types of the expanded terms.
+   * This setting only takes effect the next time tokenStream is called.
+   */
+  public void setPayloadEncoding(Encoding payloadEncoding) {
+    this.payloadEncoding = payloadEncoding;
+  }
+  
+  public Encoding getPayloadEncoding() {
+    return payloadEncoding;
+  }
+  
+  /**
+   * Sets whether multi-word labels are emitted as sequences of words at
+   * consecutive positions rather than as single terms, so that they can be
+   * found by phrase queries. Meant for index analyzers. This setting only
+   * takes effect the next time tokenStream is called.
+   */
+  public void setTokenGraph(boolean tokenGraph) {
+    this.tokenGraph = tokenGraph;
+  }
+  
+  public boolean isTokenGraph() {
+    return tokenGraph;
+  }
+  
+  /**
+   * Sets the limits of the number of terms expanded per position, field value
+   * and document, none by default. This setting only takes effect the next
+   * time tokenStream is called.
+   */
+  public void setExpansionBudget(ExpansionBudget expansionBudget) {
+    this.expansionBudget = expansionBudget;
+  }
+  
+  public ExpansionBudget getExpansionBudget() {
+    return expansionBudget;
+  }
+  
   @Override
   protected TokenStreamComponents createComponents(String fileName,
       Reader reader) {
     if (expansionType.equals(ExpansionType.URI)) {
       final KeywordTokenizer src = new KeywordTokenizer(reader);
-      TokenStream tok = new MeSHURIFilter(src, skosEngine,
+      final MeSHURIFilter uriFilter = new MeSHURIFilter(src, skosEngine,
           new StandardAnalyzer(matchVersion), types);
+      uriFilter.setPayloadEncoding(payloadEncoding);
+      uriFilter.setTokenGraph(tokenGraph);
+      uriFilter.setExpansionBudget(expansionBudget);
+      TokenStream tok = uriFilter;
       tok = new LowerCaseFilter(matchVersion, tok);
-      return new TokenStreamComponents(src, tok);
+      return new TokenStreamComponents(src, tok) {
+        @Override
+        protected void setReader(final Reader reader) throws IOException {
+          uriFilter.setPayloadEncoding(payloadEncoding);
+          uriFilter.setTokenGraph(tokenGraph);
+          uriFilter.setExpansionBudget(expansionBudget);
+          super.setReader(reader);
+        }
+      };
     } else {
       final StandardTokenizer src = new StandardTokenizer(matchVersion, reader);
       src.setMaxTokenLength(maxTokenLength);
       TokenStream tok = new StandardFilter(matchVersion, src);
       // prior to this we get the classic behavior, standardfilter does it for
       // us.
-      tok = new MeSHLabelFilter(tok, skosEngine, new StandardAnalyzer(
-          matchVersion), bufferSize, types);
+      final MeSHLabelFilter labelFilter = new MeSHLabelFilter(tok, skosEngine,
+          new StandardAnalyzer(matchVersion), bufferSize, types);
+      labelFilter.setPayloadEncoding(payloadEncoding);
+      labelFilter.setTokenGraph(tokenGraph);
+      labelFilter.setExpansionBudget(expansionBudget);
+      tok = labelFilter;
       tok = new LowerCaseFilter(matchVersion, tok);
       tok = new StopFilter(matchVersion, tok, stopwords);
-      tok = new RemoveDuplicatesTokenFilter(tok);
       return new TokenStreamComponents(src, tok) {
         @Override
         protected void setReader(final Reader reader) throws IOException {
           src.setMaxTokenLength(maxTokenLength);
+          labelFilter.setPayloadEncoding(payloadEncoding);
+          labelFilter.setTokenGraph(tokenGraph);
+          labelFilter.setExpansionBudget(expansionBudget);
           super.setReader(reader);
         }
       };
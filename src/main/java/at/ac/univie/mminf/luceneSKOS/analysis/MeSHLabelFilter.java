@@ -24,8 +24,9 @@
 import org.apache.lucene.analysis.TokenStream;
 
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSWarnings;
+import at.ac.univie.mminf.luceneSKOS.skos.MeSHEngine;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
-import at.ac.univie.mminf.luceneSKOS.skos.impl.MeSHEngineImpl;
 
 /**
  * A Lucene TokenFilter that supports label-based term expansion as described in
@@ -61,7 +62,7 @@ public final class MeSHLabelFilter extends AbstractMeSHFilter {
    * @param types
    *          the skos types to expand to
    */
-  public MeSHLabelFilter(TokenStream input, MeSHEngineImpl skosEngine,
+  public MeSHLabelFilter(TokenStream input, MeSHEngine skosEngine,
       Analyzer analyzer, int bufferSize, SKOSType... types) {
     super(input, skosEngine, analyzer, types);
     this.bufferSize = bufferSize;
@@ -72,27 +73,37 @@ public MeSHLabelFilter(TokenStream input, MeSHEngineImpl skosEngine,
    */
   @Override
   public boolean incrementToken() throws IOException {
+    /* there are words of multi-word expansions at this position */
+    if (incrementGraph()) {
+      return true;
+    }
+    
     /* there are expanded terms for the given token */
-    if (termStack.size() > 0) {
-      processTermOnStack();
+    if (processTermOnStack()) {
       return true;
     }
     
     while (buffer.size() < bufferSize && input.incrementToken()) {
       buffer.add(input.captureState());
+      if (metrics != null) {
+        metrics.tokenBuffered();
+      }
       
     }
     
     if (buffer.isEmpty()) {
-      return false;
+      return endGraph();
     }
     
     restoreState(buffer.peek());
+    inputToken();
     
     /* check whether there are expanded terms for a given token */
     if (addAliasesToStack()) {
       /* if yes, capture the state of all attributes */
       current = captureState();
+      /* and drop the terms beyond the expansion budget */
+      applyBudget();
     }
     
     buffer.remove();
@@ -105,6 +116,7 @@ private boolean addAliasesToStack() throws IOException {
       String inputTokens = bufferToString(i);
       
       if (addTermsToStack(inputTokens)) {
+        matchLength = i;
         break;
       }
       
@@ -195,8 +207,8 @@ public boolean addTermsToStack(String term) throws IOException {
         }
       }
     } catch (Exception e) {
-      System.err
-          .println("Error when accessing SKOS Engine.\n" + e.getMessage());
+      SKOSWarnings.ENGINE_ERRORS.warn("Error when accessing SKOS Engine for {}",
+          term, e);
     }
     
     if (termStack.isEmpty()) {
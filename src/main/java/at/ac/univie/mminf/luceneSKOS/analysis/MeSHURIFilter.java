@@ -22,8 +22,9 @@
 import org.apache.lucene.analysis.TokenStream;
 
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSWarnings;
+import at.ac.univie.mminf.luceneSKOS.skos.MeSHEngine;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
-import at.ac.univie.mminf.luceneSKOS.skos.impl.MeSHEngineImpl;
 
 /**
  * A Lucene TokenFilter that supports URI-based term expansion as described in
@@ -43,7 +44,7 @@ public final class MeSHURIFilter extends AbstractMeSHFilter {
    * @param skosEngine
    * @param types
    */
-  public MeSHURIFilter(TokenStream input, MeSHEngineImpl skosEngine,
+  public MeSHURIFilter(TokenStream input, MeSHEngine skosEngine,
       Analyzer analyzer, SKOSType... types) {
     super(input, skosEngine, analyzer, types);
   }
@@ -54,22 +55,29 @@ public MeSHURIFilter(TokenStream input, MeSHEngineImpl skosEngine,
   @Override
   public boolean incrementToken() throws IOException {
     
+    /* there are words of multi-word expansions at this position */
+    if (incrementGraph()) {
+      return true;
+    }
+    
     /* there are expanded terms for the given token */
-    if (termStack.size() > 0) {
-      processTermOnStack();
+    if (processTermOnStack()) {
       return true;
     }
     
     /* no more tokens on the consumed stream -> end of stream */
     if (!input.incrementToken()) {
-      return false;
+      return endGraph();
     }
+    inputToken();
     
     /* check whether there are expanded terms for a given token */
     if (addTermsToStack(termAtt.toString())) {
       
       /* if yes, capture the state of all attributes */
       current = captureState();
+      /* and drop the terms beyond the expansion budget */
+      applyBudget();
     }
     
     return true;
@@ -120,8 +128,8 @@ public boolean addTermsToStack(String term) throws IOException {
     	  }
       }
     } catch (Exception e) {
-      System.err
-          .println("Error when accessing SKOS Engine.\n" + e.getMessage());
+      SKOSWarnings.ENGINE_ERRORS.warn("Error when accessing SKOS Engine for {}",
+          term, e);
     }
     
     if (termStack.isEmpty()) {
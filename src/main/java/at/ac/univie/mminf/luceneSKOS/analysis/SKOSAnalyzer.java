@@ -24,7 +24,6 @@
 import org.apache.lucene.analysis.core.LowerCaseFilter;
 import org.apache.lucene.analysis.core.StopAnalyzer;
 import org.apache.lucene.analysis.core.StopFilter;
-import org.apache.lucene.analysis.miscellaneous.RemoveDuplicatesTokenFilter;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.standard.StandardFilter;
 import org.apache.lucene.analysis.standard.StandardTokenizer;
@@ -32,6 +31,7 @@
 import org.apache.lucene.analysis.util.StopwordAnalyzerBase;
 import org.apache.lucene.util.Version;
 
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSTypePayload.Encoding;
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngineFactory;
@@ -71,6 +71,12 @@ public enum ExpansionType {
   
   private int maxTokenLength = DEFAULT_MAX_TOKEN_LENGTH;
   
+  private Encoding payloadEncoding = Encoding.INT;
+  
+  private boolean tokenGraph = false;
+  
+  private ExpansionBudget expansionBudget = ExpansionBudget.UNLIMITED;
+  
   /**
    * An unmodifiable set containing some common English words that are usually
    * not useful for searching.
@@ -154,30 +160,87 @@ public int getMaxTokenLength() {
     return maxTokenLength;
   }
   
+  /**
+   * Sets the layout of the payloads holding the types of the expanded terms.
+   * This setting only takes effect the next time tokenStream is called.
+   */
+  public void setPayloadEncoding(Encoding payloadEncoding) {
+    this.payloadEncoding = payloadEncoding;
+  }
+  
+  public Encoding getPayloadEncoding() {
+    return payloadEncoding;
+  }
+  
+  /**
+   * Sets whether multi-word labels are emitted as sequences of words at
+   * consecutive positions rather than as single terms, so that they can be
+   * found by phrase queries. Meant for index analyzers. This setting only
+   * takes effect the next time tokenStream is called.
+   */
+  public void setTokenGraph(boolean tokenGraph) {
+    this.tokenGraph = tokenGraph;
+  }
+  
+  public boolean isTokenGraph() {
+    return tokenGraph;
+  }
+  
+  /**
+   * Sets the limits of the number of terms expanded per position, field value
+   * and document, none by default. This setting only takes effect the next
+   * time tokenStream is called.
+   */
+  public void setExpansionBudget(ExpansionBudget expansionBudget) {
+    this.expansionBudget = expansionBudget;
+  }
+  
+  public ExpansionBudget getExpansionBudget() {
+    return expansionBudget;
+  }
+  
   @Override
   protected TokenStreamComponents createComponents(String fileName,
       Reader reader) {
     if (expansionType.equals(ExpansionType.URI)) {
       final KeywordTokenizer src = new KeywordTokenizer(reader);
-      TokenStream tok = new SKOSURIFilter(src, skosEngine,
+      final SKOSURIFilter uriFilter = new SKOSURIFilter(src, skosEngine,
           new StandardAnalyzer(matchVersion), types);
+      uriFilter.setPayloadEncoding(payloadEncoding);
+      uriFilter.setTokenGraph(tokenGraph);
+      uriFilter.setExpansionBudget(expansionBudget);
+      TokenStream tok = uriFilter;
       tok = new LowerCaseFilter(matchVersion, tok);
-      return new TokenStreamComponents(src, tok);
+      return new TokenStreamComponents(src, tok) {
+        @Override
+        protected void setReader(final Reader reader) throws IOException {
+          uriFilter.setPayloadEncoding(payloadEncoding);
+          uriFilter.setTokenGraph(tokenGraph);
+          uriFilter.setExpansionBudget(expansionBudget);
+          super.setReader(reader);
+        }
+      };
     } else {
       final StandardTokenizer src = new StandardTokenizer(matchVersion, reader);
       src.setMaxTokenLength(maxTokenLength);
       TokenStream tok = new StandardFilter(matchVersion, src);
       // prior to this we get the classic behavior, standardfilter does it for
       // us.
-      tok = new SKOSLabelFilter(tok, skosEngine, new StandardAnalyzer(
-          matchVersion), bufferSize, types);
+      final SKOSLabelFilter labelFilter = new SKOSLabelFilter(tok, skosEngine,
+          new StandardAnalyzer(matchVersion), bufferSize, types);
+      labelFilter.setPayloadEncoding(payloadEncoding);
+      labelFilter.setTokenGraph(tokenGraph);
+      labelFilter.setExpansionBudget(expansionBudget);
+      tok = labelFilter;
       tok = new LowerCaseFilter(matchVersion, tok);
       tok = new StopFilter(matchVersion, tok, stopwords);
-      tok = new RemoveDuplicatesTokenFilter(tok);
       return new TokenStreamComponents(src, tok) {
         @Override
         protected void setReader(final Reader reader) throws IOException {
           src.setMaxTokenLength(maxTokenLength);
+          labelFilter.setPayloadEncoding(payloadEncoding);
+          labelFilter.setTokenGraph(tokenGraph);
+          labelFilter.setExpansionBudget(expansionBudget);
           super.setReader(reader);
         }
       };
@@ -24,6 +24,7 @@
 import org.apache.lucene.analysis.TokenStream;
 
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSWarnings;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 
 /**
@@ -35,7 +36,7 @@
  * for matching concepts (based on their prefLabels). If a match is found, it
  * adds the concept's labels to the output token stream.
  */
-public final class SKOSLabelFilter extends AbstractSKOSFilter {
+public class SKOSLabelFilter extends AbstractSKOSFilter {
   
   public static final int DEFAULT_BUFFER_SIZE = 1;
   
@@ -71,27 +72,37 @@ public SKOSLabelFilter(TokenStream input, SKOSEngine skosEngine,
    */
   @Override
   public boolean incrementToken() throws IOException {
+    /* there are words of multi-word expansions at this position */
+    if (incrementGraph()) {
+      return true;
+    }
+    
     /* there are expanded terms for the given token */
-    if (termStack.size() > 0) {
-      processTermOnStack();
+    if (processTermOnStack()) {
       return true;
     }
     
     while (buffer.size() < bufferSize && input.incrementToken()) {
       buffer.add(input.captureState());
+      if (metrics != null) {
+        metrics.tokenBuffered();
+      }
       
     }
     
     if (buffer.isEmpty()) {
-      return false;
+      return endGraph();
     }
     
     restoreState(buffer.peek());
+    inputToken();
     
     /* check whether there are expanded terms for a given token */
     if (addAliasesToStack()) {
       /* if yes, capture the state of all attributes */
       current = captureState();
+      /* and drop the terms beyond the expansion budget */
+      applyBudget();
     }
     
     buffer.remove();
@@ -104,6 +115,7 @@ private boolean addAliasesToStack() throws IOException {
       String inputTokens = bufferToString(i);
       
       if (addTermsToStack(inputTokens)) {
+        matchLength = i;
         break;
       }
       
@@ -180,8 +192,8 @@ public boolean addTermsToStack(String term) throws IOException {
         }
       }
     } catch (Exception e) {
-      System.err
-          .println("Error when accessing SKOS Engine.\n" + e.getMessage());
+      SKOSWarnings.ENGINE_ERRORS.warn("Error when accessing SKOS Engine for {}",
+          term, e);
     }
     
     if (termStack.isEmpty()) {
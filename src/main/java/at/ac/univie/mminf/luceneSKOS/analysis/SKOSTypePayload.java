@@ -0,0 +1,96 @@
+package at.ac.univie.mminf.luceneSKOS.analysis;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.payloads.PayloadHelper;
+import org.apache.lucene.util.BytesRef;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+
+/**
+ * Encodes the {@link SKOSType} of an expanded term into the payload of the
+ * indexed term, and decodes it again.
+ *
+ * Payloads are told apart by their length, so that indexes written with
+ * either encoding can be read:
+ *
+ * <pre>
+ *   4 bytes: the type ordinal as a big-endian int (INT, the original layout)
+ *   1 byte:  the type ordinal (COMPACT)
+ * </pre>
+ */
+public final class SKOSTypePayload {
+
+  /**
+   * The payload layouts
+   */
+  public enum Encoding {
+    /** a 4-byte int, as written by earlier versions */
+    INT,
+    /** a single byte */
+    COMPACT
+  }
+
+  /* the largest ordinal which fits into a compact payload */
+  private static final int MAX_COMPACT_ORDINAL = Byte.MAX_VALUE;
+
+  private static final SKOSType[] TYPES = SKOSType.values();
+
+  private SKOSTypePayload() {}
+
+  /**
+   * Returns the payload holding the given type
+   */
+  public static BytesRef encode(SKOSType type, Encoding encoding) {
+    if (encoding == Encoding.COMPACT) {
+      if (type.ordinal() > MAX_COMPACT_ORDINAL) {
+        throw new IllegalArgumentException("Cannot encode " + type
+            + " into a single byte");
+      }
+      return new BytesRef(new byte[] {(byte) type.ordinal()});
+    }
+    return new BytesRef(PayloadHelper.encodeInt(type.ordinal()));
+  }
+
+  /**
+   * Decodes the ordinal of the type held by a payload
+   *
+   * @return the ordinal, or -1 if the payload holds no type
+   */
+  public static int decodeType(BytesRef payload) {
+    if (payload == null) {
+      return -1;
+    }
+    switch (payload.length) {
+      case 1:
+        return payload.bytes[payload.offset];
+      case 4:
+        return PayloadHelper.decodeInt(payload.bytes, payload.offset);
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Returns the type held by a payload, or null if it holds none
+   */
+  public static SKOSType decode(BytesRef payload) {
+    int ordinal = decodeType(payload);
+    return ordinal >= 0 && ordinal < TYPES.length ? TYPES[ordinal] : null;
+  }
+
+}
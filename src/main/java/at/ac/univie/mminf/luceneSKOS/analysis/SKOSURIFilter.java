@@ -17,11 +17,16 @@
  */
 
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSWarnings;
+import at.ac.univie.mminf.luceneSKOS.skos.BatchLookups;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 
 /**
@@ -35,6 +40,12 @@
  */
 public final class SKOSURIFilter extends AbstractSKOSFilter {
   
+  /* the types expanded to, in the order their labels are pushed */
+  private static final SKOSType[] EXPANDED_TYPES = new SKOSType[] {
+      SKOSType.PREF, SKOSType.ALT, SKOSType.BROADER,
+      SKOSType.BROADERTRANSITIVE, SKOSType.NARROWER,
+      SKOSType.NARROWERTRANSITIVE};
+  
   /**
    * Constructor.
    * 
@@ -53,61 +64,57 @@ public SKOSURIFilter(TokenStream input, SKOSEngine skosEngine,
   @Override
   public boolean incrementToken() throws IOException {
     
+    /* there are words of multi-word expansions at this position */
+    if (incrementGraph()) {
+      return true;
+    }
+    
     /* there are expanded terms for the given token */
-    if (termStack.size() > 0) {
-      processTermOnStack();
+    if (processTermOnStack()) {
       return true;
     }
     
     /* no more tokens on the consumed stream -> end of stream */
     if (!input.incrementToken()) {
-      return false;
+      return endGraph();
     }
+    inputToken();
     
     /* check whether there are expanded terms for a given token */
     if (addTermsToStack(termAtt.toString())) {
       
       /* if yes, capture the state of all attributes */
       current = captureState();
+      /* and drop the terms beyond the expansion budget */
+      applyBudget();
     }
     
     return true;
   }
   
   /**
-   * Assumes that the given term is a concept URI
+   * Assumes that the given term is a concept URI. The labels of all types are
+   * looked up at once, so that an engine supporting batches reads the concept
+   * only once.
    */
   public boolean addTermsToStack(String term) throws IOException {
     try {
-      if (types.contains(SKOSType.PREF)) {
-        String[] prefLabels = engine.getPrefLabels(term);
-        pushLabelsToStack(prefLabels, SKOSType.PREF);
-      }
-      if (types.contains(SKOSType.ALT)) {
-        String[] altLabels = engine.getAltLabels(term);
-        pushLabelsToStack(altLabels, SKOSType.ALT);
-      }
-      if (types.contains(SKOSType.BROADER)) {
-        String[] broaderLabels = engine.getBroaderLabels(term);
-        pushLabelsToStack(broaderLabels, SKOSType.BROADER);
-      }
-      if (types.contains(SKOSType.BROADERTRANSITIVE)) {
-        String[] broaderTransitiveLabels = engine
-            .getBroaderTransitiveLabels(term);
-        pushLabelsToStack(broaderTransitiveLabels, SKOSType.BROADERTRANSITIVE);
-      }
-      if (types.contains(SKOSType.NARROWER)) {
-        String[] narrowerLabels = engine.getNarrowerLabels(term);
-        pushLabelsToStack(narrowerLabels, SKOSType.NARROWER);
+      Set<SKOSType> expanded = EnumSet.noneOf(SKOSType.class);
+      for (SKOSType type : EXPANDED_TYPES) {
+        if (types.contains(type)) {
+          expanded.add(type);
+        }
       }
-      if (types.contains(SKOSType.NARROWERTRANSITIVE)) {
-        String[] narrowerTransitiveLabels = engine
-            .getNarrowerTransitiveLabels(term);
-        pushLabelsToStack(narrowerTransitiveLabels, SKOSType.NARROWERTRANSITIVE);
+      Map<SKOSType,String[]> labels = expanded.isEmpty() ? null : BatchLookups
+          .expand(engine, new String[] {term}, expanded).get(term);
+      if (labels != null) {
+        for (SKOSType type : EXPANDED_TYPES) {
+          pushLabelsToStack(labels.get(type), type);
+        }
       }
     } catch (Exception e) {
-      System.err
-          .println("Error when accessing SKOS Engine.\n" + e.getMessage());
+      SKOSWarnings.ENGINE_ERRORS.warn("Error when accessing SKOS Engine for {}",
+          term, e);
     }
     
     if (termStack.isEmpty()) {
@@ -19,6 +19,8 @@
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
@@ -28,17 +30,19 @@
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.payloads.PayloadHelper;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.util.AttributeSource;
-import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.AttributeSource.State;
 
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSTypePayload.Encoding;
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute;
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.InstrumentedSKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSWarnings;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 import at.ac.univie.mminf.luceneSKOS.skos.impl.MeSHEngineImpl;
 
@@ -74,6 +78,30 @@ public class SNOMEDFilter extends TokenFilter {
 	/* the analyzer to use when parsing */
 	protected final Analyzer analyzer;
 
+	/* the metrics of an instrumented engine, or null */
+	protected final SKOSMetrics metrics;
+
+	/* the layout of the payloads holding the term types */
+	protected Encoding payloadEncoding = Encoding.INT;
+
+	/* whether multi-word expansions are emitted as token sequences */
+	protected boolean tokenGraph = false;
+
+	/* the number of input tokens matched by the terms on the stack */
+	protected int matchLength = 1;
+
+	/* the words of multi-word expansions for the following positions */
+	private final TokenGraph graph;
+
+	/* the labels and terms expanded at the current position */
+	private final LabelDedup dedup = new LabelDedup();
+
+	/* limits the number of terms expanded */
+	protected ExpansionBudget budget = ExpansionBudget.UNLIMITED;
+
+	/* the terms expanded for the current field value */
+	private ExpansionBudget.Usage usage = budget.newUsage();
+
 	/**
 	 * Constructor
 	 * 
@@ -90,6 +118,7 @@ public SNOMEDFilter(TokenStream input, SKOSEngine skosEngine,
 		termStack = new Stack<ExpandedTerm>();
 		this.engine = skosEngine;
 		this.analyzer = analyzer;
+		this.metrics = InstrumentedSKOSEngine.getMetrics(skosEngine);
 
 		if (types != null && types.length > 0) {
 			this.types = new TreeSet<SKOSType>(Arrays.asList(types));
@@ -102,6 +131,7 @@ public SNOMEDFilter(TokenStream input, SKOSEngine skosEngine,
 		this.posIncrAtt = addAttribute(PositionIncrementAttribute.class);
 		this.payloadAtt = addAttribute(PayloadAttribute.class);
 		this.skosAtt = addAttribute(SKOSTypeAttribute.class);
+		this.graph = new TokenGraph(this);
 	}
 
 	public static final int DEFAULT_BUFFER_SIZE = 1;
@@ -138,27 +168,38 @@ public SNOMEDFilter(TokenStream input, SKOSEngine skosEngine,
 	 */
 	@Override
 	public boolean incrementToken() throws IOException {
+		/* there are words of multi-word expansions at this position */
+		if (graph.next()) {
+			return true;
+		}
+
 		/* there are expanded terms for the given token */
-		if (termStack.size() > 0) {
-			processTermOnStack();
+		if (processTermOnStack()) {
 			return true;
 		}
 
 		while (buffer.size() < bufferSize && input.incrementToken()) {
 			buffer.add(input.captureState());
+			if (metrics != null) {
+				metrics.tokenBuffered();
+			}
 
 		}
 
 		if (buffer.isEmpty()) {
-			return false;
+			return graph.flush();
 		}
 
 		restoreState(buffer.peek());
+		graph.inputToken();
+		dedup.position(termAtt);
 
 		/* check whether there are expanded terms for a given token */
 		if (addAliasesToStack()) {
 			/* if yes, capture the state of all attributes */
 			current = captureState();
+			/* and drop the terms beyond the expansion budget */
+			applyBudget();
 		}
 
 		buffer.remove();
@@ -171,6 +212,7 @@ private boolean addAliasesToStack() throws IOException {
 			String inputTokens = bufferToString(i);
 
 			if (addTermsToStack(inputTokens)) {
+				matchLength = i;
 				break;
 			}
 
@@ -250,8 +292,8 @@ public boolean addTermsToStack(String term) throws IOException {
 				}
 			}
 		} catch (Exception e) {
-			System.err.println("Error when accessing SKOS Engine.\n"
-					+ e.getMessage());
+			SKOSWarnings.ENGINE_ERRORS.warn("Error when accessing SKOS Engine for {}",
+			    term, e);
 		}
 
 		if (termStack.isEmpty()) {
@@ -265,28 +307,112 @@ public int getBufferSize() {
 		return this.bufferSize;
 	}
 
+	/**
+	 * Sets the layout of the payloads holding the types of the expanded terms,
+	 * {@link Encoding#INT} by default
+	 */
+	public void setPayloadEncoding(Encoding payloadEncoding) {
+		this.payloadEncoding = payloadEncoding;
+	}
+
+	public Encoding getPayloadEncoding() {
+		return payloadEncoding;
+	}
+
+	/**
+	 * Sets whether multi-word labels are emitted as sequences of words at
+	 * consecutive positions, each with its own postings, rather than as single
+	 * quoted terms joining the words by spaces
+	 */
+	public void setTokenGraph(boolean tokenGraph) {
+		this.tokenGraph = tokenGraph;
+	}
+
+	public boolean isTokenGraph() {
+		return tokenGraph;
+	}
+
+	/**
+	 * Sets the limits of the number of terms expanded, none by default
+	 */
+	public void setExpansionBudget(ExpansionBudget budget) {
+		this.budget = budget == null ? ExpansionBudget.UNLIMITED : budget;
+		this.usage = this.budget.newUsage();
+	}
+
+	public ExpansionBudget getExpansionBudget() {
+		return budget;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		termStack.clear();
+		graph.reset();
+		dedup.clear();
+		usage.reset();
+	}
+
+	/**
+	 * Truncates the terms on the stack to the expansion budget, keeping the
+	 * terms whose types rank first
+	 */
+	protected void applyBudget() {
+		int allowed = usage.allow(termStack.size(), metrics);
+		if (allowed < termStack.size()) {
+			Collections.sort(termStack, PRIORITY);
+			termStack.setSize(allowed);
+		}
+	}
+
 	/**
 	 * Replaces the current term (attributes) with term (attributes) from the
-	 * stack
+	 * stack, skipping terms eliminated by the analyzer and terms already
+	 * emitted at this position
 	 * 
+	 * @return false if there were no terms left to emit
 	 * @throws IOException
 	 */
-	protected void processTermOnStack() throws IOException {
-		ExpandedTerm expandedTerm = termStack.pop();
-
-		String term = expandedTerm.getTerm();
-
-		SKOSType termType = expandedTerm.getTermType();
+	protected boolean processTermOnStack() throws IOException {
+		ExpandedTerm expandedTerm = null;
 
 		String sTerm = "";
+		String[] words = null;
 
-		try {
-			sTerm = analyze(analyzer, term, new CharsRef()).toString();
-		} catch (IllegalArgumentException e) {
-			// skip this term
-			return;
+		while (expandedTerm == null) {
+			if (termStack.isEmpty()) {
+				return false;
+			}
+			expandedTerm = termStack.pop();
+
+			boolean added;
+			try {
+				if (tokenGraph) {
+					words = TokenGraph.analyzeWords(analyzer,
+							expandedTerm.getTerm());
+					added = dedup.addTerm(words);
+				} else {
+					sTerm = analyze(analyzer, expandedTerm.getTerm(),
+							new CharsRef()).toString();
+					added = dedup.addTerm(sTerm);
+				}
+			} catch (IllegalArgumentException e) {
+				// skip this term
+				expandedTerm = null;
+				continue;
+			}
+
+			if (!added) {
+				/* another label analyzed to the same term */
+				if (metrics != null) {
+					metrics.duplicateDropped();
+				}
+				expandedTerm = null;
+			}
 		}
 
+		SKOSType termType = expandedTerm.getTermType();
+
 		/*
 		 * copies the values of all attribute implementations from this state
 		 * into the implementations of the target stream
@@ -309,13 +435,23 @@ protected void processTermOnStack() throws IOException {
 		 * etc.)
 		 */
 		skosAtt.setSkosType(termType);
+		if (metrics != null) {
+			metrics.expanded(termType);
+		}
 
 		/*
 		 * converts the SKOS Attribute to a payload, which is propagated to the
 		 * index
 		 */
-		byte[] bytes = PayloadHelper.encodeInt(skosAtt.getSkosType().ordinal());
-		payloadAtt.setPayload(new BytesRef(bytes));
+		payloadAtt.setPayload(SKOSTypePayload.encode(skosAtt.getSkosType(),
+				payloadEncoding));
+
+		if (words != null) {
+			/* lays out the words at the following positions */
+			graph.expand(words, matchLength);
+		}
+
+		return true;
 	}
 
 	/* Snipped from Solr's SynonymMap */
@@ -375,21 +511,38 @@ public static CharsRef analyze(Analyzer analyzer, String text,
 	}
 
 	/**
-	 * Pushes a given set of labels onto the stack
+	 * Pushes a given set of labels onto the stack, leaving out the labels
+	 * already pushed for the current token (see {@link LabelDedup})
 	 * 
 	 * @param labels
 	 * @param type
+	 * @return the number of labels pushed
 	 */
-	protected void pushLabelsToStack(String[] labels, SKOSType type) {
+	protected int pushLabelsToStack(String[] labels, SKOSType type) {
 
+		int pushed = 0;
 		if (labels != null) {
 			for (String label : labels) {
-				termStack.push(new ExpandedTerm(label, type));
+				if (dedup.addLabel(label)) {
+					termStack.push(new ExpandedTerm(label, type));
+					pushed++;
+				} else if (metrics != null) {
+					metrics.duplicateSkipped();
+				}
 			}
 		}
+		return pushed;
 
 	}
 
+	/* orders expanded terms by the priority of their types */
+	private static final Comparator<ExpandedTerm> PRIORITY = new Comparator<ExpandedTerm>() {
+		public int compare(ExpandedTerm term1, ExpandedTerm term2) {
+			return ExpansionBudget.compare(term1.getTermType(),
+					term2.getTermType());
+		}
+	};
+
 	/**
 	 * Helper class for capturing terms and term types
 	 */
@@ -0,0 +1,213 @@
+package at.ac.univie.mminf.luceneSKOS.analysis;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.AttributeSource.State;
+import org.apache.lucene.util.BytesRef;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+
+/**
+ * Lays out multi-word expansions of a filter as token sequences: the first
+ * word is put at the position of the expanded token, each following word at
+ * the next position, stacked onto the input token found there. Words beyond
+ * the last input token are emitted at new positions at the end of the stream.
+ *
+ * As the index does not record position lengths, the graph is flattened like
+ * by Lucene's SynonymFilter, so that the expanded phrases can be found by
+ * phrase queries while the positions of the input tokens stay unchanged.
+ */
+final class TokenGraph {
+
+  private final AttributeSource source;
+
+  private final CharTermAttribute termAtt;
+
+  private final PositionIncrementAttribute posIncrAtt;
+
+  private final PositionLengthAttribute posLenAtt;
+
+  private final SKOSTypeAttribute skosAtt;
+
+  private final PayloadAttribute payloadAtt;
+
+  /* the words to stack onto the following positions, the next one first */
+  private final LinkedList<List<Word>> ahead = new LinkedList<List<Word>>();
+
+  /* the words still to be emitted at the current position */
+  private final LinkedList<Word> due = new LinkedList<Word>();
+
+  /* the state of the input token at the current position */
+  private State carrier;
+
+  /* the position increment of the next word emitted */
+  private int increment;
+
+  TokenGraph(AttributeSource source) {
+    this.source = source;
+    this.termAtt = source.addAttribute(CharTermAttribute.class);
+    this.posIncrAtt = source.addAttribute(PositionIncrementAttribute.class);
+    this.posLenAtt = source.addAttribute(PositionLengthAttribute.class);
+    this.skosAtt = source.addAttribute(SKOSTypeAttribute.class);
+    this.payloadAtt = source.addAttribute(PayloadAttribute.class);
+  }
+
+  /**
+   * Returns the words of a label as analyzed by the given analyzer
+   *
+   * @throws IllegalArgumentException
+   *           if the label is eliminated by the analyzer
+   */
+  static String[] analyzeWords(Analyzer analyzer, String text)
+      throws IOException {
+    TokenStream ts = analyzer.tokenStream("", new StringReader(text));
+    CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+    List<String> words = new ArrayList<String>();
+    ts.reset();
+    while (ts.incrementToken()) {
+      if (termAtt.length() == 0) {
+        throw new IllegalArgumentException("term: " + text
+            + " analyzed to a zero-length token");
+      }
+      words.add(termAtt.toString());
+    }
+    ts.end();
+    ts.close();
+    if (words.isEmpty()) {
+      throw new IllegalArgumentException("term: " + text
+          + " was completely eliminated by analyzer");
+    }
+    return words.toArray(new String[words.size()]);
+  }
+
+  /**
+   * Sets the first word of an expansion, whose other attributes are already
+   * set, and schedules the following words for the following positions
+   *
+   * @param matchLength
+   *          the number of input tokens the expansion replaces
+   */
+  void expand(String[] words, int matchLength) {
+    termAtt.setEmpty().append(words[0]);
+    if (words.length == 1) {
+      posLenAtt.setPositionLength(matchLength);
+      return;
+    }
+    posLenAtt.setPositionLength(1);
+
+    SKOSType type = skosAtt.getSkosType();
+    BytesRef payload = payloadAtt.getPayload();
+    carrier = source.captureState();
+    for (int i = 1; i < words.length; i++) {
+      while (ahead.size() < i) {
+        ahead.add(new ArrayList<Word>(2));
+      }
+      // the last word ends where the replaced tokens end, if they are longer
+      int length = i == words.length - 1 ? Math.max(1, matchLength - i) : 1;
+      ahead.get(i - 1).add(new Word(words[i], type, payload, length));
+    }
+  }
+
+  /**
+   * Moves on to the position of the input token about to be returned, whose
+   * attributes are set
+   */
+  void inputToken() {
+    if (ahead.isEmpty()) {
+      return;
+    }
+    for (int i = posIncrAtt.getPositionIncrement(); i > 0 && !ahead.isEmpty(); i--) {
+      due.addAll(ahead.removeFirst());
+    }
+    carrier = source.captureState();
+    increment = 0;
+  }
+
+  /**
+   * Emits the next word due at the current position
+   *
+   * @return false if there is none
+   */
+  boolean next() {
+    if (due.isEmpty()) {
+      return false;
+    }
+    Word word = due.removeFirst();
+    source.restoreState(carrier);
+    termAtt.setEmpty().append(word.term);
+    posIncrAtt.setPositionIncrement(increment);
+    posLenAtt.setPositionLength(word.length);
+    skosAtt.setSkosType(word.type);
+    payloadAtt.setPayload(word.payload);
+    increment = 0;
+    return true;
+  }
+
+  /**
+   * Emits the next word scheduled beyond the last input token, once the input
+   * is exhausted
+   *
+   * @return false if there is none
+   */
+  boolean flush() {
+    while (due.isEmpty() && !ahead.isEmpty()) {
+      due.addAll(ahead.removeFirst());
+      increment++;
+    }
+    return next();
+  }
+
+  void reset() {
+    ahead.clear();
+    due.clear();
+    carrier = null;
+    increment = 0;
+  }
+
+  private static final class Word {
+
+    final String term;
+
+    final SKOSType type;
+
+    final BytesRef payload;
+
+    final int length;
+
+    Word(String term, SKOSType type, BytesRef payload, int length) {
+      this.term = term;
+      this.type = type;
+      this.payload = payload;
+      this.length = length;
+    }
+  }
+
+}
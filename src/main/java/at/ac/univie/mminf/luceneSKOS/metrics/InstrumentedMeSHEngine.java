@@ -0,0 +1,64 @@
+package at.ac.univie.mminf.luceneSKOS.metrics;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics.Lookup;
+import at.ac.univie.mminf.luceneSKOS.skos.MeSHEngine;
+
+/**
+ * An instrumented {@link MeSHEngine}, also recording the leveled lookups
+ */
+public class InstrumentedMeSHEngine extends InstrumentedSKOSEngine implements
+    MeSHEngine {
+
+  private final MeSHEngine meshEngine;
+
+  protected InstrumentedMeSHEngine(MeSHEngine engine, SKOSMetrics metrics) {
+    super(engine, metrics);
+    this.meshEngine = engine;
+  }
+
+  public String[] getLeveledBroaderTermsURI(String conceptURI, int level) throws IOException {
+    long start = System.nanoTime();
+    String[] result = meshEngine.getLeveledBroaderTermsURI(conceptURI, level);
+    record(Lookup.LEVELED_BROADER_URIS, start, result);
+    return result;
+  }
+
+  public String[] getLeveledNarrowerTermsURI(String conceptURI, int level) throws IOException {
+    long start = System.nanoTime();
+    String[] result = meshEngine.getLeveledNarrowerTermsURI(conceptURI, level);
+    record(Lookup.LEVELED_NARROWER_URIS, start, result);
+    return result;
+  }
+
+  public String[] getLeveledBroaderTermsLabels(String conceptURI, int level) throws IOException {
+    long start = System.nanoTime();
+    String[] result = meshEngine.getLeveledBroaderTermsLabels(conceptURI, level);
+    record(Lookup.LEVELED_BROADER_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getLeveledNarrowerTermsLabels(String conceptURI, int level) throws IOException {
+    long start = System.nanoTime();
+    String[] result = meshEngine.getLeveledNarrowerTermsLabels(conceptURI, level);
+    record(Lookup.LEVELED_NARROWER_LABELS, start, result);
+    return result;
+  }
+}
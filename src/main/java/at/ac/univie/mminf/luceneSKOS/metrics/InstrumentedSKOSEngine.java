@@ -0,0 +1,235 @@
+package at.ac.univie.mminf.luceneSKOS.metrics;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics.Lookup;
+import at.ac.univie.mminf.luceneSKOS.skos.BatchLookup;
+import at.ac.univie.mminf.luceneSKOS.skos.BatchLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup.Match;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.MeSHEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * A SKOS engine which records the lookups of another engine in
+ * {@link SKOSMetrics}. Filters given an instrumented engine record their
+ * expansions in the same metrics.
+ */
+public class InstrumentedSKOSEngine implements SKOSEngine, BatchLookup,
+    FuzzyLookup {
+
+  protected final SKOSEngine engine;
+
+  protected final SKOSMetrics metrics;
+
+  protected InstrumentedSKOSEngine(SKOSEngine engine, SKOSMetrics metrics) {
+    this.engine = engine;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Instruments an engine, keeping the MeSH lookups of a {@link MeSHEngine}
+   */
+  public static InstrumentedSKOSEngine wrap(SKOSEngine engine,
+      SKOSMetrics metrics) {
+    if (engine instanceof MeSHEngine) {
+      return new InstrumentedMeSHEngine((MeSHEngine) engine, metrics);
+    }
+    return new InstrumentedSKOSEngine(engine, metrics);
+  }
+
+  /**
+   * Returns the metrics of the given engine, or null if it is not
+   * instrumented
+   */
+  public static SKOSMetrics getMetrics(SKOSEngine engine) {
+    if (engine instanceof InstrumentedSKOSEngine) {
+      return ((InstrumentedSKOSEngine) engine).getMetrics();
+    }
+    return null;
+  }
+
+  public SKOSMetrics getMetrics() {
+    return metrics;
+  }
+
+  /** Returns the instrumented engine */
+  public SKOSEngine getDelegate() {
+    return engine;
+  }
+
+  public String[] getPrefLabels(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getPrefLabels(conceptURI);
+    record(Lookup.PREF_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getAltLabels(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getAltLabels(conceptURI);
+    record(Lookup.ALT_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getHiddenLabels(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getHiddenLabels(conceptURI);
+    record(Lookup.HIDDEN_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getRelatedLabels(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getRelatedLabels(conceptURI);
+    record(Lookup.RELATED_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getRelatedConcepts(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getRelatedConcepts(conceptURI);
+    record(Lookup.RELATED_CONCEPTS, start, result);
+    return result;
+  }
+
+  public String[] getBroaderConcepts(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getBroaderConcepts(conceptURI);
+    record(Lookup.BROADER_CONCEPTS, start, result);
+    return result;
+  }
+
+  public String[] getNarrowerConcepts(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getNarrowerConcepts(conceptURI);
+    record(Lookup.NARROWER_CONCEPTS, start, result);
+    return result;
+  }
+
+  public String[] getBroaderLabels(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getBroaderLabels(conceptURI);
+    record(Lookup.BROADER_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getNarrowerLabels(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getNarrowerLabels(conceptURI);
+    record(Lookup.NARROWER_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getBroaderTransitiveConcepts(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getBroaderTransitiveConcepts(conceptURI);
+    record(Lookup.BROADER_TRANSITIVE_CONCEPTS, start, result);
+    return result;
+  }
+
+  public String[] getNarrowerTransitiveConcepts(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getNarrowerTransitiveConcepts(conceptURI);
+    record(Lookup.NARROWER_TRANSITIVE_CONCEPTS, start, result);
+    return result;
+  }
+
+  public String[] getBroaderTransitiveLabels(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getBroaderTransitiveLabels(conceptURI);
+    record(Lookup.BROADER_TRANSITIVE_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getNarrowerTransitiveLabels(String conceptURI) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getNarrowerTransitiveLabels(conceptURI);
+    record(Lookup.NARROWER_TRANSITIVE_LABELS, start, result);
+    return result;
+  }
+
+  public String[] getConcepts(String label) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getConcepts(label);
+    record(Lookup.CONCEPTS, start, result);
+    return result;
+  }
+
+  public String[] getAltTerms(String label) throws IOException {
+    long start = System.nanoTime();
+    String[] result = engine.getAltTerms(label);
+    record(Lookup.ALT_TERMS, start, result);
+    return result;
+  }
+
+  /**
+   * Looks the labels up in one batch if the instrumented engine supports it,
+   * recording the batch as one lookup
+   */
+  public Map<String,String[]> getConcepts(String[] labels) throws IOException {
+    long start = System.nanoTime();
+    Map<String,String[]> result = BatchLookups.getConcepts(engine, labels);
+    metrics.lookup(Lookup.BATCH_CONCEPTS, System.nanoTime() - start,
+        !result.isEmpty());
+    return result;
+  }
+
+  /**
+   * Expands the concepts in one batch if the instrumented engine supports it,
+   * recording the batch as one lookup
+   */
+  public Map<String,Map<SKOSType,String[]>> expand(String[] conceptURIs,
+      Set<SKOSType> types) throws IOException {
+    long start = System.nanoTime();
+    Map<String,Map<SKOSType,String[]>> result = BatchLookups.expand(engine,
+        conceptURIs, types);
+    metrics.lookup(Lookup.BATCH_EXPANSIONS, System.nanoTime() - start,
+        !result.isEmpty());
+    return result;
+  }
+
+  /**
+   * Looks the label up with typos if the instrumented engine supports it, and
+   * only exactly otherwise
+   */
+  public List<Match> getFuzzyConcepts(String label, int maxEdits,
+      int prefixLength) throws IOException {
+    long start = System.nanoTime();
+    List<Match> result = FuzzyLookups.getFuzzyConcepts(engine, label,
+        maxEdits, prefixLength);
+    metrics.lookup(Lookup.FUZZY_CONCEPTS, System.nanoTime() - start,
+        !result.isEmpty());
+    return result;
+  }
+
+  /**
+   * Records a lookup started at the given time, counting it as a hit if it
+   * found any values
+   */
+  protected void record(Lookup lookup, long start, String[] result) {
+    metrics.lookup(lookup, System.nanoTime() - start, result != null
+        && result.length > 0);
+  }
+}
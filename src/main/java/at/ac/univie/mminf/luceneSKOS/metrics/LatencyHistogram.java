@@ -0,0 +1,99 @@
+package at.ac.univie.mminf.luceneSKOS.metrics;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with power-of-two buckets, striped
+ * like {@link StripedCounter} so that recording takes no locks. Percentiles
+ * are reported as the upper bound of the bucket they fall into, that is
+ * within a factor of two.
+ */
+public final class LatencyHistogram {
+
+  /** Bucket i holds latencies below 2^i nanoseconds, up to about 18 minutes */
+  static final int BUCKETS = 41;
+
+  /** The buckets of all stripes, stripe after stripe */
+  private final AtomicLongArray buckets = new AtomicLongArray(
+      StripedCounter.STRIPES * BUCKETS);
+
+  private final StripedCounter total = new StripedCounter();
+
+  /**
+   * Records a latency
+   */
+  public void record(long nanos) {
+    int bucket = nanos <= 0 ? 0 : Math.min(BUCKETS - 1,
+        64 - Long.numberOfLeadingZeros(nanos));
+    buckets.getAndIncrement(StripedCounter.stripe() * BUCKETS + bucket);
+    total.add(nanos);
+  }
+
+  /** Returns the number of recorded latencies */
+  public long getCount() {
+    long count = 0;
+    for (long bucket : counts()) {
+      count += bucket;
+    }
+    return count;
+  }
+
+  /** Returns the mean latency in nanoseconds, or 0 if none was recorded */
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double) total.sum() / count;
+  }
+
+  /**
+   * Returns an upper bound of the given percentile in nanoseconds, or 0 if
+   * nothing was recorded
+   *
+   * @param percentile
+   *          the percentile, between 0 and 100
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = counts();
+    long count = 0;
+    for (long bucket : counts) {
+      count += bucket;
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank && counts[i] > 0) {
+        return 1L << i;
+      }
+    }
+    return 1L << (BUCKETS - 1);
+  }
+
+  private long[] counts() {
+    long[] counts = new long[BUCKETS];
+    for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += buckets.get(stripe * BUCKETS + i);
+      }
+    }
+    return counts;
+  }
+}
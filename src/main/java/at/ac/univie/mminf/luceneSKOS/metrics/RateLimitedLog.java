@@ -0,0 +1,97 @@
+package at.ac.univie.mminf.luceneSKOS.metrics;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * Counts a recurring event, e.g. a lookup of an unknown concept, and logs a
+ * sample of its occurrences: at most one warning per interval, which also
+ * reports how many occurrences were not logged. All other occurrences only
+ * increment a {@link StripedCounter}, so that threads do not serialize on
+ * logging.
+ */
+public class RateLimitedLog {
+
+  /** The default interval between two warnings */
+  public static final long DEFAULT_INTERVAL_MILLIS = 10000;
+
+  private final Logger logger;
+
+  private final long intervalNanos;
+
+  private final StripedCounter count = new StripedCounter();
+
+  /* the occurrences counted when the last warning was logged */
+  private final AtomicLong logged = new AtomicLong();
+
+  /* the time from which on the next warning may be logged */
+  private final AtomicLong nextWarning = new AtomicLong(System.nanoTime());
+
+  public RateLimitedLog(Logger logger) {
+    this(logger, DEFAULT_INTERVAL_MILLIS);
+  }
+
+  public RateLimitedLog(Logger logger, long intervalMillis) {
+    this.logger = logger;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+  }
+
+  /**
+   * Counts an occurrence and logs it if no warning was logged within the
+   * interval
+   *
+   * @param message
+   *          the message, with a {} placeholder for the argument
+   * @param argument
+   *          the subject of the warning, e.g. a concept URI
+   */
+  public void warn(String message, Object argument) {
+    warn(message, argument, null);
+  }
+
+  /**
+   * Counts an occurrence caused by an exception and logs it, with its stack
+   * trace, if no warning was logged within the interval
+   */
+  public void warn(String message, Object argument, Throwable cause) {
+    count.increment();
+    long next = nextWarning.get();
+    long now = System.nanoTime();
+    if (now - next < 0 || !logger.isWarnEnabled()
+        || !nextWarning.compareAndSet(next, now + intervalNanos)) {
+      return;
+    }
+    long total = count.sum();
+    long suppressed = total - logged.getAndSet(total) - 1;
+    String text = suppressed > 0 ? message + " (" + suppressed
+        + " more occurrences since the last warning)" : message;
+    if (cause != null) {
+      logger.warn(text, argument, cause);
+    } else {
+      logger.warn(text, argument);
+    }
+  }
+
+  /** Returns the number of occurrences, logged or not */
+  public long getCount() {
+    return count.sum();
+  }
+}
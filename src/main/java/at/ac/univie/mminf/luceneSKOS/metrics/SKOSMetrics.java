@@ -0,0 +1,349 @@
+package at.ac.univie.mminf.luceneSKOS.metrics;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.ExpansionBudget;
+import at.ac.univie.mminf.luceneSKOS.analysis.ExpansionBudget.Limit;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+
+/**
+ * Collects the lookups of a SKOS engine and the work of the filters expanding
+ * with it: lookup counts, hits and latencies per engine method, expansions
+ * per {@link SKOSType}, duplicate labels left out, terms truncated by an
+ * {@link ExpansionBudget}, tokens buffered and build timings. Snapshots also
+ * report the {@link SKOSWarnings} of all engines and filters.
+ *
+ * Recording only updates striped counters and takes no locks; a
+ * {@link #snapshot()} adds them up when the metrics are read, e.g. through
+ * JMX after {@link #registerMBean(String)}.
+ */
+public class SKOSMetrics {
+
+  /** The JMX domain of registered metrics */
+  public static final String DOMAIN = "at.ac.univie.mminf.luceneSKOS";
+
+  /**
+   * The engine methods measured
+   */
+  public enum Lookup {
+    PREF_LABELS, ALT_LABELS, HIDDEN_LABELS, RELATED_LABELS, RELATED_CONCEPTS,
+    BROADER_CONCEPTS, NARROWER_CONCEPTS, BROADER_LABELS, NARROWER_LABELS,
+    BROADER_TRANSITIVE_CONCEPTS, NARROWER_TRANSITIVE_CONCEPTS,
+    BROADER_TRANSITIVE_LABELS, NARROWER_TRANSITIVE_LABELS, CONCEPTS,
+    ALT_TERMS, LEVELED_BROADER_URIS, LEVELED_NARROWER_URIS,
+    LEVELED_BROADER_LABELS, LEVELED_NARROWER_LABELS, BATCH_CONCEPTS,
+    BATCH_EXPANSIONS, FUZZY_CONCEPTS
+  }
+
+  private final StripedCounter[] hits = counters(Lookup.values().length);
+
+  private final StripedCounter[] misses = counters(Lookup.values().length);
+
+  private final LatencyHistogram[] latencies = new LatencyHistogram[Lookup
+      .values().length];
+
+  private final StripedCounter[] expansions = counters(SKOSType.values().length);
+
+  private final StripedCounter duplicatesSkipped = new StripedCounter();
+
+  private final StripedCounter duplicatesDropped = new StripedCounter();
+
+  private final StripedCounter[] truncated = counters(Limit.values().length);
+
+  private final StripedCounter tokensBuffered = new StripedCounter();
+
+  private final AtomicLong builds = new AtomicLong();
+
+  private volatile long lastBuildMillis;
+
+  private final AtomicLong totalBuildMillis = new AtomicLong();
+
+  private ObjectName objectName;
+
+  public SKOSMetrics() {
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * Records an engine lookup
+   *
+   * @param hit
+   *          whether the lookup found any values
+   */
+  public void lookup(Lookup lookup, long nanos, boolean hit) {
+    (hit ? hits : misses)[lookup.ordinal()].increment();
+    latencies[lookup.ordinal()].record(nanos);
+  }
+
+  /**
+   * Records a term emitted by expansion
+   */
+  public void expanded(SKOSType type) {
+    expansions[type.ordinal()].increment();
+  }
+
+  /**
+   * Records a label left out before analysis, as it was already expanded at
+   * the same position
+   */
+  public void duplicateSkipped() {
+    duplicatesSkipped.increment();
+  }
+
+  /**
+   * Records a label left out after analysis, as another label expanded at
+   * the same position analyzed to the same term
+   */
+  public void duplicateDropped() {
+    duplicatesDropped.increment();
+  }
+
+  /**
+   * Records terms left out as they exceeded the given limit of an expansion
+   * budget
+   */
+  public void truncated(Limit limit, int count) {
+    truncated[limit.ordinal()].add(count);
+  }
+
+  /**
+   * Records a token buffered by a filter while looking ahead for labels
+   */
+  public void tokenBuffered() {
+    tokensBuffered.increment();
+  }
+
+  /**
+   * Records the time taken to build or reload an engine
+   */
+  public void built(long millis) {
+    builds.incrementAndGet();
+    totalBuildMillis.addAndGet(millis);
+    lastBuildMillis = millis;
+  }
+
+  public long getLookups(Lookup lookup) {
+    return getHits(lookup) + getMisses(lookup);
+  }
+
+  public long getHits(Lookup lookup) {
+    return hits[lookup.ordinal()].sum();
+  }
+
+  public long getMisses(Lookup lookup) {
+    return misses[lookup.ordinal()].sum();
+  }
+
+  public LatencyHistogram getLatency(Lookup lookup) {
+    return latencies[lookup.ordinal()];
+  }
+
+  public long getExpansions(SKOSType type) {
+    return expansions[type.ordinal()].sum();
+  }
+
+  public long getDuplicatesSkipped() {
+    return duplicatesSkipped.sum();
+  }
+
+  public long getDuplicatesDropped() {
+    return duplicatesDropped.sum();
+  }
+
+  public long getTruncated(Limit limit) {
+    return truncated[limit.ordinal()].sum();
+  }
+
+  public long getTokensBuffered() {
+    return tokensBuffered.sum();
+  }
+
+  public long getBuilds() {
+    return builds.get();
+  }
+
+  public long getLastBuildMillis() {
+    return lastBuildMillis;
+  }
+
+  public long getTotalBuildMillis() {
+    return totalBuildMillis.get();
+  }
+
+  /**
+   * Returns the current values by name, leaving out the methods and types
+   * which have not been used
+   */
+  public Map<String,Object> snapshot() {
+    Map<String,Object> values = new LinkedHashMap<String,Object>();
+    long lookups = 0;
+    long hitCount = 0;
+    for (Lookup lookup : Lookup.values()) {
+      long lookupHits = getHits(lookup);
+      long count = lookupHits + getMisses(lookup);
+      if (count == 0) {
+        continue;
+      }
+      lookups += count;
+      hitCount += lookupHits;
+      String name = "lookups." + lookup.name().toLowerCase();
+      LatencyHistogram latency = getLatency(lookup);
+      values.put(name + ".count", count);
+      values.put(name + ".hitRatio", (double) lookupHits / count);
+      values.put(name + ".meanMicros", latency.getMean() / 1000);
+      values.put(name + ".p50Micros", latency.getPercentile(50) / 1000.0);
+      values.put(name + ".p99Micros", latency.getPercentile(99) / 1000.0);
+    }
+    values.put("lookups", lookups);
+    values.put("hitRatio", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+    for (SKOSType type : SKOSType.values()) {
+      long count = getExpansions(type);
+      if (count > 0) {
+        values.put("expansions." + type.name().toLowerCase(), count);
+      }
+    }
+    values.put("duplicatesSkipped", getDuplicatesSkipped());
+    values.put("duplicatesDropped", getDuplicatesDropped());
+    long truncatedCount = 0;
+    for (Limit limit : Limit.values()) {
+      long count = getTruncated(limit);
+      if (count > 0) {
+        values.put("truncated." + limit.name().toLowerCase(), count);
+        truncatedCount += count;
+      }
+    }
+    values.put("truncated", truncatedCount);
+    values.put("tokensBuffered", getTokensBuffered());
+    values.put("unknownConcepts", SKOSWarnings.UNKNOWN_CONCEPTS.getCount());
+    values.put("engineErrors", SKOSWarnings.ENGINE_ERRORS.getCount());
+    values.put("builds", getBuilds());
+    values.put("lastBuildMillis", getLastBuildMillis());
+    values.put("totalBuildMillis", getTotalBuildMillis());
+    return values;
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server, replacing metrics
+   * registered under the same name before
+   *
+   * @param name
+   *          the name property of the MBean
+   */
+  public synchronized void registerMBean(String name) throws JMException {
+    unregisterMBean();
+    ObjectName objectName = new ObjectName(DOMAIN + ":type=SKOSMetrics,name="
+        + ObjectName.quote(name));
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+    server.registerMBean(new MetricsMBean(), objectName);
+    this.objectName = objectName;
+  }
+
+  /**
+   * Removes the metrics from the platform MBean server, if registered
+   */
+  public synchronized void unregisterMBean() throws JMException {
+    if (objectName != null) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      objectName = null;
+    }
+  }
+
+  private static StripedCounter[] counters(int count) {
+    StripedCounter[] counters = new StripedCounter[count];
+    for (int i = 0; i < count; i++) {
+      counters[i] = new StripedCounter();
+    }
+    return counters;
+  }
+
+  /**
+   * Exposes the snapshot as read-only attributes
+   */
+  private class MetricsMBean implements DynamicMBean {
+
+    public Object getAttribute(String attribute)
+        throws AttributeNotFoundException {
+      Map<String,Object> values = snapshot();
+      if (!values.containsKey(attribute)) {
+        throw new AttributeNotFoundException(attribute);
+      }
+      return values.get(attribute);
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+      Map<String,Object> values = snapshot();
+      AttributeList list = new AttributeList();
+      for (String attribute : attributes) {
+        if (values.containsKey(attribute)) {
+          list.add(new Attribute(attribute, values.get(attribute)));
+        }
+      }
+      return list;
+    }
+
+    public MBeanInfo getMBeanInfo() {
+      List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+      for (Map.Entry<String,Object> value : snapshot().entrySet()) {
+        attributes.add(new MBeanAttributeInfo(value.getKey(), value.getValue()
+            .getClass().getName(), value.getKey(), true, false, false));
+      }
+      return new MBeanInfo(SKOSMetrics.class.getName(),
+          "SKOS engine and filter metrics",
+          attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+          null, null);
+    }
+
+    public void setAttribute(Attribute attribute)
+        throws AttributeNotFoundException {
+      throw new AttributeNotFoundException(attribute.getName()
+          + " is read-only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+      throw new UnsupportedOperationException(actionName);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package at.ac.univie.mminf.luceneSKOS.metrics;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.slf4j.LoggerFactory;
+
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * The warnings raised while expanding, shared by all engines and filters.
+ * Their counts are included in every {@link SKOSMetrics#snapshot()}.
+ */
+public final class SKOSWarnings {
+
+  /** Lookups of a concept URI the engine does not know */
+  public static final RateLimitedLog UNKNOWN_CONCEPTS = new RateLimitedLog(
+      LoggerFactory.getLogger(SKOSEngine.class));
+
+  /** Lookups failed with an exception */
+  public static final RateLimitedLog ENGINE_ERRORS = new RateLimitedLog(
+      LoggerFactory.getLogger(SKOSEngine.class));
+
+  private SKOSWarnings() {}
+}
@@ -0,0 +1,69 @@
+package at.ac.univie.mminf.luceneSKOS.metrics;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for frequent concurrent updates. Updates go to one of several
+ * cells chosen by the updating thread, each on its own cache line, so that
+ * threads rarely contend; reads add up the cells.
+ */
+public final class StripedCounter {
+
+  /** The number of longs per cell, spanning a cache line */
+  static final int PADDING = 8;
+
+  /** The number of cells, a power of two */
+  static final int STRIPES = stripes();
+
+  private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+  public void increment() {
+    cells.getAndIncrement(stripe() * PADDING);
+  }
+
+  public void add(long value) {
+    cells.getAndAdd(stripe() * PADDING, value);
+  }
+
+  /**
+   * Returns the current total, which is not an atomic snapshot when updated
+   * concurrently
+   */
+  public long sum() {
+    long sum = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      sum += cells.get(i * PADDING);
+    }
+    return sum;
+  }
+
+  /** Returns the cell of the current thread */
+  static int stripe() {
+    return (int) Thread.currentThread().getId() & (STRIPES - 1);
+  }
+
+  private static int stripes() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    int stripes = 1;
+    while (stripes < processors && stripes < 32) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+}
@@ -1,12 +1,13 @@
 package at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.queryparser.flexible.core.processors.QueryNodeProcessorPipeline;
 import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
 import org.apache.lucene.queryparser.flexible.standard.processors.AnalyzerQueryNodeProcessor;
+import org.apache.lucene.search.Query;
 
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
 import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.processors.MeSHQueryNodeProcessor;
@@ -14,36 +15,24 @@
 
 public class MeSHStandadQueryParser extends StandardQueryParser {
 
-	private Map<SKOSType, Float> boosts = new HashMap<SKOSType, Float>() {
-		private static final long serialVersionUID = 1L;
-		{
-			put(SKOSType.PREF, 0f);
-			put(SKOSType.ALT, 0f);
-			put(SKOSType.HIDDEN, 0f);
-			put(SKOSType.BROADER, 0f);
-			put(SKOSType.NARROWER, 0f);
-			put(SKOSType.BROADERTRANSITIVE, 0f);
-			put(SKOSType.NARROWERTRANSITIVE, 0f);
-			put(SKOSType.RELATED, 0f);
-
-			for (int i = 1; i <= 12; i++) {
-
-				SKOSType b = SKOSType.valueOf(SKOSType.BROADER.toString() + i);
-				SKOSType n = SKOSType.valueOf(SKOSType.NARROWER.toString() + i);
-
-				put(b, 0f);
-				put(n, 0f);
-			}
+	/** The boosts of a new parser */
+	public static final SKOSBoosts DEFAULT_BOOSTS = defaultBoosts();
 
-		}
-	};
+	private volatile SKOSBoosts boosts = DEFAULT_BOOSTS;
 
 	public enum scoringFunctionTypes {
 		EXP,EXP2, LINEAR, NO_DECAY
 	}
 
+	private final Analyzer analyzer;
+
+	private MeSHQueryNodeProcessor processor;
+
+	private volatile ParseCache parseCache;
+
 	public MeSHStandadQueryParser(Analyzer analyzer) {
 		super();
+		this.analyzer = analyzer;
 		QueryNodeProcessorPipeline qnpp = ((QueryNodeProcessorPipeline) getQueryNodeProcessor());
 
 		int i = 0;
@@ -56,26 +45,64 @@ public MeSHStandadQueryParser(Analyzer analyzer) {
 		MeSHQueryNodeProcessor qnp = new MeSHQueryNodeProcessor(analyzer);
 		qnp.setBoosts(boosts);
 		qnpp.add(i, qnp);
+		processor = qnp;
 
 		// Set boost map
 
 	}
 
+	private static SKOSBoosts defaultBoosts() {
+		SKOSBoosts.Builder builder = SKOSBoosts.builder();
+		builder.set(SKOSType.PREF, 0f);
+		builder.set(SKOSType.ALT, 0f);
+		builder.set(SKOSType.HIDDEN, 0f);
+		builder.set(SKOSType.BROADER, 0f);
+		builder.set(SKOSType.NARROWER, 0f);
+		builder.set(SKOSType.BROADERTRANSITIVE, 0f);
+		builder.set(SKOSType.NARROWERTRANSITIVE, 0f);
+		builder.set(SKOSType.RELATED, 0f);
+
+		for (int i = 1; i <= 12; i++) {
+
+			SKOSType b = SKOSType.valueOf(SKOSType.BROADER.toString() + i);
+			SKOSType n = SKOSType.valueOf(SKOSType.NARROWER.toString() + i);
+
+			builder.set(b, 0f);
+			builder.set(n, 0f);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Puts the given profile in place of the current one, null for no boosts
+	 */
+	public void setBoosts(SKOSBoosts boosts) {
+		this.boosts = boosts == null ? SKOSBoosts.NONE : boosts;
+	}
+
 	public void setBoosts(Map<SKOSType, Float> boosts) {
-		this.boosts = boosts;
+		setBoosts(boosts == null ? null : SKOSBoosts.of(boosts));
 	}
 
-	public Map<SKOSType, Float> getBoosts() {
+	public SKOSBoosts getBoosts() {
 		return boosts;
 	}
 
-	public void setBoost(SKOSType skosType, float boost) {
-		boosts.put(skosType, boost);
+	/**
+	 * Replaces the profile by one with the given boost changed
+	 */
+	public synchronized void setBoost(SKOSType skosType, float boost) {
+		boosts = boosts.with(skosType, boost);
 	}
 
-	public void genBoosts(SKOSType t, double minVal, double maxVal,
+	/**
+	 * Replaces the profile by one with the boosts of the levels of the given
+	 * hierarchy type decaying from maxVal to minVal
+	 */
+	public synchronized void genBoosts(SKOSType t, double minVal, double maxVal,
 			int maxLevel, scoringFunctionTypes type) {
 
+		SKOSBoosts.Builder builder = SKOSBoosts.builder().setAll(boosts);
 		for (int i = 0; i < maxLevel; i++) {
 
 			SKOSType b = SKOSType.valueOf(t.toString() + (i + 1));
@@ -93,22 +120,54 @@ public void genBoosts(SKOSType t, double minVal, double maxVal,
 				score = maxVal;
 			}
 
-			boosts.put(b, (float) score);
+			builder.set(b, (float) score);
 		}
+		boosts = builder.build();
 	}
 
-	public float getBoost(String type) {
-		if (boosts == null) {
-			return 1;
-		}
+	/**
+	 * Sets a cache for the parsed queries, or null for none. The cache may be
+	 * shared with other parsers.
+	 */
+	public void setParseCache(ParseCache parseCache) {
+		this.parseCache = parseCache;
+	}
 
-		Float boost = boosts.get(type);
+	public ParseCache getParseCache() {
+		return parseCache;
+	}
 
-		if (boost != null) {
-			return boost;
+	/**
+	 * Parses a query, or returns a copy of the query cached for the same query
+	 * string, default field, configuration, boosts and analyzer
+	 */
+	@Override
+	public Query parse(String query, String defaultField)
+			throws QueryNodeException {
+		SKOSBoosts profile = boosts;
+		processor.setBoosts(profile);
+		ParseCache cache = parseCache;
+		if (cache == null) {
+			return super.parse(query, defaultField);
+		}
+		Query parsed = cache.get(this, query, defaultField, profile, analyzer);
+		if (parsed == null) {
+			parsed = super.parse(query, defaultField);
+			cache.put(this, query, defaultField, profile, analyzer, parsed);
 		}
+		return parsed;
+	}
+
+	public float getBoost(SKOSType type) {
+		return boosts.get(type);
+	}
 
-		return 1;
+	public float getBoost(String type) {
+		try {
+			return getBoost(SKOSType.valueOf(type.toUpperCase()));
+		} catch (IllegalArgumentException e) {
+			return 1;
+		}
 	}
 
 }
@@ -0,0 +1,305 @@
+package at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.flexible.core.config.QueryConfigHandler;
+import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
+import org.apache.lucene.queryparser.flexible.standard.config.FuzzyConfig;
+import org.apache.lucene.queryparser.flexible.standard.config.StandardQueryConfigHandler.ConfigurationKeys;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+
+import at.ac.univie.mminf.luceneSKOS.metrics.StripedCounter;
+
+/**
+ * A bounded cache of parsed queries, which may be shared by several parsers.
+ * Queries are cached by the query string, the default field, the class of the
+ * parser, its configuration (default operator, multi-fields, phrase slop,
+ * etc.), its boosts and the identity of its analyzer, and are evicted least
+ * recently used first. Parsers of other classes or configurations thus never
+ * get each other's queries.
+ * 
+ * Every caller gets its own deep copy of a cached query, down to the clauses
+ * and terms of nested boolean, disjunction and phrase queries. The cache does
+ * not notice when the vocabulary behind an analyzer changes: whoever reloads
+ * it owns the invalidation, and must remove the affected queries by
+ * {@link #invalidate(Analyzer)} or {@link #clear()}.
+ */
+public class ParseCache {
+
+  private final Map<Key,Query> queries;
+
+  private final StripedCounter hits = new StripedCounter();
+
+  private final StripedCounter misses = new StripedCounter();
+
+  /**
+   * @param maxSize
+   *          the maximum number of queries cached
+   */
+  public ParseCache(final int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("The cache size must be positive");
+    }
+    this.queries = new LinkedHashMap<Key,Query>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key,Query> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns a copy of the query cached for the given parser in its current
+   * configuration, or null
+   */
+  public Query get(StandardQueryParser parser, String query,
+      String defaultField, SKOSBoosts boosts, Analyzer analyzer) {
+    Key key = new Key(parser, query, defaultField, boosts, analyzer);
+    Query parsed;
+    synchronized (queries) {
+      parsed = queries.get(key);
+    }
+    if (parsed == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return deepCopy(parsed);
+  }
+
+  /**
+   * Caches a copy of a query parsed by the given parser in its current
+   * configuration
+   */
+  public void put(StandardQueryParser parser, String query,
+      String defaultField, SKOSBoosts boosts, Analyzer analyzer, Query parsed) {
+    Key key = new Key(parser, query, defaultField, boosts, analyzer);
+    Query copy = deepCopy(parsed);
+    synchronized (queries) {
+      queries.put(key, copy);
+    }
+  }
+
+  /**
+   * Removes the queries parsed with the given analyzer. The cache never calls
+   * this itself: it is up to the caller reloading the vocabulary of the
+   * analyzer's engine.
+   */
+  public void invalidate(Analyzer analyzer) {
+    synchronized (queries) {
+      Iterator<Key> keys = queries.keySet().iterator();
+      while (keys.hasNext()) {
+        if (keys.next().analyzer == analyzer) {
+          keys.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all queries
+   */
+  public void clear() {
+    synchronized (queries) {
+      queries.clear();
+    }
+  }
+
+  /** Returns the number of cached queries */
+  public int size() {
+    synchronized (queries) {
+      return queries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /** Returns the ratio of lookups answered from the cache */
+  public double getHitRate() {
+    long hitCount = getHits();
+    long lookups = hitCount + getMisses();
+    return lookups == 0 ? 0 : (double) hitCount / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return "ParseCache(size=" + size() + ", hits=" + getHits() + ", misses="
+        + getMisses() + ")";
+  }
+
+  /**
+   * Copies a query along with the clauses, disjuncts and terms of nested
+   * queries, which {@link Query#clone()} shares with the original
+   */
+  static Query deepCopy(Query query) {
+    Query copy;
+    if (query instanceof BooleanQuery) {
+      BooleanQuery booleanQuery = (BooleanQuery) query;
+      BooleanQuery copied = new BooleanQuery(booleanQuery.isCoordDisabled());
+      copied.setMinimumNumberShouldMatch(booleanQuery
+          .getMinimumNumberShouldMatch());
+      for (BooleanClause clause : booleanQuery.clauses()) {
+        copied.add(deepCopy(clause.getQuery()), clause.getOccur());
+      }
+      copy = copied;
+    } else if (query instanceof DisjunctionMaxQuery) {
+      DisjunctionMaxQuery disjunction = (DisjunctionMaxQuery) query;
+      DisjunctionMaxQuery copied = new DisjunctionMaxQuery(disjunction
+          .getTieBreakerMultiplier());
+      for (Query disjunct : disjunction.getDisjuncts()) {
+        copied.add(deepCopy(disjunct));
+      }
+      copy = copied;
+    } else if (query instanceof ConstantScoreQuery
+        && ((ConstantScoreQuery) query).getQuery() != null) {
+      copy = new ConstantScoreQuery(deepCopy(((ConstantScoreQuery) query)
+          .getQuery()));
+    } else if (query instanceof PhraseQuery) {
+      PhraseQuery phrase = (PhraseQuery) query;
+      PhraseQuery copied = new PhraseQuery();
+      copied.setSlop(phrase.getSlop());
+      Term[] terms = phrase.getTerms();
+      int[] positions = phrase.getPositions();
+      for (int i = 0; i < terms.length; i++) {
+        copied.add(terms[i], positions[i]);
+      }
+      copy = copied;
+    } else if (query instanceof MultiPhraseQuery) {
+      MultiPhraseQuery phrase = (MultiPhraseQuery) query;
+      MultiPhraseQuery copied = new MultiPhraseQuery();
+      copied.setSlop(phrase.getSlop());
+      List<Term[]> terms = phrase.getTermArrays();
+      int[] positions = phrase.getPositions();
+      for (int i = 0; i < terms.size(); i++) {
+        copied.add(terms.get(i).clone(), positions[i]);
+      }
+      copy = copied;
+    } else {
+      // the other queries built by the parsers hold immutable terms only
+      return query.clone();
+    }
+    copy.setBoost(query.getBoost());
+    return copy;
+  }
+
+  /**
+   * Returns the settings of a parser which change the queries it parses
+   */
+  private static List<Object> configOf(StandardQueryParser parser) {
+    QueryConfigHandler config = parser.getQueryConfigHandler();
+    List<Object> values = new ArrayList<Object>();
+    values.add(parser.getClass());
+    values.add(config.get(ConfigurationKeys.ANALYZER));
+    values.add(config.get(ConfigurationKeys.DEFAULT_OPERATOR));
+    values.add(config.get(ConfigurationKeys.LOWERCASE_EXPANDED_TERMS));
+    values.add(config.get(ConfigurationKeys.ALLOW_LEADING_WILDCARD));
+    values.add(config.get(ConfigurationKeys.ENABLE_POSITION_INCREMENTS));
+    values.add(config.get(ConfigurationKeys.PHRASE_SLOP));
+    values.add(config.get(ConfigurationKeys.LOCALE));
+    values.add(config.get(ConfigurationKeys.TIMEZONE));
+    values.add(config.get(ConfigurationKeys.MULTI_TERM_REWRITE_METHOD));
+    values.add(config.get(ConfigurationKeys.DATE_RESOLUTION));
+    CharSequence[] fields = config.get(ConfigurationKeys.MULTI_FIELDS);
+    values.add(fields != null ? Arrays.asList(fields).toString() : null);
+    // the maps may be changed by the caller later on, so copy them
+    values.add(copyOf(config.get(ConfigurationKeys.FIELD_BOOST_MAP)));
+    values.add(copyOf(config.get(ConfigurationKeys.DATE_RESOLUTION_MAP)));
+    values.add(copyOf(config.get(ConfigurationKeys.NUMERIC_CONFIG_MAP)));
+    FuzzyConfig fuzzy = config.get(ConfigurationKeys.FUZZY_CONFIG);
+    if (fuzzy != null) {
+      values.add(fuzzy.getMinSimilarity());
+      values.add(fuzzy.getPrefixLength());
+    }
+    return values;
+  }
+
+  private static <K,V> Map<K,V> copyOf(Map<K,V> map) {
+    return map != null ? new HashMap<K,V>(map) : null;
+  }
+
+  private static final class Key {
+
+    private final List<Object> config;
+
+    private final String query;
+
+    private final String defaultField;
+
+    private final SKOSBoosts boosts;
+
+    private final Analyzer analyzer;
+
+    private final int hashCode;
+
+    Key(StandardQueryParser parser, String query, String defaultField,
+        SKOSBoosts boosts, Analyzer analyzer) {
+      this.config = configOf(parser);
+      this.query = query;
+      this.defaultField = defaultField;
+      this.boosts = boosts;
+      this.analyzer = analyzer;
+      int hash = query.hashCode();
+      hash = 31 * hash + (defaultField != null ? defaultField.hashCode() : 0);
+      hash = 31 * hash + boosts.hashCode();
+      hash = 31 * hash + System.identityHashCode(analyzer);
+      this.hashCode = 31 * hash + config.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return analyzer == other.analyzer
+          && boosts.equals(other.boosts)
+          && query.equals(other.query)
+          && (defaultField == null ? other.defaultField == null
+              : defaultField.equals(other.defaultField))
+          && config.equals(other.config);
+    }
+  }
+}
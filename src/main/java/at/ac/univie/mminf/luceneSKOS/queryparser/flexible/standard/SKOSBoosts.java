@@ -0,0 +1,162 @@
+package at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+
+/**
+ * An immutable profile of boosts per {@link SKOSType}, applied to the terms
+ * of that type when expanding queries. Boosts are looked up by the ordinal of
+ * the type; types without a boost are not boosted (boost 1).
+ * 
+ * Profiles are built by a {@link Builder} or derived from another profile by
+ * {@link #with(SKOSType, float)}, so that a profile may be shared between
+ * parsers and threads while a changed profile is put in its place.
+ */
+public final class SKOSBoosts {
+
+  private static final int TYPES = SKOSType.values().length;
+
+  /** The profile without any boosts */
+  public static final SKOSBoosts NONE = new Builder().build();
+
+  /* the boosts by type ordinal, NaN for types without a boost */
+  private final float[] boosts;
+
+  private SKOSBoosts(float[] boosts) {
+    this.boosts = boosts;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns a profile with the boosts of the given map
+   */
+  public static SKOSBoosts of(Map<SKOSType,Float> boosts) {
+    Builder builder = new Builder();
+    for (Map.Entry<SKOSType,Float> boost : boosts.entrySet()) {
+      if (boost.getValue() != null) {
+        builder.set(boost.getKey(), boost.getValue());
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the boost of the given type, or 1 if it has none
+   */
+  public float get(SKOSType type) {
+    if (type == null) {
+      return 1;
+    }
+    float boost = boosts[type.ordinal()];
+    return Float.isNaN(boost) ? 1 : boost;
+  }
+
+  /** Returns whether a boost is set for the given type */
+  public boolean isSet(SKOSType type) {
+    return type != null && !Float.isNaN(boosts[type.ordinal()]);
+  }
+
+  /**
+   * Returns a profile with the given boost changed
+   */
+  public SKOSBoosts with(SKOSType type, float boost) {
+    float[] changed = boosts.clone();
+    changed[type.ordinal()] = boost;
+    return new SKOSBoosts(changed);
+  }
+
+  /**
+   * Returns the boosts by type ordinal, 1 for types without a boost
+   */
+  public float[] toArray() {
+    float[] array = new float[TYPES];
+    for (int i = 0; i < TYPES; i++) {
+      array[i] = Float.isNaN(boosts[i]) ? 1 : boosts[i];
+    }
+    return array;
+  }
+
+  /**
+   * Returns the boosts set, as an unmodifiable map
+   */
+  public Map<SKOSType,Float> toMap() {
+    Map<SKOSType,Float> map = new EnumMap<SKOSType,Float>(SKOSType.class);
+    for (SKOSType type : SKOSType.values()) {
+      if (isSet(type)) {
+        map.put(type, boosts[type.ordinal()]);
+      }
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof SKOSBoosts
+        && Arrays.equals(boosts, ((SKOSBoosts) obj).boosts);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(boosts);
+  }
+
+  @Override
+  public String toString() {
+    return toMap().toString();
+  }
+
+  /**
+   * Collects the boosts of a new profile
+   */
+  public static final class Builder {
+
+    private final float[] boosts = new float[TYPES];
+
+    private Builder() {
+      Arrays.fill(boosts, Float.NaN);
+    }
+
+    /** Sets the boost of a type */
+    public Builder set(SKOSType type, float boost) {
+      boosts[type.ordinal()] = boost;
+      return this;
+    }
+
+    /** Sets the boosts of another profile */
+    public Builder setAll(SKOSBoosts other) {
+      for (int i = 0; i < TYPES; i++) {
+        if (!Float.isNaN(other.boosts[i])) {
+          boosts[i] = other.boosts[i];
+        }
+      }
+      return this;
+    }
+
+    public SKOSBoosts build() {
+      return new SKOSBoosts(boosts.clone());
+    }
+  }
+}
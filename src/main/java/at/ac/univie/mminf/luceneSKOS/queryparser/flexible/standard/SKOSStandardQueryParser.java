@@ -16,39 +16,56 @@
  * limitations under the License.
  */
 
-import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.queryparser.flexible.core.processors.QueryNodeProcessorPipeline;
 import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
 import org.apache.lucene.queryparser.flexible.standard.processors.AnalyzerQueryNodeProcessor;
+import org.apache.lucene.search.Query;
 
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
 import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.processors.SKOSQueryNodeProcessor;
 
+/**
+ * A StandardQueryParser expanding the query terms with the given SKOS
+ * analyzer, boosting the expanded terms by their {@link SKOSType}.
+ * 
+ * The boosts are an immutable {@link SKOSBoosts} profile, which is replaced
+ * as a whole when a boost changes, so parsers may share a profile, as well
+ * as a {@link ParseCache}. The parser itself is not thread-safe: like any
+ * StandardQueryParser, it keeps state in its syntax parser and processors
+ * while parsing, and its configuration is mutable. A parser must thus be used
+ * by one thread at a time, e.g. one parser per thread which is set up anew for
+ * each query, as the Solr plugin does. The analyzer may be replaced between
+ * queries for this.
+ */
 public class SKOSStandardQueryParser extends StandardQueryParser {
   
-  private Map<SKOSType,Float> boosts = new HashMap<SKOSType,Float>() {
-    private static final long serialVersionUID = 1L;
-    {
-      put(SKOSType.PREF, 0f);
-      put(SKOSType.ALT, 0f);
-      put(SKOSType.HIDDEN, 0f);
-      put(SKOSType.BROADER, 0f);
-      put(SKOSType.NARROWER, 0f);
-      put(SKOSType.BROADERTRANSITIVE, 0f);
-      put(SKOSType.NARROWERTRANSITIVE, 0f);
-      put(SKOSType.RELATED, 0f);
-    }
-  };
+  /** The boosts of a new parser */
+  public static final SKOSBoosts DEFAULT_BOOSTS = SKOSBoosts.builder()
+      .set(SKOSType.PREF, 0f).set(SKOSType.ALT, 0f).set(SKOSType.HIDDEN, 0f)
+      .set(SKOSType.BROADER, 0f).set(SKOSType.NARROWER, 0f)
+      .set(SKOSType.BROADERTRANSITIVE, 0f).set(SKOSType.NARROWERTRANSITIVE, 0f)
+      .set(SKOSType.RELATED, 0f).build();
+  
+  private volatile SKOSBoosts boosts = DEFAULT_BOOSTS;
+  
+  private SKOSQueryNodeProcessor processor;
+  
+  private Analyzer analyzer;
+  
+  private volatile ParseCache parseCache;
   
   public SKOSStandardQueryParser() {
 	  super();  
+	  this.analyzer = null;
   }
   
   public SKOSStandardQueryParser(Analyzer analyzer) {
     super();
+    this.analyzer = analyzer;
     QueryNodeProcessorPipeline qnpp = ((QueryNodeProcessorPipeline) getQueryNodeProcessor());
     
     int i = 0;
@@ -58,6 +75,7 @@ public SKOSStandardQueryParser(Analyzer analyzer) {
       }
     }
     SKOSQueryNodeProcessor qnp = new SKOSQueryNodeProcessor(analyzer);
+    processor = qnp;
     
     qnpp.add(i, qnp);
     
@@ -65,30 +83,90 @@ public SKOSStandardQueryParser(Analyzer analyzer) {
     qnp.setBoosts(boosts);
   }
   
+  /**
+   * Puts the given profile in place of the current one, null for no boosts
+   */
+  public void setBoosts(SKOSBoosts boosts) {
+    this.boosts = boosts == null ? SKOSBoosts.NONE : boosts;
+  }
+  
   public void setBoosts(Map<SKOSType,Float> boosts) {
-    this.boosts = boosts;
+    setBoosts(boosts == null ? null : SKOSBoosts.of(boosts));
   }
   
-  public Map<SKOSType,Float> getBoosts() {
+  public SKOSBoosts getBoosts() {
     return boosts;
   }
   
-  public void setBoost(SKOSType skosType, float boost) {
-    boosts.put(skosType, boost);
+  /**
+   * Replaces the profile by one with the given boost changed
+   */
+  public synchronized void setBoost(SKOSType skosType, float boost) {
+    boosts = boosts.with(skosType, boost);
+  }
+  
+  /**
+   * Replaces the SKOS analyzer expanding the terms, or removes it with null.
+   * Only parsers created with an analyzer expand terms.
+   */
+  public void setSKOSAnalyzer(Analyzer analyzer) {
+    if (processor == null) {
+      throw new IllegalStateException(
+          "The parser was created without a SKOS analyzer");
+    }
+    this.analyzer = analyzer;
+    processor.setAnalyzer(analyzer);
+  }
+  
+  public Analyzer getSKOSAnalyzer() {
+    return analyzer;
+  }
+  
+  /**
+   * Sets a cache for the parsed queries, or null for none. The cache may be
+   * shared with other parsers.
+   */
+  public void setParseCache(ParseCache parseCache) {
+    this.parseCache = parseCache;
+  }
+  
+  public ParseCache getParseCache() {
+    return parseCache;
+  }
+  
+  /**
+   * Parses a query, or returns a copy of the query cached for the same query
+   * string, default field, configuration, boosts and analyzer
+   */
+  @Override
+  public Query parse(String query, String defaultField)
+      throws QueryNodeException {
+    SKOSBoosts profile = boosts;
+    if (processor != null) {
+      processor.setBoosts(profile);
+    }
+    ParseCache cache = parseCache;
+    if (cache == null) {
+      return super.parse(query, defaultField);
+    }
+    Query parsed = cache.get(this, query, defaultField, profile, analyzer);
+    if (parsed == null) {
+      parsed = super.parse(query, defaultField);
+      cache.put(this, query, defaultField, profile, analyzer, parsed);
+    }
+    return parsed;
+  }
+  
+  public float getBoost(SKOSType type) {
+    return boosts.get(type);
   }
   
   public float getBoost(String type) {
-    if (boosts == null) {
+    try {
+      return getBoost(SKOSType.valueOf(type.toUpperCase()));
+    } catch (IllegalArgumentException e) {
       return 1;
     }
-    
-    Float boost = boosts.get(type);
-    
-    if (boost != null) {
-      return boost;
-    }
-    
-    return 1;
   }
   
 }
@@ -31,6 +31,7 @@
 
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute;
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSBoosts;
 
 public class MeSHQueryNodeProcessor extends QueryNodeProcessorImpl {
 
@@ -38,7 +39,7 @@ public class MeSHQueryNodeProcessor extends QueryNodeProcessorImpl {
 
 	  private boolean positionIncrementsEnabled;
 
-	  private Map<SKOSType,Float> boosts;
+	  private volatile SKOSBoosts boosts;
 
 	  public MeSHQueryNodeProcessor(Analyzer analyzer) {
 	    this.analyzer = analyzer;
@@ -297,30 +298,25 @@ protected QueryNode postProcessNode(QueryNode node) throws QueryNodeException {
 
 	  }
 
-	  public void setBoosts(Map<SKOSType,Float> boosts) {
+	  public void setBoosts(SKOSBoosts boosts) {
 	    this.boosts = boosts;
 	  }
 
-	  public Map<SKOSType, Float> getBoosts() {
+	  public void setBoosts(Map<SKOSType,Float> boosts) {
+	    this.boosts = boosts == null ? null : SKOSBoosts.of(boosts);
+	  }
+
+	  public SKOSBoosts getBoosts() {
 	    return boosts;
 	  }
 	  
-	  public void setBoost(SKOSType skosType, float boost) {
-	    boosts.put(skosType, boost);
+	  public synchronized void setBoost(SKOSType skosType, float boost) {
+	    boosts = (boosts == null ? SKOSBoosts.NONE : boosts).with(skosType, boost);
 	  }
 
 	  public float getBoost(SKOSType skosType) {
-	    if (boosts == null) {
-	      return 1;
-	    }
-	    
-	    Float boost = boosts.get(skosType);
-	    
-	    if (boost != null) {
-	      return boost;
-	    }
-	    
-	    return 1;
+	    SKOSBoosts current = boosts;
+	    return current == null ? 1 : current.get(skosType);
 	  }
 
 	  @Override
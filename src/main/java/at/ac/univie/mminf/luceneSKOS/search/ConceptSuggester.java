@@ -0,0 +1,538 @@
+package at.ac.univie.mminf.luceneSKOS.search;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.InstrumentedSKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.BatchLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups.RangeVisitor;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups.SortedStrings;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelSource;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelSource.LabelVisitor;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * Suggests concepts by a prefix of their labels, e.g. for type-ahead, ranked
+ * by the popularity of the concepts.
+ *
+ * The labels are kept sorted by their lower-cased form, so that the labels
+ * starting with a prefix form a range found by binary search. Over the rank
+ * of each label, a tree of range minima picks the best labels of that range
+ * one by one, so a lookup costs O(k log n) for k results, however many labels
+ * share the prefix. Labels are ranked by the popularity of their concept,
+ * then pref before alt labels, then shorter labels first. Each concept is
+ * suggested once, by its best label.
+ *
+ * Prefixes with typos are turned into a Levenshtein automaton, which is
+ * intersected with the sorted labels as with a trie: each range of labels
+ * starting with a string the automaton accepts is picked from as above.
+ *
+ * A suggester is immutable and can be shared by threads. Build it from an
+ * engine, or a language view of it, with {@link #builder()}.
+ */
+public final class ConceptSuggester {
+
+  /**
+   * A suggested concept
+   */
+  public static final class Suggestion {
+
+    private final String label;
+
+    private final String conceptURI;
+
+    private final SKOSType type;
+
+    private final long weight;
+
+    private final int edits;
+
+    Suggestion(String label, String conceptURI, SKOSType type, long weight,
+        int edits) {
+      this.label = label;
+      this.conceptURI = conceptURI;
+      this.type = type;
+      this.weight = weight;
+      this.edits = edits;
+    }
+
+    /** Returns the label starting with the prefix */
+    public String getLabel() {
+      return label;
+    }
+
+    public String getConceptURI() {
+      return conceptURI;
+    }
+
+    /** Returns the type of the label */
+    public SKOSType getType() {
+      return type;
+    }
+
+    /** Returns the popularity of the concept */
+    public long getWeight() {
+      return weight;
+    }
+
+    /** Returns the number of edits between the prefix and the label */
+    public int getEdits() {
+      return edits;
+    }
+
+    @Override
+    public String toString() {
+      return label + " (" + type + " of " + conceptURI + ", " + weight + ")";
+    }
+  }
+
+  /* the labels as found, and lower-cased in ascending order */
+  private final String[] labels;
+
+  private final String[] keys;
+
+  /* the concept ordinal and the type of each label */
+  private final int[] concepts;
+
+  private final SKOSType[] types;
+
+  private final String[] conceptURIs;
+
+  private final long[] weights;
+
+  /* the rank of each label, 0 being the best */
+  private final int[] ranks;
+
+  /*
+   * the tree of range minima: the leaves at size + i hold label i, each inner
+   * node the best ranked label below it
+   */
+  private final int[] tree;
+
+  /* the lower-cased labels, for intersecting them with automata */
+  private final SortedStrings dictionary = new SortedStrings() {
+    @Override
+    public int size() {
+      return keys.length;
+    }
+
+    @Override
+    public String get(int index) {
+      return keys[index];
+    }
+  };
+
+  private ConceptSuggester(String[] labels, final String[] keys,
+      final int[] concepts, final SKOSType[] types, String[] conceptURIs,
+      final long[] weights) {
+    this.labels = labels;
+    this.keys = keys;
+    this.concepts = concepts;
+    this.types = types;
+    this.conceptURIs = conceptURIs;
+    this.weights = weights;
+
+    int size = keys.length;
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        long wa = weights[concepts[a]];
+        long wb = weights[concepts[b]];
+        if (wa != wb) {
+          return wa > wb ? -1 : 1;
+        }
+        if (types[a] != types[b]) {
+          return types[a].compareTo(types[b]);
+        }
+        if (keys[a].length() != keys[b].length()) {
+          return keys[a].length() - keys[b].length();
+        }
+        return a.compareTo(b);
+      }
+    });
+    ranks = new int[size];
+    for (int i = 0; i < size; i++) {
+      ranks[order[i]] = i;
+    }
+
+    tree = new int[2 * size];
+    for (int i = 0; i < size; i++) {
+      tree[size + i] = i;
+    }
+    for (int node = size - 1; node > 0; node--) {
+      tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+    }
+  }
+
+  /**
+   * Returns a builder of a suggester
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns a suggester for the pref and alt labels of the given engine, all
+   * concepts being equally popular
+   */
+  public static ConceptSuggester build(SKOSEngine engine) throws IOException {
+    return builder().addAll(engine).build();
+  }
+
+  /**
+   * Returns the best concepts having a label which starts with the given
+   * prefix, ignoring case
+   *
+   * @param max
+   *          the number of concepts to return at most
+   */
+  public List<Suggestion> lookup(String prefix, int max) {
+    return lookup(prefix, max, 0, 0);
+  }
+
+  /**
+   * Returns the best concepts having a label which starts with the given
+   * prefix, or with a string within the given number of edits of it, ignoring
+   * case. Concepts found with fewer edits come first. Prefixes shorter than
+   * {@link FuzzyLookups#MIN_FUZZY_LENGTH} are only matched exactly.
+   *
+   * @param max
+   *          the number of concepts to return at most
+   * @param maxEdits
+   *          0 to {@link FuzzyLookups#MAX_EDITS}
+   * @param prefixLength
+   *          the number of leading characters which must match exactly
+   */
+  public List<Suggestion> lookup(String prefix, int max, int maxEdits,
+      int prefixLength) {
+    FuzzyLookups.checkEdits(maxEdits);
+    String key = prefix.toLowerCase();
+    if (key.codePointCount(0, key.length()) < FuzzyLookups.MIN_FUZZY_LENGTH) {
+      maxEdits = 0;
+    }
+    List<Suggestion> suggestions = new ArrayList<Suggestion>();
+    Set<Integer> suggested = new HashSet<Integer>();
+    for (int edits = 0; edits <= maxEdits && suggestions.size() < max;
+        edits++) {
+      final List<int[]> ranges = new ArrayList<int[]>();
+      if (edits == 0) {
+        ranges.add(new int[] {lowerBound(key),
+            lowerBound(key + Character.MAX_VALUE)});
+      } else {
+        FuzzyLookups.intersect(dictionary, new CharacterRunAutomaton(
+            FuzzyLookups.automaton(key, edits, prefixLength)), true,
+            new RangeVisitor() {
+              public void visit(int from, int to) {
+                ranges.add(new int[] {from, to});
+              }
+            });
+      }
+      pick(ranges, edits, max, suggestions, suggested);
+    }
+    return suggestions;
+  }
+
+  /**
+   * Adds the best labels of the given ranges of concepts not suggested yet,
+   * until there are max suggestions
+   */
+  private void pick(List<int[]> ranges, int edits, int max,
+      List<Suggestion> suggestions, Set<Integer> suggested) {
+    // the ranges left to pick from, by their best label
+    PriorityQueue<int[]> queue = new PriorityQueue<int[]>(Math.max(1,
+        ranges.size()), new Comparator<int[]>() {
+      public int compare(int[] a, int[] b) {
+        return ranks[a[2]] - ranks[b[2]];
+      }
+    });
+    for (int[] range : ranges) {
+      if (range[0] < range[1]) {
+        queue.add(new int[] {range[0], range[1], best(range[0], range[1])});
+      }
+    }
+    while (!queue.isEmpty() && suggestions.size() < max) {
+      int[] range = queue.poll();
+      int label = range[2];
+      int concept = concepts[label];
+      if (suggested.add(concept)) {
+        suggestions.add(new Suggestion(labels[label], conceptURIs[concept],
+            types[label], weights[concept], edits));
+      }
+      if (range[0] < label) {
+        queue.add(new int[] {range[0], label, best(range[0], label)});
+      }
+      if (label + 1 < range[1]) {
+        queue.add(new int[] {label + 1, range[1], best(label + 1, range[1])});
+      }
+    }
+  }
+
+  /** Returns the number of labels */
+  public int getLabelCount() {
+    return keys.length;
+  }
+
+  /** Returns the number of concepts suggested */
+  public int getConceptCount() {
+    return conceptURIs.length;
+  }
+
+  /**
+   * Returns the index of the first label not less than the given key
+   */
+  private int lowerBound(String key) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (keys[mid].compareTo(key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the best ranked label of those from (inclusive) to (exclusive)
+   */
+  private int best(int from, int to) {
+    int size = keys.length;
+    int result = from;
+    for (int low = from + size, high = to + size; low < high; low >>= 1,
+        high >>= 1) {
+      if ((low & 1) == 1) {
+        result = better(result, tree[low++]);
+      }
+      if ((high & 1) == 1) {
+        result = better(result, tree[--high]);
+      }
+    }
+    return result;
+  }
+
+  private int better(int a, int b) {
+    return ranks[a] <= ranks[b] ? a : b;
+  }
+
+  /**
+   * Collects the labels of a suggester
+   */
+  public static final class Builder {
+
+    private static final Set<SKOSType> LABEL_TYPES = EnumSet.of(
+        SKOSType.PREF, SKOSType.ALT, SKOSType.HIDDEN);
+
+    /* the number of concepts resolved at once */
+    private static final int BATCH_SIZE = 1024;
+
+    private final Set<SKOSType> types = EnumSet.of(SKOSType.PREF,
+        SKOSType.ALT);
+
+    private final Map<String,Long> popularity = new HashMap<String,Long>();
+
+    /* the concepts by URI, and the labels of each */
+    private final Map<String,Integer> conceptIds =
+        new HashMap<String,Integer>();
+
+    private final List<String> conceptURIs = new ArrayList<String>();
+
+    private final List<Map<String,SKOSType>> conceptLabels =
+        new ArrayList<Map<String,SKOSType>>();
+
+    private Builder() {}
+
+    /**
+     * Sets the types of the labels to suggest by, pref and alt by default
+     *
+     * @throws IllegalArgumentException
+     *           for types other than pref, alt and hidden
+     */
+    public Builder setTypes(SKOSType... types) {
+      this.types.clear();
+      for (SKOSType type : types) {
+        if (!LABEL_TYPES.contains(type)) {
+          throw new IllegalArgumentException("Cannot suggest by " + type
+              + " labels");
+        }
+        this.types.add(type);
+      }
+      return this;
+    }
+
+    /**
+     * Sets the popularity of a concept, 0 by default
+     */
+    public Builder setWeight(String conceptURI, long weight) {
+      popularity.put(conceptURI, weight);
+      return this;
+    }
+
+    /**
+     * Sets the popularity of the given concepts
+     */
+    public Builder setWeights(Map<String,? extends Number> weights) {
+      for (Map.Entry<String,? extends Number> entry : weights.entrySet()) {
+        setWeight(entry.getKey(), entry.getValue().longValue());
+      }
+      return this;
+    }
+
+    /**
+     * Adds a label to suggest the given concept by, unless its type is not
+     * suggested. Of the same label of a concept, the pref label is kept.
+     */
+    public Builder add(String label, String conceptURI, SKOSType type) {
+      if (!types.contains(type) || label.length() == 0) {
+        return this;
+      }
+      Integer id = conceptIds.get(conceptURI);
+      if (id == null) {
+        id = conceptURIs.size();
+        conceptIds.put(conceptURI, id);
+        conceptURIs.add(conceptURI);
+        conceptLabels.add(new HashMap<String,SKOSType>(4));
+      }
+      Map<String,SKOSType> labels = conceptLabels.get(id);
+      SKOSType known = labels.get(label);
+      if (known == null || type.compareTo(known) < 0) {
+        labels.put(label, type);
+      }
+      return this;
+    }
+
+    /**
+     * Adds the labels of all concepts of the engine. The engine must be a
+     * {@link LabelSource}.
+     */
+    public Builder addAll(SKOSEngine engine) throws IOException {
+      SKOSEngine source = engine;
+      if (source instanceof InstrumentedSKOSEngine) {
+        source = ((InstrumentedSKOSEngine) source).getDelegate();
+      }
+      if (!(source instanceof LabelSource)) {
+        throw new IllegalArgumentException(source.getClass().getName()
+            + " cannot list its labels");
+      }
+      final Set<String> uris = new LinkedHashSet<String>();
+      ((LabelSource) source).visitLabels(new LabelVisitor() {
+        public void visit(String label, String conceptURI) {
+          uris.add(conceptURI);
+        }
+      });
+
+      // the labels by type, resolved in batches of concepts
+      List<String> batch = new ArrayList<String>(BATCH_SIZE);
+      for (String uri : uris) {
+        batch.add(uri);
+        if (batch.size() == BATCH_SIZE) {
+          addBatch(source, batch);
+        }
+      }
+      addBatch(source, batch);
+      return this;
+    }
+
+    private void addBatch(SKOSEngine engine, List<String> batch)
+        throws IOException {
+      if (batch.isEmpty()) {
+        return;
+      }
+      Map<String,Map<SKOSType,String[]>> found = BatchLookups.expand(engine,
+          batch.toArray(new String[batch.size()]), types);
+      for (Map.Entry<String,Map<SKOSType,String[]>> concept : found
+          .entrySet()) {
+        for (Map.Entry<SKOSType,String[]> labels : concept.getValue()
+            .entrySet()) {
+          for (String label : labels.getValue()) {
+            add(label, concept.getKey(), labels.getKey());
+          }
+        }
+      }
+      batch.clear();
+    }
+
+    public ConceptSuggester build() {
+      final List<String> labelList = new ArrayList<String>();
+      final List<String> keyList = new ArrayList<String>();
+      final List<Integer> conceptList = new ArrayList<Integer>();
+      List<SKOSType> typeList = new ArrayList<SKOSType>();
+      for (int id = 0; id < conceptURIs.size(); id++) {
+        for (Map.Entry<String,SKOSType> label : conceptLabels.get(id)
+            .entrySet()) {
+          labelList.add(label.getKey());
+          keyList.add(label.getKey().toLowerCase());
+          conceptList.add(id);
+          typeList.add(label.getValue());
+        }
+      }
+
+      int size = keyList.size();
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          int c = keyList.get(a).compareTo(keyList.get(b));
+          return c != 0 ? c : conceptList.get(a).compareTo(conceptList.get(b));
+        }
+      });
+
+      String[] labels = new String[size];
+      String[] keys = new String[size];
+      int[] concepts = new int[size];
+      SKOSType[] types = new SKOSType[size];
+      for (int i = 0; i < size; i++) {
+        int label = order[i];
+        labels[i] = labelList.get(label);
+        keys[i] = keyList.get(label);
+        concepts[i] = conceptList.get(label);
+        types[i] = typeList.get(label);
+      }
+
+      long[] weights = new long[conceptURIs.size()];
+      for (int id = 0; id < weights.length; id++) {
+        Long weight = popularity.get(conceptURIs.get(id));
+        weights[id] = weight != null ? weight : 0L;
+      }
+      return new ConceptSuggester(labels, keys, concepts, types,
+          conceptURIs.toArray(new String[conceptURIs.size()]), weights);
+    }
+  }
+
+}
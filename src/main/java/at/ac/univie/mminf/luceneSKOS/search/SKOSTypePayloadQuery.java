@@ -0,0 +1,84 @@
+package at.ac.univie.mminf.luceneSKOS.search;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.payloads.MaxPayloadFunction;
+import org.apache.lucene.search.payloads.PayloadFunction;
+import org.apache.lucene.search.payloads.PayloadTermQuery;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSBoosts;
+
+/**
+ * A term query on a field expanded at index time, which weights each matching
+ * posting by the boost of the {@link SKOSType} in its payload.
+ *
+ * The boosts are given per query, so that the weights of the pref, alt,
+ * broader, narrower etc. labels can be changed without reindexing and without
+ * expanding the query. The payload factors of a document are combined by the
+ * given {@link PayloadFunction}, by default the maximum.
+ */
+public class SKOSTypePayloadQuery extends PayloadTermQuery {
+
+  private final SKOSBoosts boosts;
+
+  public SKOSTypePayloadQuery(Term term, SKOSBoosts boosts) {
+    this(term, boosts, new MaxPayloadFunction(), true);
+  }
+
+  /**
+   * @param includeSpanScore
+   *          whether the score of the term is multiplied with the payload
+   *          factor, or the payload factor alone is the score
+   */
+  public SKOSTypePayloadQuery(Term term, SKOSBoosts boosts,
+      PayloadFunction function, boolean includeSpanScore) {
+    super(term, function, includeSpanScore);
+    this.boosts = boosts;
+  }
+
+  public SKOSBoosts getBoosts() {
+    return boosts;
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher) throws IOException {
+    // the weight takes its similarity from the searcher, so weight with a
+    // searcher over the same reader which applies the boosts to the payloads
+    IndexSearcher weighting = new IndexSearcher(searcher.getTopReaderContext());
+    weighting.setSimilarity(new SKOSTypePayloadSimilarity(searcher
+        .getSimilarity(), boosts));
+    return super.createWeight(weighting);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * super.hashCode() + boosts.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return super.equals(obj)
+        && boosts.equals(((SKOSTypePayloadQuery) obj).boosts);
+  }
+
+}
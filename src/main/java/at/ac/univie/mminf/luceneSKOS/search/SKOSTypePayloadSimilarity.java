@@ -0,0 +1,137 @@
+package at.ac.univie.mminf.luceneSKOS.search;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.BytesRef;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSTypePayload;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSBoosts;
+
+/**
+ * Scores like the given similarity, but weights each payload written by the
+ * SKOS filters by the boost of the {@link SKOSType} it holds.
+ *
+ * Postings without a SKOS type payload, like the original input tokens, are
+ * not weighted (factor 1).
+ */
+public class SKOSTypePayloadSimilarity extends Similarity {
+
+  private final Similarity delegate;
+
+  private final SKOSBoosts boosts;
+
+  /* the boosts by type ordinal */
+  private final float[] factors;
+
+  public SKOSTypePayloadSimilarity(Similarity delegate, SKOSBoosts boosts) {
+    this.delegate = delegate;
+    this.boosts = boosts;
+    this.factors = boosts.toArray();
+  }
+
+  public Similarity getDelegate() {
+    return delegate;
+  }
+
+  public SKOSBoosts getBoosts() {
+    return boosts;
+  }
+
+  /**
+   * Returns the boost of the type held by the given payload, or 1 if it holds
+   * none, in either payload layout of {@link SKOSTypePayload}
+   */
+  public float payloadFactor(BytesRef payload) {
+    int ordinal = SKOSTypePayload.decodeType(payload);
+    if (ordinal < 0 || ordinal >= factors.length) {
+      return 1;
+    }
+    return factors[ordinal];
+  }
+
+  @Override
+  public long computeNorm(FieldInvertState state) {
+    return delegate.computeNorm(state);
+  }
+
+  @Override
+  public SimWeight computeWeight(float queryBoost,
+      CollectionStatistics collectionStats, TermStatistics... termStats) {
+    return delegate.computeWeight(queryBoost, collectionStats, termStats);
+  }
+
+  @Override
+  public SimScorer simScorer(SimWeight weight, AtomicReaderContext context)
+      throws IOException {
+    return new PayloadSimScorer(delegate.simScorer(weight, context));
+  }
+
+  @Override
+  public float coord(int overlap, int maxOverlap) {
+    return delegate.coord(overlap, maxOverlap);
+  }
+
+  @Override
+  public float queryNorm(float valueForNormalization) {
+    return delegate.queryNorm(valueForNormalization);
+  }
+
+  @Override
+  public String toString() {
+    return "SKOSTypePayloadSimilarity(" + delegate + ", " + boosts + ")";
+  }
+
+  private class PayloadSimScorer extends SimScorer {
+
+    private final SimScorer scorer;
+
+    PayloadSimScorer(SimScorer scorer) {
+      this.scorer = scorer;
+    }
+
+    @Override
+    public float score(int doc, float freq) {
+      return scorer.score(doc, freq);
+    }
+
+    @Override
+    public float computeSlopFactor(int distance) {
+      return scorer.computeSlopFactor(distance);
+    }
+
+    @Override
+    public float computePayloadFactor(int doc, int start, int end,
+        BytesRef payload) {
+      return payloadFactor(payload);
+    }
+
+    @Override
+    public Explanation explain(int doc, Explanation freq) {
+      return scorer.explain(doc, freq);
+    }
+  }
+
+}
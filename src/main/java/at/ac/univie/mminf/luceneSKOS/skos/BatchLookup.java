@@ -0,0 +1,64 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+
+/**
+ * An engine which resolves many labels or concepts in one go, e.g. all URIs
+ * of a page of results. The keys are sorted and deduplicated, so that the
+ * engine can resolve them in a single ordered pass over its dictionary
+ * instead of seeking for each key on its own.
+ *
+ * Use {@link BatchLookups} to look up keys in any engine.
+ */
+public interface BatchLookup {
+  
+  /**
+   * Returns the concepts (URIs) matching each of the given labels, like
+   * {@link SKOSEngine#getConcepts(String)}
+   * 
+   * @param labels
+   *          the labels, which may repeat
+   * @return the concepts of each distinct label, in ascending label order;
+   *         labels matching no concept are left out
+   * @throws IOException
+   */
+  Map<String,String[]> getConcepts(String[] labels) throws IOException;
+  
+  /**
+   * Returns the labels of the given types of each of the given concepts, like
+   * {@link SKOSEngine#getPrefLabels(String)},
+   * {@link SKOSEngine#getBroaderLabels(String)} etc.
+   * 
+   * @param conceptURIs
+   *          the concepts, which may repeat
+   * @param types
+   *          any of PREF, ALT, HIDDEN, RELATED, BROADER, NARROWER,
+   *          BROADERTRANSITIVE and NARROWERTRANSITIVE
+   * @return the labels by type of each distinct concept, in ascending URI
+   *         order; unknown concepts are left out
+   * @throws IOException
+   */
+  Map<String,Map<SKOSType,String[]>> expand(String[] conceptURIs,
+      Set<SKOSType> types) throws IOException;
+  
+}
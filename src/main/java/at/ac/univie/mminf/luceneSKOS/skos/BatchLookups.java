@@ -0,0 +1,125 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+
+/**
+ * Looks up many labels or concepts at once in any engine: engines which are a
+ * {@link BatchLookup} resolve them in one pass, others one key after the
+ * other.
+ */
+public final class BatchLookups {
+  
+  private BatchLookups() {}
+  
+  /**
+   * Returns the concepts of each distinct label, like
+   * {@link BatchLookup#getConcepts(String[])}
+   */
+  public static Map<String,String[]> getConcepts(SKOSEngine engine,
+      String[] labels) throws IOException {
+    if (engine instanceof BatchLookup) {
+      return ((BatchLookup) engine).getConcepts(labels);
+    }
+    Map<String,String[]> concepts = new TreeMap<String,String[]>();
+    for (String label : sortedKeys(labels)) {
+      String[] conceptURIs = engine.getConcepts(label);
+      if (conceptURIs != null && conceptURIs.length > 0) {
+        concepts.put(label, conceptURIs);
+      }
+    }
+    return concepts;
+  }
+  
+  /**
+   * Returns the labels by type of each distinct concept, like
+   * {@link BatchLookup#expand(String[], Set)}
+   */
+  public static Map<String,Map<SKOSType,String[]>> expand(SKOSEngine engine,
+      String[] conceptURIs, Set<SKOSType> types) throws IOException {
+    if (engine instanceof BatchLookup) {
+      return ((BatchLookup) engine).expand(conceptURIs, types);
+    }
+    Map<String,Map<SKOSType,String[]>> expansions = new TreeMap<String,Map<SKOSType,String[]>>();
+    for (String conceptURI : sortedKeys(conceptURIs)) {
+      Map<SKOSType,String[]> labels = new EnumMap<SKOSType,String[]>(
+          SKOSType.class);
+      for (SKOSType type : types) {
+        String[] values = getLabels(engine, conceptURI, type);
+        if (values != null) {
+          labels.put(type, values);
+        }
+      }
+      // engines return null for unknown concepts
+      if (!labels.isEmpty()) {
+        expansions.put(conceptURI, labels);
+      }
+    }
+    return expansions;
+  }
+  
+  /**
+   * Returns the labels of a concept of the given type, or null if the concept
+   * is unknown
+   */
+  public static String[] getLabels(SKOSEngine engine, String conceptURI,
+      SKOSType type) throws IOException {
+    switch (type) {
+      case PREF:
+        return engine.getPrefLabels(conceptURI);
+      case ALT:
+        return engine.getAltLabels(conceptURI);
+      case HIDDEN:
+        return engine.getHiddenLabels(conceptURI);
+      case RELATED:
+        return engine.getRelatedLabels(conceptURI);
+      case BROADER:
+        return engine.getBroaderLabels(conceptURI);
+      case NARROWER:
+        return engine.getNarrowerLabels(conceptURI);
+      case BROADERTRANSITIVE:
+        return engine.getBroaderTransitiveLabels(conceptURI);
+      case NARROWERTRANSITIVE:
+        return engine.getNarrowerTransitiveLabels(conceptURI);
+      default:
+        throw new IllegalArgumentException("Cannot expand to " + type);
+    }
+  }
+  
+  /**
+   * Returns the distinct keys in ascending order, skipping nulls
+   */
+  public static SortedSet<String> sortedKeys(String[] keys) {
+    SortedSet<String> sorted = new TreeSet<String>();
+    for (String key : keys) {
+      if (key != null) {
+        sorted.add(key);
+      }
+    }
+    return sorted;
+  }
+  
+}
@@ -0,0 +1,119 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the set-up of a SKOS engine, which may be observed from other threads
+ * while the engine is built in the background.
+ */
+public class BuildProgress {
+
+  /**
+   * The phases of setting up an engine, in order
+   */
+  public enum Phase {
+    /** the set-up has not started yet */
+    PENDING,
+    /** the SKOS model is parsed */
+    PARSE,
+    /** the SKOS model is completed by inference */
+    ENTAIL,
+    /** the concepts are indexed */
+    INDEX,
+    /** the index or snapshot is opened */
+    OPEN,
+    /** the hot data structures are loaded into memory */
+    WARM_UP,
+    /** the engine is ready to serve */
+    READY,
+    /** the set-up failed */
+    FAILED
+  }
+
+  private volatile Phase phase = Phase.PENDING;
+
+  private volatile long phaseStarted = System.currentTimeMillis();
+
+  private final long started = System.currentTimeMillis();
+
+  private final AtomicLong concepts = new AtomicLong();
+
+  private volatile Throwable failure;
+
+  /**
+   * Enters the given phase
+   */
+  public void setPhase(Phase phase) {
+    this.phaseStarted = System.currentTimeMillis();
+    this.phase = phase;
+  }
+
+  /**
+   * Marks the set-up as failed
+   */
+  public void setFailed(Throwable failure) {
+    this.failure = failure;
+    setPhase(Phase.FAILED);
+  }
+
+  /**
+   * Counts a concept processed in the current phase
+   */
+  public void conceptProcessed() {
+    concepts.incrementAndGet();
+  }
+
+  public Phase getPhase() {
+    return phase;
+  }
+
+  /** Returns the number of concepts indexed so far */
+  public long getConceptsProcessed() {
+    return concepts.get();
+  }
+
+  /** Returns the milliseconds spent in the current phase */
+  public long getPhaseMillis() {
+    return System.currentTimeMillis() - phaseStarted;
+  }
+
+  /** Returns the milliseconds since the set-up was started */
+  public long getElapsedMillis() {
+    return System.currentTimeMillis() - started;
+  }
+
+  /** Returns the cause of a failed set-up, or null */
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  public boolean isReady() {
+    return phase == Phase.READY;
+  }
+
+  public boolean isFailed() {
+    return phase == Phase.FAILED;
+  }
+
+  @Override
+  public String toString() {
+    return phase + " (" + concepts.get() + " concepts, "
+        + getElapsedMillis() + " ms)";
+  }
+}
@@ -0,0 +1,115 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+
+/**
+ * An engine which finds concepts by labels with typos, e.g. "myocardail
+ * infarction". The label is turned into a Levenshtein automaton, which is
+ * intersected with the label dictionary of the engine, so that only the
+ * labels within the edit distance are visited rather than all labels.
+ *
+ * Use {@link FuzzyLookups} to look up labels in any engine.
+ */
+public interface FuzzyLookup {
+  
+  /**
+   * Returns the concepts having a label within the given number of edits
+   * (insertions, deletions, substitutions and transpositions of characters)
+   * of the given label, ignoring case
+   * 
+   * @param maxEdits
+   *          0 to {@link FuzzyLookups#MAX_EDITS}
+   * @param prefixLength
+   *          the number of leading characters which must match exactly
+   * @return the best match of each concept, the closest first, see
+   *         {@link Match#compareTo(Match)}; at most
+   *         {@link FuzzyLookups#MAX_MATCHES} labels are matched
+   * @throws IOException
+   */
+  List<Match> getFuzzyConcepts(String label, int maxEdits, int prefixLength)
+      throws IOException;
+  
+  /**
+   * A concept found by a label within the edit distance
+   */
+  final class Match implements Comparable<Match> {
+    
+    private final String label;
+    
+    private final String conceptURI;
+    
+    private final SKOSType type;
+    
+    private final int edits;
+    
+    public Match(String label, String conceptURI, SKOSType type, int edits) {
+      this.label = label;
+      this.conceptURI = conceptURI;
+      this.type = type;
+      this.edits = edits;
+    }
+    
+    /** Returns the label matched, as found in the dictionary */
+    public String getLabel() {
+      return label;
+    }
+    
+    public String getConceptURI() {
+      return conceptURI;
+    }
+    
+    /** Returns the type of the label, or null if it is not known */
+    public SKOSType getType() {
+      return type;
+    }
+    
+    /** Returns the number of edits between the label and the one looked up */
+    public int getEdits() {
+      return edits;
+    }
+    
+    /**
+     * Orders matches by their number of edits, then pref before alt before
+     * hidden labels, then by label and concept
+     */
+    public int compareTo(Match other) {
+      if (edits != other.edits) {
+        return edits - other.edits;
+      }
+      if (type != other.type) {
+        if (type == null || other.type == null) {
+          return type == null ? 1 : -1;
+        }
+        return type.compareTo(other.type);
+      }
+      int c = label.compareTo(other.label);
+      return c != 0 ? c : conceptURI.compareTo(other.conceptURI);
+    }
+    
+    @Override
+    public String toString() {
+      return label + " (" + type + " of " + conceptURI + ", " + edits
+          + " edits)";
+    }
+  }
+  
+}
@@ -0,0 +1,239 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.BasicAutomata;
+import org.apache.lucene.util.automaton.BasicOperations;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup.Match;
+
+/**
+ * Looks up labels with typos in any engine: engines which are a
+ * {@link FuzzyLookup} intersect a Levenshtein automaton with their label
+ * dictionary, others only find the label itself.
+ *
+ * Dictionaries kept as sorted strings are intersected by {@link #intersect},
+ * which walks them like a trie and skips every range of strings whose common
+ * prefix the automaton rejects.
+ */
+public final class FuzzyLookups {
+  
+  /** The most edits supported by the Levenshtein automata */
+  public static final int MAX_EDITS =
+      LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE;
+  
+  /** The most labels matched by a lookup */
+  public static final int MAX_MATCHES = 50;
+  
+  /**
+   * The shortest label or prefix worth looking up with typos; shorter ones are
+   * within a few edits of too many labels
+   */
+  public static final int MIN_FUZZY_LENGTH = 3;
+  
+  private FuzzyLookups() {}
+  
+  /**
+   * Returns the concepts having a label within the given number of edits of
+   * the given label, like
+   * {@link FuzzyLookup#getFuzzyConcepts(String, int, int)}
+   */
+  public static List<Match> getFuzzyConcepts(SKOSEngine engine, String label,
+      int maxEdits, int prefixLength) throws IOException {
+    checkEdits(maxEdits);
+    if (engine instanceof FuzzyLookup) {
+      return ((FuzzyLookup) engine).getFuzzyConcepts(label, maxEdits,
+          prefixLength);
+    }
+    String[] conceptURIs = engine.getConcepts(label);
+    if (conceptURIs == null || conceptURIs.length == 0) {
+      return Collections.emptyList();
+    }
+    List<Match> matches = new ArrayList<Match>(conceptURIs.length);
+    for (String conceptURI : conceptURIs) {
+      matches.add(new Match(label.toLowerCase(), conceptURI, null, 0));
+    }
+    return matches;
+  }
+  
+  /**
+   * Returns the concepts of the closest matches, i.e. those with the fewest
+   * edits
+   */
+  public static String[] closestConcepts(List<Match> matches) {
+    Set<String> conceptURIs = new LinkedHashSet<String>();
+    for (Match match : matches) {
+      if (match.getEdits() > matches.get(0).getEdits()) {
+        break;
+      }
+      conceptURIs.add(match.getConceptURI());
+    }
+    return conceptURIs.toArray(new String[conceptURIs.size()]);
+  }
+  
+  /**
+   * Returns the best match of each concept, the closest first
+   */
+  public static List<Match> best(Collection<Match> matches) {
+    Map<String,Match> best = new LinkedHashMap<String,Match>();
+    for (Match match : matches) {
+      Match known = best.get(match.getConceptURI());
+      if (known == null || match.compareTo(known) < 0) {
+        best.put(match.getConceptURI(), match);
+      }
+    }
+    List<Match> result = new ArrayList<Match>(best.values());
+    Collections.sort(result);
+    return result;
+  }
+  
+  /**
+   * @throws IllegalArgumentException
+   *           if the number of edits is not supported
+   */
+  public static void checkEdits(int maxEdits) {
+    if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+      throw new IllegalArgumentException("Edits must be between 0 and "
+          + MAX_EDITS + ": " + maxEdits);
+    }
+  }
+  
+  /**
+   * Returns the automaton accepting the strings within up to the
+   * given number of edits of the label, which start with its first
+   * prefixLength characters
+   */
+  public static Automaton automaton(String label, int edits, int prefixLength) {
+    int length = label.codePointCount(0, label.length());
+    int split = label.offsetByCodePoints(0,
+        Math.max(0, Math.min(prefixLength, length)));
+    String suffix = label.substring(split);
+    Automaton automaton = edits == 0 ? BasicAutomata.makeString(suffix)
+        : new LevenshteinAutomata(suffix, true).toAutomaton(edits);
+    if (split == 0) {
+      return automaton;
+    }
+    return BasicOperations.concatenate(
+        BasicAutomata.makeString(label.substring(0, split)), automaton);
+  }
+  
+  /**
+   * A dictionary of strings in an order which keeps the strings sharing a
+   * prefix together, such as the order of their chars or of their UTF-8
+   * bytes
+   */
+  public abstract static class SortedStrings {
+    
+    public abstract int size();
+    
+    public abstract String get(int index);
+  }
+  
+  /**
+   * Receives the ranges of strings accepted by an automaton
+   */
+  public interface RangeVisitor {
+    
+    /**
+     * Called for the strings from (inclusive) to (exclusive)
+     */
+    void visit(int from, int to);
+  }
+  
+  /**
+   * Visits the strings of the dictionary which the automaton accepts, in
+   * dictionary order. The cost depends on the number of prefixes the
+   * automaton can still accept, not on the size of the dictionary.
+   * 
+   * @param prefixes
+   *          whether to accept all strings starting with an accepted string,
+   *          e.g. for completing a prefix with typos
+   */
+  public static void intersect(SortedStrings strings,
+      CharacterRunAutomaton automaton, boolean prefixes, RangeVisitor visitor) {
+    walk(strings, automaton, prefixes, visitor, 0, strings.size(), "",
+        automaton.getInitialState());
+  }
+  
+  /**
+   * Walks the strings from (inclusive) to (exclusive), which all start with
+   * the given prefix, the automaton being in the given state after it
+   */
+  private static void walk(SortedStrings strings,
+      CharacterRunAutomaton automaton, boolean prefixes, RangeVisitor visitor,
+      int from, int to, String prefix, int state) {
+    boolean accept = automaton.isAccept(state);
+    if (accept && prefixes) {
+      visitor.visit(from, to);
+      return;
+    }
+    // the strings equal to the prefix come first
+    int depth = prefix.length();
+    int i = from;
+    while (i < to && strings.get(i).length() == depth) {
+      i++;
+    }
+    if (accept && i > from) {
+      visitor.visit(from, i);
+    }
+    // then one range for each following character
+    while (i < to) {
+      String string = strings.get(i);
+      int c = string.codePointAt(depth);
+      String next = string.substring(0, depth + Character.charCount(c));
+      int end = endOfPrefix(strings, next, i + 1, to);
+      int nextState = automaton.step(state, c);
+      if (nextState != -1) {
+        walk(strings, automaton, prefixes, visitor, i, end, next, nextState);
+      }
+      i = end;
+    }
+  }
+  
+  /**
+   * Returns the index of the first string not starting with the prefix, the
+   * strings from (inclusive) on starting with it before all others
+   */
+  private static int endOfPrefix(SortedStrings strings, String prefix,
+      int from, int to) {
+    int low = from;
+    int high = to;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (strings.get(mid).startsWith(prefix)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+  
+}
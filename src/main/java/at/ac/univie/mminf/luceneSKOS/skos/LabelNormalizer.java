@@ -0,0 +1,260 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.text.Normalizer;
+import java.text.Normalizer.Form;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.lucene.analysis.en.EnglishMinimalStemmer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+
+/**
+ * Turns labels into the keys they are looked up by. The engines apply the
+ * same normalizer to every label when building their label dictionary and to
+ * every label looked up, e.g. the token windows of the label filter, so that
+ * both sides always agree.
+ * 
+ * Labels are always lower-cased, which is all the {@link #DEFAULT} normalizer
+ * does. The optional {@link Step}s are applied in their declaration order,
+ * Unicode normalization before lower-casing and the others after it. With
+ * all steps, "Œdème (pulmonary)" and "oedeme pulmonary" both become "oedeme
+ * pulmonary", and "T-Cells" becomes "t cell".
+ * 
+ * Normalizers are immutable. Their string form, e.g. "lowercase,fold,stem",
+ * is recorded with indexes and snapshots, which are rebuilt or rejected when
+ * it changes.
+ */
+public final class LabelNormalizer {
+  
+  /**
+   * The optional normalization steps
+   */
+  public enum Step {
+    /** Unicode compatibility normalization (NFKC), e.g. "ﬁ" to "fi" */
+    NFKC,
+    /** folds letters to ASCII where possible, e.g. "é" to "e", "æ" to "ae" */
+    FOLD,
+    /**
+     * replaces punctuation by spaces and collapses whitespace, e.g.
+     * "t-cell (human)" to "t cell human", like tokenizers split words
+     */
+    PUNCTUATION,
+    /** reduces English plurals to the singular, e.g. "arteries" to "artery" */
+    STEM
+  }
+  
+  /** The name of the lower-casing, which is always applied */
+  public static final String LOWERCASE = "lowercase";
+  
+  /** Lower-cases labels only, as done by earlier versions */
+  public static final LabelNormalizer DEFAULT = new LabelNormalizer(
+      EnumSet.noneOf(Step.class));
+  
+  private static final EnglishMinimalStemmer STEMMER =
+      new EnglishMinimalStemmer();
+  
+  private final Set<Step> steps;
+  
+  private final boolean nfkc;
+  
+  private final boolean fold;
+  
+  private final boolean punctuation;
+  
+  private final boolean stem;
+  
+  private LabelNormalizer(EnumSet<Step> steps) {
+    this.steps = Collections.unmodifiableSet(steps);
+    this.nfkc = steps.contains(Step.NFKC);
+    this.fold = steps.contains(Step.FOLD);
+    this.punctuation = steps.contains(Step.PUNCTUATION);
+    this.stem = steps.contains(Step.STEM);
+  }
+  
+  /**
+   * Returns the normalizer applying the given steps besides lower-casing
+   */
+  public static LabelNormalizer of(Step... steps) {
+    EnumSet<Step> set = EnumSet.noneOf(Step.class);
+    Collections.addAll(set, steps);
+    return set.isEmpty() ? DEFAULT : new LabelNormalizer(set);
+  }
+  
+  /**
+   * Parses the names of the steps, separated by commas or spaces, e.g.
+   * "nfkc,fold,punctuation,stem". The name {@value #LOWERCASE} may be given
+   * but is implied.
+   * 
+   * @param steps
+   *          the step names, or null for the default
+   * @throws IllegalArgumentException
+   *           if a step is unknown
+   */
+  public static LabelNormalizer parse(String steps) {
+    EnumSet<Step> set = EnumSet.noneOf(Step.class);
+    if (steps != null) {
+      for (String name : steps.trim().split("[,\\s]+")) {
+        if (name.length() == 0 || LOWERCASE.equalsIgnoreCase(name)) {
+          continue;
+        }
+        try {
+          set.add(Step.valueOf(name.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException("Unknown normalization step: "
+              + name);
+        }
+      }
+    }
+    return set.isEmpty() ? DEFAULT : new LabelNormalizer(set);
+  }
+  
+  /**
+   * Returns the key of the given label
+   */
+  public String normalize(String label) {
+    if (nfkc && !Normalizer.isNormalized(label, Form.NFKC)) {
+      label = Normalizer.normalize(label, Form.NFKC);
+    }
+    label = label.toLowerCase();
+    if (fold) {
+      label = fold(label);
+    }
+    if (punctuation) {
+      label = splitPunctuation(label);
+    }
+    if (stem) {
+      label = stem(label);
+    }
+    return label;
+  }
+  
+  /** Returns the optional steps applied */
+  public Set<Step> getSteps() {
+    return steps;
+  }
+  
+  /** Returns whether labels are lower-cased only */
+  public boolean isDefault() {
+    return steps.isEmpty();
+  }
+  
+  private static String fold(String label) {
+    int length = label.length();
+    int i = 0;
+    while (i < length && label.charAt(i) < '\u0080') {
+      i++;
+    }
+    if (i == length) {
+      return label;
+    }
+    // a character is folded to at most four
+    char[] folded = new char[4 * length];
+    int end = ASCIIFoldingFilter.foldToASCII(label.toCharArray(), 0, folded,
+        0, length);
+    return new String(folded, 0, end);
+  }
+  
+  private static String splitPunctuation(String label) {
+    StringBuilder builder = new StringBuilder(label.length());
+    boolean space = false;
+    for (int i = 0; i < label.length();) {
+      int c = label.codePointAt(i);
+      i += Character.charCount(c);
+      if (Character.isWhitespace(c) || isPunctuation(c)) {
+        space = builder.length() > 0;
+      } else {
+        if (space) {
+          builder.append(' ');
+          space = false;
+        }
+        builder.appendCodePoint(c);
+      }
+    }
+    return builder.toString();
+  }
+  
+  private static boolean isPunctuation(int c) {
+    switch (Character.getType(c)) {
+      case Character.CONNECTOR_PUNCTUATION:
+      case Character.DASH_PUNCTUATION:
+      case Character.START_PUNCTUATION:
+      case Character.END_PUNCTUATION:
+      case Character.INITIAL_QUOTE_PUNCTUATION:
+      case Character.FINAL_QUOTE_PUNCTUATION:
+      case Character.OTHER_PUNCTUATION:
+        return true;
+      default:
+        return false;
+    }
+  }
+  
+  /** Stems each word, the words being separated by single spaces */
+  private static String stem(String label) {
+    StringBuilder builder = new StringBuilder(label.length());
+    char[] word = new char[label.length()];
+    int start = 0;
+    while (start <= label.length()) {
+      int end = label.indexOf(' ', start);
+      if (end < 0) {
+        end = label.length();
+      }
+      label.getChars(start, end, word, 0);
+      if (start > 0) {
+        builder.append(' ');
+      }
+      builder.append(word, 0, STEMMER.stem(word, end - start));
+      start = end + 1;
+    }
+    return builder.toString();
+  }
+  
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof LabelNormalizer
+        && steps.equals(((LabelNormalizer) obj).steps);
+  }
+  
+  @Override
+  public int hashCode() {
+    return steps.hashCode();
+  }
+  
+  /**
+   * Returns the names of all steps in the order they are applied, e.g.
+   * "nfkc,lowercase,fold"
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    if (nfkc) {
+      builder.append("nfkc,");
+    }
+    builder.append(LOWERCASE);
+    for (Step step : steps) {
+      if (step != Step.NFKC) {
+        builder.append(',').append(step.name().toLowerCase(Locale.ROOT));
+      }
+    }
+    return builder.toString();
+  }
+  
+}
@@ -0,0 +1,47 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * An engine which can list all the labels it finds concepts by, e.g. to
+ * compile them into a matcher scanning text for every label at once.
+ */
+public interface LabelSource {
+  
+  /**
+   * Receives the labels of a {@link LabelSource}
+   */
+  interface LabelVisitor {
+    
+    /**
+     * Called for each label and each concept carrying it
+     */
+    void visit(String label, String conceptURI) throws IOException;
+  }
+  
+  /**
+   * Calls the visitor for each label {@link SKOSEngine#getConcepts(String)}
+   * finds concepts by, once for each of these concepts
+   * 
+   * @param visitor
+   * @throws IOException
+   */
+  void visitLabels(LabelVisitor visitor) throws IOException;
+  
+}
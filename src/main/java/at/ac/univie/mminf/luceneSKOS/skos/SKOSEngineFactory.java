@@ -16,12 +16,15 @@
  * limitations under the License.
  */
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
 import org.apache.lucene.util.Version;
 
 import at.ac.univie.mminf.luceneSKOS.skos.impl.SKOSEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl.Storage;
 
 /**
  * This factory instantiates the various kinds of SKOSEngine implementations
@@ -75,4 +78,92 @@ public static SKOSEngine getSKOSEngine(final Version version,
       String filenameOrURI, String... languages) throws IOException {
     return new SKOSEngineImpl(version, filenameOrURI, languages);
   }
-}
\ No newline at end of file
+  
+  /**
+   * Sets up a SKOS Engine from a given rdf file whose index is kept below a
+   * given index root. In snapshot-only mode a prebuilt index is opened
+   * read-only instead of parsing the rdf file.
+   * 
+   * @param filenameOrURI
+   *          the skos file
+   * @param indexRoot
+   *          the directory holding the indexes, or null for the default
+   * @param snapshotOnly
+   *          whether to fail instead of building a missing or stale index
+   * @param languages
+   *          the languages to be considered
+   * @return SKOSEngine
+   * @throws IOException
+   */
+  public static SKOSEngine getSKOSEngine(final Version version,
+      String filenameOrURI, File indexRoot, boolean snapshotOnly,
+      String... languages) throws IOException {
+    return new SKOSEngineImpl(version, filenameOrURI, indexRoot, snapshotOnly,
+        languages);
+  }
+  
+  /**
+   * Like {@link #getSKOSEngine(Version, String, File, boolean, String...)},
+   * reporting the set-up to the given progress
+   * 
+   * @param progress
+   *          the progress to report to, or null
+   * @return SKOSEngine
+   * @throws IOException
+   */
+  public static SKOSEngine getSKOSEngine(final Version version,
+      String filenameOrURI, File indexRoot, boolean snapshotOnly,
+      BuildProgress progress, String... languages) throws IOException {
+    return new SKOSEngineImpl(version, filenameOrURI, indexRoot, snapshotOnly,
+        progress, languages);
+  }
+  
+  /**
+   * Like
+   * {@link #getSKOSEngine(Version, String, File, boolean, BuildProgress, String...)}
+   * , looking up labels by the keys computed by the given normalizer
+   * 
+   * @param normalizer
+   *          computes the keys of the labels when building the index and
+   *          when looking them up
+   * @return SKOSEngine
+   * @throws IOException
+   */
+  public static SKOSEngine getSKOSEngine(final Version version,
+      String filenameOrURI, File indexRoot, boolean snapshotOnly,
+      BuildProgress progress, LabelNormalizer normalizer, String... languages)
+      throws IOException {
+    return new SKOSEngineImpl(version, filenameOrURI, indexRoot, snapshotOnly,
+        progress, normalizer, languages);
+  }
+  
+  /**
+   * Sets up a SKOS Engine from a binary snapshot compiled by
+   * {@link at.ac.univie.mminf.luceneSKOS.util.SKOSCompiler}
+   * 
+   * @param snapshot
+   *          the snapshot file
+   * @return SKOSEngine
+   * @throws IOException
+   */
+  public static SKOSEngine getSKOSEngine(File snapshot) throws IOException {
+    return new SnapshotEngineImpl(snapshot);
+  }
+  
+  /**
+   * Sets up a SKOS Engine from a binary snapshot compiled by
+   * {@link at.ac.univie.mminf.luceneSKOS.util.SKOSCompiler}, keeping its data
+   * either on the heap or in the memory-mapped file
+   * 
+   * @param snapshot
+   *          the snapshot file
+   * @param storage
+   *          where to keep the snapshot data
+   * @return SKOSEngine
+   * @throws IOException
+   */
+  public static SKOSEngine getSKOSEngine(File snapshot, Storage storage)
+      throws IOException {
+    return new SnapshotEngineImpl(snapshot, storage);
+  }
+}
@@ -0,0 +1,295 @@
+package at.ac.univie.mminf.luceneSKOS.skos.impl;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Describes what a persistent concept index was built from: the source file
+ * (size, modification time and checksum), the engine implementation and its
+ * index format version, the label languages and any other build options.
+ *
+ * The manifest is stored as a properties file inside the index directory. An
+ * index is only reused if its manifest matches the manifest computed for the
+ * current source and configuration; otherwise it is rebuilt into a temporary
+ * directory which then replaces the stale one by renaming, so that readers
+ * never see a half-built index.
+ */
+public class IndexManifest {
+
+  /** Name of the manifest file within the index directory */
+  public static final String FILE_NAME = "skos-manifest.properties";
+
+  /**
+   * Version of the index layout. Must be increased whenever the documents
+   * written by the engines change incompatibly.
+   */
+  public static final int FORMAT_VERSION = 2;
+
+  public static final String KEY_FORMAT = "format";
+  public static final String KEY_ENGINE = "engine";
+  public static final String KEY_SOURCE = "source";
+  public static final String KEY_SOURCE_SIZE = "source.size";
+  public static final String KEY_SOURCE_MODIFIED = "source.lastModified";
+  public static final String KEY_SOURCE_CHECKSUM = "source.sha1";
+  public static final String KEY_LANGUAGES = "languages";
+
+  /** Prefix of free-form build options */
+  public static final String OPTION_PREFIX = "option.";
+
+  private final Properties properties;
+
+  private IndexManifest(Properties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * Computes the manifest for a given source. If the source denotes a local
+   * file, its size, modification time and SHA-1 checksum are recorded. Remote
+   * and class path resources can not be inspected, so only their name is
+   * recorded.
+   *
+   * @param engine
+   *          the engine implementation building the index
+   * @param filenameOrURI
+   *          the source of the SKOS model
+   * @param languages
+   *          the label languages signature, or null for all languages
+   * @throws IOException
+   */
+  public static IndexManifest forSource(Class<?> engine, String filenameOrURI,
+      String languages) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(KEY_FORMAT, String.valueOf(FORMAT_VERSION));
+    properties.setProperty(KEY_ENGINE, engine.getName());
+    properties.setProperty(KEY_SOURCE, filenameOrURI);
+    properties.setProperty(KEY_LANGUAGES, languages != null ? languages : "*");
+
+    File source = new File(filenameOrURI);
+    if (source.isFile()) {
+      properties.setProperty(KEY_SOURCE_SIZE, String.valueOf(source.length()));
+      properties.setProperty(KEY_SOURCE_MODIFIED,
+          String.valueOf(source.lastModified()));
+      properties.setProperty(KEY_SOURCE_CHECKSUM, checksum(source));
+    }
+
+    return new IndexManifest(properties);
+  }
+
+  /**
+   * Reads the manifest stored in a given index directory
+   *
+   * @return the manifest or null if the directory contains none
+   * @throws IOException
+   */
+  public static IndexManifest read(File indexDir) throws IOException {
+    File file = new File(indexDir, FILE_NAME);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    Properties properties = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    return new IndexManifest(properties);
+  }
+
+  /**
+   * Records a build option that invalidates the index when changed
+   */
+  public void setOption(String key, String value) {
+    properties.setProperty(OPTION_PREFIX + key, value);
+  }
+
+  public String get(String key) {
+    return properties.getProperty(key);
+  }
+
+  /** Returns a copy of all entries of this manifest */
+  public Properties getProperties() {
+    Properties copy = new Properties();
+    copy.putAll(properties);
+    return copy;
+  }
+
+  /**
+   * Checks whether the index in the given directory was built from the same
+   * source and with the same configuration as described by this manifest.
+   *
+   * The modification time is informational only; a source that was merely
+   * touched or copied keeps its index as long as its checksum is unchanged.
+   */
+  public boolean matches(File indexDir) throws IOException {
+    IndexManifest stored = read(indexDir);
+    if (stored == null) {
+      return false;
+    }
+
+    Properties expected = new Properties();
+    expected.putAll(properties);
+    expected.remove(KEY_SOURCE_MODIFIED);
+
+    Properties actual = new Properties();
+    actual.putAll(stored.properties);
+    actual.remove(KEY_SOURCE_MODIFIED);
+
+    return expected.equals(actual);
+  }
+
+  /**
+   * Checks whether the index in the given directory was built by the same
+   * engine, index format and configuration as described by this manifest,
+   * regardless of the source it was built from. Used to validate prebuilt
+   * indexes which are opened without access to their source.
+   */
+  public boolean isCompatible(File indexDir) throws IOException {
+    IndexManifest stored = read(indexDir);
+    if (stored == null) {
+      return false;
+    }
+
+    return withoutSource(properties).equals(withoutSource(stored.properties));
+  }
+
+  private static Properties withoutSource(Properties properties) {
+    Properties result = new Properties();
+    for (String key : properties.stringPropertyNames()) {
+      if (!key.startsWith(KEY_SOURCE)) {
+        result.setProperty(key, properties.getProperty(key));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Writes this manifest into the given directory
+   */
+  public void write(File indexDir) throws IOException {
+    File tmp = new File(indexDir, FILE_NAME + ".tmp");
+    OutputStream out = new FileOutputStream(tmp);
+    try {
+      properties.store(out, "lucene-skos index manifest");
+    } finally {
+      out.close();
+    }
+    File file = new File(indexDir, FILE_NAME);
+    if (!tmp.renameTo(file)) {
+      file.delete();
+      if (!tmp.renameTo(file)) {
+        throw new IOException("Could not write index manifest " + file);
+      }
+    }
+  }
+
+  /**
+   * Returns a fresh, not yet existing directory next to the given index
+   * directory, into which a new index can be built.
+   */
+  public static File newBuildDir(File indexDir) throws IOException {
+    File parent = indexDir.getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Could not create index root " + parent);
+    }
+    return new File(parent, "." + indexDir.getName() + ".tmp-"
+        + UUID.randomUUID());
+  }
+
+  /**
+   * Publishes a freshly built index by renaming its build directory to the
+   * final index directory. A stale index in place is moved aside first and
+   * removed afterwards. If another process has meanwhile published an index
+   * matching this manifest, the given build is discarded in favor of it.
+   *
+   * @param buildDir
+   *          the directory holding the new index and its manifest
+   * @param indexDir
+   *          the final index location
+   * @throws IOException
+   *           if the stale index could not be replaced
+   */
+  public void publish(File buildDir, File indexDir) throws IOException {
+    if (!indexDir.exists() && buildDir.renameTo(indexDir)) {
+      return;
+    }
+
+    if (matches(indexDir)) {
+      // a concurrent build won the race
+      FileUtils.deleteQuietly(buildDir);
+      return;
+    }
+
+    File stale = new File(indexDir.getAbsoluteFile().getParentFile(), "."
+        + indexDir.getName() + ".old-" + UUID.randomUUID());
+    if (indexDir.exists() && !indexDir.renameTo(stale)) {
+      FileUtils.deleteQuietly(buildDir);
+      throw new IOException("Could not replace stale index " + indexDir);
+    }
+
+    if (!buildDir.renameTo(indexDir)) {
+      FileUtils.deleteQuietly(buildDir);
+      if (!matches(indexDir)) {
+        throw new IOException("Could not publish index " + indexDir);
+      }
+    }
+
+    FileUtils.deleteQuietly(stale);
+  }
+
+  private static String checksum(File file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-1 not supported", e);
+    }
+
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+
+    return new String(Hex.encodeHex(digest.digest()));
+  }
+
+  @Override
+  public String toString() {
+    return properties.toString();
+  }
+}
@@ -21,23 +21,42 @@
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.SimpleAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.TermsEnum.SeekStatus;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.DisjunctionMaxQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -47,9 +66,25 @@
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSWarnings;
+import at.ac.univie.mminf.luceneSKOS.skos.BatchLookup;
+import at.ac.univie.mminf.luceneSKOS.skos.BatchLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.BuildProgress;
+import at.ac.univie.mminf.luceneSKOS.skos.BuildProgress.Phase;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup.Match;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelNormalizer;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelSource;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOS;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 
@@ -75,9 +110,20 @@
  * 
  * Each SKOS concept is stored/indexed as a Lucene document.
  * 
- * All labels are converted to lowercase
+ * All labels are converted to lowercase. Labels are looked up by their key
+ * as computed by the {@link LabelNormalizer} of the engine, which is the
+ * lower-cased label itself unless other normalization steps are configured.
+ * In that case the keys are indexed in fields of their own, next to the
+ * labels, so that they are computed once when building the index.
+ * 
+ * The labels of all languages are indexed once, each tagged with the ordinal
+ * of its language. Language restrictions are applied at query time by
+ * lightweight views sharing the index (see {@link #getLanguageView(String...)}
+ * and {@link #getFallbackView(String...)}), which test the language ordinals
+ * against a bitmask.
  */
-public class SKOSEngineImpl implements SKOSEngine {
+public class SKOSEngineImpl implements SKOSEngine, LabelSource, BatchLookup,
+    FuzzyLookup {
   
   /** Records the total number of matches */
   public static class AllDocCollector extends Collector {
@@ -109,21 +155,52 @@ public void setScorer(Scorer scorer) throws IOException {
     }
   }
   
+  private static final Logger log = LoggerFactory
+      .getLogger(SKOSEngineImpl.class);
+  
+  /** The system property holding the default index root */
+  public static final String INDEX_ROOT_PROPERTY = "luceneSKOS.indexDir";
+  
+  /** The index root used if no other is configured */
+  public static final String DEFAULT_INDEX_ROOT = "skosdata";
+  
   protected final Version matchVersion;
   
   /*
    * Static fields used in the Lucene Index
    */
-  private static final String FIELD_URI = "uri";
-  private static final String FIELD_PREF_LABEL = "pref";
-  private static final String FIELD_ALT_LABEL = "alt";
-  private static final String FIELD_HIDDEN_LABEL = "hidden";
+  protected static final String FIELD_URI = "uri";
+  protected static final String FIELD_PREF_LABEL = "pref";
+  protected static final String FIELD_ALT_LABEL = "alt";
+  protected static final String FIELD_HIDDEN_LABEL = "hidden";
   protected static final String FIELD_BROADER = "broader";
   protected static final String FIELD_NARROWER = "narrower";
   private static final String FIELD_BROADER_TRANSITIVE = "broaderTransitive";
   private static final String FIELD_NARROWER_TRANSITIVE = "narrowerTransitive";
   private static final String FIELD_RELATED = "related";
   
+  /* the types of the labels of a concept itself */
+  private static final SKOSType[] LABEL_TYPES = {SKOSType.PREF, SKOSType.ALT,
+      SKOSType.HIDDEN};
+  
+  /**
+   * Suffix of the stored fields holding the language ordinals of the labels,
+   * in the order of the label values
+   */
+  private static final String LANGUAGE_SUFFIX = "Lang";
+  
+  /**
+   * Suffix of the fields holding the keys of the labels, in the order of the
+   * label values, if they differ from the lower-cased labels
+   */
+  private static final String KEY_SUFFIX = "Key";
+  
+  /** The commit user data key holding the language table */
+  private static final String COMMIT_LANGUAGES = "languages";
+  
+  /** The number of distinct label languages an index may hold */
+  public static final int MAX_LANGUAGES = 64;
+  
   /**
    * The input SKOS model
    */
@@ -137,14 +214,34 @@ public void setScorer(Scorer scorer) throws IOException {
   /**
    * Provides access to the index
    */
-  private IndexSearcher searcher;
+  protected IndexSearcher searcher;
   
   /**
-   * The languages to be considered when returning labels.
+   * The label languages of the index, by ordinal. The empty string stands for
+   * labels without a language tag.
+   */
+  private List<String> languageTable;
+  
+  /**
+   * The languages to be considered when returning labels, as bitmasks over
+   * the language ordinals. Labels are taken from the first mask yielding any
+   * labels, lookups match labels of any mask.
    * 
    * If NULL, all languages are supported
    */
-  private Set<String> languages;
+  private long[] languageMasks;
+  
+  /** All masks of {@link #languageMasks} combined */
+  private long languageMask = -1L;
+  
+  /** Reports the phases of setting up the engine */
+  private BuildProgress progress = new BuildProgress();
+  
+  /** Computes the keys the labels are looked up by */
+  private final LabelNormalizer normalizer;
+  
+  /** Assigns the language ordinals while indexing */
+  private Map<String,Integer> languageOrdinals;
   
   /**
    * The analyzer used during indexing of / querying for concepts
@@ -176,17 +273,20 @@ public SKOSEngineImpl(final Version version, InputStream inputStream,
     
     analyzer = new SimpleAnalyzer(matchVersion);
     
+    normalizer = LabelNormalizer.DEFAULT;
+    
     skosModel = ModelFactory.createDefaultModel();
     
     skosModel.read(inputStream, null, lang);
     
     indexDir = new RAMDirectory();
     
-    entailSKOSModel();
+    entailSKOSModel(skosModel);
     
-    indexSKOSModel();
+    indexSKOSModel(indexDir);
     
     searcher = new IndexSearcher(DirectoryReader.open(indexDir));
+    languageTable = readLanguageTable(searcher);
   }
   
   /**
@@ -203,7 +303,8 @@ public SKOSEngineImpl(final Version version, String filenameOrURI)
   
   /**
    * This constructor loads the SKOS model from a given filename or URI, starts
-   * the indexing process and sets up the index searcher.
+   * the indexing process and sets up the index searcher. The index is kept in
+   * the default index root (see {@link #getDefaultIndexRoot()}).
    * 
    * @param languages
    *          the languages to be considered
@@ -212,43 +313,329 @@ public SKOSEngineImpl(final Version version, String filenameOrURI)
    */
   public SKOSEngineImpl(final Version version, String filenameOrURI,
       String... languages) throws IOException {
+    this(version, filenameOrURI, null, false, languages);
+  }
+  
+  /**
+   * This constructor sets up the index searcher for a given filename or URI,
+   * using an index kept below the given index root.
+   * 
+   * In regular mode the index is (re)built from the SKOS model if it is
+   * missing or stale. In snapshot-only mode, a prebuilt index is opened
+   * read-only and memory-mapped; the SKOS model is never parsed and an
+   * IOException is thrown if no compatible index is found.
+   * 
+   * @param filenameOrURI
+   *          the name of the skos file the index is built from
+   * @param indexRoot
+   *          the directory holding the indexes, or null for the default
+   * @param snapshotOnly
+   *          whether to open a prebuilt index only
+   * @param languages
+   *          the languages to be considered
+   * @throws IOException
+   */
+  public SKOSEngineImpl(final Version version, String filenameOrURI,
+      File indexRoot, boolean snapshotOnly, String... languages)
+      throws IOException {
+    this(version, filenameOrURI, indexRoot, snapshotOnly,
+        (BuildProgress) null, languages);
+  }
+  
+  /**
+   * Like {@link #SKOSEngineImpl(Version, String, File, boolean, String...)},
+   * reporting the phases of the set-up and the number of concepts indexed to
+   * the given progress, which may be observed from other threads. The
+   * progress is left in phase OPEN, it is up to the caller to mark the engine
+   * ready.
+   * 
+   * @param progress
+   *          the progress to report to, or null
+   */
+  public SKOSEngineImpl(final Version version, String filenameOrURI,
+      File indexRoot, boolean snapshotOnly, BuildProgress progress,
+      String... languages) throws IOException {
+    this(version, filenameOrURI, indexRoot, snapshotOnly, progress,
+        LabelNormalizer.DEFAULT, languages);
+  }
+  
+  /**
+   * Like
+   * {@link #SKOSEngineImpl(Version, String, File, boolean, BuildProgress, String...)}
+   * , looking up labels by the keys computed by the given normalizer. The
+   * normalizer is recorded in the manifest of the index, so that an index
+   * built with another normalizer is rebuilt, or rejected in snapshot-only
+   * mode.
+   * 
+   * @param normalizer
+   *          computes the keys of the labels
+   */
+  public SKOSEngineImpl(final Version version, String filenameOrURI,
+      File indexRoot, boolean snapshotOnly, BuildProgress progress,
+      LabelNormalizer normalizer, String... languages) throws IOException {
     matchVersion = version;
     analyzer = new SimpleAnalyzer(matchVersion);
+    this.normalizer = normalizer;
+    if (progress != null) {
+      this.progress = progress;
+    }
     
-    String langSig = "";
-    if (languages != null) {
-      this.languages = new TreeSet<String>(Arrays.asList(languages));
-      langSig = "-" + StringUtils.join(this.languages, ".");
+    if (indexRoot == null) {
+      indexRoot = getDefaultIndexRoot();
     }
     
+    // one index holds the labels of all languages
     String name = FilenameUtils.getName(filenameOrURI);
-    File dir = new File("skosdata/" + name + langSig);
-    indexDir = FSDirectory.open(dir);
-    
-    // TODO: Generate also if source file is modified
-    if (!dir.isDirectory()) {
-      // load the skos model from the given file
-      FileManager fileManager = new FileManager();
-      fileManager.addLocatorFile();
-      fileManager.addLocatorURL();
-      fileManager.addLocatorClassLoader(SKOSEngineImpl.class.getClassLoader());
-      
-      if (FilenameUtils.getExtension(filenameOrURI).equals("zip")) {
-        fileManager.addLocatorZip(filenameOrURI);
-        filenameOrURI = FilenameUtils.getBaseName(filenameOrURI);
+    File dir = new File(indexRoot, name);
+    
+    IndexManifest manifest = IndexManifest.forSource(getClass(),
+        filenameOrURI, null);
+    manifest.setOption("luceneVersion", matchVersion.toString());
+    if (!normalizer.isDefault()) {
+      // indexes of the default normalizer are those of earlier versions
+      manifest.setOption("normalizer", normalizer.toString());
+    }
+    
+    if (snapshotOnly) {
+      if (!manifest.isCompatible(dir)) {
+        throw new IOException("No prebuilt index compatible with "
+            + manifest + " found in " + dir.getAbsolutePath());
       }
       
-      skosModel = fileManager.loadModel(filenameOrURI);
+      indexDir = new MMapDirectory(dir);
       
-      entailSKOSModel();
+    } else {
+      if (!manifest.matches(dir)) {
+        /*
+         * the index is missing, stale or was built with different settings:
+         * build a new one next to it and swap it in once complete
+         */
+        File buildDir = IndexManifest.newBuildDir(dir);
+        try {
+          this.progress.setPhase(Phase.PARSE);
+          skosModel = loadSKOSModel(filenameOrURI);
+          
+          this.progress.setPhase(Phase.ENTAIL);
+          entailSKOSModel(skosModel);
+          
+          this.progress.setPhase(Phase.INDEX);
+          Directory buildIndexDir = FSDirectory.open(buildDir);
+          try {
+            indexSKOSModel(buildIndexDir);
+          } finally {
+            buildIndexDir.close();
+          }
+          
+          manifest.write(buildDir);
+        } catch (IOException e) {
+          FileUtils.deleteQuietly(buildDir);
+          throw e;
+        } catch (RuntimeException e) {
+          FileUtils.deleteQuietly(buildDir);
+          throw e;
+        }
+        
+        manifest.publish(buildDir, dir);
+      }
       
-      indexSKOSModel();
+      indexDir = FSDirectory.open(dir);
     }
     
+    this.progress.setPhase(Phase.OPEN);
     searcher = new IndexSearcher(DirectoryReader.open(indexDir));
+    languageTable = readLanguageTable(searcher);
+    
+    if (languages != null && languages.length > 0) {
+      setLanguageMasks(new long[] {getLanguageMask(languages)});
+    }
+  }
+  
+  /**
+   * Creates a view on the index of another engine, restricted to the given
+   * languages. Views share the index searcher and are cheap to create.
+   * 
+   * @param engine
+   *          the engine whose index is shared
+   * @param languageMasks
+   *          the language bitmasks, or null for all languages
+   */
+  protected SKOSEngineImpl(SKOSEngineImpl engine, long[] languageMasks) {
+    matchVersion = engine.matchVersion;
+    analyzer = engine.analyzer;
+    normalizer = engine.normalizer;
+    skosModel = engine.skosModel;
+    indexDir = engine.indexDir;
+    searcher = engine.searcher;
+    languageTable = engine.languageTable;
+    setLanguageMasks(languageMasks);
+  }
+  
+  /**
+   * Returns a view on this engine's index considering only labels in any of
+   * the given languages. The empty string selects labels without a language
+   * tag.
+   * 
+   * The view is of the same class as this engine and shares its index. Views
+   * of a restricted engine stay within its languages.
+   */
+  public SKOSEngineImpl getLanguageView(String... languages) {
+    return newView(new long[] {getLanguageMask(languages) & languageMask});
+  }
+  
+  /**
+   * Returns a view on this engine's index whose labels are taken from the
+   * first language of the given chain a concept has labels in. For instance,
+   * with the chain "de", "en" the English labels are returned for concepts
+   * lacking German ones. Lookups match labels in any language of the chain.
+   * 
+   * The view is of the same class as this engine and shares its index. Views
+   * of a restricted engine stay within its languages, e.g. the chain "fr",
+   * "en" on an engine restricted to "de" and "en" returns English labels only.
+   */
+  public SKOSEngineImpl getFallbackView(String... chain) {
+    long[] masks = new long[chain.length];
+    for (int i = 0; i < chain.length; i++) {
+      masks[i] = getLanguageMask(chain[i]) & languageMask;
+    }
+    return newView(masks);
+  }
+  
+  /**
+   * Creates a view of this engine's class. Subclasses override this to
+   * return views of their own type.
+   */
+  protected SKOSEngineImpl newView(long[] languageMasks) {
+    return new SKOSEngineImpl(this, languageMasks);
+  }
+  
+  /**
+   * Returns the label languages held by the index
+   */
+  public List<String> getIndexedLanguages() {
+    return languageTable;
   }
   
-  private void entailSKOSModel() {
+  /**
+   * Returns the normalizer computing the keys the labels are looked up by
+   */
+  public LabelNormalizer getNormalizer() {
+    return normalizer;
+  }
+  
+  /**
+   * Returns the field holding the keys of the labels held by the given field
+   */
+  protected String keyField(String labelField) {
+    return normalizer.isDefault() ? labelField : labelField + KEY_SUFFIX;
+  }
+  
+  /**
+   * Returns the bitmask selecting labels in any of the given languages.
+   * Languages not held by the index are ignored.
+   */
+  protected long getLanguageMask(String... languages) {
+    long mask = 0L;
+    for (String language : languages) {
+      int ordinal = languageTable.indexOf(language);
+      if (ordinal >= 0) {
+        mask |= 1L << ordinal;
+      }
+    }
+    return mask;
+  }
+  
+  private void setLanguageMasks(long[] languageMasks) {
+    this.languageMasks = languageMasks;
+    if (languageMasks == null) {
+      languageMask = -1L;
+    } else {
+      languageMask = 0L;
+      for (long mask : languageMasks) {
+        languageMask |= mask;
+      }
+    }
+  }
+  
+  /**
+   * Reads the language table stored with the last commit of an index
+   */
+  private static List<String> readLanguageTable(IndexSearcher searcher)
+      throws IOException {
+    Map<String,String> userData = ((DirectoryReader) searcher
+        .getIndexReader()).getIndexCommit().getUserData();
+    String languages = userData.get(COMMIT_LANGUAGES);
+    if (languages == null || languages.length() == 0) {
+      return Arrays.asList("");
+    }
+    return Arrays.asList(languages.split(",", -1));
+  }
+  
+  /**
+   * Loads the hot parts of the index into memory: the terms and postings of
+   * the URI and label fields, and the stored concept documents. Called once
+   * the engine is set up, this spares the first lookups the page faults.
+   * 
+   * @throws IOException
+   */
+  public void warmUp() throws IOException {
+    IndexReader reader = searcher.getIndexReader();
+    for (AtomicReaderContext context : reader.leaves()) {
+      AtomicReader leaf = context.reader();
+      for (String field : new String[] {FIELD_URI, keyField(FIELD_PREF_LABEL),
+          keyField(FIELD_ALT_LABEL), keyField(FIELD_HIDDEN_LABEL)}) {
+        Terms terms = leaf.terms(field);
+        if (terms == null) {
+          continue;
+        }
+        TermsEnum termsEnum = terms.iterator(null);
+        DocsEnum docsEnum = null;
+        while (termsEnum.next() != null) {
+          docsEnum = termsEnum.docs(null, docsEnum, DocsEnum.FLAG_NONE);
+          while (docsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+            // touch the postings
+          }
+        }
+      }
+    }
+    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+      reader.document(doc);
+    }
+  }
+  
+  /**
+   * Returns the directory holding the persistent concept indexes unless
+   * specified otherwise. It is taken from the system property
+   * {@value #INDEX_ROOT_PROPERTY} and defaults to {@value #DEFAULT_INDEX_ROOT}
+   * relative to the working directory.
+   */
+  public static File getDefaultIndexRoot() {
+    return new File(System.getProperty(INDEX_ROOT_PROPERTY,
+        DEFAULT_INDEX_ROOT));
+  }
+  
+  /**
+   * Loads the SKOS model from a given filename or URI, which may also denote
+   * a zipped serialization
+   */
+  static Model loadSKOSModel(String filenameOrURI) {
+    FileManager fileManager = new FileManager();
+    fileManager.addLocatorFile();
+    fileManager.addLocatorURL();
+    fileManager.addLocatorClassLoader(SKOSEngineImpl.class.getClassLoader());
+    
+    if (FilenameUtils.getExtension(filenameOrURI).equals("zip")) {
+      fileManager.addLocatorZip(filenameOrURI);
+      filenameOrURI = FilenameUtils.getBaseName(filenameOrURI);
+    }
+    
+    return fileManager.loadModel(filenameOrURI);
+  }
+  
+  /**
+   * Types all labelled resources as concepts and adds the narrower relations
+   * implied by the broader relations
+   */
+  static void entailSKOSModel(Model skosModel) {
     GraphStore graphStore = GraphStoreFactory.create(skosModel) ;
     String sparqlQuery = StringUtils.join(new String[]{
         "PREFIX skos: <http://www.w3.org/2004/02/skos/core#>",
@@ -278,15 +665,15 @@ private void entailSKOSModel() {
   }
 
   /**
-   * Creates lucene documents from SKOS concept. In order to allow language
-   * restrictions, one document per language is created.
+   * Creates a lucene document from a SKOS concept. The labels of all
+   * languages are added, each along with its language ordinal.
    */
   protected Document createDocumentsFromConcept(Resource skos_concept) {
     Document conceptDoc = new Document();
     
     String conceptURI = skos_concept.getURI();
     if (conceptURI == null) {
-      System.err.println("Error when indexing concept NO_URI.");
+      log.warn("Error when indexing concept NO_URI.");
       return null;
     }
     
@@ -347,8 +734,8 @@ public String[] getAltTerms(String label) throws IOException {
         }
       }
     } catch (Exception e) {
-      System.err
-          .println("Error when accessing SKOS Engine.\n" + e.getMessage());
+      SKOSWarnings.ENGINE_ERRORS.warn("Error when accessing SKOS Engine for {}",
+          label, e);
     }
     
     return result.toArray(new String[result.size()]);
@@ -381,23 +768,60 @@ public String[] getBroaderTransitiveLabels(String conceptURI)
     return getLabels(conceptURI, FIELD_BROADER_TRANSITIVE);
   }
   
+  /**
+   * Returns the types of the labels concepts are looked up by, by default
+   * pref, alt and hidden labels. All lookups by label consider these only.
+   */
+  protected SKOSType[] lookupTypes() {
+    return LABEL_TYPES;
+  }
+  
+  /**
+   * Returns the number of concepts returned for a label at most, or -1 if
+   * unbounded. All lookups by label stop after this many concepts, in index
+   * order.
+   */
+  protected int maxConcepts() {
+    return -1;
+  }
+  
+  /**
+   * Returns the fields holding the labels of {@link #lookupTypes()}
+   */
+  private String[] lookupFields() {
+    SKOSType[] types = lookupTypes();
+    String[] fields = new String[types.length];
+    for (int i = 0; i < types.length; i++) {
+      fields[i] = labelField(types[i]);
+    }
+    return fields;
+  }
+  
   @Override
   public String[] getConcepts(String label) throws IOException {
     List<String> concepts = new ArrayList<String>();
     
-    // convert the query to lower-case
-    String queryString = label.toLowerCase();
+    // the key of the label, as indexed
+    String queryString = normalizer.normalize(label);
     
     AllDocCollector collector = new AllDocCollector();
     
+    String[] fields = lookupFields();
     DisjunctionMaxQuery query = new DisjunctionMaxQuery(0.0f);
-    query.add(new TermQuery(new Term(FIELD_PREF_LABEL, queryString)));
-    query.add(new TermQuery(new Term(FIELD_ALT_LABEL, queryString)));
-    query.add(new TermQuery(new Term(FIELD_HIDDEN_LABEL, queryString)));
+    for (String field : fields) {
+      query.add(new TermQuery(new Term(keyField(field), queryString)));
+    }
     searcher.search(query, collector);
     
+    int max = maxConcepts();
     for (Integer hit : collector.getDocs()) {
+      if (concepts.size() == max) {
+        break;
+      }
       Document doc = searcher.doc(hit);
+      if (!hasLabel(doc, queryString, fields)) {
+        continue;
+      }
       String conceptURI = doc.getValues(FIELD_URI)[0];
       concepts.add(conceptURI);
     }
@@ -405,6 +829,357 @@ public String[] getConcepts(String label) throws IOException {
     return concepts.toArray(new String[concepts.size()]);
   }
   
+  /**
+   * Visits the labels of {@link #lookupTypes()}, each once per concept and
+   * for at most {@link #maxConcepts()} concepts, in index order
+   */
+  @Override
+  public void visitLabels(LabelVisitor visitor) throws IOException {
+    String[] fields = lookupFields();
+    int max = maxConcepts();
+    // the number of concepts each label was visited for, if bounded
+    Map<String,Integer> visits = new HashMap<String,Integer>();
+    IndexReader reader = searcher.getIndexReader();
+    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+      Document conceptDoc = reader.document(doc);
+      String[] uris = conceptDoc.getValues(FIELD_URI);
+      if (uris.length == 0) {
+        continue;
+      }
+      Set<String> labels = new LinkedHashSet<String>();
+      for (String field : fields) {
+        String[] values = conceptDoc.getValues(field);
+        IndexableField[] ordinals = conceptDoc.getFields(field
+            + LANGUAGE_SUFFIX);
+        for (int i = 0; i < values.length; i++) {
+          if (languageMask == -1L
+              || (languageMask & languageBit(ordinals, i)) != 0) {
+            labels.add(values[i]);
+          }
+        }
+      }
+      for (String label : labels) {
+        if (max >= 0) {
+          Integer count = visits.get(label);
+          int visited = count == null ? 0 : count;
+          if (visited == max) {
+            continue;
+          }
+          visits.put(label, visited + 1);
+        }
+        visitor.visit(label, uris[0]);
+      }
+    }
+  }
+  
+  @Override
+  public Map<String,String[]> getConcepts(String[] labels) throws IOException {
+    // the labels asked for by their key
+    Map<String,List<String>> asked = new HashMap<String,List<String>>();
+    for (String label : BatchLookups.sortedKeys(labels)) {
+      String key = normalizer.normalize(label);
+      List<String> forms = asked.get(key);
+      if (forms == null) {
+        forms = new ArrayList<String>(1);
+        asked.put(key, forms);
+      }
+      forms.add(label);
+    }
+    
+    String[] fields = lookupFields();
+    SortedMap<String,SortedSet<Integer>> hits = new TreeMap<String,SortedSet<Integer>>();
+    for (String field : fields) {
+      seekTerms(keyField(field), asked.keySet(), hits);
+    }
+    
+    int max = maxConcepts();
+    Map<Integer,Document> docs = new HashMap<Integer,Document>();
+    Map<String,String[]> concepts = new TreeMap<String,String[]>();
+    for (Map.Entry<String,SortedSet<Integer>> hit : hits.entrySet()) {
+      String label = hit.getKey();
+      List<String> conceptURIs = new ArrayList<String>();
+      for (Integer doc : hit.getValue()) {
+        if (conceptURIs.size() == max) {
+          break;
+        }
+        Document conceptDoc = docs.get(doc);
+        if (conceptDoc == null) {
+          conceptDoc = searcher.doc(doc);
+          docs.put(doc, conceptDoc);
+        }
+        if (hasLabel(conceptDoc, label, fields)) {
+          conceptURIs.add(conceptDoc.getValues(FIELD_URI)[0]);
+        }
+      }
+      if (!conceptURIs.isEmpty()) {
+        String[] result = conceptURIs.toArray(new String[conceptURIs.size()]);
+        for (String form : asked.get(label)) {
+          concepts.put(form, result);
+        }
+      }
+    }
+    return concepts;
+  }
+  
+  @Override
+  public Map<String,Map<SKOSType,String[]>> expand(String[] conceptURIs,
+      Set<SKOSType> types) throws IOException {
+    Map<String,Document> concepts = loadConcepts(BatchLookups
+        .sortedKeys(conceptURIs));
+    
+    // the concepts whose labels are taken, resolved in a second pass
+    SortedSet<String> targets = new TreeSet<String>();
+    for (Document conceptDoc : concepts.values()) {
+      for (SKOSType type : types) {
+        String field = relationField(type);
+        if (field != null) {
+          targets.addAll(Arrays.asList(conceptDoc.getValues(field)));
+        }
+      }
+    }
+    targets.removeAll(concepts.keySet());
+    Map<String,Document> related = loadConcepts(targets);
+    related.putAll(concepts);
+    
+    Map<String,Map<SKOSType,String[]>> expansions = new TreeMap<String,Map<SKOSType,String[]>>();
+    for (Map.Entry<String,Document> concept : concepts.entrySet()) {
+      Document conceptDoc = concept.getValue();
+      Map<SKOSType,String[]> labels = new EnumMap<SKOSType,String[]>(
+          SKOSType.class);
+      for (SKOSType type : types) {
+        String field = relationField(type);
+        if (field == null) {
+          labels.put(type, fieldValues(conceptDoc, labelField(type)));
+          continue;
+        }
+        List<String> values = new ArrayList<String>();
+        for (String targetURI : conceptDoc.getValues(field)) {
+          Document targetDoc = related.get(targetURI);
+          if (targetDoc != null) {
+            values.addAll(Arrays.asList(fieldValues(targetDoc, FIELD_PREF_LABEL)));
+            values.addAll(Arrays.asList(fieldValues(targetDoc, FIELD_ALT_LABEL)));
+          }
+        }
+        labels.put(type, values.toArray(new String[values.size()]));
+      }
+      expansions.put(concept.getKey(), labels);
+    }
+    return expansions;
+  }
+  
+  /**
+   * Intersects the Levenshtein automaton of each number of edits with the
+   * terms of the lookup fields, skipping labels matched with fewer edits
+   */
+  @Override
+  public List<Match> getFuzzyConcepts(String label, int maxEdits,
+      int prefixLength) throws IOException {
+    FuzzyLookups.checkEdits(maxEdits);
+    String key = normalizer.normalize(label);
+    String[] fields = lookupFields();
+    // the labels matched, with the edits they were matched with
+    Map<String,Integer> matched = new LinkedHashMap<String,Integer>();
+    // the concepts carrying each label matched, in index order
+    Map<String,SortedSet<Integer>> postings =
+        new HashMap<String,SortedSet<Integer>>();
+    for (int edits = 0; edits <= maxEdits; edits++) {
+      CompiledAutomaton automaton = new CompiledAutomaton(
+          FuzzyLookups.automaton(key, edits, prefixLength));
+      for (String field : fields) {
+        for (AtomicReaderContext context : searcher.getIndexReader().leaves()) {
+          AtomicReader leaf = context.reader();
+          Terms terms = leaf.terms(keyField(field));
+          if (terms == null) {
+            continue;
+          }
+          TermsEnum termsEnum = automaton.getTermsEnum(terms);
+          DocsEnum docsEnum = null;
+          BytesRef term;
+          while ((term = termsEnum.next()) != null) {
+            String value = term.utf8ToString();
+            Integer known = matched.get(value);
+            if (known == null) {
+              if (matched.size() >= FuzzyLookups.MAX_MATCHES) {
+                break;
+              }
+              matched.put(value, edits);
+              postings.put(value, new TreeSet<Integer>());
+            } else if (known < edits) {
+              continue;
+            }
+            SortedSet<Integer> docs = postings.get(value);
+            docsEnum = termsEnum.docs(leaf.getLiveDocs(), docsEnum,
+                DocsEnum.FLAG_NONE);
+            int doc;
+            while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+              docs.add(context.docBase + doc);
+            }
+          }
+        }
+      }
+    }
+    
+    SKOSType[] types = lookupTypes();
+    int max = maxConcepts();
+    List<Match> matches = new ArrayList<Match>();
+    for (Map.Entry<String,Integer> entry : matched.entrySet()) {
+      String value = entry.getKey();
+      int count = 0;
+      for (Integer doc : postings.get(value)) {
+        if (count == max) {
+          break;
+        }
+        Document conceptDoc = searcher.doc(doc);
+        String[] uris = conceptDoc.getValues(FIELD_URI);
+        if (uris.length == 0) {
+          continue;
+        }
+        boolean found = false;
+        for (SKOSType type : types) {
+          if (hasLabel(conceptDoc, value, labelField(type))) {
+            matches.add(new Match(value, uris[0], type, entry.getValue()));
+            found = true;
+          }
+        }
+        if (found) {
+          count++;
+        }
+      }
+    }
+    return FuzzyLookups.best(matches);
+  }
+  
+  /**
+   * Returns the field holding the labels of the given type, for the types
+   * which are labels of the concept itself
+   */
+  private static String labelField(SKOSType type) {
+    switch (type) {
+      case PREF:
+        return FIELD_PREF_LABEL;
+      case ALT:
+        return FIELD_ALT_LABEL;
+      case HIDDEN:
+        return FIELD_HIDDEN_LABEL;
+      default:
+        throw new IllegalArgumentException("Cannot expand to " + type);
+    }
+  }
+  
+  /**
+   * Returns the field holding the concepts whose labels are of the given
+   * type, or null for the labels of the concept itself
+   */
+  private static String relationField(SKOSType type) {
+    switch (type) {
+      case RELATED:
+        return FIELD_RELATED;
+      case BROADER:
+        return FIELD_BROADER;
+      case NARROWER:
+        return FIELD_NARROWER;
+      case BROADERTRANSITIVE:
+        return FIELD_BROADER_TRANSITIVE;
+      case NARROWERTRANSITIVE:
+        return FIELD_NARROWER_TRANSITIVE;
+      default:
+        return null;
+    }
+  }
+  
+  /**
+   * Loads the documents of the given concepts, leaving out unknown ones
+   */
+  private Map<String,Document> loadConcepts(Collection<String> conceptURIs)
+      throws IOException {
+    Map<String,SortedSet<Integer>> hits = new HashMap<String,SortedSet<Integer>>();
+    seekTerms(FIELD_URI, conceptURIs, hits);
+    Map<String,Document> concepts = new TreeMap<String,Document>();
+    for (String conceptURI : conceptURIs) {
+      SortedSet<Integer> docs = hits.get(conceptURI);
+      if (docs == null) {
+        SKOSWarnings.UNKNOWN_CONCEPTS.warn("Unknown concept {}", conceptURI);
+        continue;
+      }
+      concepts.put(conceptURI, searcher.doc(docs.first()));
+    }
+    return concepts;
+  }
+  
+  /**
+   * Collects the documents holding each of the given terms in a field. The
+   * terms are sought in the order of the term dictionary, in one pass over
+   * each segment, which ends once the terms are past its last term.
+   */
+  private void seekTerms(String field, Collection<String> terms,
+      Map<String,SortedSet<Integer>> hits) throws IOException {
+    if (terms.isEmpty()) {
+      return;
+    }
+    BytesRef[] sorted = new BytesRef[terms.size()];
+    int i = 0;
+    for (String term : terms) {
+      sorted[i++] = new BytesRef(term);
+    }
+    // the order of the term dictionary, which differs from String order for
+    // supplementary characters
+    Arrays.sort(sorted);
+    
+    for (AtomicReaderContext context : searcher.getIndexReader().leaves()) {
+      AtomicReader leaf = context.reader();
+      Terms fieldTerms = leaf.terms(field);
+      if (fieldTerms == null) {
+        continue;
+      }
+      TermsEnum termsEnum = fieldTerms.iterator(null);
+      DocsEnum docsEnum = null;
+      for (BytesRef term : sorted) {
+        SeekStatus status = termsEnum.seekCeil(term);
+        if (status == SeekStatus.END) {
+          break;
+        }
+        if (status != SeekStatus.FOUND) {
+          continue;
+        }
+        docsEnum = termsEnum.docs(leaf.getLiveDocs(), docsEnum,
+            DocsEnum.FLAG_NONE);
+        String key = term.utf8ToString();
+        SortedSet<Integer> docs = hits.get(key);
+        if (docs == null) {
+          docs = new TreeSet<Integer>();
+          hits.put(key, docs);
+        }
+        int doc;
+        while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          docs.add(context.docBase + doc);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Checks whether a concept document holds a label with the given key in one
+   * of the given label fields, in a language considered by this engine
+   */
+  protected boolean hasLabel(Document conceptDoc, String label,
+      String... fields) {
+    if (languageMask == -1L) {
+      // the query already matched the label
+      return true;
+    }
+    for (String field : fields) {
+      String[] values = conceptDoc.getValues(keyField(field));
+      IndexableField[] ordinals = conceptDoc.getFields(field + LANGUAGE_SUFFIX);
+      for (int i = 0; i < values.length; i++) {
+        if (values[i].equals(label)
+            && (languageMask & languageBit(ordinals, i)) != 0) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+  
   protected String[] getLabels(String conceptURI, String field)
       throws IOException {
     List<String> labels = new ArrayList<String>();
@@ -466,10 +1241,7 @@ private void indexAnnotation(Resource skos_concept, Document conceptDoc,
           .as(Literal.class);
       String label = labelLiteral.getLexicalForm();
       String labelLang = labelLiteral.getLanguage();
-      
-      if (this.languages != null && !this.languages.contains(labelLang)) {
-        continue;
-      }
+      String key = normalizer.normalize(label);
       
       // converting label to lower-case
       label = label.toLowerCase();
@@ -477,7 +1249,33 @@ private void indexAnnotation(Resource skos_concept, Document conceptDoc,
       Field labelField = new Field(field, label, StringField.TYPE_STORED);
       
       conceptDoc.add(labelField);
+      if (!normalizer.isDefault()) {
+        conceptDoc.add(new Field(keyField(field), key,
+            StringField.TYPE_STORED));
+      }
+      conceptDoc.add(new StoredField(field + LANGUAGE_SUFFIX,
+          getLanguageOrdinal(labelLang)));
+    }
+  }
+  
+  private int getLanguageOrdinal(String language) {
+    Integer ordinal = languageOrdinals.get(language);
+    if (ordinal == null) {
+      if (languageOrdinals.size() == MAX_LANGUAGES) {
+        throw new IllegalStateException("More than " + MAX_LANGUAGES
+            + " label languages");
+      }
+      ordinal = languageOrdinals.size();
+      languageOrdinals.put(language, ordinal);
     }
+    return ordinal;
+  }
+  
+  private static long languageBit(IndexableField[] ordinals, int i) {
+    if (i >= ordinals.length) {
+      return 0L;
+    }
+    return 1L << ordinals[i].numericValue().intValue();
   }
   
   private void indexObject(Resource skos_concept, Document conceptDoc,
@@ -487,8 +1285,8 @@ private void indexObject(Resource skos_concept, Document conceptDoc,
       RDFNode concept = stmt_iter.nextStatement().getObject();
       
       if (!concept.canAs(Resource.class)) {
-        System.err.println("Error when indexing relationship of concept "
-            + skos_concept.getURI() + ".");
+        log.warn("Error when indexing relationship of concept {}.",
+            skos_concept.getURI());
         continue;
       }
       
@@ -496,8 +1294,8 @@ private void indexObject(Resource skos_concept, Document conceptDoc,
       
       String uri = resource.getURI();
       if (uri == null) {
-        System.err.println("Error when indexing relationship of concept "
-            + skos_concept.getURI() + ".");
+        log.warn("Error when indexing relationship of concept {}.",
+            skos_concept.getURI());
         continue;
       }
       
@@ -508,15 +1306,18 @@ private void indexObject(Resource skos_concept, Document conceptDoc,
   }
   
   /**
-   * Creates the synonym index
+   * Creates the synonym index in the given directory
    * 
    * @throws IOException
    */
-  private void indexSKOSModel() throws IOException {
+  private void indexSKOSModel(Directory dir) throws IOException {
     IndexWriterConfig cfg = new IndexWriterConfig(matchVersion, analyzer);
-    IndexWriter writer = new IndexWriter(indexDir, cfg);
+    IndexWriter writer = new IndexWriter(dir, cfg);
     writer.getConfig().setRAMBufferSizeMB(48);
     
+    languageOrdinals = new LinkedHashMap<String,Integer>();
+    languageOrdinals.put("", 0);
+    
     /* iterate SKOS concepts, create Lucene docs and add them to the index */
     ResIterator concept_iter = skosModel.listResourcesWithProperty(RDF.type,
         SKOS.Concept);
@@ -527,8 +1328,16 @@ private void indexSKOSModel() throws IOException {
       if (concept_doc != null) {
         writer.addDocument(concept_doc);
       }
+      progress.conceptProcessed();
     }
     
+    Map<String,String> commitData = new HashMap<String,String>();
+    commitData.put(COMMIT_LANGUAGES,
+        StringUtils.join(languageOrdinals.keySet(), ","));
+    writer.setCommitData(commitData);
+    writer.commit();
+    languageOrdinals = null;
+    
     writer.close();
   }
   
@@ -543,12 +1352,37 @@ protected String[] readConceptFieldValues(String conceptURI, String field)
     ScoreDoc[] results = docs.scoreDocs;
     
     if (results.length != 1) {
-      System.out.println("Unknown concept " + conceptURI);
+      SKOSWarnings.UNKNOWN_CONCEPTS.warn("Unknown concept {}", conceptURI);
       return null;
     }
     
-    Document conceptDoc = searcher.doc(results[0].doc);
+    return fieldValues(searcher.doc(results[0].doc), field);
+  }
+  
+  /**
+   * Returns the values of a given field of a concept document, restricted to
+   * the languages of this engine for label fields
+   */
+  private String[] fieldValues(Document conceptDoc, String field) {
+    String[] values = conceptDoc.getValues(field);
     
-    return conceptDoc.getValues(field);
+    IndexableField[] ordinals = conceptDoc.getFields(field + LANGUAGE_SUFFIX);
+    if (languageMasks == null || ordinals.length == 0) {
+      // no language restriction or not a label field
+      return values;
+    }
+    
+    List<String> labels = new ArrayList<String>();
+    for (long mask : languageMasks) {
+      for (int i = 0; i < values.length; i++) {
+        if ((mask & languageBit(ordinals, i)) != 0) {
+          labels.add(values[i]);
+        }
+      }
+      if (!labels.isEmpty()) {
+        break;
+      }
+    }
+    return labels.toArray(new String[labels.size()]);
   }
 }
@@ -0,0 +1,806 @@
+package at.ac.univie.mminf.luceneSKOS.skos.impl;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSWarnings;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup.Match;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups.RangeVisitor;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups.SortedStrings;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelNormalizer;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelSource;
+import at.ac.univie.mminf.luceneSKOS.skos.MeSHEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat.Profile;
+
+/**
+ * A MeSHEngine implementation serving a binary snapshot compiled by
+ * {@link SnapshotWriter}.
+ *
+ * The snapshot is memory-mapped and either copied into a few flat arrays, so
+ * that loading takes about as long as reading the file from the page cache,
+ * or served from the mapping itself (see {@link Storage}). Mapped snapshots
+ * are shared through the page cache by all engines and JVMs using them. The
+ * engine behaves like the Lucene-backed engine of the profile it was compiled
+ * for. Concepts are returned in the order of their URIs. Labels are looked up
+ * by their keys, computed by the {@link LabelNormalizer} the snapshot was
+ * compiled with.
+ */
+public class SnapshotEngineImpl implements MeSHEngine, LabelSource,
+    FuzzyLookup {
+
+  /**
+   * Where the loaded snapshot is kept
+   */
+  public enum Storage {
+    /** copied into flat arrays on the heap */
+    HEAP,
+    /**
+     * left in the memory-mapped file; only a few buffer views are kept on the
+     * heap, so that heap usage does not depend on the vocabulary size
+     */
+    MAPPED
+  }
+
+  /** A table of UTF-8 strings, sorted by their bytes */
+  abstract static class StringTable {
+
+    static StringTable load(ByteBuffer section, Storage storage) {
+      int count = section.getInt();
+      if (storage == Storage.MAPPED) {
+        return new MappedStringTable(section, count);
+      }
+      return new HeapStringTable(section, count);
+    }
+
+    abstract int size();
+
+    abstract String get(int id);
+
+    /**
+     * Compares the string with the given id to a key, by the order of their
+     * UTF-8 bytes
+     */
+    abstract int compare(int id, CharSequence key);
+
+    /** Returns the id of a string, or -1 if it is not in the table */
+    int find(CharSequence key) {
+      int low = 0;
+      int high = size() - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = compare(mid, key);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+  }
+
+  static final class HeapStringTable extends StringTable {
+    private final int[] offsets;
+    private final byte[] data;
+
+    HeapStringTable(ByteBuffer section, int count) {
+      offsets = readInts(section, count + 1);
+      data = new byte[offsets[count]];
+      section.get(data);
+    }
+
+    @Override
+    int size() {
+      return offsets.length - 1;
+    }
+
+    @Override
+    String get(int id) {
+      return new BytesRef(data, offsets[id], offsets[id + 1] - offsets[id])
+          .utf8ToString();
+    }
+
+    @Override
+    int compare(int id, CharSequence key) {
+      return SnapshotFormat.compareUTF8(ByteBuffer.wrap(data), offsets[id],
+          offsets[id + 1], key);
+    }
+
+    @Override
+    int find(CharSequence key) {
+      /* compare plain bytes, encoding the key only once */
+      BytesRef bytes = new BytesRef(key);
+      BytesRef probe = new BytesRef(data, 0, 0);
+      int low = 0;
+      int high = size() - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        probe.offset = offsets[mid];
+        probe.length = offsets[mid + 1] - offsets[mid];
+        int cmp = probe.compareTo(bytes);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+  }
+
+  static final class MappedStringTable extends StringTable {
+    private final IntBuffer offsets;
+    private final ByteBuffer data;
+    private final int size;
+
+    MappedStringTable(ByteBuffer section, int count) {
+      size = count;
+      offsets = section.asIntBuffer();
+      section.position(section.position() + (count + 1) * 4);
+      data = section.slice();
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    String get(int id) {
+      int start = offsets.get(id);
+      byte[] bytes = new byte[offsets.get(id + 1) - start];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = data.get(start + i);
+      }
+      return new BytesRef(bytes).utf8ToString();
+    }
+
+    @Override
+    int compare(int id, CharSequence key) {
+      return SnapshotFormat.compareUTF8(data, offsets.get(id),
+          offsets.get(id + 1), key);
+    }
+  }
+
+  /** Rows of int entries in compressed row storage */
+  abstract static class Rows {
+
+    static Rows load(ByteBuffer section, int width, Storage storage) {
+      int rows = section.getInt();
+      if (storage == Storage.MAPPED) {
+        return new MappedRows(section, rows, width);
+      }
+      return new HeapRows(section, rows, width);
+    }
+
+    /** the number of entries in a row */
+    abstract int length(int row);
+
+    /** the value at a given column of an entry */
+    abstract int get(int row, int entry, int column);
+  }
+
+  static final class HeapRows extends Rows {
+    private final int[] offsets;
+    private final int[] values;
+    private final int width;
+
+    HeapRows(ByteBuffer section, int rows, int width) {
+      this.offsets = readInts(section, rows + 1);
+      this.values = readInts(section, offsets[rows] * width);
+      this.width = width;
+    }
+
+    @Override
+    int length(int row) {
+      return offsets[row + 1] - offsets[row];
+    }
+
+    @Override
+    int get(int row, int entry, int column) {
+      return values[(offsets[row] + entry) * width + column];
+    }
+  }
+
+  static final class MappedRows extends Rows {
+    private final IntBuffer offsets;
+    private final IntBuffer values;
+    private final int width;
+
+    MappedRows(ByteBuffer section, int rows, int width) {
+      this.offsets = section.asIntBuffer();
+      section.position(section.position() + (rows + 1) * 4);
+      this.values = section.asIntBuffer();
+      this.width = width;
+    }
+
+    @Override
+    int length(int row) {
+      return offsets.get(row + 1) - offsets.get(row);
+    }
+
+    @Override
+    int get(int row, int entry, int column) {
+      return values.get((offsets.get(row) + entry) * width + column);
+    }
+  }
+
+  /* the label types by the kind of a posting */
+  private static final SKOSType[] KIND_TYPES = {SKOSType.PREF, SKOSType.ALT,
+      SKOSType.HIDDEN};
+
+  private final Properties meta;
+
+  private final Profile profile;
+
+  private final StringTable uris;
+
+  private final StringTable labels;
+
+  private final ByteBuffer flags;
+
+  private final Rows pref;
+  private final Rows alt;
+  private final Rows hidden;
+  private final Rows broader;
+  private final Rows narrower;
+  private final Rows broaderTransitive;
+  private final Rows narrowerTransitive;
+  private final Rows related;
+  private final Rows labelConcepts;
+  private final Rows broaderLevels;
+  private final Rows narrowerLevels;
+
+  private final LabelNormalizer normalizer;
+
+  /* the keys labels are looked up by and their postings, or the labels */
+  private final StringTable keys;
+  private final Rows keyConcepts;
+
+  private final Storage storage;
+
+  /** The mapped snapshot file */
+  private final MappedByteBuffer mapped;
+
+  /**
+   * Loads a snapshot onto the heap
+   *
+   * @param snapshot
+   *          a snapshot written by {@link SnapshotWriter}
+   * @throws IOException
+   *           if the file can not be read or is not a valid snapshot
+   */
+  public SnapshotEngineImpl(File snapshot) throws IOException {
+    this(snapshot, Storage.HEAP);
+  }
+
+  /**
+   * Loads a snapshot
+   *
+   * @param snapshot
+   *          a snapshot written by {@link SnapshotWriter}
+   * @param storage
+   *          where to keep the snapshot data
+   * @throws IOException
+   *           if the file can not be read or is not a valid snapshot
+   */
+  public SnapshotEngineImpl(File snapshot, Storage storage) throws IOException {
+    this.storage = storage;
+    MappedByteBuffer buffer = SnapshotFormat.map(snapshot);
+    mapped = storage == Storage.MAPPED ? buffer : null;
+    Map<Integer,ByteBuffer> sections = SnapshotFormat.readSections(buffer);
+
+    meta = SnapshotFormat.readMeta(SnapshotFormat.section(sections,
+        SnapshotFormat.SECTION_META));
+    try {
+      profile = Profile.valueOf(meta.getProperty(SnapshotFormat.META_PROFILE));
+    } catch (RuntimeException e) {
+      throw new IOException("Corrupt snapshot: unknown profile in " + snapshot);
+    }
+
+    uris = StringTable.load(SnapshotFormat.section(sections,
+        SnapshotFormat.SECTION_URIS), storage);
+    labels = StringTable.load(SnapshotFormat.section(sections,
+        SnapshotFormat.SECTION_LABELS), storage);
+
+    ByteBuffer flagSection = SnapshotFormat.section(sections,
+        SnapshotFormat.SECTION_CONCEPT_FLAGS);
+    flagSection.getInt();
+    if (storage == Storage.MAPPED) {
+      flags = flagSection.slice();
+    } else {
+      byte[] bytes = new byte[flagSection.remaining()];
+      flagSection.get(bytes);
+      flags = ByteBuffer.wrap(bytes);
+    }
+
+    pref = rows(sections, SnapshotFormat.SECTION_PREF, 1);
+    alt = rows(sections, SnapshotFormat.SECTION_ALT, 1);
+    hidden = rows(sections, SnapshotFormat.SECTION_HIDDEN, 1);
+    broader = rows(sections, SnapshotFormat.SECTION_BROADER, 1);
+    narrower = rows(sections, SnapshotFormat.SECTION_NARROWER, 1);
+    broaderTransitive = rows(sections,
+        SnapshotFormat.SECTION_BROADER_TRANSITIVE, 1);
+    narrowerTransitive = rows(sections,
+        SnapshotFormat.SECTION_NARROWER_TRANSITIVE, 1);
+    related = rows(sections, SnapshotFormat.SECTION_RELATED, 1);
+    labelConcepts = rows(sections, SnapshotFormat.SECTION_LABEL_CONCEPTS, 1);
+
+    if (profile.hasLevels()) {
+      broaderLevels = rows(sections, SnapshotFormat.SECTION_BROADER_LEVELS, 2);
+      narrowerLevels = rows(sections, SnapshotFormat.SECTION_NARROWER_LEVELS,
+          2);
+    } else {
+      broaderLevels = null;
+      narrowerLevels = null;
+    }
+
+    try {
+      normalizer = LabelNormalizer.parse(meta
+          .getProperty(SnapshotFormat.META_NORMALIZER));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Corrupt snapshot: unknown normalizer in "
+          + snapshot);
+    }
+    if (normalizer.isDefault()) {
+      keys = labels;
+      keyConcepts = labelConcepts;
+    } else {
+      keys = StringTable.load(SnapshotFormat.section(sections,
+          SnapshotFormat.SECTION_KEYS), storage);
+      keyConcepts = rows(sections, SnapshotFormat.SECTION_KEY_CONCEPTS, 1);
+    }
+  }
+
+  private Rows rows(Map<Integer,ByteBuffer> sections, int id, int width)
+      throws IOException {
+    return Rows.load(SnapshotFormat.section(sections, id), width, storage);
+  }
+
+  private static int[] readInts(ByteBuffer buffer, int count) {
+    int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + count * 4);
+    return values;
+  }
+
+  /**
+   * Loads a mapped snapshot into physical memory, so that the first lookups
+   * do not take page faults. Snapshots kept on the heap are loaded already.
+   */
+  public void warmUp() {
+    if (mapped != null) {
+      mapped.load();
+    }
+  }
+
+  /** Returns the meta data recorded when compiling the snapshot */
+  public Properties getMeta() {
+    Properties copy = new Properties();
+    copy.putAll(meta);
+    return copy;
+  }
+
+  /** Returns the profile the snapshot was compiled for */
+  public Profile getProfile() {
+    return profile;
+  }
+
+  /** Returns where the snapshot data is kept */
+  public Storage getStorage() {
+    return storage;
+  }
+
+  /** Returns the normalizer the snapshot was compiled with */
+  public LabelNormalizer getNormalizer() {
+    return normalizer;
+  }
+
+  /*
+   * Id-based accessors. Lookups compare the given keys with the stored UTF-8
+   * bytes in place, so that no strings are created unless asked for.
+   */
+
+  /**
+   * Returns the id of a concept, or -1 if the URI denotes no concept
+   */
+  public int getConceptId(CharSequence conceptURI) {
+    int id = uris.find(conceptURI);
+    if (id < 0 || (flags.get(id) & SnapshotFormat.FLAG_CONCEPT) == 0) {
+      return -1;
+    }
+    return id;
+  }
+
+  /** Returns the URI of a concept id */
+  public String getConceptURI(int conceptId) {
+    return uris.get(conceptId);
+  }
+
+  /**
+   * Returns the id of a label, or -1 if no concept carries it. Labels are
+   * stored in lower case.
+   */
+  public int getLabelId(CharSequence label) {
+    return labels.find(label);
+  }
+
+  /** Returns the label with a given id */
+  public String getLabel(int labelId) {
+    return labels.get(labelId);
+  }
+
+  /** Returns the labels of a given kind, null for unknown concepts */
+  private String[] readLabels(String conceptURI, Rows kind) {
+    int id = getConceptId(conceptURI);
+    if (id < 0) {
+      SKOSWarnings.UNKNOWN_CONCEPTS.warn("Unknown concept {}", conceptURI);
+      return null;
+    }
+
+    String[] result = new String[kind.length(id)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = labels.get(kind.get(id, i, 0));
+    }
+    return result;
+  }
+
+  /** Returns the related URIs of a given kind, null for unknown concepts */
+  private String[] readConcepts(String conceptURI, Rows relation) {
+    int id = getConceptId(conceptURI);
+    if (id < 0) {
+      SKOSWarnings.UNKNOWN_CONCEPTS.warn("Unknown concept {}", conceptURI);
+      return null;
+    }
+
+    String[] result = new String[relation.length(id)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = uris.get(relation.get(id, i, 0));
+    }
+    return result;
+  }
+
+  /** Adds the pref and alt labels of a concept */
+  private void addLabels(int id, List<String> result) {
+    for (int i = 0; i < pref.length(id); i++) {
+      result.add(labels.get(pref.get(id, i, 0)));
+    }
+    for (int i = 0; i < alt.length(id); i++) {
+      result.add(labels.get(alt.get(id, i, 0)));
+    }
+  }
+
+  /** Returns the labels of all related concepts of a given kind */
+  private String[] readRelatedLabels(String conceptURI, Rows relation) {
+    List<String> result = new ArrayList<String>();
+    int id = getConceptId(conceptURI);
+    if (id >= 0) {
+      for (int i = 0; i < relation.length(id); i++) {
+        addLabels(relation.get(id, i, 0), result);
+      }
+    }
+    return result.toArray(new String[result.size()]);
+  }
+
+  /** Returns the labels of the concepts at a given level of the closure */
+  private String[] readLeveledLabels(String conceptURI, Rows levels, int level) {
+    List<String> result = new ArrayList<String>();
+    int id = getConceptId(conceptURI);
+    if (id >= 0 && levels != null) {
+      for (int i = 0; i < levels.length(id); i++) {
+        if (levels.get(id, i, 1) == level) {
+          addLabels(levels.get(id, i, 0), result);
+        }
+      }
+    }
+    return result.toArray(new String[result.size()]);
+  }
+
+  @Override
+  public String[] getPrefLabels(String conceptURI) throws IOException {
+    return readLabels(conceptURI, pref);
+  }
+
+  @Override
+  public String[] getAltLabels(String conceptURI) throws IOException {
+    return readLabels(conceptURI, alt);
+  }
+
+  @Override
+  public String[] getHiddenLabels(String conceptURI) throws IOException {
+    return readLabels(conceptURI, hidden);
+  }
+
+  @Override
+  public String[] getRelatedLabels(String conceptURI) throws IOException {
+    return readRelatedLabels(conceptURI, related);
+  }
+
+  @Override
+  public String[] getRelatedConcepts(String conceptURI) throws IOException {
+    return readConcepts(conceptURI, related);
+  }
+
+  @Override
+  public String[] getBroaderConcepts(String conceptURI) throws IOException {
+    return readConcepts(conceptURI, broader);
+  }
+
+  @Override
+  public String[] getNarrowerConcepts(String conceptURI) throws IOException {
+    return readConcepts(conceptURI, narrower);
+  }
+
+  @Override
+  public String[] getBroaderLabels(String conceptURI) throws IOException {
+    return readRelatedLabels(conceptURI, broader);
+  }
+
+  @Override
+  public String[] getNarrowerLabels(String conceptURI) throws IOException {
+    return readRelatedLabels(conceptURI, narrower);
+  }
+
+  @Override
+  public String[] getBroaderTransitiveConcepts(String conceptURI)
+      throws IOException {
+    return readConcepts(conceptURI, broaderTransitive);
+  }
+
+  @Override
+  public String[] getNarrowerTransitiveConcepts(String conceptURI)
+      throws IOException {
+    return readConcepts(conceptURI, narrowerTransitive);
+  }
+
+  @Override
+  public String[] getBroaderTransitiveLabels(String conceptURI)
+      throws IOException {
+    return readRelatedLabels(conceptURI, broaderTransitive);
+  }
+
+  @Override
+  public String[] getNarrowerTransitiveLabels(String conceptURI)
+      throws IOException {
+    return readRelatedLabels(conceptURI, narrowerTransitive);
+  }
+
+  /**
+   * Returns the ids of the concepts carrying a given label, as far as the
+   * profile considers them
+   */
+  public int[] getConceptIds(int labelId) {
+    return conceptIds(labelConcepts, labelId);
+  }
+
+  /**
+   * Returns the ids of the concepts of a row of label or key postings, as far
+   * as the profile considers them
+   */
+  private int[] conceptIds(Rows postings, int row) {
+    int length = postings.length(row);
+    int[] ids = new int[length];
+    int count = 0;
+
+    int max = profile.maxConcepts();
+    for (int i = 0; i < length && count != max; i++) {
+      int posting = postings.get(row, i, 0);
+      int id = posting >>> SnapshotFormat.KIND_BITS;
+      int kind = posting & SnapshotFormat.KIND_MASK;
+
+      if ((count > 0 && ids[count - 1] == id)
+          || (kind == SnapshotFormat.KIND_HIDDEN && !profile
+              .matchesHiddenLabels())) {
+        continue;
+      }
+      ids[count++] = id;
+    }
+
+    return count == length ? ids : Arrays.copyOf(ids, count);
+  }
+
+  /**
+   * Intersects the Levenshtein automaton of each number of edits with the
+   * sorted key table, skipping keys matched with fewer edits
+   */
+  @Override
+  public List<Match> getFuzzyConcepts(String label, int maxEdits,
+      int prefixLength) throws IOException {
+    FuzzyLookups.checkEdits(maxEdits);
+    String key = normalizer.normalize(label);
+    SortedStrings dictionary = new SortedStrings() {
+      @Override
+      public int size() {
+        return keys.size();
+      }
+
+      @Override
+      public String get(int index) {
+        return keys.get(index);
+      }
+    };
+
+    // the ids of the keys matched, with the edits they were matched with
+    final Map<Integer,Integer> matched = new LinkedHashMap<Integer,Integer>();
+    for (int edits = 0; edits <= maxEdits; edits++) {
+      final int distance = edits;
+      FuzzyLookups.intersect(dictionary, new CharacterRunAutomaton(
+          FuzzyLookups.automaton(key, edits, prefixLength)), false,
+          new RangeVisitor() {
+            public void visit(int from, int to) {
+              for (int id = from; id < to
+                  && matched.size() < FuzzyLookups.MAX_MATCHES; id++) {
+                if (!matched.containsKey(id) && isLookedUp(id)) {
+                  matched.put(id, distance);
+                }
+              }
+            }
+          });
+    }
+
+    List<Match> matches = new ArrayList<Match>();
+    for (Map.Entry<Integer,Integer> entry : matched.entrySet()) {
+      addMatches(matches, entry.getKey(), entry.getValue());
+    }
+    return FuzzyLookups.best(matches);
+  }
+
+  /**
+   * Returns whether concepts are looked up by a key, which they are not if
+   * only hidden labels carry it and the profile does not match these, just
+   * like the index does not look into their field
+   */
+  private boolean isLookedUp(int keyId) {
+    if (profile.matchesHiddenLabels()) {
+      return true;
+    }
+    int length = keyConcepts.length(keyId);
+    for (int i = 0; i < length; i++) {
+      int posting = keyConcepts.get(keyId, i, 0);
+      if ((posting & SnapshotFormat.KIND_MASK) != SnapshotFormat.KIND_HIDDEN) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds the concepts carrying a key, like {@link #getConceptIds(int)}, with
+   * the type they carry it as
+   */
+  private void addMatches(List<Match> matches, int keyId, int edits) {
+    String label = keys.get(keyId);
+    int length = keyConcepts.length(keyId);
+    int count = 0;
+    int last = -1;
+
+    int max = profile.maxConcepts();
+    for (int i = 0; i < length; i++) {
+      int posting = keyConcepts.get(keyId, i, 0);
+      int id = posting >>> SnapshotFormat.KIND_BITS;
+      int kind = posting & SnapshotFormat.KIND_MASK;
+
+      if (kind == SnapshotFormat.KIND_HIDDEN
+          && !profile.matchesHiddenLabels()) {
+        continue;
+      }
+      if (id != last) {
+        if (count == max) {
+          break;
+        }
+        count++;
+        last = id;
+      }
+      matches.add(new Match(label, uris.get(id), KIND_TYPES[kind], edits));
+    }
+  }
+
+  @Override
+  public void visitLabels(LabelVisitor visitor) throws IOException {
+    for (int labelId = 0; labelId < labels.size(); labelId++) {
+      int[] ids = getConceptIds(labelId);
+      if (ids.length == 0) {
+        continue;
+      }
+      String label = labels.get(labelId);
+      for (int id : ids) {
+        visitor.visit(label, uris.get(id));
+      }
+    }
+  }
+
+  @Override
+  public String[] getConcepts(String label) throws IOException {
+    int keyId = keys.find(normalizer.normalize(label));
+    if (keyId < 0) {
+      return new String[0];
+    }
+
+    int[] ids = conceptIds(keyConcepts, keyId);
+    String[] concepts = new String[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      concepts[i] = uris.get(ids[i]);
+    }
+    return concepts;
+  }
+
+  @Override
+  public String[] getAltTerms(String label) throws IOException {
+    List<String> result = new ArrayList<String>();
+
+    for (String conceptURI : getConcepts(label)) {
+      String[] altLabels = getAltLabels(conceptURI);
+      if (altLabels != null) {
+        for (String altLabel : altLabels) {
+          result.add(altLabel);
+        }
+      }
+    }
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /*
+   * Like MeSHEngineImpl, the leveled accessors return the labels of the
+   * concepts at the given level, also for the URI variants.
+   */
+
+  @Override
+  public String[] getLeveledBroaderTermsURI(String conceptURI, int level)
+      throws IOException {
+    return readLeveledLabels(conceptURI, broaderLevels, level);
+  }
+
+  @Override
+  public String[] getLeveledNarrowerTermsURI(String conceptURI, int level)
+      throws IOException {
+    return readLeveledLabels(conceptURI, narrowerLevels, level);
+  }
+
+  @Override
+  public String[] getLeveledBroaderTermsLabels(String conceptURI, int level)
+      throws IOException {
+    return readLeveledLabels(conceptURI, broaderLevels, level);
+  }
+
+  @Override
+  public String[] getLeveledNarrowerTermsLabels(String conceptURI, int level)
+      throws IOException {
+    return readLeveledLabels(conceptURI, narrowerLevels, level);
+  }
+}
@@ -0,0 +1,302 @@
+package at.ac.univie.mminf.luceneSKOS.skos.impl;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.lucene.util.BytesRef;
+
+import at.ac.univie.mminf.luceneSKOS.skos.LabelNormalizer;
+
+/**
+ * The layout of a binary engine snapshot as written by {@link SnapshotWriter}.
+ *
+ * A snapshot starts with the magic bytes {@value #MAGIC}, the format version
+ * and a table of sections, each given by its id, its absolute offset and its
+ * length. All sections start at 8-byte aligned offsets. Integers are stored
+ * in big-endian byte order.
+ *
+ * Concepts and labels are identified by their position in the URI and label
+ * tables, which are sorted by their UTF-8 bytes so that they can be searched
+ * by binary search. The remaining sections are adjacency lists in compressed
+ * row storage: a row count, row offsets and the concatenated rows.
+ *
+ * Snapshots compiled with a {@link LabelNormalizer} other than the default
+ * hold the keys of the labels in a table of their own, with the postings of
+ * each key, so that lookups need not touch the labels; otherwise the labels
+ * are the keys.
+ *
+ * <pre>
+ *   string table:  count, offsets[count + 1], UTF-8 bytes
+ *   adjacency:     rows, offsets[rows + 1], values[offsets[rows] * width]
+ *   flags:         count, bytes[count]
+ *   meta:          count, (key, value)*   with strings as length, UTF-8 bytes
+ * </pre>
+ */
+public final class SnapshotFormat {
+
+  /** The file suffix of engine snapshots */
+  public static final String SUFFIX = ".skosnap";
+
+  public static final String MAGIC = "SKOSSNAP";
+
+  /**
+   * Version of the snapshot layout. Must be increased whenever the sections
+   * change incompatibly.
+   */
+  public static final int VERSION = 1;
+
+  /*
+   * Section ids
+   */
+  public static final int SECTION_META = 0;
+  public static final int SECTION_URIS = 1;
+  public static final int SECTION_LABELS = 2;
+  public static final int SECTION_CONCEPT_FLAGS = 3;
+  public static final int SECTION_PREF = 4;
+  public static final int SECTION_ALT = 5;
+  public static final int SECTION_HIDDEN = 6;
+  public static final int SECTION_BROADER = 7;
+  public static final int SECTION_NARROWER = 8;
+  public static final int SECTION_BROADER_TRANSITIVE = 9;
+  public static final int SECTION_NARROWER_TRANSITIVE = 10;
+  public static final int SECTION_RELATED = 11;
+  public static final int SECTION_LABEL_CONCEPTS = 12;
+  public static final int SECTION_BROADER_LEVELS = 13;
+  public static final int SECTION_NARROWER_LEVELS = 14;
+  public static final int SECTION_KEYS = 15;
+  public static final int SECTION_KEY_CONCEPTS = 16;
+
+  /** Marks URIs which denote concepts rather than mere relation targets */
+  public static final byte FLAG_CONCEPT = 1;
+
+  /*
+   * The kind of label a concept is found by, stored in the lowest bits of the
+   * label postings next to the concept id
+   */
+  public static final int KIND_PREF = 0;
+  public static final int KIND_ALT = 1;
+  public static final int KIND_HIDDEN = 2;
+  public static final int KIND_BITS = 2;
+  public static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+  /*
+   * Keys of the meta section
+   */
+  public static final String META_PROFILE = "profile";
+  public static final String META_CONCEPTS = "concepts";
+  public static final String META_LABELS = "labels";
+  public static final String META_CREATED = "created";
+  public static final String META_NORMALIZER = "normalizer";
+
+  /**
+   * The engine behaviour a snapshot was compiled for
+   */
+  public enum Profile {
+    /** plain SKOS lookups, as done by {@link SKOSEngineImpl} */
+    SKOS,
+    /** adds the leveled hierarchy closure, as done by {@link MeSHEngineImpl} */
+    MESH,
+    /**
+     * like MESH, but lookups ignore hidden labels and are bounded, as done by
+     * {@link SNOMEDEngineImpl}
+     */
+    SNOMED;
+
+    boolean hasLevels() {
+      return this != SKOS;
+    }
+
+    boolean matchesHiddenLabels() {
+      return this != SNOMED;
+    }
+
+    /** the number of concepts returned for a label, or -1 if unbounded */
+    int maxConcepts() {
+      // SNOMEDEngineImpl stops after exceeding its limit of 10
+      return this == SNOMED ? 11 : -1;
+    }
+  }
+
+  private SnapshotFormat() {}
+
+  /**
+   * Maps a snapshot read-only into memory and validates its header
+   *
+   * @throws IOException
+   *           if the file is not a snapshot of a supported version
+   */
+  static MappedByteBuffer map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot too large to be mapped: " + file);
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size());
+
+      byte[] magic = new byte[MAGIC.length()];
+      if (buffer.remaining() < magic.length + 8) {
+        throw new IOException("Not an engine snapshot: " + file);
+      }
+      buffer.get(magic);
+      if (!MAGIC.equals(new String(magic, "US-ASCII"))) {
+        throw new IOException("Not an engine snapshot: " + file);
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported snapshot version " + version
+            + " (expected " + VERSION + "): " + file);
+      }
+      return buffer;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Reads the section table of a mapped snapshot
+   *
+   * @return the sections by id, each as a slice of the given buffer
+   */
+  static Map<Integer,ByteBuffer> readSections(ByteBuffer snapshot)
+      throws IOException {
+    ByteBuffer header = snapshot.duplicate();
+    header.position(MAGIC.length() + 4);
+    int count = header.getInt();
+
+    Map<Integer,ByteBuffer> sections = new HashMap<Integer,ByteBuffer>();
+    for (int i = 0; i < count; i++) {
+      int id = header.getInt();
+      long offset = header.getLong();
+      long length = header.getLong();
+      if (offset < 0 || length < 0 || offset + length > snapshot.capacity()) {
+        throw new IOException("Corrupt snapshot: section " + id
+            + " exceeds the file");
+      }
+      ByteBuffer section = snapshot.duplicate();
+      section.limit((int) (offset + length));
+      section.position((int) offset);
+      sections.put(id, section.slice());
+    }
+    return sections;
+  }
+
+  /**
+   * Returns a required section
+   */
+  static ByteBuffer section(Map<Integer,ByteBuffer> sections, int id)
+      throws IOException {
+    ByteBuffer section = sections.get(id);
+    if (section == null) {
+      throw new IOException("Corrupt snapshot: section " + id + " missing");
+    }
+    return section.duplicate();
+  }
+
+  /**
+   * Reads the meta section
+   */
+  static Properties readMeta(ByteBuffer section) {
+    Properties meta = new Properties();
+    int count = section.getInt();
+    for (int i = 0; i < count; i++) {
+      String key = readString(section);
+      meta.setProperty(key, readString(section));
+    }
+    return meta;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new BytesRef(bytes).utf8ToString();
+  }
+
+  /**
+   * Compares UTF-8 bytes stored in a buffer with a key, in the order of their
+   * UTF-8 bytes (which is the order of their code points), without decoding
+   * the stored bytes into a string
+   *
+   * @param data
+   *          the buffer, which is accessed by absolute positions only
+   * @param start
+   *          the position of the first byte
+   * @param end
+   *          the position after the last byte
+   * @return a negative number, zero or a positive number as the stored bytes
+   *         are less than, equal to or greater than the key
+   */
+  static int compareUTF8(ByteBuffer data, int start, int end, CharSequence key) {
+    int i = start;
+    int j = 0;
+    int keyLength = key.length();
+    while (i < end && j < keyLength) {
+      int b = data.get(i) & 0xff;
+      int stored;
+      if (b < 0x80) {
+        stored = b;
+        i++;
+      } else if (b < 0xe0) {
+        stored = ((b & 0x1f) << 6) | (data.get(i + 1) & 0x3f);
+        i += 2;
+      } else if (b < 0xf0) {
+        stored = ((b & 0x0f) << 12) | ((data.get(i + 1) & 0x3f) << 6)
+            | (data.get(i + 2) & 0x3f);
+        i += 3;
+      } else {
+        stored = ((b & 0x07) << 18) | ((data.get(i + 1) & 0x3f) << 12)
+            | ((data.get(i + 2) & 0x3f) << 6) | (data.get(i + 3) & 0x3f);
+        i += 4;
+      }
+
+      int wanted = Character.codePointAt(key, j);
+      j += Character.charCount(wanted);
+      if (wanted >= Character.MIN_SURROGATE && wanted <= Character.MAX_SURROGATE) {
+        // unpaired surrogates are written as the replacement character
+        wanted = 0xfffd;
+      }
+
+      if (stored != wanted) {
+        return stored < wanted ? -1 : 1;
+      }
+    }
+    if (i < end) {
+      return 1;
+    }
+    return j < keyLength ? -1 : 0;
+  }
+
+  /** Size of the fixed part of the header */
+  static long headerSize(int sections) {
+    return align(MAGIC.length() + 4 + 4 + sections * (4 + 8 + 8));
+  }
+
+  /** Rounds a position up to the next multiple of 8 */
+  static long align(long position) {
+    return (position + 7) & ~7;
+  }
+}
@@ -0,0 +1,655 @@
+package at.ac.univie.mminf.luceneSKOS.skos.impl;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.ac.univie.mminf.luceneSKOS.skos.LabelNormalizer;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOS;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat.Profile;
+
+import com.hp.hpl.jena.ontology.AnnotationProperty;
+import com.hp.hpl.jena.ontology.ObjectProperty;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResIterator;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * Compiles a SKOS model into a binary engine snapshot (see
+ * {@link SnapshotFormat}), which is loaded by {@link SnapshotEngineImpl}
+ * without parsing, entailing or indexing the model again.
+ *
+ * The snapshot holds the same data the Lucene-backed engines index: the
+ * lower-cased labels of the considered languages, the concept relations and,
+ * for the MeSH and SNOMED profiles, the broader and narrower closure of each
+ * concept by hierarchy level. Like the Lucene-backed engines, the writer
+ * computes the key of each label once with the given {@link LabelNormalizer}.
+ */
+public class SnapshotWriter {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(SnapshotWriter.class);
+
+  /* the label properties, in the order of the KIND_* constants */
+  private static final AnnotationProperty[] LABEL_PROPERTIES = {
+      SKOS.prefLabel, SKOS.altLabel, SKOS.hiddenLabel};
+
+  /* the relation properties, in the order of the relation sections */
+  private static final ObjectProperty[] RELATION_PROPERTIES = {SKOS.broader,
+      SKOS.narrower, SKOS.broaderTransitive, SKOS.narrowerTransitive,
+      SKOS.related};
+
+  private static final int[] RELATION_SECTIONS = {
+      SnapshotFormat.SECTION_BROADER, SnapshotFormat.SECTION_NARROWER,
+      SnapshotFormat.SECTION_BROADER_TRANSITIVE,
+      SnapshotFormat.SECTION_NARROWER_TRANSITIVE,
+      SnapshotFormat.SECTION_RELATED};
+
+  private static final int[] LABEL_SECTIONS = {SnapshotFormat.SECTION_PREF,
+      SnapshotFormat.SECTION_ALT, SnapshotFormat.SECTION_HIDDEN};
+
+  /** The labels and relations collected for a concept */
+  private static class ConceptData {
+    @SuppressWarnings("unchecked")
+    final List<String>[] labels = new List[LABEL_PROPERTIES.length];
+
+    @SuppressWarnings("unchecked")
+    final List<String>[] relations = new List[RELATION_PROPERTIES.length];
+
+    ConceptData() {
+      for (int i = 0; i < labels.length; i++) {
+        labels[i] = new ArrayList<String>();
+      }
+      for (int i = 0; i < relations.length; i++) {
+        relations[i] = new ArrayList<String>();
+      }
+    }
+  }
+
+  private final Profile profile;
+
+  private final LabelNormalizer normalizer;
+
+  /**
+   * The languages to be considered when collecting labels.
+   *
+   * If NULL, all languages are supported
+   */
+  private final Set<String> languages;
+
+  private final Properties meta = new Properties();
+
+  private final Map<String,ConceptData> concepts = new LinkedHashMap<String,ConceptData>();
+
+  /* the URIs of all relation targets */
+  private final Set<String> targets = new HashSet<String>();
+
+  /* the keys of the labels, unless the normalizer is the default */
+  private final Map<String,String> labelKeys = new HashMap<String,String>();
+
+  /* the positions of the sections written */
+  private int[] sectionIds;
+  private long[] sectionOffsets;
+  private long[] sectionLengths;
+  private int sectionCount;
+
+  /**
+   * @param profile
+   *          the engine behaviour to compile for
+   * @param languages
+   *          the label languages to be considered, all if none are given
+   */
+  public SnapshotWriter(Profile profile, String... languages) {
+    this(profile, LabelNormalizer.DEFAULT, languages);
+  }
+
+  /**
+   * @param profile
+   *          the engine behaviour to compile for
+   * @param normalizer
+   *          computes the keys the labels are looked up by
+   * @param languages
+   *          the label languages to be considered, all if none are given
+   */
+  public SnapshotWriter(Profile profile, LabelNormalizer normalizer,
+      String... languages) {
+    this.profile = profile;
+    this.normalizer = normalizer;
+    if (languages != null && languages.length > 0) {
+      this.languages = new TreeSet<String>(Arrays.asList(languages));
+    } else {
+      this.languages = null;
+    }
+    meta.setProperty(SnapshotFormat.META_PROFILE, profile.name());
+    meta.setProperty(SnapshotFormat.META_NORMALIZER, normalizer.toString());
+  }
+
+  /**
+   * Loads, entails and compiles a SKOS file into a snapshot. The manifest of
+   * the source (see {@link IndexManifest}) is recorded in the meta section.
+   *
+   * @param filenameOrURI
+   *          the skos file, which may also be zipped
+   * @param snapshot
+   *          the snapshot file to write
+   * @param profile
+   *          the engine behaviour to compile for
+   * @param languages
+   *          the label languages to be considered, all if none are given
+   * @return the writer, providing statistics about the compiled snapshot
+   * @throws IOException
+   */
+  public static SnapshotWriter compile(String filenameOrURI, File snapshot,
+      Profile profile, String... languages) throws IOException {
+    return compile(filenameOrURI, snapshot, profile, LabelNormalizer.DEFAULT,
+        languages);
+  }
+
+  /**
+   * Like {@link #compile(String, File, Profile, String...)}, looking up
+   * labels by the keys computed by the given normalizer
+   */
+  public static SnapshotWriter compile(String filenameOrURI, File snapshot,
+      Profile profile, LabelNormalizer normalizer, String... languages)
+      throws IOException {
+    SnapshotWriter writer = new SnapshotWriter(profile, normalizer, languages);
+
+    IndexManifest manifest = IndexManifest.forSource(SnapshotEngineImpl.class,
+        filenameOrURI, writer.languages != null ? StringUtils.join(
+            writer.languages, ".") : null);
+    for (Map.Entry<Object,Object> entry : manifest.getProperties().entrySet()) {
+      writer.setMeta((String) entry.getKey(), (String) entry.getValue());
+    }
+
+    Model model = SKOSEngineImpl.loadSKOSModel(filenameOrURI);
+    SKOSEngineImpl.entailSKOSModel(model);
+    writer.addModel(model);
+    model.close();
+
+    writer.write(snapshot);
+    return writer;
+  }
+
+  /**
+   * Records a key-value pair in the meta section of the snapshot
+   */
+  public void setMeta(String key, String value) {
+    meta.setProperty(key, value);
+  }
+
+  /**
+   * Collects the concepts of an entailed SKOS model
+   */
+  public void addModel(Model skosModel) {
+    ResIterator concept_iter = skosModel.listResourcesWithProperty(RDF.type,
+        SKOS.Concept);
+    while (concept_iter.hasNext()) {
+      addConcept(concept_iter.next());
+    }
+  }
+
+  private void addConcept(Resource skos_concept) {
+    String conceptURI = skos_concept.getURI();
+    if (conceptURI == null) {
+      log.warn("Error when compiling concept NO_URI.");
+      return;
+    }
+
+    ConceptData data = concepts.get(conceptURI);
+    if (data == null) {
+      data = new ConceptData();
+      concepts.put(conceptURI, data);
+    }
+
+    for (int i = 0; i < LABEL_PROPERTIES.length; i++) {
+      StmtIterator stmt_iter = skos_concept.listProperties(LABEL_PROPERTIES[i]);
+      while (stmt_iter.hasNext()) {
+        Literal labelLiteral = stmt_iter.nextStatement().getObject()
+            .as(Literal.class);
+        if (languages != null
+            && !languages.contains(labelLiteral.getLanguage())) {
+          continue;
+        }
+        String label = labelLiteral.getLexicalForm();
+        String lowerCased = label.toLowerCase();
+        data.labels[i].add(lowerCased);
+        if (!normalizer.isDefault() && !labelKeys.containsKey(lowerCased)) {
+          labelKeys.put(lowerCased, normalizer.normalize(label));
+        }
+      }
+    }
+
+    for (int i = 0; i < RELATION_PROPERTIES.length; i++) {
+      StmtIterator stmt_iter = skos_concept
+          .listProperties(RELATION_PROPERTIES[i]);
+      while (stmt_iter.hasNext()) {
+        RDFNode concept = stmt_iter.nextStatement().getObject();
+        String uri = concept.canAs(Resource.class) ? concept.as(
+            Resource.class).getURI() : null;
+        if (uri == null) {
+          log.warn("Error when compiling relationship of concept {}.",
+              conceptURI);
+          continue;
+        }
+        data.relations[i].add(uri);
+        targets.add(uri);
+      }
+    }
+  }
+
+  /** Returns the number of concepts collected */
+  public int getConceptCount() {
+    return concepts.size();
+  }
+
+  /**
+   * Writes the snapshot. The file is written under a temporary name first and
+   * renamed when complete, so that engines never map a partial snapshot.
+   */
+  public void write(File file) throws IOException {
+    /* assign ids in the order of the UTF-8 bytes of URIs and labels */
+    Set<String> uris = new HashSet<String>(concepts.keySet());
+    uris.addAll(targets);
+    String[] uriTable = sortUTF8(uris);
+    Map<String,Integer> uriIds = toIds(uriTable);
+
+    Set<String> labels = new HashSet<String>();
+    for (ConceptData data : concepts.values()) {
+      for (List<String> kind : data.labels) {
+        labels.addAll(kind);
+      }
+    }
+    String[] labelTable = sortUTF8(labels);
+    Map<String,Integer> labelIds = toIds(labelTable);
+
+    // the keys and the key ids of the labels, unless the labels are the keys
+    String[] keyTable = null;
+    Map<String,Integer> keyIds = null;
+    if (!normalizer.isDefault()) {
+      keyTable = sortUTF8(new HashSet<String>(labelKeys.values()));
+      Map<String,Integer> ids = toIds(keyTable);
+      keyIds = new HashMap<String,Integer>();
+      for (String label : labelTable) {
+        keyIds.put(label, ids.get(labelKeys.get(label)));
+      }
+    }
+
+    ConceptData[] byId = new ConceptData[uriTable.length];
+    for (Map.Entry<String,ConceptData> entry : concepts.entrySet()) {
+      byId[uriIds.get(entry.getKey())] = entry.getValue();
+    }
+
+    meta.setProperty(SnapshotFormat.META_CONCEPTS,
+        String.valueOf(concepts.size()));
+    meta.setProperty(SnapshotFormat.META_LABELS,
+        String.valueOf(labelTable.length));
+    meta.setProperty(SnapshotFormat.META_CREATED,
+        String.valueOf(System.currentTimeMillis()));
+
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Could not create directory " + parent);
+    }
+    File tmp = new File(parent, "." + file.getName() + ".tmp");
+
+    int sections = 12 + (profile.hasLevels() ? 2 : 0)
+        + (keyTable != null ? 2 : 0);
+    sectionIds = new int[sections];
+    sectionOffsets = new long[sections];
+    sectionLengths = new long[sections];
+    sectionCount = 0;
+
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(tmp), 64 * 1024));
+      try {
+        out.write(new byte[(int) SnapshotFormat.headerSize(sections)]);
+
+        beginSection(out, SnapshotFormat.SECTION_META);
+        writeMeta(out);
+        endSection(out);
+
+        beginSection(out, SnapshotFormat.SECTION_URIS);
+        writeStringTable(out, uriTable);
+        endSection(out);
+
+        beginSection(out, SnapshotFormat.SECTION_LABELS);
+        writeStringTable(out, labelTable);
+        endSection(out);
+
+        beginSection(out, SnapshotFormat.SECTION_CONCEPT_FLAGS);
+        out.writeInt(byId.length);
+        for (ConceptData data : byId) {
+          out.writeByte(data != null ? SnapshotFormat.FLAG_CONCEPT : 0);
+        }
+        endSection(out);
+
+        for (int i = 0; i < LABEL_SECTIONS.length; i++) {
+          int[][] rows = new int[byId.length][];
+          for (int id = 0; id < byId.length; id++) {
+            rows[id] = byId[id] != null ? lookup(byId[id].labels[i], labelIds)
+                : new int[0];
+          }
+          beginSection(out, LABEL_SECTIONS[i]);
+          writeRows(out, rows, 1);
+          endSection(out);
+        }
+
+        int[][][] relations = new int[RELATION_PROPERTIES.length][][];
+        for (int i = 0; i < RELATION_SECTIONS.length; i++) {
+          int[][] rows = new int[byId.length][];
+          for (int id = 0; id < byId.length; id++) {
+            rows[id] = byId[id] != null ? lookup(byId[id].relations[i], uriIds)
+                : new int[0];
+          }
+          relations[i] = rows;
+          beginSection(out, RELATION_SECTIONS[i]);
+          writeRows(out, rows, 1);
+          endSection(out);
+        }
+
+        beginSection(out, SnapshotFormat.SECTION_LABEL_CONCEPTS);
+        writeRows(out, invertLabels(byId, labelTable.length, labelIds), 1);
+        endSection(out);
+
+        if (profile.hasLevels()) {
+          beginSection(out, SnapshotFormat.SECTION_BROADER_LEVELS);
+          writeRows(out, levels(relations[0]), 2);
+          endSection(out);
+
+          beginSection(out, SnapshotFormat.SECTION_NARROWER_LEVELS);
+          writeRows(out, levels(relations[1]), 2);
+          endSection(out);
+        }
+
+        if (keyTable != null) {
+          beginSection(out, SnapshotFormat.SECTION_KEYS);
+          writeStringTable(out, keyTable);
+          endSection(out);
+
+          beginSection(out, SnapshotFormat.SECTION_KEY_CONCEPTS);
+          writeRows(out, invertLabels(byId, keyTable.length, keyIds), 1);
+          endSection(out);
+        }
+      } finally {
+        out.close();
+      }
+
+      if (tmp.length() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot exceeds 2GB and could not be mapped");
+      }
+
+      writeHeader(tmp);
+
+      if (!tmp.renameTo(file)) {
+        file.delete();
+        if (!tmp.renameTo(file)) {
+          throw new IOException("Could not write snapshot " + file);
+        }
+      }
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  private void beginSection(DataOutputStream out, int id) throws IOException {
+    long position = out.size();
+    long aligned = SnapshotFormat.align(position);
+    out.write(new byte[(int) (aligned - position)]);
+    sectionIds[sectionCount] = id;
+    sectionOffsets[sectionCount] = aligned;
+  }
+
+  private void endSection(DataOutputStream out) throws IOException {
+    if (out.size() == Integer.MAX_VALUE) {
+      throw new IOException("Snapshot exceeds 2GB and could not be mapped");
+    }
+    sectionLengths[sectionCount] = out.size() - sectionOffsets[sectionCount];
+    sectionCount++;
+  }
+
+  private void writeHeader(File tmp) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+    try {
+      raf.write(SnapshotFormat.MAGIC.getBytes("US-ASCII"));
+      raf.writeInt(SnapshotFormat.VERSION);
+      raf.writeInt(sectionCount);
+      for (int i = 0; i < sectionCount; i++) {
+        raf.writeInt(sectionIds[i]);
+        raf.writeLong(sectionOffsets[i]);
+        raf.writeLong(sectionLengths[i]);
+      }
+    } finally {
+      raf.close();
+    }
+  }
+
+  private void writeMeta(DataOutputStream out) throws IOException {
+    Set<String> keys = new TreeSet<String>(meta.stringPropertyNames());
+    out.writeInt(keys.size());
+    for (String key : keys) {
+      writeString(out, key);
+      writeString(out, meta.getProperty(key));
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value)
+      throws IOException {
+    BytesRef bytes = new BytesRef(value);
+    out.writeInt(bytes.length);
+    out.write(bytes.bytes, bytes.offset, bytes.length);
+  }
+
+  private static void writeStringTable(DataOutputStream out, String[] table)
+      throws IOException {
+    BytesRef[] bytes = new BytesRef[table.length];
+    out.writeInt(table.length);
+    int offset = 0;
+    out.writeInt(offset);
+    for (int i = 0; i < table.length; i++) {
+      bytes[i] = new BytesRef(table[i]);
+      offset += bytes[i].length;
+      out.writeInt(offset);
+    }
+    for (BytesRef value : bytes) {
+      out.write(value.bytes, value.offset, value.length);
+    }
+  }
+
+  /**
+   * Writes rows of values, each row holding entries of the given width
+   */
+  private static void writeRows(DataOutputStream out, int[][] rows, int width)
+      throws IOException {
+    out.writeInt(rows.length);
+    int offset = 0;
+    out.writeInt(offset);
+    for (int[] row : rows) {
+      offset += row.length / width;
+      out.writeInt(offset);
+    }
+    for (int[] row : rows) {
+      for (int value : row) {
+        out.writeInt(value);
+      }
+    }
+  }
+
+  /**
+   * Builds the postings of each label, or of each key given the key ids of
+   * the labels: the ids of the concepts carrying it, shifted left by
+   * {@link SnapshotFormat#KIND_BITS} and combined with the kind of label, in
+   * ascending order
+   */
+  private static int[][] invertLabels(ConceptData[] byId, int labelCount,
+      Map<String,Integer> labelIds) {
+    int[] counts = new int[labelCount];
+    for (ConceptData data : byId) {
+      if (data != null) {
+        for (List<String> kind : data.labels) {
+          for (String label : kind) {
+            counts[labelIds.get(label)]++;
+          }
+        }
+      }
+    }
+
+    int[][] postings = new int[labelCount][];
+    for (int i = 0; i < labelCount; i++) {
+      postings[i] = new int[counts[i]];
+      counts[i] = 0;
+    }
+
+    for (int id = 0; id < byId.length; id++) {
+      if (byId[id] != null) {
+        for (int kind = 0; kind < byId[id].labels.length; kind++) {
+          for (String label : byId[id].labels[kind]) {
+            int labelId = labelIds.get(label);
+            postings[labelId][counts[labelId]++] = (id << SnapshotFormat.KIND_BITS)
+                | kind;
+          }
+        }
+      }
+    }
+
+    /* concepts are visited in order, but may carry a label twice */
+    for (int i = 0; i < labelCount; i++) {
+      postings[i] = unique(postings[i]);
+    }
+    return postings;
+  }
+
+  /**
+   * Computes the closure of a relation by breadth-first search, as
+   * {@link MeSHEngineImpl} does: each reachable concept is listed once as
+   * (id, level) with the level of its first occurrence.
+   */
+  private static int[][] levels(int[][] relation) {
+    int[][] levels = new int[relation.length][];
+    Set<Integer> seen = new HashSet<Integer>();
+    List<Integer> current = new ArrayList<Integer>();
+    List<Integer> next = new ArrayList<Integer>();
+    List<Integer> entries = new ArrayList<Integer>();
+
+    for (int id = 0; id < relation.length; id++) {
+      seen.clear();
+      entries.clear();
+      current.clear();
+      for (int target : relation[id]) {
+        if (seen.add(target)) {
+          current.add(target);
+        }
+      }
+
+      int level = 1;
+      while (!current.isEmpty()) {
+        for (int concept : current) {
+          entries.add(concept);
+          entries.add(level);
+          for (int target : relation[concept]) {
+            if (seen.add(target)) {
+              next.add(target);
+            }
+          }
+        }
+        current.clear();
+        current.addAll(next);
+        next.clear();
+        level++;
+      }
+
+      levels[id] = toArray(entries);
+    }
+    return levels;
+  }
+
+  private static String[] sortUTF8(Collection<String> values) {
+    BytesRef[] bytes = new BytesRef[values.size()];
+    int i = 0;
+    for (String value : values) {
+      bytes[i++] = new BytesRef(value);
+    }
+    Arrays.sort(bytes);
+
+    String[] sorted = new String[bytes.length];
+    for (i = 0; i < bytes.length; i++) {
+      sorted[i] = bytes[i].utf8ToString();
+    }
+    return sorted;
+  }
+
+  private static Map<String,Integer> toIds(String[] table) {
+    Map<String,Integer> ids = new HashMap<String,Integer>(table.length * 2);
+    for (int i = 0; i < table.length; i++) {
+      ids.put(table[i], i);
+    }
+    return ids;
+  }
+
+  private static int[] lookup(List<String> values, Map<String,Integer> ids) {
+    int[] result = new int[values.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = ids.get(values.get(i));
+    }
+    return result;
+  }
+
+  private static int[] unique(int[] sorted) {
+    Arrays.sort(sorted);
+    int length = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (length == 0 || sorted[length - 1] != sorted[i]) {
+        sorted[length++] = sorted[i];
+      }
+    }
+    return length == sorted.length ? sorted : Arrays.copyOf(sorted, length);
+  }
+
+  private static int[] toArray(List<Integer> values) {
+    int[] result = new int[values.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = values.get(i);
+    }
+    return result;
+  }
+}
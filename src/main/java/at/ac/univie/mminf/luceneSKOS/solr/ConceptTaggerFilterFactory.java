@@ -0,0 +1,92 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.ConceptDictionary;
+import at.ac.univie.mminf.luceneSKOS.analysis.ConceptTaggerFilter;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * A factory for plugging the {@link ConceptTaggerFilter} into Apache Solr,
+ * e.g. for a field holding the concepts mentioned by a document:
+ *
+ * <pre>
+ * &lt;fieldType name="concepts" class="solr.TextField" omitNorms="true"&gt;
+ *   &lt;analyzer&gt;
+ *     &lt;tokenizer class="solr.StandardTokenizerFactory"/&gt;
+ *     &lt;filter class="solr.LowerCaseFilterFactory"/&gt;
+ *     &lt;filter class="at.ac.univie.mminf.luceneSKOS.solr.ConceptTaggerFilterFactory"
+ *       skosFile="ukat_examples.n3"/&gt;
+ *   &lt;/analyzer&gt;
+ * &lt;/fieldType&gt;
+ * </pre>
+ *
+ * It takes the arguments of the {@link SKOSFilterFactory} for setting up the
+ * engine. The labels are compiled while the engine is set up, split into words
+ * by a {@link StandardAnalyzer} without stop words, so the engine is only
+ * ready with its dictionary. As the tagger cannot pass tokens through, token
+ * streams wait for the engine by default.
+ */
+public class ConceptTaggerFilterFactory extends SKOSFilterFactory {
+
+  private volatile ConceptDictionary dictionary;
+
+  public ConceptTaggerFilterFactory(Map<String,String> args) {
+    super(withDefaults(args));
+  }
+
+  private static Map<String,String> withDefaults(Map<String,String> args) {
+    if (!args.containsKey("expansionType")) {
+      args.put("expansionType", "label");
+    }
+    if (!args.containsKey("pending")) {
+      args.put("pending", "block");
+    }
+    return args;
+  }
+
+  /**
+   * Compiles the dictionary from the labels of the engine, as part of setting
+   * it up
+   */
+  @Override
+  protected void prepare(SKOSEngine engine) throws IOException {
+    dictionary = ConceptDictionary.compile(engine, new StandardAnalyzer(
+        luceneMatchVersion, CharArraySet.EMPTY_SET));
+  }
+
+  @Override
+  protected TokenStream createFilter(TokenStream input, SKOSEngine skosEngine) {
+    return new ConceptTaggerFilter(input, dictionary);
+  }
+
+  @Override
+  public String getDescription() {
+    ConceptDictionary compiled = dictionary;
+    return "SKOS concept tagging"
+        + (compiled != null ? " with " + compiled.getLabelCount()
+            + " labels of " + compiled.getConceptCount() + " concepts" : "");
+  }
+
+}
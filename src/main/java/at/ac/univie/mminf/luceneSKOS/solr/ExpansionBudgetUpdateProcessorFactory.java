@@ -0,0 +1,123 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.DistributingUpdateProcessorFactory;
+import org.apache.solr.update.processor.RunUpdateProcessorFactory;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorChain;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+import org.apache.solr.util.plugin.SolrCoreAware;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.ExpansionBudget;
+
+/**
+ * Marks the documents added, so that the maxExpansionsPerDocument budget of
+ * the {@link SKOSFilterFactory} applies to all fields of a document, e.g.
+ * 
+ * <pre>
+ * &lt;updateRequestProcessorChain name="skos" default="true"&gt;
+ *   &lt;processor class="solr.LogUpdateProcessorFactory"/&gt;
+ *   &lt;processor class="solr.DistributedUpdateProcessorFactory"/&gt;
+ *   &lt;processor class="at.ac.univie.mminf.luceneSKOS.solr.ExpansionBudgetUpdateProcessorFactory"/&gt;
+ *   &lt;processor class="solr.RunUpdateProcessorFactory"/&gt;
+ * &lt;/updateRequestProcessorChain&gt;
+ * </pre>
+ * 
+ * Without it, the per document budget does not apply. It must come after the
+ * DistributedUpdateProcessorFactory, directly before the
+ * RunUpdateProcessorFactory: in SolrCloud, the updates forwarded to replicas
+ * skip the processors before the distributed one, so replicas would analyze
+ * without the budget and index other expansions than the leader. Solr
+ * inserts the distributed processor by itself when it is not configured, so
+ * it must be configured explicitly. Chains placing this processor elsewhere
+ * are rejected when the core is loaded.
+ */
+public class ExpansionBudgetUpdateProcessorFactory extends
+    UpdateRequestProcessorFactory implements SolrCoreAware {
+  
+  /**
+   * Checks the position of this processor in the chains of the core once,
+   * when the core is loaded
+   */
+  @Override
+  public void inform(SolrCore core) {
+    for (PluginInfo info : core.getSolrConfig().getPluginInfos(
+        UpdateRequestProcessorChain.class.getName())) {
+      UpdateRequestProcessorChain chain = core
+          .getUpdateProcessingChain(info.name);
+      if (Arrays.asList(chain.getFactories()).contains(this)) {
+        checkPosition(chain);
+      }
+    }
+  }
+  
+  @Override
+  public UpdateRequestProcessor getInstance(SolrQueryRequest req,
+      SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    return new UpdateRequestProcessor(next) {
+      @Override
+      public void processAdd(AddUpdateCommand cmd) throws IOException {
+        // the document is analyzed by the processors down the chain, in
+        // this thread
+        ExpansionBudget.startDocument();
+        try {
+          super.processAdd(cmd);
+        } finally {
+          ExpansionBudget.endDocument();
+        }
+      }
+    };
+  }
+  
+  /**
+   * Checks that this processor comes after the distributed processor of the
+   * given chain and directly before its run processor
+   * 
+   * @throws SolrException
+   *           if it does not
+   */
+  void checkPosition(UpdateRequestProcessorChain chain) {
+    UpdateRequestProcessorFactory[] factories = chain.getFactories();
+    boolean distributed = false;
+    for (int i = 0; i < factories.length; i++) {
+      if (factories[i] instanceof DistributingUpdateProcessorFactory) {
+        distributed = true;
+      } else if (factories[i] == this) {
+        if (!distributed || i + 1 == factories.length
+            || !(factories[i + 1] instanceof RunUpdateProcessorFactory)) {
+          throw new SolrException(ErrorCode.SERVER_ERROR, getClass()
+              .getSimpleName() + " must follow the "
+              + "DistributedUpdateProcessorFactory, directly before the "
+              + "RunUpdateProcessorFactory");
+        }
+        return;
+      }
+    }
+  }
+  
+}
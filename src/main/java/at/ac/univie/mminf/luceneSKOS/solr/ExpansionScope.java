@@ -0,0 +1,239 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.SolrParams;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSBoosts;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups;
+
+/**
+ * The scope of a query-time expansion, as requested by the parameters of
+ * {@link SKOSQParserPlugin}: the SKOS types to expand to, the number of
+ * hierarchy levels to follow for broader and narrower concepts, the maximum
+ * number of labels added per matched label and the boosts per SKOS type.
+ * Labels without concepts can be looked up again allowing for typos.
+ */
+public final class ExpansionScope {
+
+  /** The SKOS types to expand to, separated by commas or spaces */
+  public static final String TYPES = "types";
+
+  /**
+   * The hierarchy levels to follow for broader and narrower concepts. With 0,
+   * the hierarchy is not expanded at all.
+   */
+  public static final String DEPTH = "depth";
+
+  /** The maximum number of labels added per matched label */
+  public static final String MAX_EXPANSIONS = "maxExpansions";
+
+  /** The boosts per SKOS type, e.g. alt:0.5,broader:0.2 */
+  public static final String BOOSTS = "boosts";
+
+  /**
+   * The edits allowed when looking up a label without concepts again, up to
+   * 2. With 0, labels are only looked up exactly.
+   */
+  public static final String FUZZY = "fuzzy";
+
+  /** The leading characters which must match when allowing for edits */
+  public static final String FUZZY_PREFIX = "fuzzyPrefix";
+
+  public static final int DEFAULT_DEPTH = 1;
+
+  public static final int DEFAULT_MAX_EXPANSIONS = 50;
+
+  public static final int DEFAULT_FUZZY_PREFIX = 1;
+
+  /** The types which can be expanded to, in the order labels are added */
+  static final SKOSType[] EXPANDABLE = {SKOSType.PREF, SKOSType.ALT,
+      SKOSType.HIDDEN, SKOSType.BROADER, SKOSType.NARROWER,
+      SKOSType.BROADERTRANSITIVE, SKOSType.NARROWERTRANSITIVE,
+      SKOSType.RELATED};
+
+  private static final Set<SKOSType> HIERARCHY = EnumSet.of(SKOSType.BROADER,
+      SKOSType.NARROWER, SKOSType.BROADERTRANSITIVE,
+      SKOSType.NARROWERTRANSITIVE);
+
+  private final Set<SKOSType> types;
+
+  private final int depth;
+
+  private final int maxExpansions;
+
+  private final SKOSBoosts boosts;
+
+  private final int maxEdits;
+
+  private final int fuzzyPrefixLength;
+
+  private final String key;
+
+  public ExpansionScope(Set<SKOSType> types, int depth, int maxExpansions,
+      SKOSBoosts boosts) {
+    this(types, depth, maxExpansions, boosts, 0, DEFAULT_FUZZY_PREFIX);
+  }
+
+  /**
+   * @param maxEdits
+   *          the edits allowed when looking up a label without concepts
+   *          again, 0 to {@link FuzzyLookups#MAX_EDITS}
+   * @param fuzzyPrefixLength
+   *          the leading characters which must match when allowing for edits
+   */
+  public ExpansionScope(Set<SKOSType> types, int depth, int maxExpansions,
+      SKOSBoosts boosts, int maxEdits, int fuzzyPrefixLength) {
+    FuzzyLookups.checkEdits(maxEdits);
+    if (fuzzyPrefixLength < 0) {
+      throw new IllegalArgumentException(FUZZY_PREFIX
+          + " must not be negative");
+    }
+    this.types = EnumSet.noneOf(SKOSType.class);
+    for (SKOSType type : types) {
+      if (!Arrays.asList(EXPANDABLE).contains(type)) {
+        throw new IllegalArgumentException("Cannot expand to " + type);
+      }
+      if (depth > 0 || !HIERARCHY.contains(type)) {
+        this.types.add(type);
+      }
+    }
+    this.depth = depth;
+    this.maxExpansions = maxExpansions;
+    this.boosts = boosts;
+    this.maxEdits = maxEdits;
+    this.fuzzyPrefixLength = fuzzyPrefixLength;
+
+    StringBuilder key = new StringBuilder();
+    for (SKOSType type : this.types) {
+      key.append(type.ordinal()).append(',');
+    }
+    key.append(depth);
+    if (maxEdits > 0) {
+      key.append('~').append(maxEdits).append(',').append(fuzzyPrefixLength);
+    }
+    this.key = key.toString();
+  }
+
+  /**
+   * Reads the scope from request parameters
+   *
+   * @throws SolrException
+   *           if a parameter is invalid
+   */
+  public static ExpansionScope parse(SolrParams params) {
+    Set<SKOSType> types = EnumSet.of(SKOSType.PREF, SKOSType.ALT);
+    String typesString = params.get(TYPES);
+    if (typesString != null) {
+      types.clear();
+      for (String type : typesString.trim().split("[,\\s]+")) {
+        if (type.length() > 0) {
+          types.add(type(type));
+        }
+      }
+    }
+
+    SKOSBoosts.Builder boosts = SKOSBoosts.builder();
+    String boostsString = params.get(BOOSTS);
+    if (boostsString != null) {
+      for (String boost : boostsString.trim().split("[,\\s]+")) {
+        int colon = boost.indexOf(':');
+        if (colon < 0) {
+          throw new SolrException(ErrorCode.BAD_REQUEST, "Invalid boost "
+              + boost + ", expected <type>:<boost>");
+        }
+        try {
+          boosts.set(type(boost.substring(0, colon)),
+              Float.parseFloat(boost.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+          throw new SolrException(ErrorCode.BAD_REQUEST, "Invalid boost "
+              + boost, e);
+        }
+      }
+    }
+
+    int depth = params.getInt(DEPTH, DEFAULT_DEPTH);
+    int maxExpansions = params.getInt(MAX_EXPANSIONS, DEFAULT_MAX_EXPANSIONS);
+    if (depth < 0 || maxExpansions < 0) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, DEPTH + " and "
+          + MAX_EXPANSIONS + " must not be negative");
+    }
+    int maxEdits = params.getInt(FUZZY, 0);
+    int fuzzyPrefixLength = params.getInt(FUZZY_PREFIX, DEFAULT_FUZZY_PREFIX);
+    try {
+      return new ExpansionScope(types, depth, maxExpansions, boosts.build(),
+          maxEdits, fuzzyPrefixLength);
+    } catch (IllegalArgumentException e) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, e.getMessage(), e);
+    }
+  }
+
+  static SKOSType type(String name) {
+    try {
+      return SKOSType.valueOf(name.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, "Unknown SKOS type "
+          + name, e);
+    }
+  }
+
+  /** Returns the types expanded to, without the hierarchy types at depth 0 */
+  public Set<SKOSType> getTypes() {
+    return types;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public int getMaxExpansions() {
+    return maxExpansions;
+  }
+
+  public SKOSBoosts getBoosts() {
+    return boosts;
+  }
+
+  /** Returns the edits allowed when looking up a label without concepts */
+  public int getMaxEdits() {
+    return maxEdits;
+  }
+
+  public int getFuzzyPrefixLength() {
+    return fuzzyPrefixLength;
+  }
+
+  /** Returns whether nothing is expanded */
+  public boolean isEmpty() {
+    return types.isEmpty() || maxExpansions == 0;
+  }
+
+  /**
+   * Returns a key identifying the expansions of a label in this scope, which
+   * do not depend on the maximum number of expansions and the boosts
+   */
+  String getKey() {
+    return key;
+  }
+}
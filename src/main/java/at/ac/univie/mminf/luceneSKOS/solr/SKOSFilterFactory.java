@@ -16,38 +16,104 @@
  * limitations under the License.
  */
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.JMException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
 import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.apache.solr.analysis.TokenizerChain;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrInfoMBean;
 import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import at.ac.univie.mminf.luceneSKOS.analysis.ExpansionBudget;
 import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer.ExpansionType;
 import at.ac.univie.mminf.luceneSKOS.analysis.SKOSLabelFilter;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSTypePayload.Encoding;
 import at.ac.univie.mminf.luceneSKOS.analysis.SKOSURIFilter;
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.InstrumentedSKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics;
+import at.ac.univie.mminf.luceneSKOS.skos.BuildProgress;
+import at.ac.univie.mminf.luceneSKOS.skos.BuildProgress.Phase;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelNormalizer;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngineFactory;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SKOSEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl.Storage;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat;
 
 /**
  * A factory for plugging SKOS filters into Apache Solr
+ * 
+ * With async="true" the engine is set up in a background thread and the core
+ * starts without waiting for it. Until the engine is ready, token streams
+ * either pass their tokens through unexpanded (pending="passthrough", the
+ * default) and start expanding once it is ready, or wait for it
+ * (pending="block"). The set-up can be observed by {@link #getProgress()}.
+ *
+ * The factory is a {@link SolrInfoMBean}, reporting the lookups of its engine
+ * and the expansions of its filters among the core's statistics. With
+ * jmxName="..." the {@link SKOSMetrics} are also registered under that name
+ * with the platform MBean server.
+ *
+ * With normalizer="..." (e.g. "fold,punctuation,stem", see
+ * {@link LabelNormalizer}) labels and the token windows looked up are
+ * normalized alike beyond lower-casing. Snapshots keep the normalizer they
+ * were compiled with, which must then match.
  */
-public class SKOSFilterFactory extends TokenFilterFactory implements ResourceLoaderAware {
+public class SKOSFilterFactory extends TokenFilterFactory implements
+    ResourceLoaderAware, SolrInfoMBean {
+  private static final Logger log = LoggerFactory
+      .getLogger(SKOSFilterFactory.class);
+  private static final AtomicInteger instances = new AtomicInteger();
   private String skosFile;
   private String expansionTypeString;
   private String bufferSizeString;
   private String typeString;
   private String languageString;
+  private String languageFallbackString;
+  private String indexDirString;
+  private boolean snapshotOnly;
+  private Storage snapshotStorage;
   private ExpansionType expansionType;
   private SKOSType[] type;
-  private SKOSEngine skosEngine;
+  private volatile SKOSEngine skosEngine;
   private int bufferSize;
+  private boolean async;
+  private boolean blockWhilePending;
+  private boolean warmUp;
+  private final BuildProgress progress = new BuildProgress();
+  private final CountDownLatch engineDone = new CountDownLatch(1);
+  private final SKOSMetrics metrics = new SKOSMetrics();
+  private final String name;
+  private String jmxName;
+  private final Encoding payloadEncoding;
+  private final boolean tokenGraph;
+  private final ExpansionBudget expansionBudget;
+  /* the configured normalizer, or null if none is configured */
+  private final LabelNormalizer normalizer;
   
   
   public SKOSFilterFactory(Map<String,String> args) {
@@ -58,31 +124,56 @@ public SKOSFilterFactory(Map<String,String> args) {
     bufferSizeString = get(args, "bufferSize");
     typeString = get(args, "type");
     languageString = get(args, "language");
+    languageFallbackString = get(args, "languageFallback");
+    indexDirString = get(args, "indexDir");
+    snapshotOnly = getBoolean(args, "snapshotOnly", false);
+    String storageString = get(args, "snapshotStorage");
+    snapshotStorage = storageString != null ? Storage.valueOf(storageString
+        .toUpperCase()) : Storage.HEAP;
+    async = getBoolean(args, "async", false);
+    String pendingString = get(args, "pending");
+    if (pendingString == null || pendingString.equalsIgnoreCase("passthrough")) {
+      blockWhilePending = false;
+    } else if (pendingString.equalsIgnoreCase("block")) {
+      blockWhilePending = true;
+    } else {
+      throw new IllegalArgumentException(
+          "The property 'pending' must be either passthrough or block");
+    }
+    warmUp = getBoolean(args, "warmUp", async);
+    jmxName = get(args, "jmxName");
+    String encodingString = get(args, "payloadEncoding");
+    payloadEncoding = encodingString != null ? Encoding.valueOf(encodingString
+        .toUpperCase()) : Encoding.INT;
+    tokenGraph = getBoolean(args, "tokenGraph", false);
+    String normalizerString = get(args, "normalizer");
+    normalizer = normalizerString != null ? LabelNormalizer
+        .parse(normalizerString) : null;
+    expansionBudget = new ExpansionBudget(getInt(args,
+        "maxExpansionsPerPosition", 0), getInt(args, "maxExpansionsPerValue",
+        0), getInt(args, "maxExpansionsPerDocument", 0));
+    name = getClass().getSimpleName() + "(" + skosFile + ")#"
+        + instances.incrementAndGet();
     
-    System.out.println("Passed arguments: " + skosFile + " Type: "
+    log.info("Passed arguments: " + skosFile + " Type: "
         + expansionTypeString + " bufferSize: "
         + (bufferSizeString != null ? bufferSizeString : "Default")
         + " language: " + (languageString != null ? languageString : "All")
-        + " type: " + (typeString != null ? typeString : "Default"));
+        + " languageFallback: "
+        + (languageFallbackString != null ? languageFallbackString : "None")
+        + " type: " + (typeString != null ? typeString : "Default")
+        + " indexDir: " + (indexDirString != null ? indexDirString : "Default")
+        + " snapshotOnly: " + snapshotOnly
+        + " snapshotStorage: " + snapshotStorage
+        + " async: " + async
+        + " pending: " + (blockWhilePending ? "block" : "passthrough")
+        + " warmUp: " + warmUp
+        + " normalizer: " + (normalizer != null ? normalizer : "Default")
+        + " jmxName: " + (jmxName != null ? jmxName : "None"));
   }
   
   @Override
-  public void inform(ResourceLoader loader) {    
-    try {
-      if (skosFile.endsWith(".n3") || skosFile.endsWith(".rdf")
-          || skosFile.endsWith(".ttl") || skosFile.endsWith(".zip")) {
-        skosEngine = SKOSEngineFactory.getSKOSEngine(luceneMatchVersion,
-            ((SolrResourceLoader)loader) .getConfigDir() + skosFile,
-            languageString != null ? languageString.split(" ") : null);
-      } else {
-        throw new IOException(
-            "Allowed file suffixes are: .n3 (N3), .rdf (RDF/XML), .ttl (TURTLE) and .zip (ZIP)");
-      }
-      
-    } catch (IOException e) {
-      throw new RuntimeException("Could not instantiate SKOS engine", e);
-    }
-    
+  public void inform(ResourceLoader loader) {
     if (expansionTypeString.equalsIgnoreCase(ExpansionType.URI.toString())) {
       expansionType = ExpansionType.URI;
     } else if (expansionTypeString.equalsIgnoreCase(ExpansionType.LABEL
@@ -111,19 +202,373 @@ public void inform(ResourceLoader loader) {
       }
       type = types.toArray(new SKOSType[types.size()]);
     }
+    
+    if (jmxName != null) {
+      try {
+        metrics.registerMBean(jmxName);
+      } catch (JMException e) {
+        throw new IllegalArgumentException("Could not register the metrics as "
+            + jmxName, e);
+      }
+    }
+    
+    final String configDir = ((SolrResourceLoader) loader).getConfigDir();
+    if (async) {
+      Thread builder = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          initEngine(configDir);
+          if (progress.isFailed()) {
+            log.error("Could not instantiate SKOS engine for " + skosFile,
+                progress.getFailure());
+          }
+        }
+      }, "SKOS engine " + skosFile);
+      builder.setDaemon(true);
+      builder.start();
+    } else {
+      initEngine(configDir);
+      if (progress.isFailed()) {
+        throw new RuntimeException("Could not instantiate SKOS engine",
+            progress.getFailure());
+      }
+    }
+  }
+  
+  /**
+   * Sets up the engine, reporting to the progress
+   */
+  private void initEngine(String configDir) {
+    try {
+      long start = System.currentTimeMillis();
+      SKOSEngine engine = loadEngine(configDir);
+      if (warmUp) {
+        progress.setPhase(Phase.WARM_UP);
+        warmUp(engine);
+      }
+      SKOSEngine instrumented = InstrumentedSKOSEngine.wrap(engine, metrics);
+      prepare(instrumented);
+      metrics.built(System.currentTimeMillis() - start);
+      skosEngine = instrumented;
+      progress.setPhase(Phase.READY);
+    } catch (IOException e) {
+      progress.setFailed(e);
+    } catch (RuntimeException e) {
+      progress.setFailed(e);
+    } finally {
+      engineDone.countDown();
+    }
+  }
+  
+  /**
+   * Prepares what the filters need besides the engine, once it is set up and
+   * before the filters get it. Subclasses may override this to build such
+   * data ahead of the first token stream.
+   */
+  protected void prepare(SKOSEngine engine) throws IOException {}
+  
+  /**
+   * Loads the engine from the vocabulary in the given configuration
+   * directory. Subclasses may override this to set up engines otherwise.
+   */
+  protected SKOSEngine loadEngine(String configDir) throws IOException {
+    SKOSEngine engine;
+    if (skosFile.endsWith(SnapshotFormat.SUFFIX)) {
+      progress.setPhase(Phase.OPEN);
+      engine = SKOSEngineFactory.getSKOSEngine(new File(configDir + skosFile),
+          snapshotStorage);
+      LabelNormalizer compiled = ((SnapshotEngineImpl) engine).getNormalizer();
+      if (normalizer != null && !normalizer.equals(compiled)) {
+        throw new IOException("The snapshot " + skosFile
+            + " was compiled with the normalizer " + compiled + ", not "
+            + normalizer);
+      }
+    } else if (skosFile.endsWith(".n3") || skosFile.endsWith(".rdf")
+        || skosFile.endsWith(".ttl") || skosFile.endsWith(".zip")) {
+      File indexRoot = null;
+      if (indexDirString != null) {
+        indexRoot = new File(indexDirString);
+        if (!indexRoot.isAbsolute()) {
+          indexRoot = new File(configDir, indexDirString);
+        }
+      }
+      
+      engine = SKOSEngineFactory.getSKOSEngine(luceneMatchVersion, configDir
+          + skosFile, indexRoot, snapshotOnly, progress,
+          normalizer != null ? normalizer : LabelNormalizer.DEFAULT,
+          languageString != null ? languageString.split(" ") : null);
+      
+      if (languageFallbackString != null) {
+        engine = ((SKOSEngineImpl) engine).getFallbackView(languageFallbackString
+            .split(" "));
+      }
+    } else {
+      throw new IOException(
+          "Allowed file suffixes are: .n3 (N3), .rdf (RDF/XML), .ttl (TURTLE), .zip (ZIP) and "
+              + SnapshotFormat.SUFFIX + " (compiled snapshot)");
+    }
+    return engine;
+  }
+  
+  /**
+   * Loads the hot data structures of an engine into memory
+   */
+  private static void warmUp(SKOSEngine engine) throws IOException {
+    if (engine instanceof SKOSEngineImpl) {
+      ((SKOSEngineImpl) engine).warmUp();
+    } else if (engine instanceof SnapshotEngineImpl) {
+      ((SnapshotEngineImpl) engine).warmUp();
+    }
+  }
+  
+  /**
+   * Returns the SKOS filter factory in the analyzer of the given field type,
+   * so that its engine can be shared by other components
+   * 
+   * @throws SolrException
+   *           if the field type does not exist or has no SKOS filter
+   */
+  static SKOSFilterFactory forFieldType(IndexSchema schema,
+      String fieldTypeName) {
+    FieldType fieldType = schema.getFieldTypeByName(fieldTypeName);
+    if (fieldType == null) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Unknown field type "
+          + fieldTypeName);
+    }
+    Analyzer analyzer = fieldType.getAnalyzer();
+    if (analyzer instanceof TokenizerChain) {
+      for (TokenFilterFactory factory : ((TokenizerChain) analyzer)
+          .getTokenFilterFactories()) {
+        if (factory instanceof SKOSFilterFactory) {
+          return (SKOSFilterFactory) factory;
+        }
+      }
+    }
+    throw new SolrException(ErrorCode.SERVER_ERROR, "The field type "
+        + fieldTypeName + " has no " + SKOSFilterFactory.class.getSimpleName());
+  }
+  
+  /**
+   * Returns a view on the engine taking the labels from the given languages,
+   * if the engine supports language views
+   */
+  static SKOSEngine languageView(SKOSEngine engine, String[] chain) {
+    SKOSEngine delegate = engine;
+    if (engine instanceof InstrumentedSKOSEngine) {
+      delegate = ((InstrumentedSKOSEngine) engine).getDelegate();
+    }
+    if (!(delegate instanceof SKOSEngineImpl)) {
+      // the languages of snapshots are chosen when compiling them
+      return engine;
+    }
+    SKOSEngine view = ((SKOSEngineImpl) delegate).getFallbackView(chain);
+    SKOSMetrics metrics = InstrumentedSKOSEngine.getMetrics(engine);
+    return metrics != null ? InstrumentedSKOSEngine.wrap(view, metrics) : view;
+  }
+  
+  /**
+   * Returns the languages of a fallback chain as the engine knows them: tags
+   * are matched to the languages of its index ignoring case, and unknown or
+   * repeated ones are dropped, keeping the order of the chain. Chains are
+   * empty for engines without language views, as {@link #languageView} then
+   * returns the engine itself.
+   */
+  static String[] languageChain(SKOSEngine engine, String[] chain) {
+    SKOSEngine delegate = engine;
+    if (engine instanceof InstrumentedSKOSEngine) {
+      delegate = ((InstrumentedSKOSEngine) engine).getDelegate();
+    }
+    if (!(delegate instanceof SKOSEngineImpl)) {
+      return new String[0];
+    }
+    List<String> indexed = ((SKOSEngineImpl) delegate).getIndexedLanguages();
+    List<String> languages = new ArrayList<String>();
+    for (String tag : chain) {
+      for (String language : indexed) {
+        if (language.equalsIgnoreCase(tag) && !languages.contains(language)) {
+          languages.add(language);
+        }
+      }
+    }
+    return languages.toArray(new String[languages.size()]);
+  }
+  
+  /**
+   * Returns the progress of setting up the engine
+   */
+  public BuildProgress getProgress() {
+    return progress;
+  }
+  
+  /**
+   * Returns whether the engine is set up and token streams expand
+   */
+  public boolean isReady() {
+    return skosEngine != null;
+  }
+  
+  /**
+   * Returns the engine, or null while it is set up
+   */
+  public SKOSEngine getEngine() {
+    return skosEngine;
+  }
+  
+  /**
+   * Returns the number of tokens buffered to match multi-term labels
+   */
+  public int getBufferSize() {
+    return bufferSize > 0 ? bufferSize : SKOSLabelFilter.DEFAULT_BUFFER_SIZE;
+  }
+  
+  /**
+   * Returns the metrics of the engine and the filters created
+   */
+  public SKOSMetrics getMetrics() {
+    return metrics;
+  }
+  
+  @Override
+  public String getName() {
+    return name;
+  }
+  
+  @Override
+  public String getVersion() {
+    return getClass().getPackage().getImplementationVersion();
+  }
+  
+  @Override
+  public String getDescription() {
+    return "SKOS " + expansionTypeString + " expansion with " + skosFile;
+  }
+  
+  @Override
+  public Category getCategory() {
+    return Category.OTHER;
+  }
+  
+  @Override
+  public String getSource() {
+    return "https://github.com/behas/lucene-skos";
+  }
+  
+  @Override
+  public URL[] getDocs() {
+    return null;
+  }
+  
+  @Override
+  public NamedList<Object> getStatistics() {
+    NamedList<Object> statistics = new SimpleOrderedMap<Object>();
+    statistics.add("phase", progress.getPhase().toString());
+    statistics.add("ready", isReady());
+    statistics.add("conceptsProcessed", progress.getConceptsProcessed());
+    for (Map.Entry<String,Object> value : metrics.snapshot().entrySet()) {
+      statistics.add(value.getKey(), value.getValue());
+    }
+    return statistics;
   }
   
   @Override
   public TokenStream create(TokenStream input) {
-    
+    SKOSEngine engine = skosEngine;
+    if (engine == null) {
+      if (!blockWhilePending) {
+        return new PendingEngineFilter(input);
+      }
+      engine = awaitEngine();
+    }
+    return createFilter(input, engine);
+  }
+  
+  private SKOSEngine awaitEngine() {
+    try {
+      engineDone.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for SKOS engine", e);
+    }
+    if (skosEngine == null) {
+      throw new IllegalStateException("Could not instantiate SKOS engine",
+          progress.getFailure());
+    }
+    return skosEngine;
+  }
+  
+  /**
+   * Creates the filter over the given engine, once it is set up
+   */
+  protected TokenStream createFilter(TokenStream input, SKOSEngine skosEngine) {
     if (expansionType.equals(ExpansionType.LABEL)) {
-      return new SKOSLabelFilter(input, skosEngine, new StandardAnalyzer(
-          luceneMatchVersion), bufferSize, type);
+      SKOSLabelFilter filter = new SKOSLabelFilter(input, skosEngine,
+          new StandardAnalyzer(luceneMatchVersion), bufferSize, type);
+      filter.setPayloadEncoding(payloadEncoding);
+      filter.setTokenGraph(tokenGraph);
+      filter.setExpansionBudget(expansionBudget);
+      return filter;
       
     } else {
-      return new SKOSURIFilter(input, skosEngine, new StandardAnalyzer(
-          luceneMatchVersion), type);
+      SKOSURIFilter filter = new SKOSURIFilter(input, skosEngine,
+          new StandardAnalyzer(luceneMatchVersion), type);
+      filter.setPayloadEncoding(payloadEncoding);
+      filter.setTokenGraph(tokenGraph);
+      filter.setExpansionBudget(expansionBudget);
+      return filter;
+    }
+    
+  }
+  
+  /**
+   * Passes tokens through unexpanded while the engine is set up. As Solr
+   * reuses token streams, the expanding filter is put in place on the first
+   * reset after the engine is ready.
+   */
+  private final class PendingEngineFilter extends TokenFilter {
+    
+    private TokenStream expansion;
+    
+    PendingEngineFilter(TokenStream input) {
+      super(input);
     }
     
+    @Override
+    public void reset() throws IOException {
+      SKOSEngine engine = skosEngine;
+      if (expansion == null && engine != null) {
+        expansion = createFilter(input, engine);
+      }
+      if (expansion != null) {
+        expansion.reset();
+      } else {
+        super.reset();
+      }
+    }
+    
+    @Override
+    public boolean incrementToken() throws IOException {
+      if (expansion != null) {
+        return expansion.incrementToken();
+      }
+      return input.incrementToken();
+    }
+    
+    @Override
+    public void end() throws IOException {
+      if (expansion != null) {
+        expansion.end();
+      } else {
+        super.end();
+      }
+    }
+    
+    @Override
+    public void close() throws IOException {
+      if (expansion != null) {
+        expansion.close();
+      } else {
+        super.close();
+      }
+    }
   }
 }
@@ -0,0 +1,356 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexableField;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.transform.DocTransformer;
+import org.apache.solr.response.transform.TransformContext;
+import org.apache.solr.response.transform.TransformerFactory;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.util.ConcurrentLRUCache;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.skos.BatchLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * A Solr transformer adding the labels of the concepts whose URIs are stored
+ * in a field of the returned documents, e.g.
+ *
+ * <pre>
+ * &lt;transformer name="skoslabels" class="at.ac.univie.mminf.luceneSKOS.solr.SKOSLabelTransformerFactory"&gt;
+ *   &lt;str name="fieldType"&gt;skos&lt;/str&gt;
+ * &lt;/transformer&gt;
+ *
+ * fl=id,subject_labels:[skoslabels f=subject lang=en types=pref]
+ * </pre>
+ *
+ * Like the {@link SKOSQParserPlugin}, it uses the engine of the
+ * {@link SKOSFilterFactory} of the field type given by the init argument
+ * fieldType. The URIs of all documents of a result page are resolved in one
+ * batch before the first document is written, so that a page costs one
+ * lookup. Resolved concepts are cached (init argument cacheSize, 0 to
+ * disable).
+ *
+ * The labels of all concepts of a document are added under the name of the
+ * transformer, or, for several types, under the name followed by a dot and
+ * the type. The other init arguments are defaults for the local parameters f
+ * (the field holding the URIs), lang (a fallback chain of label languages)
+ * and types (pref by default).
+ */
+public class SKOSLabelTransformerFactory extends TransformerFactory {
+
+  public static final String URI_FIELD = "f";
+
+  public static final String LANGUAGE = "lang";
+
+  public static final String TYPES = "types";
+
+  public static final int DEFAULT_CACHE_SIZE = 10000;
+
+  /* marks cached concepts which are unknown */
+  private static final Map<SKOSType,String[]> NO_LABELS = Collections
+      .unmodifiableMap(new EnumMap<SKOSType,String[]>(SKOSType.class));
+
+  private String fieldTypeName;
+
+  private SolrParams defaults;
+
+  private ConcurrentLRUCache<String,Map<SKOSType,String[]>> cache;
+
+  @Override
+  public void init(@SuppressWarnings("rawtypes") NamedList args) {
+    defaults = SolrParams.toSolrParams(args);
+    fieldTypeName = defaults.get("fieldType");
+    if (fieldTypeName == null) {
+      throw new SolrException(ErrorCode.SERVER_ERROR,
+          "The SKOS label transformer requires the init argument fieldType");
+    }
+    int cacheSize = defaults.getInt("cacheSize", DEFAULT_CACHE_SIZE);
+    if (cacheSize > 0) {
+      cache = new ConcurrentLRUCache<String,Map<SKOSType,String[]>>(
+          cacheSize, Math.max(1, cacheSize * 9 / 10));
+    }
+  }
+
+  @Override
+  public DocTransformer create(String field, SolrParams params,
+      SolrQueryRequest req) {
+    String uriField = params.get(URI_FIELD, defaults.get(URI_FIELD));
+    if (uriField == null) {
+      throw new SolrException(ErrorCode.BAD_REQUEST,
+          "The SKOS label transformer requires the parameter " + URI_FIELD);
+    }
+    String lang = params.get(LANGUAGE, defaults.get(LANGUAGE));
+    Set<SKOSType> types = parseTypes(params.get(TYPES, defaults.get(TYPES,
+        "pref")));
+
+    SKOSEngine engine = SKOSFilterFactory.forFieldType(req.getSchema(),
+        fieldTypeName).getEngine();
+    if (engine != null && lang != null) {
+      engine = SKOSFilterFactory.languageView(engine, lang.trim().split("[,\\s]+"));
+    }
+    return newTransformer(field, engine, uriField, lang, types);
+  }
+
+  LabelTransformer newTransformer(String name, SKOSEngine engine,
+      String uriField, String lang, Set<SKOSType> types) {
+    return new LabelTransformer(name, engine, uriField, (lang != null ? lang
+        : "") + '|' + types + '|', types);
+  }
+
+  private static Set<SKOSType> parseTypes(String typesString) {
+    Set<SKOSType> types = EnumSet.noneOf(SKOSType.class);
+    for (String name : typesString.trim().split("[,\\s]+")) {
+      if (name.length() == 0) {
+        continue;
+      }
+      SKOSType type = ExpansionScope.type(name);
+      if (!Arrays.asList(ExpansionScope.EXPANDABLE).contains(type)) {
+        throw new SolrException(ErrorCode.BAD_REQUEST, "Cannot add labels of "
+            + name);
+      }
+      types.add(type);
+    }
+    if (types.isEmpty()) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, "No SKOS types given");
+    }
+    return types;
+  }
+
+  /**
+   * Adds the labels of the concepts of each document
+   */
+  final class LabelTransformer extends DocTransformer {
+
+    private final String name;
+
+    private final SKOSEngine engine;
+
+    private final String uriField;
+
+    private final String keyPrefix;
+
+    private final Set<SKOSType> types;
+
+    /* the labels of the concepts resolved for this response */
+    private final Map<String,Map<SKOSType,String[]>> resolved =
+        new HashMap<String,Map<SKOSType,String[]>>();
+
+    /* the concepts of the documents of the current page by document id */
+    private final Map<Integer,String[]> pageURIs = new HashMap<Integer,String[]>();
+
+    LabelTransformer(String name, SKOSEngine engine, String uriField,
+        String keyPrefix, Set<SKOSType> types) {
+      this.name = name;
+      this.engine = engine;
+      this.uriField = uriField;
+      this.keyPrefix = keyPrefix;
+      this.types = types;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Reads the URIs of all documents of the page ahead and resolves them in
+     * one batch. The writer is handed an iterator over the documents read.
+     */
+    @Override
+    public void setContext(TransformContext context) {
+      pageURIs.clear();
+      if (engine == null || context.iterator == null
+          || context.searcher == null) {
+        return;
+      }
+      BufferedDocIterator page = new BufferedDocIterator(context.iterator,
+          context.wantsScores);
+      context.iterator = page;
+
+      Set<String> fields = Collections.singleton(uriField);
+      List<String> uris = new ArrayList<String>();
+      try {
+        for (int i = 0; i < page.size; i++) {
+          String[] values = context.searcher.doc(page.docs[i], fields)
+              .getValues(uriField);
+          pageURIs.put(page.docs[i], values);
+          uris.addAll(Arrays.asList(values));
+        }
+        resolve(uris);
+      } catch (IOException e) {
+        throw new SolrException(ErrorCode.SERVER_ERROR,
+            "Could not resolve the concepts of " + uriField, e);
+      }
+    }
+
+    @Override
+    public void transform(SolrDocument doc, int docid) throws IOException {
+      if (engine == null) {
+        return;
+      }
+      String[] uris = pageURIs.get(docid);
+      if (uris == null) {
+        // without a page, e.g. for real-time gets
+        uris = values(doc.getFieldValues(uriField));
+        resolve(Arrays.asList(uris));
+      }
+
+      for (SKOSType type : types) {
+        Set<String> labels = new LinkedHashSet<String>();
+        for (String uri : uris) {
+          Map<SKOSType,String[]> concept = resolved.get(uri);
+          String[] values = concept != null ? concept.get(type) : null;
+          if (values != null) {
+            labels.addAll(Arrays.asList(values));
+          }
+        }
+        if (!labels.isEmpty()) {
+          doc.setField(types.size() == 1 ? name : name + "."
+              + type.name().toLowerCase(), new ArrayList<String>(labels));
+        }
+      }
+    }
+
+    /**
+     * Resolves the given concepts which are neither resolved nor cached in
+     * one batch
+     */
+    private void resolve(Collection<String> uris) throws IOException {
+      List<String> missing = new ArrayList<String>();
+      for (String uri : uris) {
+        if (resolved.containsKey(uri)) {
+          continue;
+        }
+        Map<SKOSType,String[]> labels = cache != null ? cache.get(keyPrefix
+            + uri) : null;
+        if (labels != null) {
+          resolved.put(uri, labels);
+        } else {
+          missing.add(uri);
+        }
+      }
+      if (missing.isEmpty()) {
+        return;
+      }
+
+      Map<String,Map<SKOSType,String[]>> found = BatchLookups.expand(engine,
+          missing.toArray(new String[missing.size()]), types);
+      for (String uri : missing) {
+        Map<SKOSType,String[]> labels = found.get(uri);
+        if (labels == null) {
+          labels = NO_LABELS;
+        }
+        resolved.put(uri, labels);
+        if (cache != null) {
+          cache.put(keyPrefix + uri, labels);
+        }
+      }
+    }
+
+    private String[] values(Collection<Object> fieldValues) {
+      if (fieldValues == null) {
+        return new String[0];
+      }
+      List<String> values = new ArrayList<String>(fieldValues.size());
+      for (Object value : fieldValues) {
+        values.add(value instanceof IndexableField ? ((IndexableField) value)
+            .stringValue() : value.toString());
+      }
+      return values.toArray(new String[values.size()]);
+    }
+  }
+
+  /**
+   * The documents of a page, read ahead of the writer
+   */
+  private static final class BufferedDocIterator implements DocIterator {
+
+    private int[] docs = new int[16];
+
+    private float[] scores;
+
+    private int size;
+
+    private int pos;
+
+    BufferedDocIterator(DocIterator iterator, boolean wantsScores) {
+      if (wantsScores) {
+        scores = new float[docs.length];
+      }
+      while (iterator.hasNext()) {
+        if (size == docs.length) {
+          docs = Arrays.copyOf(docs, size * 2);
+          if (scores != null) {
+            scores = Arrays.copyOf(scores, size * 2);
+          }
+        }
+        docs[size] = iterator.nextDoc();
+        if (scores != null) {
+          scores[size] = iterator.score();
+        }
+        size++;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return pos < size;
+    }
+
+    @Override
+    public Integer next() {
+      return nextDoc();
+    }
+
+    @Override
+    public int nextDoc() {
+      return docs[pos++];
+    }
+
+    @Override
+    public float score() {
+      return scores != null ? scores[pos - 1] : 0f;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
@@ -0,0 +1,185 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.miscellaneous.RemoveDuplicatesTokenFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
+import org.apache.lucene.queryparser.flexible.standard.config.StandardQueryConfigHandler.Operator;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SyntaxError;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSLabelFilter;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSWarnings;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSStandardQueryParser;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * Parses a query with the {@link SKOSStandardQueryParser} of the thread, see
+ * {@link SKOSQParserPlugin#getQueryParser}, expanding the terms analyzed by
+ * the query analyzer of the default field with SKOS labels in the
+ * {@link ExpansionScope} of the request. Until the engine is set up, queries
+ * are parsed without expansion.
+ */
+public class SKOSQParser extends QParser {
+
+  private final SKOSQParserPlugin plugin;
+
+  public SKOSQParser(String qstr, SolrParams localParams, SolrParams params,
+      SolrQueryRequest req, SKOSQParserPlugin plugin) {
+    super(qstr, localParams, params, req);
+    this.plugin = plugin;
+  }
+
+  @Override
+  public Query parse() throws SyntaxError {
+    SolrParams requestParams = SolrParams.wrapDefaults(localParams, params);
+    SolrParams scopeParams = SolrParams.wrapDefaults(requestParams,
+        plugin.getDefaults());
+
+    IndexSchema schema = req.getSchema();
+    String field = requestParams.get(CommonParams.DF,
+        schema.getDefaultSearchFieldName());
+    if (field == null) {
+      throw new SolrException(ErrorCode.BAD_REQUEST,
+          "No default field given for the SKOS query parser");
+    }
+
+    ExpansionScope scope = ExpansionScope.parse(scopeParams);
+    SKOSFilterFactory factory = plugin.getFilterFactory(schema);
+    SKOSEngine engine = factory.getEngine();
+
+    Analyzer analyzer = schema.getFieldType(field).getQueryAnalyzer();
+    ExpandingAnalyzer expanding = null;
+    if (engine != null && !scope.isEmpty()) {
+      expanding = new ExpandingAnalyzer(analyzer, engine, factory, scope);
+      analyzer = expanding;
+    }
+
+    Operator operator = "AND".equalsIgnoreCase(requestParams
+        .get(QueryParsing.OP)) ? Operator.AND : Operator.OR;
+    SKOSStandardQueryParser parser = plugin.getQueryParser(analyzer,
+        scope.getBoosts(), operator);
+    try {
+      return parser.parse(qstr, field);
+    } catch (QueryNodeException e) {
+      throw new SyntaxError(e.getMessage(), e);
+    } finally {
+      parser.setSKOSAnalyzer(null);
+      if (expanding != null) {
+        expanding.close();
+      }
+    }
+  }
+
+  /**
+   * Appends the scoped expansion to the query analyzer of a field
+   */
+  private final class ExpandingAnalyzer extends AnalyzerWrapper {
+
+    private final Analyzer queryAnalyzer;
+
+    private final SKOSEngine engine;
+
+    private final SKOSFilterFactory factory;
+
+    private final ExpansionScope scope;
+
+    ExpandingAnalyzer(Analyzer queryAnalyzer, SKOSEngine engine,
+        SKOSFilterFactory factory, ExpansionScope scope) {
+      this.queryAnalyzer = queryAnalyzer;
+      this.engine = engine;
+      this.factory = factory;
+      this.scope = scope;
+    }
+
+    @Override
+    protected Analyzer getWrappedAnalyzer(String fieldName) {
+      return queryAnalyzer;
+    }
+
+    @Override
+    protected TokenStreamComponents wrapComponents(String fieldName,
+        TokenStreamComponents components) {
+      TokenStream tok = new ScopedLabelFilter(components.getTokenStream(),
+          engine, new StandardAnalyzer(factory.getLuceneMatchVersion()),
+          factory.getBufferSize(), scope);
+      tok = new RemoveDuplicatesTokenFilter(tok);
+      return new TokenStreamComponents(components.getTokenizer(), tok);
+    }
+  }
+
+  /**
+   * A label filter expanding to the labels found by the plugin, which caches
+   * them, up to the maximum number of expansions
+   */
+  private final class ScopedLabelFilter extends SKOSLabelFilter {
+
+    private final ExpansionScope scope;
+
+    ScopedLabelFilter(TokenStream input, SKOSEngine engine,
+        Analyzer analyzer, int bufferSize, ExpansionScope scope) {
+      super(input, engine, analyzer, bufferSize, toArray(scope.getTypes()));
+      this.scope = scope;
+    }
+
+    @Override
+    public boolean addTermsToStack(String term) throws IOException {
+      try {
+        String[][] labels = plugin.expand(engine, term, scope);
+        if (labels == null) {
+          return false;
+        }
+        int budget = scope.getMaxExpansions();
+        for (SKOSType type : ExpansionScope.EXPANDABLE) {
+          String[] typeLabels = labels[type.ordinal()];
+          if (typeLabels == null || budget == 0) {
+            continue;
+          }
+          if (typeLabels.length > budget) {
+            typeLabels = Arrays.copyOf(typeLabels, budget);
+          }
+          budget -= pushLabelsToStack(typeLabels, type);
+        }
+      } catch (Exception e) {
+        SKOSWarnings.ENGINE_ERRORS.warn(
+            "Error when accessing SKOS Engine for {}", term, e);
+      }
+      return !termStack.isEmpty();
+    }
+  }
+
+  private static SKOSType[] toArray(Set<SKOSType> types) {
+    return types.toArray(new SKOSType[types.size()]);
+  }
+}
@@ -0,0 +1,264 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.flexible.standard.config.StandardQueryConfigHandler.Operator;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.util.ConcurrentLRUCache;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSBoosts;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSStandardQueryParser;
+import at.ac.univie.mminf.luceneSKOS.skos.BatchLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * A Solr query parser plugin expanding queries with SKOS labels, with the
+ * scope of the expansion chosen per request, e.g.
+ * 
+ * <pre>
+ * {!skos types=pref,alt,narrower depth=2 maxExpansions=50}lazy dog
+ * </pre>
+ * 
+ * The plugin uses the engine of the {@link SKOSFilterFactory} in the index
+ * analyzer of the field type given by the init argument fieldType, so that
+ * the vocabulary is loaded only once. The expansions of labels are cached
+ * (init argument cacheSize, 0 to disable). All other init arguments are
+ * defaults for the request parameters, see {@link ExpansionScope}.
+ */
+public class SKOSQParserPlugin extends QParserPlugin {
+
+  public static final String NAME = "skos";
+
+  public static final int DEFAULT_CACHE_SIZE = 10000;
+
+  /* marks cached labels without concepts */
+  private static final String[][] NO_EXPANSIONS = new String[0][];
+
+  private String fieldTypeName;
+
+  private SolrParams defaults;
+
+  private ConcurrentLRUCache<String,String[][]> cache;
+
+  /* the query parser of each thread, as parsers keep state while parsing */
+  private final ThreadLocal<SKOSStandardQueryParser> parsers =
+      new ThreadLocal<SKOSStandardQueryParser>() {
+        @Override
+        protected SKOSStandardQueryParser initialValue() {
+          return new SKOSStandardQueryParser((Analyzer) null);
+        }
+      };
+
+  @Override
+  public void init(@SuppressWarnings("rawtypes") NamedList args) {
+    defaults = SolrParams.toSolrParams(args);
+    fieldTypeName = defaults.get("fieldType");
+    if (fieldTypeName == null) {
+      throw new SolrException(ErrorCode.SERVER_ERROR,
+          "The SKOS query parser requires the init argument fieldType");
+    }
+    int cacheSize = defaults.getInt("cacheSize", DEFAULT_CACHE_SIZE);
+    if (cacheSize > 0) {
+      cache = new ConcurrentLRUCache<String,String[][]>(cacheSize,
+          Math.max(1, cacheSize * 9 / 10));
+    }
+  }
+
+  @Override
+  public QParser createParser(String qstr, SolrParams localParams,
+      SolrParams params, SolrQueryRequest req) {
+    return new SKOSQParser(qstr, localParams, params, req, this);
+  }
+
+  /** Returns the defaults of the request parameters */
+  SolrParams getDefaults() {
+    return defaults;
+  }
+
+  /**
+   * Returns the query parser of the calling thread, set up for a query with
+   * the given analyzer, boosts and default operator. The caller should remove
+   * the analyzer once the query is parsed, so that the parser does not keep
+   * the engine.
+   */
+  SKOSStandardQueryParser getQueryParser(Analyzer analyzer, SKOSBoosts boosts,
+      Operator operator) {
+    SKOSStandardQueryParser parser = parsers.get();
+    parser.setSKOSAnalyzer(analyzer);
+    parser.setBoosts(boosts);
+    parser.setDefaultOperator(operator);
+    return parser;
+  }
+
+  /**
+   * Returns the filter factory whose engine is used
+   * 
+   * @throws SolrException
+   *           if the field type does not exist or has no SKOS filter
+   */
+  SKOSFilterFactory getFilterFactory(IndexSchema schema) {
+    return SKOSFilterFactory.forFieldType(schema, fieldTypeName);
+  }
+
+  /**
+   * Returns the labels a label expands to in the given scope, or null if no
+   * concept has the label, nor a label within the edits allowed by the scope
+   * 
+   * @return the labels by the ordinal of their {@link SKOSType}, up to
+   *         {@link SKOSType#RELATED}; null for types not expanded to
+   */
+  String[][] expand(SKOSEngine engine, String label, ExpansionScope scope)
+      throws IOException {
+    String key = null;
+    if (cache != null) {
+      key = scope.getKey() + '|' + label;
+      String[][] labels = cache.get(key);
+      if (labels != null) {
+        return labels == NO_EXPANSIONS ? null : labels;
+      }
+    }
+
+    String[][] labels = null;
+    String[] conceptURIs = engine.getConcepts(label);
+    int length = label.codePointCount(0, label.length());
+    boolean fuzzy = scope.getMaxEdits() > 0
+        && length >= FuzzyLookups.MIN_FUZZY_LENGTH;
+    if ((conceptURIs == null || conceptURIs.length == 0) && fuzzy) {
+      // the concepts of the closest labels, for typos
+      conceptURIs = FuzzyLookups.closestConcepts(FuzzyLookups
+          .getFuzzyConcepts(engine, label, scope.getMaxEdits(),
+              scope.getFuzzyPrefixLength()));
+    }
+    if (conceptURIs != null && conceptURIs.length > 0) {
+      labels = expandConcepts(engine, conceptURIs, scope);
+    }
+
+    if (cache != null) {
+      cache.put(key, labels != null ? labels : NO_EXPANSIONS);
+    }
+    return labels;
+  }
+
+  private static String[][] expandConcepts(SKOSEngine engine,
+      String[] conceptURIs, ExpansionScope scope) throws IOException {
+    // the labels of all concepts but the leveled hierarchy, in one batch
+    Set<SKOSType> batched = EnumSet.noneOf(SKOSType.class);
+    for (SKOSType type : scope.getTypes()) {
+      if (type != SKOSType.BROADER && type != SKOSType.NARROWER) {
+        batched.add(type);
+      }
+    }
+    Map<String,Map<SKOSType,String[]>> expansions = batched.isEmpty() ? null
+        : BatchLookups.expand(engine, conceptURIs, batched);
+
+    String[][] labels = new String[SKOSType.RELATED.ordinal() + 1][];
+    for (SKOSType type : scope.getTypes()) {
+      Set<String> values = new LinkedHashSet<String>();
+      for (String conceptURI : conceptURIs) {
+        switch (type) {
+          case BROADER:
+            addHierarchy(values, engine, conceptURI, true, scope.getDepth());
+            break;
+          case NARROWER:
+            addHierarchy(values, engine, conceptURI, false, scope.getDepth());
+            break;
+          default:
+            Map<SKOSType,String[]> expansion = expansions.get(conceptURI);
+            if (expansion != null) {
+              add(values, expansion.get(type));
+            }
+        }
+      }
+      labels[type.ordinal()] = values.toArray(new String[values.size()]);
+    }
+    return labels;
+  }
+
+  /**
+   * Adds the preferred labels of the broader or narrower concepts up to the
+   * given number of levels
+   */
+  private static void addHierarchy(Set<String> values, SKOSEngine engine,
+      String conceptURI, boolean broader, int depth) throws IOException {
+    Set<String> seen = new HashSet<String>();
+    seen.add(conceptURI);
+    List<String> level = Arrays.asList(conceptURI);
+    for (int i = 0; i < depth && !level.isEmpty(); i++) {
+      List<String> next = new ArrayList<String>();
+      for (String uri : level) {
+        String[] related = broader ? engine.getBroaderConcepts(uri) : engine
+            .getNarrowerConcepts(uri);
+        if (related == null) {
+          continue;
+        }
+        for (String relatedURI : related) {
+          if (seen.add(relatedURI)) {
+            next.add(relatedURI);
+            add(values, engine.getPrefLabels(relatedURI));
+          }
+        }
+      }
+      level = next;
+    }
+  }
+
+  private static void add(Set<String> values, String[] labels) {
+    if (labels != null) {
+      values.addAll(Arrays.asList(labels));
+    }
+  }
+
+  @Override
+  public String getDescription() {
+    return "SKOS query expansion with the engine of field type "
+        + fieldTypeName;
+  }
+
+  @Override
+  public NamedList<Object> getStatistics() {
+    NamedList<Object> statistics = new SimpleOrderedMap<Object>();
+    if (cache != null) {
+      ConcurrentLRUCache.Stats stats = cache.getStats();
+      statistics.add("cacheLookups", stats.getCumulativeLookups());
+      statistics.add("cacheHits", stats.getCumulativeHits());
+      statistics.add("cacheEvictions", stats.getCumulativeEvictions());
+      statistics.add("cacheSize", stats.getCurrentSize());
+    }
+    return statistics;
+  }
+}
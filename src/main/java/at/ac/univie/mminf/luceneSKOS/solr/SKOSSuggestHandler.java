@@ -0,0 +1,315 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.handler.RequestHandlerBase;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.search.ConceptSuggester;
+import at.ac.univie.mminf.luceneSKOS.search.ConceptSuggester.Suggestion;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookups;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * A Solr request handler suggesting concepts by a prefix of their labels,
+ * e.g.
+ *
+ * <pre>
+ * &lt;requestHandler name="/skos/suggest" class="at.ac.univie.mminf.luceneSKOS.solr.SKOSSuggestHandler"&gt;
+ *   &lt;str name="fieldType"&gt;skos&lt;/str&gt;
+ *   &lt;str name="popularity"&gt;concept-counts.txt&lt;/str&gt;
+ * &lt;/requestHandler&gt;
+ *
+ * /skos/suggest?q=myoc&amp;lang=en&amp;rows=10
+ * </pre>
+ *
+ * It uses the engine of the {@link SKOSFilterFactory} of the field type given
+ * by the init argument fieldType. A {@link ConceptSuggester} is built per
+ * language (the parameter lang, a fallback chain of label languages) on its
+ * first request, while requests for other languages go on. The chains are
+ * matched to the languages of the engine's index, so chains differing in case
+ * or in languages the index lacks share a suggester, as do all chains of
+ * snapshots. At most maxSuggesters (8) are kept, the least recently used is
+ * dropped first. The other init arguments are types (the label types suggested
+ * by, pref,alt by default), popularity, a resource listing a concept URI and
+ * its popularity per line, by which the concepts are ranked, and defaults of
+ * the parameters rows (the number of suggestions, 10), fuzzy (the edits allowed
+ * for typos, 0) and fuzzyPrefix (the leading characters matched exactly despite
+ * typos, 1).
+ */
+public class SKOSSuggestHandler extends RequestHandlerBase {
+
+  public static final String LANGUAGE = "lang";
+
+  public static final int DEFAULT_ROWS = 10;
+
+  /* the number of suggestions returned at most */
+  private static final int MAX_ROWS = 1000;
+
+  private String fieldTypeName;
+
+  private SKOSType[] types = {SKOSType.PREF, SKOSType.ALT};
+
+  private int defaultRows;
+
+  private int defaultMaxEdits;
+
+  private int defaultFuzzyPrefix;
+
+  private String popularityResource;
+
+  public static final int DEFAULT_MAX_SUGGESTERS = 8;
+
+  /* the suggesters by their language chain, once built or being built */
+  private Map<String,FutureTask<ConceptSuggester>> suggesters;
+
+  @Override
+  public void init(@SuppressWarnings("rawtypes") NamedList args) {
+    super.init(args);
+    SolrParams params = SolrParams.toSolrParams(args);
+    fieldTypeName = params.get("fieldType");
+    if (fieldTypeName == null) {
+      throw new SolrException(ErrorCode.SERVER_ERROR,
+          "The SKOS suggest handler requires the init argument fieldType");
+    }
+    String typesString = params.get(ExpansionScope.TYPES);
+    if (typesString != null) {
+      List<SKOSType> parsed = new ArrayList<SKOSType>();
+      for (String name : typesString.trim().split("[,\\s]+")) {
+        parsed.add(ExpansionScope.type(name));
+      }
+      types = parsed.toArray(new SKOSType[parsed.size()]);
+      try {
+        ConceptSuggester.builder().setTypes(types);
+      } catch (IllegalArgumentException e) {
+        throw new SolrException(ErrorCode.SERVER_ERROR, e.getMessage(), e);
+      }
+    }
+    defaultRows = params.getInt(CommonParams.ROWS, DEFAULT_ROWS);
+    defaultMaxEdits = params.getInt(ExpansionScope.FUZZY, 0);
+    defaultFuzzyPrefix = params.getInt(ExpansionScope.FUZZY_PREFIX,
+        ExpansionScope.DEFAULT_FUZZY_PREFIX);
+    popularityResource = params.get("popularity");
+    final int maxSuggesters = params.getInt("maxSuggesters",
+        DEFAULT_MAX_SUGGESTERS);
+    if (maxSuggesters < 1) {
+      throw new SolrException(ErrorCode.SERVER_ERROR,
+          "The init argument maxSuggesters must be positive");
+    }
+    suggesters = new LinkedHashMap<String,FutureTask<ConceptSuggester>>(16,
+        0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<String,FutureTask<ConceptSuggester>> eldest) {
+        return size() > maxSuggesters;
+      }
+    };
+  }
+
+  @Override
+  public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp)
+      throws Exception {
+    SolrParams params = req.getParams();
+    String prefix = params.get(CommonParams.Q, "");
+    int rows = Math.min(params.getInt(CommonParams.ROWS, defaultRows),
+        MAX_ROWS);
+    String lang = params.get(LANGUAGE);
+    int maxEdits = params.getInt(ExpansionScope.FUZZY, defaultMaxEdits);
+    int fuzzyPrefix = params.getInt(ExpansionScope.FUZZY_PREFIX,
+        defaultFuzzyPrefix);
+    try {
+      FuzzyLookups.checkEdits(maxEdits);
+    } catch (IllegalArgumentException e) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, e.getMessage(), e);
+    }
+
+    List<NamedList<Object>> suggestions = new ArrayList<NamedList<Object>>();
+    SKOSEngine engine = SKOSFilterFactory.forFieldType(req.getSchema(),
+        fieldTypeName).getEngine();
+    // no suggestions while the engine is set up
+    if (engine != null) {
+      ConceptSuggester suggester = getSuggester(req, engine, lang);
+      for (Suggestion suggestion : suggester.lookup(prefix, rows, maxEdits,
+          fuzzyPrefix)) {
+        NamedList<Object> entry = new SimpleOrderedMap<Object>();
+        entry.add("label", suggestion.getLabel());
+        entry.add("uri", suggestion.getConceptURI());
+        entry.add("type", suggestion.getType().name().toLowerCase());
+        entry.add("weight", suggestion.getWeight());
+        entry.add("edits", suggestion.getEdits());
+        suggestions.add(entry);
+      }
+    }
+    rsp.add("suggestions", suggestions);
+  }
+
+  /**
+   * Returns the suggester of the given language, building it if needed. The
+   * first request of a language builds it outside the lock, the others of the
+   * same language wait for it.
+   */
+  private ConceptSuggester getSuggester(final SolrQueryRequest req,
+      SKOSEngine engine, String lang) throws IOException {
+    String[] chain = SKOSFilterFactory.languageChain(engine,
+        lang != null ? lang.trim().split("[,\\s]+") : new String[0]);
+    final SKOSEngine view = chain.length > 0 ? SKOSFilterFactory.languageView(
+        engine, chain) : engine;
+    String key = StringUtils.join(chain, ',');
+
+    FutureTask<ConceptSuggester> task;
+    boolean building = false;
+    synchronized (suggesters) {
+      task = suggesters.get(key);
+      if (task == null) {
+        task = new FutureTask<ConceptSuggester>(
+            new Callable<ConceptSuggester>() {
+              @Override
+              public ConceptSuggester call() throws IOException {
+                ConceptSuggester.Builder builder = ConceptSuggester.builder()
+                    .setTypes(types);
+                if (popularityResource != null) {
+                  builder.setWeights(readPopularity(req.getCore()
+                      .getResourceLoader()));
+                }
+                return builder.addAll(view).build();
+              }
+            });
+        suggesters.put(key, task);
+        building = true;
+      }
+    }
+    if (building) {
+      task.run();
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE,
+          "Interrupted waiting for the suggester", e);
+    } catch (ExecutionException e) {
+      // let the next request try again
+      synchronized (suggesters) {
+        if (suggesters.get(key) == task) {
+          suggesters.remove(key);
+        }
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new SolrException(ErrorCode.SERVER_ERROR, cause);
+    }
+  }
+
+  /**
+   * Reads the popularity of the concepts, one URI and its popularity per
+   * line, separated by white space. Lines starting with # are skipped.
+   */
+  private Map<String,Long> readPopularity(SolrResourceLoader loader)
+      throws IOException {
+    Map<String,Long> popularity = new HashMap<String,Long>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        loader.openResource(popularityResource), "UTF-8"));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\\s+");
+        try {
+          popularity.put(fields[0], Long.parseLong(fields[fields.length - 1]));
+        } catch (NumberFormatException e) {
+          throw new SolrException(ErrorCode.SERVER_ERROR, "Invalid line in "
+              + popularityResource + ": " + line, e);
+        }
+      }
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+    return popularity;
+  }
+
+  @Override
+  public String getDescription() {
+    return "SKOS concept suggestions with the engine of field type "
+        + fieldTypeName;
+  }
+
+  @Override
+  public String getSource() {
+    return null;
+  }
+
+  @Override
+  public NamedList<Object> getStatistics() {
+    NamedList<Object> statistics = super.getStatistics();
+    Map<String,FutureTask<ConceptSuggester>> built;
+    synchronized (suggesters) {
+      built = new LinkedHashMap<String,FutureTask<ConceptSuggester>>(
+          suggesters);
+    }
+    for (Map.Entry<String,FutureTask<ConceptSuggester>> entry : built
+        .entrySet()) {
+      if (!entry.getValue().isDone()) {
+        continue;
+      }
+      String lang = entry.getKey().length() > 0 ? entry.getKey() : "default";
+      try {
+        statistics.add("labels." + lang, entry.getValue().get()
+            .getLabelCount());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        // failed builds have no labels
+      }
+    }
+    return statistics;
+  }
+
+}
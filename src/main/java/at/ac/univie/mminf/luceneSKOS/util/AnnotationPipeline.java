@@ -0,0 +1,489 @@
+package at.ac.univie.mminf.luceneSKOS.util;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.noggit.ObjectBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.ExpansionBudget;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+
+/**
+ * Annotates a corpus offline: documents are read line by line, analyzed by a
+ * pool of workers sharing one analyzer (and thus one engine), and written as
+ * JSON lines listing their tokens with offsets, positions and SKOS types.
+ *
+ * The reader blocks once a given number of documents is in flight, so that
+ * neither slow workers nor a slow writer let the documents pile up in memory.
+ * Documents are written in the order they are read. The time spent in each
+ * stage is reported by the {@link Stats}.
+ */
+public class AnnotationPipeline {
+
+  private static final Logger log = LoggerFactory
+      .getLogger(AnnotationPipeline.class);
+
+  /**
+   * The layouts of the input
+   */
+  public enum Format {
+    /** each line is the text of a document */
+    TEXT,
+    /** each line is a JSON object holding the text of a document */
+    JSONL
+  }
+
+  /* marks the end of the documents in flight */
+  private static final Future<String> END = new FutureTask<String>(
+      new Callable<String>() {
+        @Override
+        public String call() {
+          return null;
+        }
+      });
+
+  private final Analyzer analyzer;
+
+  private final int workers;
+
+  private final int capacity;
+
+  private Format format = Format.TEXT;
+
+  private String textField = "text";
+
+  private String idField = "id";
+
+  /**
+   * @param analyzer
+   *          the analysis chain, e.g. a SKOSAnalyzer or ConceptTaggerAnalyzer
+   * @param workers
+   *          the number of threads analyzing documents
+   * @param capacity
+   *          the number of documents in flight before the reader blocks
+   */
+  public AnnotationPipeline(Analyzer analyzer, int workers, int capacity) {
+    if (workers < 1 || capacity < 1) {
+      throw new IllegalArgumentException(
+          "The numbers of workers and documents in flight must be positive");
+    }
+    this.analyzer = analyzer;
+    this.workers = workers;
+    this.capacity = capacity;
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  public void setFormat(Format format) {
+    this.format = format;
+  }
+
+  /**
+   * Sets the JSON keys of the text and the id of a document. The text is also
+   * analyzed as the field of this name.
+   */
+  public void setFields(String textField, String idField) {
+    this.textField = textField;
+    this.idField = idField;
+  }
+
+  /**
+   * Annotates the documents of the given input
+   * 
+   * @param source
+   *          the name of the input, identifying documents without an id
+   * @return the statistics of the run
+   * @throws IOException
+   *           if reading or writing fails
+   */
+  public Stats run(BufferedReader input, String source, Writer output)
+      throws IOException {
+    Stats stats = new Stats();
+    run(input, source, output, stats);
+    return stats;
+  }
+
+  /**
+   * Annotates the documents of the given input, adding to the given
+   * statistics, e.g. to sum up several inputs
+   */
+  public void run(BufferedReader input, final String source,
+      final Writer output, final Stats stats) throws IOException {
+    long start = System.nanoTime();
+    final BlockingQueue<Future<String>> inFlight = new ArrayBlockingQueue<Future<String>>(
+        capacity);
+    ExecutorService pool = Executors.newFixedThreadPool(workers,
+        new NamedThreadFactory("annotation worker"));
+    final AtomicReference<IOException> writeFailure = new AtomicReference<IOException>();
+
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        write(inFlight, output, stats, writeFailure);
+      }
+    }, "annotation writer");
+    writer.start();
+
+    boolean finished = false;
+    try {
+      int lineNumber = 0;
+      while (true) {
+        long reading = System.nanoTime();
+        final String line = input.readLine();
+        long read = System.nanoTime();
+        stats.readNanos.addAndGet(read - reading);
+        if (line == null || writeFailure.get() != null) {
+          break;
+        }
+        lineNumber++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        final String id = source + ":" + lineNumber;
+        inFlight.put(pool.submit(new Callable<String>() {
+          @Override
+          public String call() throws IOException {
+            return annotate(line, id, stats);
+          }
+        }));
+        stats.readBlockedNanos.addAndGet(System.nanoTime() - read);
+      }
+      inFlight.put(END);
+      writer.join();
+      finished = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted annotating " + source, e);
+    } finally {
+      // reading or submitting failed: the writer waits for documents which
+      // will never come
+      if (!finished) {
+        stop(writer);
+      }
+      pool.shutdownNow();
+      stats.elapsedNanos.addAndGet(System.nanoTime() - start);
+    }
+    IOException failure = writeFailure.get();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Interrupts the writer and waits for it to exit, keeping the interrupt
+   * status of the current thread
+   */
+  private static void stop(Thread writer) {
+    writer.interrupt();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        writer.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writes the annotated documents in the order they were read. After a
+   * failure the documents are still taken, so that the reader does not block.
+   */
+  private void write(BlockingQueue<Future<String>> inFlight, Writer output,
+      Stats stats, AtomicReference<IOException> failure) {
+    try {
+      while (true) {
+        long waiting = System.nanoTime();
+        Future<String> next = inFlight.take();
+        if (next == END) {
+          break;
+        }
+        String annotated;
+        try {
+          annotated = next.get();
+        } catch (ExecutionException e) {
+          stats.failed.incrementAndGet();
+          log.warn("Could not annotate a document", e.getCause());
+          continue;
+        } finally {
+          stats.writeWaitNanos.addAndGet(System.nanoTime() - waiting);
+        }
+        if (failure.get() != null) {
+          continue;
+        }
+        long writing = System.nanoTime();
+        try {
+          output.write(annotated);
+          output.write('\n');
+          stats.documents.incrementAndGet();
+        } catch (IOException e) {
+          failure.compareAndSet(null, e);
+        }
+        stats.writeNanos.addAndGet(System.nanoTime() - writing);
+      }
+      output.flush();
+    } catch (IOException e) {
+      failure.compareAndSet(null, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Analyzes a document and returns its annotation as a line of JSON
+   */
+  private String annotate(String line, String id, Stats stats)
+      throws IOException {
+    long start = System.nanoTime();
+    String text = line;
+    if (format == Format.JSONL) {
+      Object json = ObjectBuilder.fromJSON(line);
+      if (!(json instanceof Map)) {
+        throw new IOException(id + ": not a JSON object");
+      }
+      Map<?,?> document = (Map<?,?>) json;
+      Object value = document.get(textField);
+      if (!(value instanceof String)) {
+        throw new IOException(id + ": no text in " + textField);
+      }
+      text = (String) value;
+      if (document.get(idField) != null) {
+        id = document.get(idField).toString();
+      }
+    }
+
+    StringBuilder out = new StringBuilder(text.length());
+    out.append("{\"id\":");
+    appendString(out, id);
+    out.append(",\"tokens\":[");
+
+    ExpansionBudget.startDocument();
+    TokenStream ts = analyzer.tokenStream(textField, new StringReader(text));
+    try {
+      CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+      OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+      PositionIncrementAttribute posIncrAtt = ts
+          .addAttribute(PositionIncrementAttribute.class);
+      TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+      SKOSTypeAttribute skosAtt = ts.hasAttribute(SKOSTypeAttribute.class) ? ts
+          .getAttribute(SKOSTypeAttribute.class) : null;
+      int position = -1;
+      int tokens = 0;
+      ts.reset();
+      while (ts.incrementToken()) {
+        position += posIncrAtt.getPositionIncrement();
+        if (tokens++ > 0) {
+          out.append(',');
+        }
+        out.append("{\"term\":");
+        appendString(out, termAtt.toString());
+        out.append(",\"start\":").append(offsetAtt.startOffset());
+        out.append(",\"end\":").append(offsetAtt.endOffset());
+        out.append(",\"position\":").append(position);
+        out.append(",\"type\":");
+        appendString(out, typeAtt.type());
+        SKOSType skosType = skosAtt != null ? skosAtt.getSkosType() : null;
+        if (skosType != null) {
+          out.append(",\"skosType\":");
+          appendString(out, skosType.name());
+        }
+        out.append('}');
+      }
+      ts.end();
+      stats.tokens.addAndGet(tokens);
+    } finally {
+      ts.close();
+      ExpansionBudget.endDocument();
+    }
+
+    out.append("]}");
+    stats.analyzeNanos.addAndGet(System.nanoTime() - start);
+    return out.toString();
+  }
+
+  private static void appendString(StringBuilder out, String s) {
+    out.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append(String.format("\\u%04x", (int) c));
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+
+  /**
+   * The throughput of a run and the time spent in each stage. The analysis
+   * time is summed up over all workers.
+   */
+  public static final class Stats {
+
+    final AtomicLong documents = new AtomicLong();
+
+    final AtomicLong failed = new AtomicLong();
+
+    final AtomicLong tokens = new AtomicLong();
+
+    final AtomicLong elapsedNanos = new AtomicLong();
+
+    final AtomicLong readNanos = new AtomicLong();
+
+    final AtomicLong readBlockedNanos = new AtomicLong();
+
+    final AtomicLong analyzeNanos = new AtomicLong();
+
+    final AtomicLong writeWaitNanos = new AtomicLong();
+
+    final AtomicLong writeNanos = new AtomicLong();
+
+    /** Returns the number of documents written */
+    public long getDocuments() {
+      return documents.get();
+    }
+
+    /** Returns the number of documents which could not be annotated */
+    public long getFailed() {
+      return failed.get();
+    }
+
+    /** Returns the number of tokens written */
+    public long getTokens() {
+      return tokens.get();
+    }
+
+    public long getElapsedMillis() {
+      return millis(elapsedNanos);
+    }
+
+    /** Returns the time spent reading lines */
+    public long getReadMillis() {
+      return millis(readNanos);
+    }
+
+    /** Returns the time the reader waited for the workers or the writer */
+    public long getReadBlockedMillis() {
+      return millis(readBlockedNanos);
+    }
+
+    /** Returns the time spent analyzing, summed up over all workers */
+    public long getAnalyzeMillis() {
+      return millis(analyzeNanos);
+    }
+
+    /** Returns the time the writer waited for the next document */
+    public long getWriteWaitMillis() {
+      return millis(writeWaitNanos);
+    }
+
+    /** Returns the time spent writing */
+    public long getWriteMillis() {
+      return millis(writeNanos);
+    }
+
+    /** Returns the number of documents written per second */
+    public double getDocumentsPerSecond() {
+      long elapsed = elapsedNanos.get();
+      return elapsed > 0 ? documents.get() * 1e9 / elapsed : 0;
+    }
+
+    private static long millis(AtomicLong nanos) {
+      return nanos.get() / 1000000;
+    }
+
+    @Override
+    public String toString() {
+      return documents + " documents (" + failed + " failed), " + tokens
+          + " tokens in " + getElapsedMillis() + " ms, "
+          + String.format("%.1f", getDocumentsPerSecond()) + " documents/s;"
+          + " read " + getReadMillis() + " ms (blocked "
+          + getReadBlockedMillis() + " ms), analyze " + getAnalyzeMillis()
+          + " ms, write " + getWriteMillis() + " ms (waiting "
+          + getWriteWaitMillis() + " ms)";
+    }
+  }
+
+  private static final class NamedThreadFactory implements ThreadFactory {
+
+    private final String name;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, name + " " + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
@@ -0,0 +1,161 @@
+package at.ac.univie.mminf.luceneSKOS.util;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.util.Version;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.ConceptTaggerAnalyzer;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer.ExpansionType;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngineFactory;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat;
+import at.ac.univie.mminf.luceneSKOS.util.AnnotationPipeline.Format;
+import at.ac.univie.mminf.luceneSKOS.util.AnnotationPipeline.Stats;
+
+/**
+ * Annotates text or JSON lines files offline with the SKOS analysis chain or
+ * the concept tagger, by an {@link AnnotationPipeline} sharing one engine
+ * between its workers. The annotated documents are written as JSON lines, the
+ * statistics of the run to standard error.
+ */
+public class SKOSAnnotator {
+
+  private static final Version MATCH_VERSION = Version.LUCENE_45;
+
+  /*
+   * Options:
+   *    -v <vocabulary> the skos file or URI, or a compiled snapshot.
+   *    -i <inputs> the files to annotate, separated by spaces.
+   *    -o <output> the file to write, by default standard output.
+   *    -m <mode> label (default) or uri to expand, tag to tag concepts.
+   *    -f <format> text (default), one document per line, or jsonl.
+   *    -t <field> the JSON key of the text, by default "text".
+   *    -w <workers> the number of workers, by default one per processor.
+   *    -q <documents> the documents in flight, by default 64 per worker.
+   *    -l <languages> the label languages to be considered, separated by
+   *    spaces. By default, all labels are considered.
+   */
+  public static void main(String[] args) {
+    String vocabulary = null;
+    String[] inputs = null;
+    String output = null;
+    String mode = "label";
+    Format format = Format.TEXT;
+    String textField = "text";
+    int workers = Runtime.getRuntime().availableProcessors();
+    int capacity = -1;
+    String[] languages = null;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (i + 1 == args.length) {
+          throw new IllegalArgumentException("Missing value of " + arg);
+        }
+        String value = args[++i];
+        if ("-v".equals(arg)) {
+          vocabulary = value;
+        } else if ("-i".equals(arg)) {
+          inputs = value.trim().split("\\s+");
+        } else if ("-o".equals(arg)) {
+          output = value;
+        } else if ("-m".equals(arg)) {
+          mode = value.toLowerCase();
+          if (!mode.equals("label") && !mode.equals("uri")
+              && !mode.equals("tag")) {
+            throw new IllegalArgumentException("Unknown mode " + value);
+          }
+        } else if ("-f".equals(arg)) {
+          format = Format.valueOf(value.toUpperCase());
+        } else if ("-t".equals(arg)) {
+          textField = value;
+        } else if ("-w".equals(arg)) {
+          workers = Integer.parseInt(value);
+        } else if ("-q".equals(arg)) {
+          capacity = Integer.parseInt(value);
+        } else if ("-l".equals(arg)) {
+          languages = value.trim().split("\\s+");
+        } else {
+          throw new IllegalArgumentException("Unknown option " + arg);
+        }
+      }
+      if (vocabulary == null || inputs == null) {
+        throw new IllegalArgumentException("No vocabulary or input given");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: SKOSAnnotator -v <vocabulary> -i \"<inputs>\""
+          + " [-o <output>] [-m label|uri|tag] [-f text|jsonl] [-t <field>]"
+          + " [-w <workers>] [-q <documents>] [-l \"<languages>\"]");
+      System.exit(2);
+      return;
+    }
+
+    Writer out = null;
+    try {
+      long start = System.nanoTime();
+      SKOSEngine engine = vocabulary.endsWith(SnapshotFormat.SUFFIX) ? SKOSEngineFactory
+          .getSKOSEngine(new File(vocabulary)) : SKOSEngineFactory
+          .getSKOSEngine(MATCH_VERSION, vocabulary, languages);
+      Analyzer analyzer = mode.equals("tag") ? new ConceptTaggerAnalyzer(
+          MATCH_VERSION, engine) : new SKOSAnalyzer(MATCH_VERSION, engine,
+          mode.equals("uri") ? ExpansionType.URI : ExpansionType.LABEL);
+      System.err.println("set up " + vocabulary + " in "
+          + (System.nanoTime() - start) / 1000000 + " ms");
+
+      AnnotationPipeline pipeline = new AnnotationPipeline(analyzer, workers,
+          capacity > 0 ? capacity : 64 * workers);
+      pipeline.setFormat(format);
+      pipeline.setFields(textField, "id");
+
+      out = new BufferedWriter(new OutputStreamWriter(
+          output != null ? new FileOutputStream(output) : System.out, "UTF-8"));
+      Stats stats = new Stats();
+      for (String input : inputs) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            new FileInputStream(input), "UTF-8"));
+        try {
+          pipeline.run(in, input, out, stats);
+        } finally {
+          IOUtils.closeQuietly(in);
+        }
+        System.err.println(input + ": " + stats);
+      }
+    } catch (IOException e) {
+      System.err.println("Could not annotate: " + e.getMessage());
+      System.exit(1);
+    } finally {
+      if (output != null) {
+        IOUtils.closeQuietly(out);
+      }
+    }
+  }
+
+}
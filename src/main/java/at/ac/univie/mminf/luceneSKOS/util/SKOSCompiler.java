@@ -0,0 +1,194 @@
+package at.ac.univie.mminf.luceneSKOS.util;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+import at.ac.univie.mminf.luceneSKOS.skos.LabelNormalizer;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl.Storage;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat.Profile;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotWriter;
+
+/**
+ * Compiles a SKOS, MeSH or SNOMED vocabulary into a binary engine snapshot,
+ * which is then loaded by {@link SnapshotEngineImpl} (or the Solr filter
+ * factory, given a skosFile ending in {@value SnapshotFormat#SUFFIX}) without
+ * parsing the vocabulary again.
+ *
+ * After compiling, the snapshot is loaded once in a fresh JVM, on the class
+ * path of this one, and the cold-start time is reported: the time to load it
+ * and answer a first lookup with none of the engine classes loaded or
+ * compiled yet. Only the file may already be in the page cache, as it was just
+ * written. With --max-startup the tool fails if the time is exceeded.
+ */
+public class SKOSCompiler {
+
+  /*
+   * Options:
+   *    -i <source> the skos file or URI, which may also be zipped.
+   *    -o <snapshot> the snapshot to write, by default the source name
+   *    with the suffix .skosnap in the working directory.
+   *    -p <profile> skos (default), mesh or snomed.
+   *    -l <languages> the label languages to be considered, separated by
+   *    spaces. By default, all labels are considered.
+   *    -n <steps> the label normalization steps besides lower-casing,
+   *    e.g. "nfkc,fold,punctuation,stem". By default, none.
+   *    -s <storage> heap (default) or mapped, the storage to measure the
+   *    cold-start time for, in a fresh JVM.
+   *    --max-startup <ms> fail if loading the snapshot takes longer.
+   */
+  public static void main(String[] args) {
+    String source = null;
+    String output = null;
+    Profile profile = Profile.SKOS;
+    String[] languages = null;
+    LabelNormalizer normalizer = LabelNormalizer.DEFAULT;
+    Storage storage = Storage.HEAP;
+    long maxStartup = -1;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        if (i + 1 == args.length) {
+          throw new IllegalArgumentException("Missing value of " + arg);
+        }
+        String value = args[++i];
+        if ("-i".equals(arg)) {
+          source = value;
+        } else if ("-o".equals(arg)) {
+          output = value;
+        } else if ("-p".equals(arg)) {
+          profile = Profile.valueOf(value.toUpperCase());
+        } else if ("-l".equals(arg)) {
+          languages = value.trim().split("\\s+");
+        } else if ("-n".equals(arg)) {
+          normalizer = LabelNormalizer.parse(value);
+        } else if ("-s".equals(arg)) {
+          storage = Storage.valueOf(value.toUpperCase());
+        } else if ("--max-startup".equals(arg)) {
+          maxStartup = Long.parseLong(value);
+        } else {
+          throw new IllegalArgumentException("Unknown option " + arg);
+        }
+      }
+      if (source == null) {
+        throw new IllegalArgumentException("No source given");
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: SKOSCompiler -i <source> [-o <snapshot>]"
+          + " [-p skos|mesh|snomed] [-l \"<languages>\"] [-n <steps>]"
+          + " [-s heap|mapped] [--max-startup <ms>]");
+      System.exit(2);
+      return;
+    }
+
+    File snapshot = new File(output != null ? output : FilenameUtils
+        .getName(source) + SnapshotFormat.SUFFIX);
+
+    try {
+      long start = System.nanoTime();
+      SnapshotWriter writer = SnapshotWriter.compile(source, snapshot,
+          profile, normalizer, languages);
+      long compiled = System.nanoTime();
+
+      System.out.println("compiled " + writer.getConceptCount()
+          + " concepts (" + profile + ") from " + source + " into "
+          + snapshot + " (" + FileUtils.byteCountToDisplaySize(snapshot.length())
+          + ") in " + millis(compiled - start) + " ms");
+
+      long startup = coldStart(snapshot, storage);
+      System.out.println("cold start (" + storage + "): " + startup + " ms");
+
+      if (maxStartup >= 0 && startup > maxStartup) {
+        System.err.println("cold start exceeds " + maxStartup + " ms");
+        System.exit(1);
+      }
+    } catch (IOException e) {
+      System.err.println("Could not compile " + source + ": " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Measures the time to load a snapshot and answer a first lookup in a fresh
+   * JVM, see {@link Startup}
+   */
+  public static long coldStart(File snapshot, Storage storage)
+      throws IOException {
+    String java = new File(new File(System.getProperty("java.home"), "bin"),
+        "java").getPath();
+    ProcessBuilder builder = new ProcessBuilder(java, "-cp", System
+        .getProperty("java.class.path"), Startup.class.getName(), snapshot
+        .getAbsolutePath(), storage.name());
+    builder.redirectErrorStream(true);
+    Process process = builder.start();
+    String output;
+    try {
+      process.getOutputStream().close();
+      output = IOUtils.toString(process.getInputStream(), "UTF-8").trim();
+      int exit = process.waitFor();
+      if (exit != 0) {
+        throw new IOException("Could not load " + snapshot + " (exit code "
+            + exit + "): " + output);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted loading " + snapshot, e);
+    } finally {
+      process.destroy();
+    }
+    String[] lines = output.split("\\s*\\n");
+    try {
+      return Long.parseLong(lines[lines.length - 1].trim());
+    } catch (NumberFormatException e) {
+      throw new IOException("Unexpected output loading " + snapshot + ": "
+          + output, e);
+    }
+  }
+
+  /**
+   * Loads a snapshot and answers a first lookup, printing the time it took
+   * in milliseconds. Run by {@link SKOSCompiler#coldStart} in a fresh JVM.
+   */
+  public static class Startup {
+
+    /*
+     * Arguments: the snapshot and the storage, heap or mapped.
+     */
+    public static void main(String[] args) throws IOException {
+      File snapshot = new File(args[0]);
+      Storage storage = Storage.valueOf(args[1]);
+      long start = System.nanoTime();
+      SnapshotEngineImpl engine = new SnapshotEngineImpl(snapshot, storage);
+      engine.getConcepts("");
+      System.out.println(millis(System.nanoTime() - start));
+    }
+  }
+
+  private static long millis(long nanos) {
+    return nanos / 1000000;
+  }
+
+}
@@ -0,0 +1,650 @@
+package at.ac.univie.mminf.luceneSKOS.util;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic SKOS vocabularies in N3, and text corpora mentioning
+ * their concepts, for benchmarks and scale tests.
+ *
+ * The shape of the vocabulary is controlled by the number of concepts, the
+ * number of alternative labels per concept, the distribution of the label
+ * lengths in words, the depth and fan-out of the hierarchy, the ratio of
+ * concepts with more than one broader concept and the label languages.
+ * Presets reproduce the shape of MeSH and SNOMED.
+ *
+ * Concepts form a forest of exactly the configured depth, or of one level per
+ * concept if there are fewer concepts. Concept 0 and the following top
+ * concepts are the roots, as many as needed to fit the concepts into the depth
+ * at the configured fan-out, and each level is larger than the one above by
+ * the same factor, at most the fan-out, such that the last level is full. The
+ * levels are numbered consecutively, and so are the narrower concepts of a
+ * concept. Additional broader concepts always have
+ * lower numbers, so the hierarchy stays acyclic. Everything about a concept is
+ * derived from the seed and the concept number, so that its labels and
+ * relations can be computed without parsing the generated file.
+ */
+public class VocabularyGenerator {
+
+  /** The namespace of the generated concept URIs */
+  public static final String NAMESPACE = "http://example.org/generated/concept/";
+
+  private static final String[] SYLLABLES = {"ba", "ce", "di", "fo", "gu",
+      "ha", "ke", "li", "mo", "nu", "pa", "re", "si", "to", "vu", "wa", "xe",
+      "yi", "zo", "lu"};
+
+  /** The maximum number of broader concepts of a concept */
+  private static final int MAX_BROADER = 4;
+
+  /**
+   * Presets reproducing the shape of well-known vocabularies
+   */
+  public enum Preset {
+    /** about 30k descriptors in 12 levels, many in several trees */
+    MESH(30000, 4, 2.0, 12, 6, 0.3),
+    /** about 350k concepts in 15 levels, with heavy multi-parenting */
+    SNOMED(350000, 2, 3.0, 15, 8, 0.6);
+
+    final int concepts;
+    final int altLabels;
+    final double labelWords;
+    final int depth;
+    final int fanOut;
+    final double multiParentRatio;
+
+    private Preset(int concepts, int altLabels, double labelWords, int depth,
+        int fanOut, double multiParentRatio) {
+      this.concepts = concepts;
+      this.altLabels = altLabels;
+      this.labelWords = labelWords;
+      this.depth = depth;
+      this.fanOut = fanOut;
+      this.multiParentRatio = multiParentRatio;
+    }
+  }
+
+  private int concepts = 1000;
+
+  private int altLabels = 2;
+
+  private double labelWords = 1.5;
+
+  private int maxLabelWords = 8;
+
+  private int depth = 6;
+
+  private int fanOut = 10;
+
+  private double multiParentRatio = 0;
+
+  private String[] languages = new String[0];
+
+  private long seed = 42;
+
+  /** The syllables of the words of each language */
+  private final Map<String,String[]> languageSyllables = new HashMap<String,String[]>();
+
+  /**
+   * The first concept of each level, followed by the number of concepts,
+   * derived from the size, the depth and the fan-out
+   */
+  private int[] levels;
+
+  /**
+   * Applies the settings of a preset
+   */
+  public void apply(Preset preset) {
+    concepts = preset.concepts;
+    altLabels = preset.altLabels;
+    labelWords = preset.labelWords;
+    depth = preset.depth;
+    fanOut = preset.fanOut;
+    multiParentRatio = preset.multiParentRatio;
+    levels = null;
+  }
+
+  public int getConcepts() {
+    return concepts;
+  }
+
+  public void setConcepts(int concepts) {
+    this.concepts = concepts;
+    levels = null;
+  }
+
+  public int getAltLabels() {
+    return altLabels;
+  }
+
+  /**
+   * Sets the average number of alternative labels per concept. The actual
+   * numbers are spread evenly between none and twice the average.
+   */
+  public void setAltLabels(int altLabels) {
+    this.altLabels = altLabels;
+  }
+
+  public double getLabelWords() {
+    return labelWords;
+  }
+
+  /**
+   * Sets the distribution of the label lengths: the number of words of a
+   * label is geometrically distributed with the given mean (at least 1),
+   * capped at the given maximum
+   */
+  public void setLabelWords(double mean, int max) {
+    if (mean < 1 || max < 1) {
+      throw new IllegalArgumentException("Labels have at least one word");
+    }
+    this.labelWords = mean;
+    this.maxLabelWords = max;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  /** Sets the number of levels of the hierarchy */
+  public void setDepth(int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("The depth must be positive");
+    }
+    this.depth = depth;
+    levels = null;
+  }
+
+  public int getFanOut() {
+    return fanOut;
+  }
+
+  /**
+   * Sets the maximum number of narrower concepts per concept. Concepts have
+   * fewer on average where the levels must grow more slowly to reach the
+   * depth.
+   */
+  public void setFanOut(int fanOut) {
+    if (fanOut < 1) {
+      throw new IllegalArgumentException("The fan-out must be positive");
+    }
+    this.fanOut = fanOut;
+    levels = null;
+  }
+
+  public double getMultiParentRatio() {
+    return multiParentRatio;
+  }
+
+  /**
+   * Sets the ratio of concepts with an additional broader concept. Each
+   * further broader concept is added with the same probability again, up to
+   * four broader concepts.
+   */
+  public void setMultiParentRatio(double multiParentRatio) {
+    this.multiParentRatio = multiParentRatio;
+  }
+
+  public String[] getLanguages() {
+    return languages;
+  }
+
+  /**
+   * Sets the label languages. Every concept gets its labels in each of the
+   * languages; without languages, plain literals are written.
+   */
+  public void setLanguages(String... languages) {
+    this.languages = languages != null ? languages : new String[0];
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /** Returns the URI of the given concept */
+  public String getConceptURI(int concept) {
+    return NAMESPACE + concept;
+  }
+
+  /** Returns the preferred label of the given concept in the first language */
+  public String getPrefLabel(int concept) {
+    return getPrefLabel(concept, languages.length > 0 ? languages[0] : null);
+  }
+
+  /**
+   * Returns the preferred label of the given concept in the given language.
+   * Preferred labels are unique within a language.
+   */
+  public String getPrefLabel(int concept, String language) {
+    Random random = random(concept, language, 0);
+    // the last word is unique to the concept
+    return label(random, concept, language);
+  }
+
+  /** Returns the alternative labels of the given concept in the first language */
+  public String[] getAltLabels(int concept) {
+    return getAltLabels(concept, languages.length > 0 ? languages[0] : null);
+  }
+
+  /** Returns the alternative labels of the given concept in the given language */
+  public String[] getAltLabels(int concept, String language) {
+    Random random = random(concept, language, 1);
+    int count = altLabels == 0 ? 0 : random.nextInt(2 * altLabels + 1);
+    String[] labels = new String[count];
+    for (int i = 0; i < count; i++) {
+      labels[i] = label(random, concepts + random.nextInt(concepts * 4 + 1),
+          language);
+    }
+    return labels;
+  }
+
+  /**
+   * Returns the broader concepts of the given concept, the primary one
+   * first, or an empty array for a root concept
+   */
+  public int[] getBroader(int concept) {
+    int[] levels = getLevels();
+    int level = levelIndex(concept);
+    if (level == 0) {
+      return new int[0];
+    }
+    // the concepts of a level are spread evenly over the level above
+    int above = levels[level] - levels[level - 1];
+    int size = levels[level + 1] - levels[level];
+    int primary = levels[level - 1]
+        + (int) ((long) (concept - levels[level]) * above / size);
+
+    Random random = random(concept, null, 2);
+    int[] broader = new int[MAX_BROADER];
+    broader[0] = primary;
+    int count = 1;
+    for (int attempt = 0; attempt < 2 * MAX_BROADER && count < MAX_BROADER
+        && random.nextDouble() < multiParentRatio; attempt++) {
+      int extra = random.nextInt(concept);
+      if (!contains(broader, count, extra)) {
+        broader[count++] = extra;
+      }
+    }
+    int[] result = new int[count];
+    System.arraycopy(broader, 0, result, 0, count);
+    return result;
+  }
+
+  /**
+   * Returns the level of the given concept in the primary hierarchy, 1 for
+   * root concepts
+   */
+  public int getLevel(int concept) {
+    return levelIndex(concept) + 1;
+  }
+
+  private int levelIndex(int concept) {
+    int index = Arrays.binarySearch(getLevels(), concept);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  /**
+   * Returns the number of root concepts needed to fit all concepts into the
+   * configured depth
+   */
+  public int getRoots() {
+    int[] levels = getLevels();
+    return levels[1] - levels[0];
+  }
+
+  /**
+   * Returns the first concept of each level, followed by the number of
+   * concepts
+   */
+  private int[] getLevels() {
+    if (levels == null) {
+      int count = Math.max(1, Math.min(depth, concepts));
+      int roots = (int) Math.max(1, Math.ceil(concepts
+          / treeSize(fanOut, count)));
+      // the growth per level at which the roots hold all concepts
+      double low = 1;
+      double high = fanOut;
+      for (int i = 0; i < 64; i++) {
+        double growth = (low + high) / 2;
+        if (roots * treeSize(growth, count) < concepts) {
+          low = growth;
+        } else {
+          high = growth;
+        }
+      }
+      int[] starts = new int[count + 1];
+      double size = roots;
+      double above = 0;
+      for (int i = 1; i < count; i++) {
+        above += size;
+        size *= high;
+        // leave a concept at least for each level below
+        starts[i] = (int) Math.max(starts[i - 1] + 1, Math.min(concepts
+            - (count - i), Math.round(above)));
+      }
+      starts[count] = concepts;
+      levels = starts;
+    }
+    return levels;
+  }
+
+  /**
+   * Returns the number of concepts of a tree of the given number of levels,
+   * each larger than the one above by the given factor
+   */
+  private static double treeSize(double growth, int levels) {
+    double tree = 0;
+    double level = 1;
+    for (int i = 0; i < levels; i++) {
+      tree += level;
+      level *= growth;
+    }
+    return tree;
+  }
+
+  /**
+   * Writes the vocabulary in N3
+   *
+   * @throws IOException
+   */
+  public void write(File file) throws IOException {
+    Writer out = open(file);
+    try {
+      out.write("@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n\n");
+      for (int concept = 0; concept < concepts; concept++) {
+        writeConcept(out, concept);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeConcept(Writer out, int concept) throws IOException {
+    out.write("<" + getConceptURI(concept) + ">\n");
+    String[] labelLanguages = languages.length > 0 ? languages
+        : new String[] {null};
+    String separator = "    ";
+    for (String language : labelLanguages) {
+      out.write(separator + "skos:prefLabel "
+          + literal(getPrefLabel(concept, language), language));
+      separator = " ;\n    ";
+      for (String altLabel : getAltLabels(concept, language)) {
+        out.write(separator + "skos:altLabel " + literal(altLabel, language));
+      }
+    }
+    for (int broader : getBroader(concept)) {
+      out.write(separator + "skos:broader <" + getConceptURI(broader) + ">");
+    }
+    out.write(" .\n\n");
+  }
+
+  /**
+   * Generates a text of the given number of words. The mention density is
+   * the share of the words belonging to mentions of concept labels, the
+   * remaining words are fillers which are no label words.
+   *
+   * @param words
+   *          the number of words
+   * @param mentionDensity
+   *          the share of words in concept mentions, between 0 and 1
+   * @param random
+   *          the source of randomness
+   */
+  public String text(int words, double mentionDensity, Random random) {
+    StringBuilder text = new StringBuilder();
+    int written = 0;
+    // mentions start with a probability giving the requested share of words
+    double mentionStart = mentionDensity
+        / (labelWords - mentionDensity * (labelWords - 1));
+    while (written < words) {
+      String chunk;
+      if (random.nextDouble() < mentionStart) {
+        int concept = random.nextInt(concepts);
+        String language = languages.length > 0 ? languages[random
+            .nextInt(languages.length)] : null;
+        String[] altLabels = getAltLabels(concept, language);
+        int choice = random.nextInt(altLabels.length + 1);
+        chunk = choice == 0 ? getPrefLabel(concept, language)
+            : altLabels[choice - 1];
+      } else {
+        // label words are built from two-letter syllables, fillers are not
+        chunk = "q" + word(random.nextInt(500));
+      }
+      for (String word : chunk.split(" ")) {
+        if (written == words) {
+          break;
+        }
+        if (written > 0) {
+          text.append(' ');
+        }
+        text.append(word);
+        written++;
+      }
+    }
+    return text.toString();
+  }
+
+  /**
+   * Writes a corpus with one document per line
+   *
+   * @param file
+   *          the file to write
+   * @param documents
+   *          the number of documents
+   * @param words
+   *          the number of words per document
+   * @param mentionDensity
+   *          the share of words in concept mentions, between 0 and 1
+   * @throws IOException
+   */
+  public void writeCorpus(File file, int documents, int words,
+      double mentionDensity) throws IOException {
+    Random random = new Random(seed);
+    Writer out = open(file);
+    try {
+      for (int i = 0; i < documents; i++) {
+        out.write(text(words, mentionDensity, random));
+        out.write('\n');
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private Random random(int concept, String language, int purpose) {
+    long hash = seed * 31 + concept;
+    hash = hash * 31 + (language != null ? language.hashCode() : 0);
+    return new Random(hash * 31 + purpose);
+  }
+
+  /**
+   * Builds a label ending with the word for the given number, preceded by
+   * shared words which are chosen preferring frequent ones
+   */
+  private String label(Random random, int number, String language) {
+    StringBuilder label = new StringBuilder();
+    int length = 1;
+    double continuation = 1 - 1 / labelWords;
+    while (length < maxLabelWords && random.nextDouble() < continuation) {
+      length++;
+    }
+    for (int i = 1; i < length; i++) {
+      // roughly Zipf-distributed shared words
+      int shared = (int) Math.pow(2, random.nextDouble() * 12);
+      label.append(word(concepts * 5 + shared, language)).append(' ');
+    }
+    return label.append(word(number, language)).toString();
+  }
+
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String literal(String label, String language) {
+    return "\"" + label + "\"" + (language != null ? "@" + language : "");
+  }
+
+  private static Writer open(File file) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Could not create " + parent);
+    }
+    return new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(file), "UTF-8"));
+  }
+
+  /**
+   * Spells a number as a pseudo-word, distinct numbers giving distinct words
+   */
+  static String word(int number) {
+    return spell(number, SYLLABLES);
+  }
+
+  /**
+   * Spells a number as a pseudo-word of the given language, distinct numbers
+   * giving distinct words within a language
+   */
+  private String word(int number, String language) {
+    if (language == null) {
+      return spell(number, SYLLABLES);
+    }
+    String[] syllables = languageSyllables.get(language);
+    if (syllables == null) {
+      // each language orders the syllables differently
+      List<String> shuffled = new ArrayList<String>(Arrays.asList(SYLLABLES));
+      Collections.shuffle(shuffled, new Random(language.hashCode()));
+      syllables = shuffled.toArray(new String[shuffled.size()]);
+      languageSyllables.put(language, syllables);
+    }
+    return spell(number, syllables);
+  }
+
+  private static String spell(int number, String[] syllables) {
+    StringBuilder word = new StringBuilder();
+    do {
+      word.append(syllables[number % syllables.length]);
+      number /= syllables.length;
+    } while (number > 0);
+    return word.toString();
+  }
+
+  /*
+   * Options:
+   *    -o <file> the N3 file to write.
+   *    -p <preset> mesh or snomed, applied before the other options.
+   *    -n <concepts> the number of concepts, 1000 by default.
+   *    -a <altLabels> the average number of alternative labels per concept.
+   *    -w <words> the average number of words per label.
+   *    -d <depth> the depth of the hierarchy.
+   *    -f <fanOut> the maximum number of narrower concepts per concept.
+   *    -m <ratio> the ratio of concepts with several broader concepts.
+   *    -l <languages> the label languages, separated by spaces.
+   *    -s <seed> the random seed.
+   *    -c <file> also write a corpus mentioning the concepts.
+   *    --documents <n> the number of corpus documents, 1000 by default.
+   *    --words <n> the number of words per document, 200 by default.
+   *    --density <share> the share of words in concept mentions, 0.1 by
+   *    default.
+   */
+  public static void main(String[] args) throws IOException {
+    VocabularyGenerator generator = new VocabularyGenerator();
+    File output = new File("generated_skos.n3");
+    File corpus = null;
+    int documents = 1000;
+    int words = 200;
+    double density = 0.1;
+    try {
+      for (int i = 0; i < args.length; i += 2) {
+        if (i + 1 == args.length) {
+          throw new IllegalArgumentException("Missing value of " + args[i]);
+        }
+        String value = args[i + 1];
+        if ("-o".equals(args[i])) {
+          output = new File(value);
+        } else if ("-p".equals(args[i])) {
+          generator.apply(Preset.valueOf(value.toUpperCase()));
+        } else if ("-n".equals(args[i])) {
+          generator.setConcepts(Integer.parseInt(value));
+        } else if ("-a".equals(args[i])) {
+          generator.setAltLabels(Integer.parseInt(value));
+        } else if ("-w".equals(args[i])) {
+          generator.setLabelWords(Double.parseDouble(value),
+              generator.maxLabelWords);
+        } else if ("-d".equals(args[i])) {
+          generator.setDepth(Integer.parseInt(value));
+        } else if ("-f".equals(args[i])) {
+          generator.setFanOut(Integer.parseInt(value));
+        } else if ("-m".equals(args[i])) {
+          generator.setMultiParentRatio(Double.parseDouble(value));
+        } else if ("-l".equals(args[i])) {
+          generator.setLanguages(value.trim().split("\\s+"));
+        } else if ("-s".equals(args[i])) {
+          generator.setSeed(Long.parseLong(value));
+        } else if ("-c".equals(args[i])) {
+          corpus = new File(value);
+        } else if ("--documents".equals(args[i])) {
+          documents = Integer.parseInt(value);
+        } else if ("--words".equals(args[i])) {
+          words = Integer.parseInt(value);
+        } else if ("--density".equals(args[i])) {
+          density = Double.parseDouble(value);
+        } else {
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: VocabularyGenerator [-o <file>]"
+          + " [-p mesh|snomed] [-n <concepts>] [-a <altLabels>] [-w <words>]"
+          + " [-d <depth>] [-f <fanOut>] [-m <ratio>] [-l \"<languages>\"]"
+          + " [-s <seed>] [-c <corpus> [--documents <n>] [--words <n>]"
+          + " [--density <share>]]");
+      System.exit(2);
+      return;
+    }
+
+    generator.write(output);
+    System.out.println("generated " + generator.getConcepts()
+        + " concepts into " + output);
+    if (corpus != null) {
+      generator.writeCorpus(corpus, documents, words, density);
+      System.out.println("generated " + documents + " documents into "
+          + corpus);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package at.ac.univie.mminf.luceneSKOS.analysis;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer 
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing the Concept Tagger Filter
+ */
+public class ConceptTaggerFilterTest extends AbstractFilterTest {
+  
+  private Analyzer labelAnalyzer;
+  
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    labelAnalyzer = new StandardAnalyzer(matchVersion, CharArraySet.EMPTY_SET);
+  }
+  
+  @Test
+  public void tagsConcepts() throws IOException {
+    
+    ConceptDictionary dictionary = ConceptDictionary.compile(skosEngine,
+        labelAnalyzer);
+    Assert.assertEquals(7, dictionary.getConceptCount());
+    
+    // "lazy dog" is preferred to "lazy" and "dog"
+    Assert.assertEquals(Arrays.asList(
+        "http://example.com/concept/2@4-9+2/1",
+        "http://example.com/concept/1@20-25+3/1",
+        "http://example.com/concept/3@26-30+1/1",
+        "http://example.com/concept/7@35-43+2/2",
+        "http://example.com/concept/6@51-65+4/2"), tag(dictionary,
+        "The quick brown fox jumps over the lazy dog at the United Nations"));
+    
+    Assert.assertEquals(Arrays.asList("http://example.com/concept/5@0-5+1/1",
+        "http://example.com/concept/4@9-17+2/1"), tag(dictionary,
+        "Pooch is sluggish"));
+    
+    Assert.assertTrue(tag(dictionary, "The brown fox").isEmpty());
+  }
+  
+  @Test
+  public void leftmostLongest() throws IOException {
+    
+    ConceptDictionary.Builder builder = ConceptDictionary
+        .builder(labelAnalyzer);
+    builder.add("a b c d", "abcd");
+    builder.add("b c", "bc");
+    builder.add("c d e", "cde");
+    builder.add("x", "x1");
+    builder.add("X", "x2");
+    Assert.assertFalse(builder.add("x", "x1"));
+    ConceptDictionary dictionary = builder.build();
+    Assert.assertEquals(4, dictionary.getLabelCount());
+    
+    // a label inside a longer prefix which fails
+    Assert.assertEquals(Arrays.asList("bc@2-5+2/2"), tag(dictionary, "a b c e"));
+    
+    // the longest match wins, the overlapping ones are dropped
+    Assert.assertEquals(Arrays.asList("abcd@0-7+1/4"), tag(dictionary,
+        "a b c d e"));
+    Assert.assertEquals(Arrays.asList("bc@2-5+2/2"), tag(dictionary,
+        "a b c y d e"));
+    
+    // the leftmost match wins, even if a later one is longer
+    Assert.assertEquals(Arrays.asList("bc@2-5+2/2"), tag(dictionary,
+        "b b c d e"));
+    
+    // concepts sharing a label are stacked
+    Assert.assertEquals(Arrays.asList("x1@0-1+1/1", "x2@0-1+0/1",
+        "x1@2-3+1/1", "x2@2-3+0/1"), tag(dictionary, "x x"));
+  }
+  
+  /**
+   * Returns the concepts tagged in a text as uri@start-end+increment/length
+   */
+  private List<String> tag(ConceptDictionary dictionary, String text)
+      throws IOException {
+    TokenStream ts = new ConceptTaggerFilter(new LowerCaseFilter(matchVersion,
+        new StandardTokenizer(matchVersion, new StringReader(text))),
+        dictionary);
+    CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+    OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+    PositionIncrementAttribute posIncrAtt = ts
+        .addAttribute(PositionIncrementAttribute.class);
+    PositionLengthAttribute posLenAtt = ts
+        .addAttribute(PositionLengthAttribute.class);
+    List<String> tags = new ArrayList<String>();
+    ts.reset();
+    while (ts.incrementToken()) {
+      tags.add(termAtt + "@" + offsetAtt.startOffset() + "-"
+          + offsetAtt.endOffset() + "+" + posIncrAtt.getPositionIncrement()
+          + "/" + posLenAtt.getPositionLength());
+    }
+    ts.end();
+    ts.close();
+    return tags;
+  }
+  
+}
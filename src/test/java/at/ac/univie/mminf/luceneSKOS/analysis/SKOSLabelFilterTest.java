@@ -17,9 +17,15 @@
  */
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.lucene.analysis.core.SimpleAnalyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.TextField;
@@ -38,7 +44,12 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import at.ac.univie.mminf.luceneSKOS.analysis.ExpansionBudget.Limit;
 import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer.ExpansionType;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.InstrumentedSKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 import at.ac.univie.mminf.luceneSKOS.util.AnalyzerUtils;
 import at.ac.univie.mminf.luceneSKOS.util.TestUtil;
 
@@ -148,6 +159,110 @@ public void testTermQuery() throws CorruptIndexException, IOException,
     
   }
   
+  @Test
+  public void tokenGraphPhraseSearch() throws CorruptIndexException,
+      IOException {
+    
+    skosAnalyzer.setTokenGraph(true);
+    
+    Document doc = new Document();
+    doc.add(new Field("content", "The UN votes", TextField.TYPE_STORED));
+    writer.addDocument(doc);
+    
+    doc = new Document();
+    doc.add(new Field("content", "I work for the UN", TextField.TYPE_STORED));
+    writer.addDocument(doc);
+    
+    searcher = new IndexSearcher(DirectoryReader.open(writer, false));
+    
+    // the words of the expansion follow each other
+    PhraseQuery pq = new PhraseQuery();
+    pq.add(new Term("content", "united"));
+    pq.add(new Term("content", "nations"));
+    Assert.assertEquals(2, TestUtil.hitCount(searcher, pq));
+    
+    // instead of being indexed as a single term
+    TermQuery tq = new TermQuery(new Term("content", "united nations"));
+    Assert.assertEquals(0, TestUtil.hitCount(searcher, tq));
+    
+    // the input tokens keep their positions
+    pq = new PhraseQuery();
+    pq.add(new Term("content", "un"));
+    pq.add(new Term("content", "votes"));
+    Assert.assertEquals(1, TestUtil.hitCount(searcher, pq));
+    
+    pq = new PhraseQuery();
+    pq.add(new Term("content", "united"));
+    pq.add(new Term("content", "nations"));
+    pq.add(new Term("content", "votes"));
+    Assert.assertEquals(0, TestUtil.hitCount(searcher, pq));
+    
+  }
+  
+  @Test
+  public void expansionBudget() throws IOException {
+    
+    skosEngine.addEntry("http://example.com/concept/8", SKOSType.PREF, "fox");
+    skosEngine.addEntry("http://example.com/concept/8", SKOSType.ALT,
+        "reynard");
+    skosEngine.addEntry("http://example.com/concept/8", SKOSType.BROADER,
+        "http://example.com/concept/9");
+    skosEngine.addEntry("http://example.com/concept/8", SKOSType.NARROWER,
+        "http://example.com/concept/10");
+    skosEngine.addEntry("http://example.com/concept/9", SKOSType.PREF, "canid");
+    skosEngine.addEntry("http://example.com/concept/10", SKOSType.PREF,
+        "fennec");
+    
+    // per position, the narrower label is left out first
+    SKOSMetrics metrics = new SKOSMetrics();
+    Assert.assertEquals(set("fox", "reynard", "canid"), expand(
+        InstrumentedSKOSEngine.wrap(skosEngine, metrics), "fox",
+        new ExpansionBudget(2, 0, 0)));
+    Assert.assertEquals(1, metrics.getTruncated(Limit.POSITION));
+    
+    // per field value
+    Assert.assertEquals(set("quick", "fast", "speedy", "fox", "reynard"),
+        expand(skosEngine, "quick fox", new ExpansionBudget(0, 3, 0)));
+    
+    // per document, across field values
+    ExpansionBudget budget = new ExpansionBudget(0, 0, 3);
+    ExpansionBudget.startDocument();
+    try {
+      Assert.assertEquals(set("quick", "fast", "speedy"), expand(skosEngine,
+          "quick", budget));
+      Assert.assertEquals(set("quick", "fast"), expand(skosEngine, "quick",
+          budget));
+      Assert.assertEquals(3, ExpansionBudget.getDocumentExpansions());
+    } finally {
+      ExpansionBudget.endDocument();
+    }
+    Assert.assertEquals(set("quick", "fast", "speedy"), expand(skosEngine,
+        "quick", budget));
+    
+  }
+  
+  private Set<String> expand(SKOSEngine engine, String text,
+      ExpansionBudget budget) throws IOException {
+    SKOSLabelFilter filter = new SKOSLabelFilter(new StandardTokenizer(
+        matchVersion, new StringReader(text)), engine, new StandardAnalyzer(
+        matchVersion), 1, SKOSType.PREF, SKOSType.ALT, SKOSType.BROADER,
+        SKOSType.NARROWER);
+    filter.setExpansionBudget(budget);
+    CharTermAttribute termAtt = filter.addAttribute(CharTermAttribute.class);
+    Set<String> terms = new HashSet<String>();
+    filter.reset();
+    while (filter.incrementToken()) {
+      terms.add(termAtt.toString());
+    }
+    filter.end();
+    filter.close();
+    return terms;
+  }
+  
+  private static Set<String> set(String... terms) {
+    return new HashSet<String>(Arrays.asList(terms));
+  }
+  
   // @Test
   public void displayTokensWithLabelExpansion() throws IOException {
     
@@ -0,0 +1,165 @@
+package at.ac.univie.mminf.luceneSKOS.metrics;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSLabelFilter;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics.Lookup;
+import at.ac.univie.mminf.luceneSKOS.mock.SKOSEngineMock;
+
+/**
+ * Tests the metrics recorded by instrumented engines and the filters using
+ * them
+ */
+public class SKOSMetricsTest {
+
+  protected final Version matchVersion = Version.LUCENE_45;
+
+  @Test
+  public void testFilterMetrics() throws IOException {
+    SKOSEngineMock mock = new SKOSEngineMock();
+    mock.addEntry("http://example.com/concept/2", SKOSType.PREF, "quick");
+    mock.addEntry("http://example.com/concept/2", SKOSType.ALT, "fast",
+        "speedy");
+
+    SKOSMetrics metrics = new SKOSMetrics();
+    InstrumentedSKOSEngine engine = InstrumentedSKOSEngine.wrap(mock, metrics);
+    Assert.assertSame(metrics, InstrumentedSKOSEngine.getMetrics(engine));
+    Assert.assertNull(InstrumentedSKOSEngine.getMetrics(mock));
+
+    TokenStream stream = new SKOSLabelFilter(new StandardTokenizer(
+        matchVersion, new StringReader("the quick fox")), engine,
+        new StandardAnalyzer(matchVersion), 1, SKOSType.ALT);
+    stream.reset();
+    int tokens = 0;
+    while (stream.incrementToken()) {
+      tokens++;
+    }
+    stream.end();
+    stream.close();
+
+    Assert.assertEquals(5, tokens);
+    Assert.assertEquals(3, metrics.getTokensBuffered());
+    Assert.assertEquals(3, metrics.getLookups(Lookup.CONCEPTS));
+    Assert.assertEquals(1, metrics.getHits(Lookup.CONCEPTS));
+    Assert.assertEquals(2, metrics.getMisses(Lookup.CONCEPTS));
+    Assert.assertEquals(2, metrics.getExpansions(SKOSType.ALT));
+    Assert.assertEquals(0, metrics.getExpansions(SKOSType.BROADER));
+    Assert.assertEquals(3, metrics.getLatency(Lookup.CONCEPTS).getCount());
+
+    Assert.assertEquals(2L, metrics.snapshot().get("expansions.alt"));
+    Assert.assertFalse(metrics.snapshot().containsKey("expansions.broader"));
+  }
+
+  @Test
+  public void testDuplicateMetrics() throws IOException {
+    SKOSEngineMock mock = new SKOSEngineMock();
+    mock.addEntry("http://example.com/concept/2", SKOSType.PREF, "quick");
+    mock.addEntry("http://example.com/concept/2", SKOSType.ALT, "fast",
+        "speedy");
+    mock.addEntry("http://example.com/concept/3", SKOSType.PREF, "quick");
+    mock.addEntry("http://example.com/concept/3", SKOSType.ALT, "Fast");
+
+    SKOSMetrics metrics = new SKOSMetrics();
+    TokenStream stream = new SKOSLabelFilter(new StandardTokenizer(
+        matchVersion, new StringReader("the Quick fox")),
+        InstrumentedSKOSEngine.wrap(mock, metrics), new StandardAnalyzer(
+            matchVersion), 1, SKOSType.PREF, SKOSType.ALT);
+    stream.reset();
+    int tokens = 0;
+    while (stream.incrementToken()) {
+      tokens++;
+    }
+    stream.end();
+    stream.close();
+
+    // the pref label of both concepts equals the input token, their alt
+    // labels overlap
+    Assert.assertEquals(5, tokens);
+    Assert.assertEquals(0, metrics.getExpansions(SKOSType.PREF));
+    Assert.assertEquals(2, metrics.getExpansions(SKOSType.ALT));
+    Assert.assertEquals(3, metrics.getDuplicatesSkipped());
+    Assert.assertEquals(0, metrics.getDuplicatesDropped());
+    Assert.assertEquals(3L, metrics.snapshot().get("duplicatesSkipped"));
+  }
+
+  @Test
+  public void testLatencyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assert.assertEquals(0, histogram.getPercentile(50));
+    for (int i = 0; i < 99; i++) {
+      histogram.record(1000);
+    }
+    histogram.record(1000000);
+
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(1024, histogram.getPercentile(50));
+    Assert.assertEquals(1024, histogram.getPercentile(99));
+    Assert.assertEquals(1 << 20, histogram.getPercentile(100));
+    Assert.assertEquals(10990.0, histogram.getMean(), 0.001);
+  }
+
+  @Test
+  public void testRateLimitedLog() {
+    RateLimitedLog log = new RateLimitedLog(
+        LoggerFactory.getLogger(SKOSMetricsTest.class), 60000);
+    for (int i = 0; i < 1000; i++) {
+      log.warn("Unknown concept {}", "http://example.com/concept/" + i);
+    }
+    Assert.assertEquals(1000, log.getCount());
+
+    long unknown = SKOSWarnings.UNKNOWN_CONCEPTS.getCount();
+    SKOSWarnings.UNKNOWN_CONCEPTS.warn("Unknown concept {}", "test");
+    Assert.assertEquals(unknown + 1,
+        new SKOSMetrics().snapshot().get("unknownConcepts"));
+  }
+
+  @Test
+  public void testMBean() throws JMException {
+    SKOSMetrics metrics = new SKOSMetrics();
+    metrics.built(42);
+    metrics.registerMBean("test");
+    try {
+      ObjectName name = new ObjectName(SKOSMetrics.DOMAIN
+          + ":type=SKOSMetrics,name=\"test\"");
+      Assert.assertEquals(42L, ManagementFactory.getPlatformMBeanServer()
+          .getAttribute(name, "lastBuildMillis"));
+
+      // registering again replaces the MBean
+      new SKOSMetrics().registerMBean("test");
+      Assert.assertEquals(0L, ManagementFactory.getPlatformMBeanServer()
+          .getAttribute(name, "lastBuildMillis"));
+    } finally {
+      metrics.unregisterMBean();
+    }
+  }
+}
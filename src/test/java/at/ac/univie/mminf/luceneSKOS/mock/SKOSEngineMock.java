@@ -24,12 +24,13 @@
 import java.util.Map;
 
 import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelSource;
 import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
 
 /**
  * A mock that simulates the behavior of a SKOS engine for testing purposes
  */
-public class SKOSEngineMock implements SKOSEngine {
+public class SKOSEngineMock implements SKOSEngine, LabelSource {
   
   /**
    * A data structure holding a SKOS Model
@@ -169,6 +170,22 @@ public String[] getConcepts(String label) throws IOException {
     return conceptURIs.toArray(new String[conceptURIs.size()]);
   }
   
+  @Override
+  public void visitLabels(LabelVisitor visitor) throws IOException {
+    for (String conceptURI : conceptMap.keySet()) {
+      Map<SKOSType,List<String>> entryMap = conceptMap.get(conceptURI);
+      for (SKOSType type : new SKOSType[] {SKOSType.PREF, SKOSType.ALT,
+          SKOSType.HIDDEN}) {
+        List<String> labels = entryMap.get(type);
+        if (labels != null) {
+          for (String label : labels) {
+            visitor.visit(label, conceptURI);
+          }
+        }
+      }
+    }
+  }
+  
   private String[] getLabels(String conceptURI, SKOSType type)
       throws IOException {
     String[] concepts = readConceptFieldValues(conceptURI, type);
@@ -25,10 +25,15 @@
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.flexible.core.QueryNodeException;
 import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
+import org.apache.lucene.queryparser.flexible.standard.config.StandardQueryConfigHandler.Operator;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
@@ -184,4 +189,111 @@ public void queryParserSearchWithBoosts() throws IOException, QueryNodeException
     
   }
   
+  @Test
+  public void queryParserCache() throws QueryNodeException {
+    
+    ParseCache cache = new ParseCache(10);
+    SKOSStandardQueryParser parser = new SKOSStandardQueryParser(skosAnalyzer);
+    parser.setParseCache(cache);
+    
+    Query query = parser.parse("fox jumps", "content");
+    Query cached = parser.parse("fox jumps", "content");
+    Assert.assertEquals(query, cached);
+    // every caller gets its own copy
+    Assert.assertNotSame(query, cached);
+    Assert.assertNotSame(query, parser.parse("fox jumps", "title"));
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+    
+    // changed boosts are not served from the cache
+    parser.setBoost(SKOSType.ALT, 0.5f);
+    Query boosted = parser.parse("fox jumps", "content");
+    Assert.assertNotSame(query, boosted);
+    Assert.assertEquals("content:fox (content:jumps content:hops^0.5 content:leaps^0.5)",
+        boosted.toString());
+    
+    // a parser with another analyzer does not share the cached queries
+    SKOSStandardQueryParser other = new SKOSStandardQueryParser(
+        new StandardAnalyzer(matchVersion));
+    other.setParseCache(cache);
+    Assert.assertEquals("content:fox content:jumps",
+        other.parse("fox jumps", "content").toString());
+    
+    // an equal profile finds the queries parsed with it
+    parser.setBoosts(SKOSStandardQueryParser.DEFAULT_BOOSTS.with(SKOSType.ALT,
+        0.5f));
+    Assert.assertEquals(boosted, parser.parse("fox jumps", "content"));
+    Assert.assertEquals(2, cache.getHits());
+    
+    // nor do parsers of another class or configuration
+    MeSHStandadQueryParser mesh = new MeSHStandadQueryParser(skosAnalyzer);
+    mesh.setBoosts(parser.getBoosts());
+    mesh.setParseCache(cache);
+    mesh.parse("fox jumps", "content");
+    SKOSStandardQueryParser and = new SKOSStandardQueryParser(skosAnalyzer);
+    and.setBoosts(parser.getBoosts());
+    and.setDefaultOperator(Operator.AND);
+    and.setParseCache(cache);
+    Assert.assertTrue(and.parse("fox jumps", "content").toString()
+        .startsWith("+content:fox"));
+    Assert.assertEquals(2, cache.getHits());
+    
+    cache.invalidate(skosAnalyzer);
+    Assert.assertEquals(1, cache.size());
+    cache.clear();
+    Assert.assertEquals(0, cache.size());
+  }
+  
+  @Test
+  public void queryParserCacheCopiesNestedClauses() throws QueryNodeException {
+    
+    ParseCache cache = new ParseCache(10);
+    SKOSStandardQueryParser parser = new SKOSStandardQueryParser(skosAnalyzer);
+    parser.setParseCache(cache);
+    
+    Query query = parser.parse("fox jumps", "content");
+    String parsed = query.toString();
+    mutateNestedClauses((BooleanQuery) query);
+    Assert.assertEquals(parsed, parser.parse("fox jumps", "content")
+        .toString());
+    
+    mutateNestedClauses((BooleanQuery) parser.parse("fox jumps", "content"));
+    Assert.assertEquals(parsed, parser.parse("fox jumps", "content")
+        .toString());
+    Assert.assertEquals(3, cache.getHits());
+  }
+  
+  private static void mutateNestedClauses(BooleanQuery query) {
+    BooleanQuery nested = (BooleanQuery) query.getClauses()[1].getQuery();
+    nested.add(new TermQuery(new Term("content", "bounds")), Occur.SHOULD);
+    nested.getClauses()[0].setOccur(Occur.MUST);
+    nested.getClauses()[1].getQuery().setBoost(3f);
+  }
+  
+  @Test
+  public void queryParserSharedBoosts() throws QueryNodeException {
+    
+    SKOSBoosts boosts = SKOSBoosts.builder().set(SKOSType.ALT, 0.5f).build();
+    Assert.assertEquals(0.5f, boosts.get(SKOSType.ALT), 0);
+    Assert.assertEquals(1f, boosts.get(SKOSType.BROADER), 0);
+    Assert.assertFalse(boosts.isSet(SKOSType.BROADER));
+    Assert.assertEquals(boosts, SKOSBoosts.of(boosts.toMap()));
+    
+    SKOSStandardQueryParser first = new SKOSStandardQueryParser(skosAnalyzer);
+    SKOSStandardQueryParser second = new SKOSStandardQueryParser(skosAnalyzer);
+    first.setBoosts(boosts);
+    second.setBoosts(boosts);
+    
+    // changing a boost replaces the profile of one parser only
+    second.setBoost(SKOSType.ALT, 0.2f);
+    Assert.assertEquals(0.5f, boosts.get(SKOSType.ALT), 0);
+    Assert.assertSame(boosts, first.getBoosts());
+    Assert.assertEquals(0.2f, second.getBoost(SKOSType.ALT), 0);
+    
+    Assert.assertEquals("content:fox (content:jumps content:hops^0.5 content:leaps^0.5)",
+        first.parse("fox jumps", "content").toString());
+    Assert.assertEquals("content:fox (content:jumps content:hops^0.2 content:leaps^0.2)",
+        second.parse("fox jumps", "content").toString());
+  }
+  
 }
@@ -0,0 +1,123 @@
+package at.ac.univie.mminf.luceneSKOS.search;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.mock.SKOSEngineMock;
+import at.ac.univie.mminf.luceneSKOS.search.ConceptSuggester.Suggestion;
+
+/**
+ * Tests the prefix lookups of the concept suggester
+ */
+public class ConceptSuggesterTest {
+
+  private static final String CONCEPT = "http://example.com/concept/";
+
+  private SKOSEngineMock engine;
+
+  @Before
+  public void setUp() {
+    engine = new SKOSEngineMock();
+    engine.addEntry(CONCEPT + "1", SKOSType.PREF, "dog");
+    engine.addEntry(CONCEPT + "1", SKOSType.ALT, "canine", "doggy");
+    engine.addEntry(CONCEPT + "2", SKOSType.PREF, "dolphin");
+    engine.addEntry(CONCEPT + "3", SKOSType.PREF, "doberman");
+    engine.addEntry(CONCEPT + "3", SKOSType.HIDDEN, "dobermann");
+    engine.addEntry(CONCEPT + "4", SKOSType.PREF, "cat");
+  }
+
+  @Test
+  public void testLookup() throws IOException {
+    ConceptSuggester suggester = ConceptSuggester.build(engine);
+    Assert.assertEquals(6, suggester.getLabelCount());
+    Assert.assertEquals(4, suggester.getConceptCount());
+
+    // equally popular concepts are ranked by the length of their labels
+    Assert.assertEquals(Arrays.asList("dog", "dolphin", "doberman"),
+        labels(suggester.lookup("Do", 10)));
+    Assert.assertEquals(Arrays.asList("dog"), labels(suggester.lookup("do", 1)));
+
+    // concepts are found by their alt labels, but suggested once
+    List<Suggestion> suggestions = suggester.lookup("can", 10);
+    Assert.assertEquals(1, suggestions.size());
+    Assert.assertEquals(CONCEPT + "1", suggestions.get(0).getConceptURI());
+    Assert.assertEquals(SKOSType.ALT, suggestions.get(0).getType());
+    Assert.assertEquals(Arrays.asList("dog"),
+        labels(suggester.lookup("dog", 10)));
+
+    // hidden labels are not suggested by default
+    Assert.assertTrue(suggester.lookup("dobermann", 10).isEmpty());
+    Assert.assertTrue(suggester.lookup("x", 10).isEmpty());
+  }
+
+  @Test
+  public void testPopularity() throws IOException {
+    ConceptSuggester suggester = ConceptSuggester.builder()
+        .setWeight(CONCEPT + "3", 20).setWeight(CONCEPT + "2", 10)
+        .addAll(engine).build();
+    Assert.assertEquals(Arrays.asList("doberman", "dolphin", "dog"),
+        labels(suggester.lookup("do", 10)));
+    Assert.assertEquals(20, suggester.lookup("do", 1).get(0).getWeight());
+    Assert.assertEquals(Arrays.asList("doberman", "dolphin", "dog", "cat"),
+        labels(suggester.lookup("", 10)));
+  }
+
+  @Test
+  public void testFuzzyLookup() throws IOException {
+    ConceptSuggester suggester = ConceptSuggester.build(engine);
+    Assert.assertTrue(suggester.lookup("dolpih", 10).isEmpty());
+
+    List<Suggestion> suggestions = suggester.lookup("Dolpih", 10, 1, 1);
+    Assert.assertEquals(Arrays.asList("dolphin"), labels(suggestions));
+    Assert.assertEquals(1, suggestions.get(0).getEdits());
+
+    // exact matches come before those with typos
+    suggestions = suggester.lookup("dog", 10, 1, 1);
+    Assert.assertEquals(Arrays.asList("dog", "dolphin", "doberman"),
+        labels(suggestions));
+    Assert.assertEquals(0, suggestions.get(0).getEdits());
+    Assert.assertEquals(1, suggestions.get(2).getEdits());
+
+    // the first character must match
+    Assert.assertTrue(suggester.lookup("xolphin", 10, 1, 1).isEmpty());
+    // short prefixes are only matched exactly
+    Assert.assertTrue(suggester.lookup("dp", 10, 1, 0).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRelationTypes() {
+    ConceptSuggester.builder().setTypes(SKOSType.BROADER);
+  }
+
+  private static List<String> labels(List<Suggestion> suggestions) {
+    List<String> labels = new ArrayList<String>();
+    for (Suggestion suggestion : suggestions) {
+      labels.add(suggestion.getLabel());
+    }
+    return labels;
+  }
+
+}
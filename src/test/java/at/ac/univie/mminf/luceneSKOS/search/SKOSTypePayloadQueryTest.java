@@ -0,0 +1,165 @@
+package at.ac.univie.mminf.luceneSKOS.search;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.payloads.MaxPayloadFunction;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer.ExpansionType;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSTypePayload;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSTypePayload.Encoding;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.mock.SKOSEngineMock;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSBoosts;
+
+/**
+ * Tests that the payloads written at index time are weighted by the boosts
+ * given at query time
+ */
+public class SKOSTypePayloadQueryTest {
+
+  protected final Version matchVersion = Version.LUCENE_45;
+
+  protected IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws IOException {
+    searcher = index(Encoding.INT);
+  }
+
+  private IndexSearcher index(Encoding payloadEncoding) throws IOException {
+
+    SKOSEngineMock skosEngine = new SKOSEngineMock();
+    skosEngine.addEntry("http://example.com/concept/1", SKOSType.PREF, "jumps");
+    skosEngine.addEntry("http://example.com/concept/1", SKOSType.ALT, "leaps",
+        "hops");
+    skosEngine.addEntry("http://example.com/concept/2", SKOSType.PREF, "quick",
+        "fast");
+    SKOSAnalyzer analyzer = new SKOSAnalyzer(matchVersion, skosEngine,
+        ExpansionType.LABEL);
+    analyzer.setPayloadEncoding(payloadEncoding);
+
+    Directory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(
+        matchVersion, analyzer));
+    Document doc = new Document();
+    doc.add(new Field("content", "The quick brown fox jumps over the lazy dog",
+        TextField.TYPE_STORED));
+    writer.addDocument(doc);
+    writer.close();
+
+    return new IndexSearcher(DirectoryReader.open(directory));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    searcher.getIndexReader().close();
+  }
+
+  @Test
+  public void weightsByTypeAtQueryTime() throws IOException {
+
+    SKOSBoosts boosts = SKOSBoosts.builder().set(SKOSType.PREF, 3f)
+        .set(SKOSType.ALT, 0.5f).build();
+
+    Assert.assertEquals(0.5f, payloadScore("leaps", boosts), 0.0001f);
+    Assert.assertEquals(3f, payloadScore("fast", boosts), 0.0001f);
+
+    // the input tokens carry no type
+    Assert.assertEquals(1f, payloadScore("jumps", boosts), 0.0001f);
+
+    // the same index, other weights
+    boosts = boosts.with(SKOSType.ALT, 2f);
+    Assert.assertEquals(2f, payloadScore("leaps", boosts), 0.0001f);
+
+    // types without a boost are not weighted
+    Assert.assertEquals(1f, payloadScore("leaps", SKOSBoosts.NONE), 0.0001f);
+
+    // with the term score, the weights scale the score
+    float weighted = score(new SKOSTypePayloadQuery(new Term("content",
+        "hops"), boosts));
+    float unweighted = score(new SKOSTypePayloadQuery(new Term("content",
+        "hops"), SKOSBoosts.NONE));
+    Assert.assertEquals(2f * unweighted, weighted, 0.0001f);
+  }
+
+  @Test
+  public void compactPayloads() throws IOException {
+
+    BytesRef payload = SKOSTypePayload.encode(SKOSType.NARROWER,
+        Encoding.COMPACT);
+    Assert.assertEquals(1, payload.length);
+    Assert.assertEquals(SKOSType.NARROWER, SKOSTypePayload.decode(payload));
+    Assert.assertEquals(SKOSType.NARROWER, SKOSTypePayload
+        .decode(SKOSTypePayload.encode(SKOSType.NARROWER, Encoding.INT)));
+    Assert.assertNull(SKOSTypePayload.decode(new BytesRef()));
+
+    // indexes of either layout are scored alike
+    SKOSBoosts boosts = SKOSBoosts.builder().set(SKOSType.ALT, 0.5f).build();
+    float expected = score(new SKOSTypePayloadQuery(new Term("content",
+        "leaps"), boosts));
+    searcher.getIndexReader().close();
+    searcher = index(Encoding.COMPACT);
+    Assert.assertEquals(expected, score(new SKOSTypePayloadQuery(new Term(
+        "content", "leaps"), boosts)), 0.0001f);
+  }
+
+  @Test
+  public void queriesWithOtherBoostsDiffer() {
+
+    Term term = new Term("content", "leaps");
+    SKOSBoosts boosts = SKOSBoosts.builder().set(SKOSType.ALT, 0.5f).build();
+
+    Assert.assertEquals(new SKOSTypePayloadQuery(term, boosts),
+        new SKOSTypePayloadQuery(term, boosts.with(SKOSType.ALT, 0.5f)));
+    Assert.assertFalse(new SKOSTypePayloadQuery(term, boosts)
+        .equals(new SKOSTypePayloadQuery(term, SKOSBoosts.NONE)));
+  }
+
+  private float payloadScore(String text, SKOSBoosts boosts)
+      throws IOException {
+    return score(new SKOSTypePayloadQuery(new Term("content", text), boosts,
+        new MaxPayloadFunction(), false));
+  }
+
+  private float score(Query query) throws IOException {
+    TopDocs results = searcher.search(query, 1);
+    Assert.assertEquals(1, results.totalHits);
+    return results.scoreDocs[0].score;
+  }
+
+}
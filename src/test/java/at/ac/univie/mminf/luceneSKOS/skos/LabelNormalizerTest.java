@@ -0,0 +1,83 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.skos.LabelNormalizer.Step;
+
+/**
+ * Tests the normalization steps applied to labels
+ */
+public class LabelNormalizerTest {
+
+  @Test
+  public void testDefaultLowerCasesOnly() {
+
+    LabelNormalizer normalizer = LabelNormalizer.parse(null);
+    Assert.assertSame(LabelNormalizer.DEFAULT, normalizer);
+    Assert.assertSame(LabelNormalizer.DEFAULT, LabelNormalizer.parse(
+        "lowercase"));
+    Assert.assertTrue(normalizer.isDefault());
+    Assert.assertEquals("lowercase", normalizer.toString());
+
+    for (String label : new String[] {"Weapons", "T-Cells", "Émigré",
+        "ﬁle"}) {
+      Assert.assertEquals(label.toLowerCase(), normalizer.normalize(label));
+    }
+  }
+
+  @Test
+  public void testSteps() {
+
+    Assert.assertEquals("file", LabelNormalizer.of(Step.NFKC).normalize(
+        "ﬁle"));
+    Assert.assertEquals("oedeme", LabelNormalizer.of(Step.FOLD).normalize(
+        "Œdème"));
+    Assert.assertEquals("t cell human", LabelNormalizer.of(Step.PUNCTUATION)
+        .normalize(" T-Cell  (Human)"));
+    Assert.assertEquals("artery weapon", LabelNormalizer.of(Step.STEM)
+        .normalize("Arteries Weapons"));
+
+    LabelNormalizer all = LabelNormalizer.parse("fold, punctuation stem,NFKC");
+    Assert.assertEquals("oedeme pulmonary", all.normalize(
+        "Œdème (pulmonary)"));
+    Assert.assertEquals("t cell", all.normalize("T-Cells"));
+    Assert.assertEquals("", all.normalize(""));
+  }
+
+  @Test
+  public void testStringForm() {
+
+    LabelNormalizer normalizer = LabelNormalizer.parse("stem,nfkc,fold");
+    Assert.assertEquals("nfkc,lowercase,fold,stem", normalizer.toString());
+    Assert.assertEquals(normalizer, LabelNormalizer.parse(normalizer
+        .toString()));
+    Assert.assertEquals(normalizer, LabelNormalizer.of(Step.FOLD, Step.STEM,
+        Step.NFKC));
+    Assert.assertFalse(normalizer.equals(LabelNormalizer.DEFAULT));
+
+    try {
+      LabelNormalizer.parse("fold,soundex");
+      Assert.fail("unknown step");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
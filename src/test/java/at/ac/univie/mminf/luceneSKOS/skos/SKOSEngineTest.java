@@ -16,14 +16,27 @@
  * limitations under the License.
  */
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 
 import org.apache.lucene.util.Version;
 import org.junit.Test;
 
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup.Match;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.IndexManifest;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SKOSEngineImpl;
+
 /**
  * Tests the functionality of the Lucene-backed SKOS Engine implementation
  */
@@ -176,4 +189,238 @@ public void testUKATSamples() throws IOException {
     
   }
   
+  /**
+   * Tests that batch lookups find what single lookups find
+   */
+  @Test
+  public void testBatchLookups() throws IOException {
+    
+    String skosFile = "src/test/resources/skos_samples/ukat_examples.n3";
+    
+    String conceptURI = "http://www.ukat.org.uk/thesaurus/concept/859";
+    
+    SKOSEngine skosEngine = SKOSEngineFactory.getSKOSEngine(matchVersion,
+        skosFile);
+    Assert.assertTrue(skosEngine instanceof BatchLookup);
+    
+    Map<String,String[]> concepts = BatchLookups.getConcepts(skosEngine,
+        new String[] {"weapons", "Arms", "weapons", "no such label"});
+    Assert.assertEquals(Arrays.asList("Arms", "weapons"), new ArrayList<String>(
+        concepts.keySet()));
+    Assert.assertArrayEquals(skosEngine.getConcepts("arms"), concepts
+        .get("Arms"));
+    Assert.assertArrayEquals(new String[] {conceptURI}, concepts.get("weapons"));
+    
+    Set<SKOSType> types = EnumSet.of(SKOSType.PREF, SKOSType.ALT,
+        SKOSType.BROADER, SKOSType.NARROWER);
+    Map<String,Map<SKOSType,String[]>> expansions = BatchLookups.expand(
+        skosEngine, new String[] {conceptURI, "http://example.com/unknown",
+            conceptURI}, types);
+    Assert.assertEquals(1, expansions.size());
+    Map<SKOSType,String[]> labels = expansions.get(conceptURI);
+    Assert.assertEquals(types, labels.keySet());
+    for (SKOSType type : types) {
+      Assert.assertEquals(
+          new HashSet<String>(Arrays.asList(BatchLookups.getLabels(skosEngine,
+              conceptURI, type))),
+          new HashSet<String>(Arrays.asList(labels.get(type))));
+    }
+    Assert.assertEquals(3, labels.get(SKOSType.BROADER).length);
+  }
+  
+  /**
+   * Tests that concepts are found by labels with typos
+   */
+  @Test
+  public void testFuzzyConcepts() throws IOException {
+    
+    String skosFile = "src/test/resources/skos_samples/ukat_examples.n3";
+    
+    String conceptURI = "http://www.ukat.org.uk/thesaurus/concept/859";
+    
+    SKOSEngine skosEngine = SKOSEngineFactory.getSKOSEngine(matchVersion,
+        skosFile);
+    Assert.assertTrue(skosEngine instanceof FuzzyLookup);
+    
+    // a transposition is a single edit
+    List<Match> matches = FuzzyLookups.getFuzzyConcepts(skosEngine,
+        "Wepaons", 1, 1);
+    Assert.assertEquals(1, matches.size());
+    Assert.assertEquals(conceptURI, matches.get(0).getConceptURI());
+    Assert.assertEquals("weapons", matches.get(0).getLabel());
+    Assert.assertEquals(SKOSType.PREF, matches.get(0).getType());
+    Assert.assertEquals(1, matches.get(0).getEdits());
+    
+    Assert.assertTrue(FuzzyLookups.getFuzzyConcepts(skosEngine, "wepaons", 0,
+        1).isEmpty());
+    
+    // the prefix must match exactly
+    Assert.assertTrue(FuzzyLookups.getFuzzyConcepts(skosEngine, "xeapons", 1,
+        1).isEmpty());
+    Assert.assertEquals(1, FuzzyLookups.getFuzzyConcepts(skosEngine,
+        "xeapons", 1, 0).size());
+    
+    matches = FuzzyLookups.getFuzzyConcepts(skosEngine, "ordnanse", 2, 1);
+    Assert.assertEquals(SKOSType.ALT, matches.get(0).getType());
+    Assert.assertArrayEquals(
+        new String[] {"http://www.ukat.org.uk/thesaurus/concept/5060"},
+        FuzzyLookups.closestConcepts(matches));
+  }
+  
+  /**
+   * Tests that a persisted index is rebuilt once its source file changes
+   */
+  @Test
+  public void testIndexRebuiltOnSourceChange() throws IOException {
+    
+    File skosFile = new File("target/test-data/changing_skos.n3");
+    File indexDir = new File("skosdata/changing_skos.n3");
+    FileUtils.deleteQuietly(indexDir);
+    FileUtils.copyFile(new File(
+        "src/test/resources/skos_samples/simple_test_skos.n3"), skosFile);
+    
+    SKOSEngine skosEngine = SKOSEngineFactory.getSKOSEngine(matchVersion,
+        skosFile.getPath());
+    
+    Assert.assertEquals(2, skosEngine.getAltTerms("quick").length);
+    Assert.assertEquals(0, skosEngine.getAltTerms("goat").length);
+    Assert.assertNotNull(IndexManifest.read(indexDir));
+    
+    FileUtils.writeStringToFile(skosFile,
+        FileUtils.readFileToString(skosFile, "UTF-8")
+            + "\n<http://www.cs.univie.ac.at/thesaurus/concept/9>\n"
+            + "    skos:altLabel \"billy\" ;\n"
+            + "    skos:prefLabel \"goat\" .\n", "UTF-8");
+    
+    skosEngine = SKOSEngineFactory.getSKOSEngine(matchVersion,
+        skosFile.getPath());
+    
+    Assert.assertEquals(1, skosEngine.getAltTerms("goat").length);
+    Assert.assertEquals("billy", skosEngine.getAltTerms("goat")[0]);
+    
+    // no temporary build directories are left behind
+    for (String name : indexDir.getAbsoluteFile().getParentFile().list()) {
+      Assert.assertFalse(name.startsWith(".changing_skos.n3."));
+    }
+  }
+  
+  @Test
+  public void testSnapshotOnlyIndex() throws IOException {
+    
+    String skosFile = "src/test/resources/skos_samples/simple_test_skos.n3";
+    File indexRoot = new File("target/test-data/snapshot-index");
+    FileUtils.deleteQuietly(indexRoot);
+    
+    try {
+      SKOSEngineFactory.getSKOSEngine(matchVersion, skosFile, indexRoot, true);
+      Assert.fail("A missing prebuilt index must not be built on demand");
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertFalse(new File(indexRoot, "simple_test_skos.n3").exists());
+    
+    SKOSEngineFactory.getSKOSEngine(matchVersion, skosFile, indexRoot, false);
+    
+    SKOSEngine skosEngine = SKOSEngineFactory.getSKOSEngine(matchVersion,
+        "/nonexistent/simple_test_skos.n3", indexRoot, true);
+    
+    Assert.assertEquals(2, skosEngine.getAltTerms("quick").length);
+  }
+  
+  @Test
+  public void testLanguageViews() throws IOException {
+    
+    String skosFile = "src/test/resources/skos_samples/skos_spec_samples.n3";
+    File indexRoot = new File("target/test-data/language-index");
+    FileUtils.deleteQuietly(indexRoot);
+    
+    SKOSEngineImpl skosEngine = new SKOSEngineImpl(matchVersion, skosFile,
+        indexRoot, false);
+    SKOSEngine englishEngine = new SKOSEngineImpl(matchVersion, skosFile,
+        indexRoot, false, "en");
+    
+    // both engines share a single index
+    Assert.assertEquals(1, indexRoot.list().length);
+    
+    Assert.assertEquals(3, skosEngine.getAltTerms("animals").length);
+    Assert.assertArrayEquals(new String[] {"creatures"},
+        englishEngine.getAltTerms("animals"));
+    
+    SKOSEngine frenchView = skosEngine.getLanguageView("fr");
+    Assert.assertArrayEquals(new String[] {"animaux"},
+        frenchView.getPrefLabels("http://www.example.com/animals"));
+    Assert.assertEquals(0, frenchView.getConcepts("animals").length);
+    Assert.assertEquals(1, frenchView.getConcepts("betes").length);
+    Assert.assertEquals(0, englishEngine.getConcepts("betes").length);
+    
+    SKOSEngine fallbackView = skosEngine.getFallbackView("fr", "en");
+    Assert.assertArrayEquals(new String[] {"animaux"},
+        fallbackView.getPrefLabels("http://www.example.com/animals"));
+    Assert.assertArrayEquals(new String[] {"mammals"},
+        fallbackView.getPrefLabels("http://www.example.com/mammals"));
+    Assert.assertEquals(1, fallbackView.getConcepts("animals").length);
+    
+    Assert.assertEquals(0, skosEngine.getLanguageView("de").getConcepts(
+        "animals").length);
+    
+    // views of a restricted engine stay within its languages
+    SKOSEngine restrictedView = ((SKOSEngineImpl) englishEngine)
+        .getFallbackView("fr", "en");
+    Assert.assertArrayEquals(new String[] {"animals"},
+        restrictedView.getPrefLabels("http://www.example.com/animals"));
+    Assert.assertEquals(0, restrictedView.getConcepts("betes").length);
+    Assert.assertEquals(0, ((SKOSEngineImpl) englishEngine).getLanguageView(
+        "fr").getConcepts("betes").length);
+  }
+  
+  @Test
+  public void testBuildProgress() throws IOException {
+    
+    String skosFile = "src/test/resources/skos_samples/skos_spec_samples.n3";
+    File indexRoot = new File("target/test-data/progress-index");
+    FileUtils.deleteQuietly(indexRoot);
+    
+    BuildProgress progress = new BuildProgress();
+    Assert.assertEquals(BuildProgress.Phase.PENDING, progress.getPhase());
+    
+    SKOSEngineImpl skosEngine = new SKOSEngineImpl(matchVersion, skosFile,
+        indexRoot, false, progress);
+    
+    Assert.assertEquals(BuildProgress.Phase.OPEN, progress.getPhase());
+    Assert.assertEquals(6, progress.getConceptsProcessed());
+    Assert.assertFalse(progress.isReady());
+    
+    skosEngine.warmUp();
+    Assert.assertEquals(1, skosEngine.getConcepts("rocks").length);
+    
+    // an existing index is opened without indexing
+    progress = new BuildProgress();
+    new SKOSEngineImpl(matchVersion, skosFile, indexRoot, false, progress);
+    Assert.assertEquals(0, progress.getConceptsProcessed());
+  }
+  
+  @Test
+  public void testNormalizer() throws IOException {
+    
+    String skosFile = "src/test/resources/skos_samples/ukat_examples.n3";
+    File indexRoot = new File("target/test-data/normalizer-index");
+    FileUtils.deleteQuietly(indexRoot);
+    
+    SKOSEngineImpl skosEngine = new SKOSEngineImpl(matchVersion, skosFile,
+        indexRoot, false, null, LabelNormalizer.parse("punctuation,stem"));
+    String[] weapons = {"http://www.ukat.org.uk/thesaurus/concept/859"};
+    Assert.assertArrayEquals(weapons, skosEngine.getConcepts("weapons"));
+    Assert.assertArrayEquals(weapons, skosEngine.getConcepts("weapon"));
+    Assert.assertArrayEquals(weapons, skosEngine.getConcepts("WEAPONS!"));
+    // the labels are kept as given
+    Assert.assertArrayEquals(new String[] {"weapons"},
+        skosEngine.getPrefLabels(weapons[0]));
+    
+    // the index is rebuilt for another normalizer
+    SKOSEngine defaultEngine = new SKOSEngineImpl(matchVersion, skosFile,
+        indexRoot, false);
+    Assert.assertArrayEquals(weapons, defaultEngine.getConcepts("weapons"));
+    Assert.assertEquals(0, defaultEngine.getConcepts("weapon").length);
+  }
+  
 }
@@ -0,0 +1,314 @@
+package at.ac.univie.mminf.luceneSKOS.skos;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.skos.FuzzyLookup.Match;
+import at.ac.univie.mminf.luceneSKOS.skos.LabelSource.LabelVisitor;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.MeSHEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SNOMEDEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotEngineImpl.Storage;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotFormat.Profile;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SnapshotWriter;
+
+/**
+ * Tests that engines loaded from compiled snapshots answer like the
+ * Lucene-backed engines they replace
+ */
+public class SnapshotEngineTest {
+
+  protected final Version matchVersion = Version.LUCENE_45;
+
+  private static final String UKAT = "http://www.ukat.org.uk/thesaurus/concept/";
+
+  @Test
+  public void testSnapshotMatchesIndex() throws IOException {
+
+    String skosFile = "src/test/resources/skos_samples/ukat_examples.n3";
+    File snapshot = new File("target/test-data/ukat_examples"
+        + SnapshotFormat.SUFFIX);
+
+    SnapshotWriter.compile(skosFile, snapshot, Profile.MESH);
+
+    MeSHEngine expected = new MeSHEngineImpl(matchVersion, skosFile);
+    MeSHEngine actual = new SnapshotEngineImpl(snapshot);
+
+    for (String id : new String[] {"859", "5060", "18874", "7630"}) {
+      String uri = UKAT + id;
+      assertSameValues(expected.getPrefLabels(uri), actual.getPrefLabels(uri));
+      assertSameValues(expected.getAltLabels(uri), actual.getAltLabels(uri));
+      assertSameValues(expected.getHiddenLabels(uri),
+          actual.getHiddenLabels(uri));
+      assertSameValues(expected.getBroaderConcepts(uri),
+          actual.getBroaderConcepts(uri));
+      assertSameValues(expected.getNarrowerConcepts(uri),
+          actual.getNarrowerConcepts(uri));
+      assertSameValues(expected.getRelatedConcepts(uri),
+          actual.getRelatedConcepts(uri));
+      assertSameValues(expected.getBroaderLabels(uri),
+          actual.getBroaderLabels(uri));
+      assertSameValues(expected.getNarrowerLabels(uri),
+          actual.getNarrowerLabels(uri));
+      for (int level = 1; level <= 2; level++) {
+        assertSameValues(expected.getLeveledBroaderTermsLabels(uri, level),
+            actual.getLeveledBroaderTermsLabels(uri, level));
+        assertSameValues(expected.getLeveledNarrowerTermsLabels(uri, level),
+            actual.getLeveledNarrowerTermsLabels(uri, level));
+      }
+    }
+
+    for (String label : new String[] {"weapons", "Arms", "ordnance",
+        "unknown"}) {
+      assertSameValues(expected.getConcepts(label), actual.getConcepts(label));
+      assertSameValues(expected.getAltTerms(label), actual.getAltTerms(label));
+    }
+
+    for (String label : new String[] {"wepaons", "arsm", "ordnanse",
+        "military equipmnet"}) {
+      Assert.assertEquals(
+          String.valueOf(FuzzyLookups.getFuzzyConcepts(expected, label, 2, 1)),
+          String.valueOf(FuzzyLookups.getFuzzyConcepts(actual, label, 2, 1)));
+    }
+
+    Assert.assertNull(actual.getPrefLabels(UKAT + "0"));
+    Assert.assertEquals(2,
+        actual.getLeveledNarrowerTermsLabels(UKAT + "5060", 2).length);
+  }
+
+  @Test
+  public void testInvalidSnapshotRejected() throws IOException {
+
+    File snapshot = new File("target/test-data/invalid"
+        + SnapshotFormat.SUFFIX);
+    FileUtils.writeStringToFile(snapshot, "not a snapshot", "UTF-8");
+
+    try {
+      new SnapshotEngineImpl(snapshot);
+      Assert.fail("An invalid snapshot must not be loaded");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMappedStorage() throws IOException {
+
+    String[] labels = {"zebra", "\u00e4rger", "arm", "\u00e9migr\u00e9",
+        "\u65e5\u672c", "\ud834\udd1e clef", "\uff21"};
+
+    StringBuilder n3 = new StringBuilder(
+        "@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n");
+    for (int i = 0; i < labels.length; i++) {
+      n3.append("<http://example.org/concept/" + i + "> skos:prefLabel \""
+          + labels[i] + "\" ; skos:altLabel \"alt" + i + "\" .\n");
+    }
+    File skosFile = new File("target/test-data/unicode_skos.n3");
+    FileUtils.writeStringToFile(skosFile, n3.toString(), "UTF-8");
+    File snapshot = new File("target/test-data/unicode_skos"
+        + SnapshotFormat.SUFFIX);
+    SnapshotWriter.compile(skosFile.getPath(), snapshot, Profile.SKOS);
+
+    SnapshotEngineImpl heap = new SnapshotEngineImpl(snapshot, Storage.HEAP);
+    SnapshotEngineImpl mapped = new SnapshotEngineImpl(snapshot,
+        Storage.MAPPED);
+
+    for (int i = 0; i < labels.length; i++) {
+      Assert.assertArrayEquals(new String[] {"alt" + i},
+          mapped.getAltTerms(labels[i]));
+      Assert.assertArrayEquals(heap.getConcepts(labels[i]),
+          mapped.getConcepts(labels[i]));
+      Assert.assertEquals(heap.getLabelId(labels[i]),
+          mapped.getLabelId(labels[i]));
+    }
+
+    for (String missing : new String[] {"", "a", "zebras", "\u00e4",
+        "\ud834\udd1f"}) {
+      Assert.assertEquals(-1, mapped.getLabelId(missing));
+      Assert.assertEquals(0, mapped.getConcepts(missing).length);
+    }
+
+    String uri = "http://example.org/concept/3";
+    Assert.assertEquals(heap.getConceptId(uri), mapped.getConceptId(uri));
+    Assert.assertArrayEquals(new String[] {"\u00e9migr\u00e9"},
+        mapped.getPrefLabels(uri));
+  }
+
+  @Test
+  public void testNormalizer() throws IOException {
+
+    String skosFile = "src/test/resources/skos_samples/ukat_examples.n3";
+    File snapshot = new File("target/test-data/ukat_normalized"
+        + SnapshotFormat.SUFFIX);
+    LabelNormalizer normalizer = LabelNormalizer.parse("punctuation,stem");
+    SnapshotWriter.compile(skosFile, snapshot, Profile.SKOS, normalizer);
+
+    SnapshotEngineImpl engine = new SnapshotEngineImpl(snapshot);
+    Assert.assertEquals(normalizer, engine.getNormalizer());
+    for (String label : new String[] {"weapons", "Weapon", "WEAPONS!"}) {
+      Assert.assertArrayEquals(new String[] {UKAT + "859"},
+          engine.getConcepts(label));
+    }
+    Assert.assertArrayEquals(new String[] {"weapons"},
+        engine.getPrefLabels(UKAT + "859"));
+
+    // snapshots compiled without a normalizer lower-case only
+    SnapshotWriter.compile(skosFile, snapshot, Profile.SKOS);
+    engine = new SnapshotEngineImpl(snapshot);
+    Assert.assertTrue(engine.getNormalizer().isDefault());
+    Assert.assertEquals(0, engine.getConcepts("weapon").length);
+  }
+
+  @Test
+  public void testSNOMEDBatchLookups() throws IOException {
+
+    String skosFile = snomedVocabulary();
+    SKOSEngine index = new SNOMEDEngineImpl(matchVersion, skosFile);
+    SKOSEngine snapshot = snomedSnapshot(skosFile);
+
+    String[] labels = {"shared term", "condition 3", "secret name",
+        "unknown"};
+    for (SKOSEngine engine : new SKOSEngine[] {index, snapshot}) {
+      // at most 11 concepts, never by hidden labels
+      Assert.assertEquals(11, engine.getConcepts("shared term").length);
+      Assert.assertEquals(0, engine.getConcepts("secret name").length);
+
+      Map<String,String[]> batch = BatchLookups.getConcepts(engine, labels);
+      for (String label : labels) {
+        String[] single = engine.getConcepts(label);
+        if (single.length == 0) {
+          Assert.assertFalse(label, batch.containsKey(label));
+        } else {
+          Assert.assertArrayEquals(label, single, batch.get(label));
+        }
+      }
+    }
+    Assert.assertEquals(asSet(index.getConcepts("condition 3")),
+        asSet(snapshot.getConcepts("condition 3")));
+  }
+
+  @Test
+  public void testSNOMEDFuzzyLookups() throws IOException {
+
+    String skosFile = snomedVocabulary();
+    SKOSEngine index = new SNOMEDEngineImpl(matchVersion, skosFile);
+    SKOSEngine snapshot = snomedSnapshot(skosFile);
+
+    for (SKOSEngine engine : new SKOSEngine[] {index, snapshot}) {
+      List<Match> matches = FuzzyLookups.getFuzzyConcepts(engine,
+          "shred term", 1, 0);
+      Assert.assertEquals(11, matches.size());
+      for (Match match : matches) {
+        Assert.assertEquals("shared term", match.getLabel());
+        Assert.assertEquals(SKOSType.ALT, match.getType());
+        Assert.assertEquals(1, match.getEdits());
+      }
+      Assert.assertTrue(FuzzyLookups.getFuzzyConcepts(engine, "secret nme",
+          1, 0).isEmpty());
+    }
+    Assert.assertEquals(
+        FuzzyLookups.getFuzzyConcepts(index, "conditon 3", 1, 0).toString(),
+        FuzzyLookups.getFuzzyConcepts(snapshot, "conditon 3", 1, 0)
+            .toString());
+  }
+
+  @Test
+  public void testSNOMEDVisitedLabels() throws IOException {
+
+    String skosFile = snomedVocabulary();
+    Map<String,Integer> index = visitCounts(new SNOMEDEngineImpl(matchVersion,
+        skosFile));
+    Map<String,Integer> snapshot = visitCounts(snomedSnapshot(skosFile));
+
+    Assert.assertEquals(Integer.valueOf(11), index.get("shared term"));
+    Assert.assertFalse(index.containsKey("secret name"));
+    Assert.assertEquals(index, snapshot);
+  }
+
+  /** Returns the number of concepts each label is visited for */
+  private static Map<String,Integer> visitCounts(SKOSEngine engine)
+      throws IOException {
+    final Map<String,Integer> counts = new TreeMap<String,Integer>();
+    ((LabelSource) engine).visitLabels(new LabelVisitor() {
+      public void visit(String label, String conceptURI) {
+        Integer count = counts.get(label);
+        counts.put(label, count == null ? 1 : count + 1);
+      }
+    });
+    return counts;
+  }
+
+  /**
+   * Writes a SNOMED-like vocabulary with a label shared by more concepts than
+   * returned for it, and a hidden label
+   */
+  private static String snomedVocabulary() throws IOException {
+    StringBuilder n3 = new StringBuilder(
+        "@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n");
+    for (int i = 0; i < 15; i++) {
+      n3.append("<http://example.org/snomed/" + i + "> skos:prefLabel "
+          + "\"condition " + i + "\" ; skos:altLabel \"shared term\"");
+      if (i == 0) {
+        n3.append(" ; skos:hiddenLabel \"secret name\"");
+      }
+      n3.append(" .\n");
+    }
+    File skosFile = new File("target/test-data/snomed_skos.n3");
+    FileUtils.writeStringToFile(skosFile, n3.toString(), "UTF-8");
+    return skosFile.getPath();
+  }
+
+  private static SnapshotEngineImpl snomedSnapshot(String skosFile)
+      throws IOException {
+    File snapshot = new File("target/test-data/snomed_skos"
+        + SnapshotFormat.SUFFIX);
+    SnapshotWriter.compile(skosFile, snapshot, Profile.SNOMED);
+    return new SnapshotEngineImpl(snapshot);
+  }
+
+  private static Set<String> asSet(String[] values) {
+    return new HashSet<String>(Arrays.asList(values));
+  }
+
+  private static void assertSameValues(String[] expected, String[] actual) {
+    if (expected == null) {
+      Assert.assertNull(actual);
+      return;
+    }
+    String[] sortedExpected = expected.clone();
+    String[] sortedActual = actual.clone();
+    Arrays.sort(sortedExpected);
+    Arrays.sort(sortedActual);
+    Assert.assertArrayEquals(sortedExpected, sortedActual);
+  }
+
+}
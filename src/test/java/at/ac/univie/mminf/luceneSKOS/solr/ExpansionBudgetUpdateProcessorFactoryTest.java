@@ -0,0 +1,66 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.update.processor.DistributedUpdateProcessorFactory;
+import org.apache.solr.update.processor.LogUpdateProcessorFactory;
+import org.apache.solr.update.processor.RunUpdateProcessorFactory;
+import org.apache.solr.update.processor.UpdateRequestProcessorChain;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that the expansion budget processor is only accepted where replicas
+ * run it too
+ */
+public class ExpansionBudgetUpdateProcessorFactoryTest {
+
+  private final ExpansionBudgetUpdateProcessorFactory budget = new ExpansionBudgetUpdateProcessorFactory();
+
+  @Test
+  public void acceptsPositionAfterDistributedProcessor() {
+    budget.checkPosition(chain(new LogUpdateProcessorFactory(),
+        new DistributedUpdateProcessorFactory(), budget,
+        new RunUpdateProcessorFactory()));
+  }
+
+  @Test
+  public void rejectsPositionBeforeDistributedProcessor() {
+    assertRejected(chain(budget, new LogUpdateProcessorFactory(),
+        new DistributedUpdateProcessorFactory(),
+        new RunUpdateProcessorFactory()));
+    assertRejected(chain(new DistributedUpdateProcessorFactory(), budget,
+        new LogUpdateProcessorFactory(), new RunUpdateProcessorFactory()));
+  }
+
+  private void assertRejected(UpdateRequestProcessorChain chain) {
+    try {
+      budget.checkPosition(chain);
+      Assert.fail("misplaced processor accepted");
+    } catch (SolrException e) {
+      // expected
+    }
+  }
+
+  private static UpdateRequestProcessorChain chain(
+      UpdateRequestProcessorFactory... factories) {
+    return new UpdateRequestProcessorChain(factories, null);
+  }
+
+}
@@ -0,0 +1,236 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.Version;
+import org.apache.solr.core.SolrResourceLoader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.mock.SKOSEngineMock;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SKOSEngineImpl;
+
+/**
+ * Tests the SKOS filters created while the engine of the factory is set up
+ * in the background
+ */
+public class SKOSFilterFactoryTest {
+
+  protected final Version matchVersion = Version.LUCENE_45;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void passesTokensThroughWhilePending() throws Exception {
+    GatedFactory factory = inform("passthrough", null);
+    Assert.assertFalse(factory.isReady());
+
+    Tokenizer tokenizer = new WhitespaceTokenizer(matchVersion,
+        new StringReader("my pooch"));
+    TokenStream stream = factory.create(tokenizer);
+    Assert.assertEquals(terms("my", "pooch"), terms(stream));
+
+    factory.release.countDown();
+    awaitReady(factory);
+    Assert.assertTrue(factory.preparedAhead);
+
+    // a reused stream expands once the engine is ready
+    tokenizer.setReader(new StringReader("my pooch"));
+    Assert.assertEquals(terms("my", "pooch", "lazy dog"), terms(stream));
+  }
+
+  @Test
+  public void blocksWhilePending() throws Exception {
+    final GatedFactory factory = inform("block", null);
+    Future<List<String>> analyzed = executor.submit(
+        new Callable<List<String>>() {
+          @Override
+          public List<String> call() throws IOException {
+            return terms(factory.create(new WhitespaceTokenizer(matchVersion,
+                new StringReader("my pooch"))));
+          }
+        });
+    try {
+      analyzed.get(200, TimeUnit.MILLISECONDS);
+      Assert.fail("analyzed before the engine was set up");
+    } catch (TimeoutException e) {
+      // expected
+    }
+
+    factory.release.countDown();
+    Assert.assertEquals(terms("my", "pooch", "lazy dog"), analyzed.get(10,
+        TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void surfacesFailedBuilds() throws Exception {
+    GatedFactory factory = inform("block", new IOException("broken"));
+    factory.release.countDown();
+    try {
+      factory.create(new WhitespaceTokenizer(matchVersion, new StringReader(
+          "my pooch")));
+      Assert.fail("created a filter without an engine");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("broken", e.getCause().getMessage());
+    }
+    Assert.assertTrue(factory.getProgress().isFailed());
+    Assert.assertFalse(factory.isReady());
+
+    // passed through for good
+    factory = inform("passthrough", new IOException("broken"));
+    factory.release.countDown();
+    while (!factory.getProgress().isFailed()) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(terms("my", "pooch"), terms(factory.create(
+        new WhitespaceTokenizer(matchVersion, new StringReader("my pooch")))));
+  }
+
+  @Test
+  public void canonicalizesLanguageChains() throws IOException {
+    File skosFile = new File("target/test-data/languages_skos.n3");
+    FileUtils.writeStringToFile(skosFile,
+        "@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n"
+            + "<http://example.com/concept/1> skos:prefLabel \"dog\"@en ; "
+            + "skos:prefLabel \"Hund\"@de .\n", "UTF-8");
+    SKOSEngine engine = new SKOSEngineImpl(matchVersion, skosFile.getPath());
+
+    Assert.assertArrayEquals(new String[] {"de", "en"},
+        SKOSFilterFactory.languageChain(engine, new String[] {"DE", "fr",
+            "en", "de"}));
+    Assert.assertArrayEquals(new String[0], SKOSFilterFactory.languageChain(
+        engine, new String[] {"fr"}));
+    // engines without language views have a single chain
+    Assert.assertArrayEquals(new String[0], SKOSFilterFactory.languageChain(
+        new SKOSEngineMock(), new String[] {"en"}));
+  }
+
+  private GatedFactory inform(String pending, IOException failure) {
+    Map<String,String> args = new HashMap<String,String>();
+    args.put("luceneMatchVersion", matchVersion.toString());
+    args.put("skosFile", "gated.n3");
+    args.put("expansionType", "LABEL");
+    args.put("async", "true");
+    args.put("pending", pending);
+    GatedFactory factory = new GatedFactory(args, failure);
+    factory.inform(new SolrResourceLoader("target/test-data/async-solr"));
+    return factory;
+  }
+
+  private static void awaitReady(SKOSFilterFactory factory)
+      throws InterruptedException {
+    for (int i = 0; i < 1000 && !factory.isReady(); i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(factory.isReady());
+  }
+
+  private static List<String> terms(String... terms) {
+    List<String> list = new ArrayList<String>();
+    for (String term : terms) {
+      list.add(term);
+    }
+    return list;
+  }
+
+  private static List<String> terms(TokenStream stream) throws IOException {
+    CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+    List<String> terms = new ArrayList<String>();
+    stream.reset();
+    while (stream.incrementToken()) {
+      terms.add(termAtt.toString());
+    }
+    stream.end();
+    stream.close();
+    return terms;
+  }
+
+  /**
+   * Sets up its engine once released, or fails to
+   */
+  private static class GatedFactory extends SKOSFilterFactory {
+
+    final CountDownLatch release = new CountDownLatch(1);
+
+    /* whether the engine was prepared before the filters got it */
+    volatile boolean preparedAhead;
+
+    private final IOException failure;
+
+    GatedFactory(Map<String,String> args, IOException failure) {
+      super(args);
+      this.failure = failure;
+    }
+
+    @Override
+    protected SKOSEngine loadEngine(String configDir) throws IOException {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      SKOSEngineMock engine = new SKOSEngineMock();
+      engine.addEntry("http://example.com/concept/1", SKOSType.PREF,
+          "lazy dog");
+      engine.addEntry("http://example.com/concept/1", SKOSType.ALT, "pooch");
+      return engine;
+    }
+
+    @Override
+    protected void prepare(SKOSEngine engine) {
+      preparedAhead = getEngine() == null && !isReady();
+    }
+  }
+
+}
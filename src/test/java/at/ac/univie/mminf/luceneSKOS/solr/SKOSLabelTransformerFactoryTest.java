@@ -0,0 +1,119 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.response.transform.DocTransformer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.metrics.InstrumentedSKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics;
+import at.ac.univie.mminf.luceneSKOS.metrics.SKOSMetrics.Lookup;
+import at.ac.univie.mminf.luceneSKOS.mock.SKOSEngineMock;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+
+/**
+ * Tests the labels added to the returned documents by the SKOS label
+ * transformer
+ */
+public class SKOSLabelTransformerFactoryTest {
+
+  private static final String CONCEPT = "http://example.com/concept/";
+
+  private SKOSMetrics metrics;
+
+  private SKOSEngine engine;
+
+  private SKOSLabelTransformerFactory factory;
+
+  @Before
+  public void setUp() {
+    SKOSEngineMock mock = new SKOSEngineMock();
+    mock.addEntry(CONCEPT + "1", SKOSType.PREF, "animal");
+    mock.addEntry(CONCEPT + "2", SKOSType.PREF, "dog");
+    mock.addEntry(CONCEPT + "2", SKOSType.ALT, "canine", "pooch");
+    metrics = new SKOSMetrics();
+    engine = InstrumentedSKOSEngine.wrap(mock, metrics);
+
+    NamedList<Object> args = new NamedList<Object>();
+    args.add("fieldType", "skos");
+    factory = new SKOSLabelTransformerFactory();
+    factory.init(args);
+  }
+
+  @Test
+  public void testLabels() throws IOException {
+    DocTransformer transformer = factory.newTransformer("labels", engine,
+        "subject", "en", EnumSet.of(SKOSType.PREF));
+    SolrDocument doc = document(CONCEPT + "2", CONCEPT + "1");
+    transformer.transform(doc, 0);
+    Assert.assertEquals(Arrays.asList("dog", "animal"),
+        doc.getFieldValue("labels"));
+
+    transformer = factory.newTransformer("labels", engine, "subject", "en",
+        EnumSet.of(SKOSType.PREF, SKOSType.ALT));
+    doc = document(CONCEPT + "2");
+    transformer.transform(doc, 0);
+    Assert.assertEquals(Arrays.asList("dog"), doc.getFieldValue("labels.pref"));
+    Assert.assertEquals(Arrays.asList("canine", "pooch"),
+        doc.getFieldValue("labels.alt"));
+
+    // documents without concepts are left alone
+    doc = new SolrDocument();
+    transformer.transform(doc, 1);
+    Assert.assertNull(doc.getFieldValue("labels.pref"));
+  }
+
+  @Test
+  public void testCache() throws IOException {
+    DocTransformer transformer = factory.newTransformer("labels", engine,
+        "subject", "en", EnumSet.of(SKOSType.PREF));
+    transformer.transform(document(CONCEPT + "1", CONCEPT + "2"), 0);
+    Assert.assertEquals(1, metrics.getLookups(Lookup.BATCH_EXPANSIONS));
+
+    // resolved by the cache, also for later requests
+    transformer.transform(document(CONCEPT + "2"), 1);
+    transformer = factory.newTransformer("labels", engine, "subject", "en",
+        EnumSet.of(SKOSType.PREF));
+    SolrDocument doc = document(CONCEPT + "1");
+    transformer.transform(doc, 0);
+    Assert.assertEquals(Arrays.asList("animal"), doc.getFieldValue("labels"));
+    Assert.assertEquals(1, metrics.getLookups(Lookup.BATCH_EXPANSIONS));
+
+    // other languages are cached apart
+    factory.newTransformer("labels", engine, "subject", "de",
+        EnumSet.of(SKOSType.PREF)).transform(document(CONCEPT + "1"), 0);
+    Assert.assertEquals(2, metrics.getLookups(Lookup.BATCH_EXPANSIONS));
+  }
+
+  private SolrDocument document(String... uris) {
+    SolrDocument doc = new SolrDocument();
+    for (String uri : uris) {
+      doc.addField("subject", uri);
+    }
+    return doc;
+  }
+
+}
@@ -0,0 +1,194 @@
+package at.ac.univie.mminf.luceneSKOS.solr;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.queryparser.flexible.standard.config.StandardQueryConfigHandler.Operator;
+import org.apache.lucene.util.Version;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.mock.SKOSEngineMock;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSBoosts;
+import at.ac.univie.mminf.luceneSKOS.queryparser.flexible.standard.SKOSStandardQueryParser;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngineFactory;
+
+/**
+ * Tests the scoped expansions of the SKOS query parser plugin
+ */
+public class SKOSQParserPluginTest {
+
+  private static final String CONCEPT = "http://example.com/concept/";
+
+  private SKOSEngineMock engine;
+
+  private SKOSQParserPlugin plugin;
+
+  @Before
+  public void setUp() {
+    engine = new SKOSEngineMock();
+    engine.addEntry(CONCEPT + "1", SKOSType.PREF, "animal");
+    engine.addEntry(CONCEPT + "1", SKOSType.NARROWER, CONCEPT + "2");
+    engine.addEntry(CONCEPT + "2", SKOSType.PREF, "dog");
+    engine.addEntry(CONCEPT + "2", SKOSType.ALT, "canine", "pooch");
+    engine.addEntry(CONCEPT + "2", SKOSType.BROADER, CONCEPT + "1");
+    engine.addEntry(CONCEPT + "2", SKOSType.NARROWER, CONCEPT + "3");
+    engine.addEntry(CONCEPT + "3", SKOSType.PREF, "puppy");
+    engine.addEntry(CONCEPT + "3", SKOSType.BROADER, CONCEPT + "2");
+
+    NamedList<Object> args = new NamedList<Object>();
+    args.add("fieldType", "skos");
+    plugin = new SKOSQParserPlugin();
+    plugin.init(args);
+  }
+
+  @Test
+  public void testQueryParserPerThread() throws Exception {
+    Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_45);
+    SKOSBoosts boosts = SKOSBoosts.builder().set(SKOSType.ALT, 0.5f).build();
+    SKOSStandardQueryParser parser = plugin.getQueryParser(analyzer, boosts,
+        Operator.AND);
+    Assert.assertSame(analyzer, parser.getSKOSAnalyzer());
+    Assert.assertEquals(boosts, parser.getBoosts());
+    Assert.assertEquals("+title:lazy +title:dog", parser.parse("lazy dog",
+        "title").toString());
+
+    // the next query of the thread gets the parser set up anew
+    Assert.assertSame(parser, plugin.getQueryParser(analyzer,
+        SKOSBoosts.NONE, Operator.OR));
+    Assert.assertEquals(SKOSBoosts.NONE, parser.getBoosts());
+    Assert.assertEquals(Operator.OR, parser.getDefaultOperator());
+
+    // other threads get their own
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Analyzer other = new StandardAnalyzer(Version.LUCENE_45);
+      SKOSStandardQueryParser threadParser = executor.submit(
+          new Callable<SKOSStandardQueryParser>() {
+            @Override
+            public SKOSStandardQueryParser call() {
+              return plugin.getQueryParser(other, SKOSBoosts.NONE,
+                  Operator.OR);
+            }
+          }).get();
+      Assert.assertNotSame(parser, threadParser);
+      Assert.assertSame(analyzer, parser.getSKOSAnalyzer());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testHierarchyDepth() throws IOException {
+    String[][] labels = plugin.expand(engine, "puppy",
+        scope("types", "broader", "depth", "2"));
+    Assert.assertArrayEquals(new String[] {"dog", "animal"},
+        labels[SKOSType.BROADER.ordinal()]);
+    Assert.assertNull(labels[SKOSType.ALT.ordinal()]);
+
+    labels = plugin.expand(engine, "puppy", scope("types", "broader"));
+    Assert.assertArrayEquals(new String[] {"dog"},
+        labels[SKOSType.BROADER.ordinal()]);
+
+    labels = plugin.expand(engine, "dog", scope("types", "alt,narrower"));
+    Assert.assertArrayEquals(new String[] {"canine", "pooch"},
+        labels[SKOSType.ALT.ordinal()]);
+    Assert.assertArrayEquals(new String[] {"puppy"},
+        labels[SKOSType.NARROWER.ordinal()]);
+
+    Assert.assertNull(plugin.expand(engine, "cat", scope()));
+  }
+
+  @Test
+  public void testScope() {
+    ExpansionScope scope = scope();
+    Assert.assertTrue(scope.getTypes().contains(SKOSType.PREF));
+    Assert.assertTrue(scope.getTypes().contains(SKOSType.ALT));
+    Assert.assertEquals(ExpansionScope.DEFAULT_MAX_EXPANSIONS,
+        scope.getMaxExpansions());
+
+    // depth 0 skips the hierarchy
+    scope = scope("types", "pref narrower", "depth", "0");
+    Assert.assertEquals(1, scope.getTypes().size());
+    Assert.assertTrue(scope("types", "narrower", "depth", "0").isEmpty());
+
+    scope = scope("boosts", "alt:0.5,broader:0.2");
+    Assert.assertEquals(0.5f, scope.getBoosts().get(SKOSType.ALT), 0);
+
+    try {
+      scope("types", "broader1");
+      Assert.fail("Leveled types cannot be expanded to");
+    } catch (SolrException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFuzzyExpansions() throws IOException {
+    SKOSEngine ukat = SKOSEngineFactory.getSKOSEngine(Version.LUCENE_45,
+        "src/test/resources/skos_samples/ukat_examples.n3");
+    Assert.assertNull(plugin.expand(ukat, "wepaons", scope("types", "alt")));
+
+    String[][] labels = plugin.expand(ukat, "wepaons",
+        scope("types", "alt", "fuzzy", "1"));
+    Assert.assertArrayEquals(new String[] {"armaments", "arms"},
+        labels[SKOSType.ALT.ordinal()]);
+
+    // the prefix must match, short labels are only looked up exactly
+    Assert.assertNull(plugin.expand(ukat, "xeapons",
+        scope("types", "alt", "fuzzy", "1")));
+    Assert.assertNull(plugin.expand(ukat, "ar",
+        scope("types", "alt", "fuzzy", "1")));
+
+    Assert.assertFalse(scope("fuzzy", "1").getKey().equals(scope().getKey()));
+    try {
+      scope("fuzzy", "3");
+      Assert.fail("More edits than supported by the automata");
+    } catch (SolrException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCachedExpansions() throws IOException {
+    ExpansionScope scope = scope("types", "alt");
+    String[][] labels = plugin.expand(engine, "dog", scope);
+    Assert.assertSame(labels, plugin.expand(engine, "dog", scope));
+    Assert.assertNotSame(labels,
+        plugin.expand(engine, "dog", scope("types", "pref")));
+  }
+
+  private static ExpansionScope scope(String... params) {
+    ModifiableSolrParams solrParams = new ModifiableSolrParams();
+    for (int i = 0; i < params.length; i += 2) {
+      solrParams.set(params[i], params[i + 1]);
+    }
+    return ExpansionScope.parse(solrParams);
+  }
+}
@@ -0,0 +1,129 @@
+package at.ac.univie.mminf.luceneSKOS.util;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.analysis.ConceptTaggerAnalyzer;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer;
+import at.ac.univie.mminf.luceneSKOS.analysis.SKOSAnalyzer.ExpansionType;
+import at.ac.univie.mminf.luceneSKOS.analysis.tokenattributes.SKOSTypeAttribute.SKOSType;
+import at.ac.univie.mminf.luceneSKOS.mock.SKOSEngineMock;
+import at.ac.univie.mminf.luceneSKOS.util.AnnotationPipeline.Format;
+import at.ac.univie.mminf.luceneSKOS.util.AnnotationPipeline.Stats;
+
+/**
+ * Tests annotating documents by several workers
+ */
+public class AnnotationPipelineTest {
+
+  protected final Version matchVersion = Version.LUCENE_45;
+
+  private SKOSEngineMock engine() {
+    SKOSEngineMock engine = new SKOSEngineMock();
+    engine.addEntry("http://example.com/concept/1", SKOSType.PREF, "lazy dog");
+    engine.addEntry("http://example.com/concept/1", SKOSType.ALT, "pooch");
+    return engine;
+  }
+
+  @Test
+  public void annotatesInOrder() throws IOException {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      input.append("{\"id\":\"d").append(i).append("\",\"text\":\"")
+          .append(i % 2 == 0 ? "The lazy dog" : "A cat").append("\"}\n");
+    }
+    input.append("not json\n");
+
+    AnnotationPipeline pipeline = new AnnotationPipeline(
+        new ConceptTaggerAnalyzer(matchVersion, engine()), 3, 2);
+    pipeline.setFormat(Format.JSONL);
+    StringWriter output = new StringWriter();
+    Stats stats = pipeline.run(new BufferedReader(new StringReader(input
+        .toString())), "input", output);
+
+    Assert.assertEquals(200, stats.getDocuments());
+    Assert.assertEquals(1, stats.getFailed());
+    Assert.assertEquals(100, stats.getTokens());
+
+    String[] lines = output.toString().split("\n");
+    Assert.assertEquals(200, lines.length);
+    for (int i = 0; i < 200; i++) {
+      Assert.assertTrue(lines[i].startsWith("{\"id\":\"d" + i + "\""));
+    }
+    Assert.assertEquals("{\"id\":\"d0\",\"tokens\":[{\"term\":"
+        + "\"http://example.com/concept/1\",\"start\":4,\"end\":12,"
+        + "\"position\":1,\"type\":\"<CONCEPT>\"}]}", lines[0]);
+    Assert.assertEquals("{\"id\":\"d1\",\"tokens\":[]}", lines[1]);
+  }
+
+  @Test
+  public void annotatesExpansions() throws IOException {
+    AnnotationPipeline pipeline = new AnnotationPipeline(new SKOSAnalyzer(
+        matchVersion, engine(), ExpansionType.LABEL), 2, 1);
+    StringWriter output = new StringWriter();
+    Stats stats = pipeline.run(new BufferedReader(new StringReader(
+        "my pooch\n\n\"quoted\"\n")), "input", output);
+
+    Assert.assertEquals(2, stats.getDocuments());
+    String[] lines = output.toString().split("\n");
+    Assert.assertTrue(lines[0].startsWith("{\"id\":\"input:1\""));
+    Assert.assertTrue(lines[0].contains("{\"term\":\"lazy dog\",\"start\":3,"
+        + "\"end\":8,\"position\":1,"));
+    Assert.assertTrue(lines[0].contains("\"skosType\":\"PREF\""));
+    // empty lines are skipped, but counted for the ids
+    Assert.assertTrue(lines[1].startsWith("{\"id\":\"input:3\""));
+    Assert.assertTrue(lines[1].contains("{\"term\":\"quoted\",\"start\":1,"));
+  }
+
+  @Test
+  public void stopsWriterWhenReadingFails() throws InterruptedException {
+    AnnotationPipeline pipeline = new AnnotationPipeline(new SKOSAnalyzer(
+        matchVersion, engine(), ExpansionType.LABEL), 2, 1);
+    BufferedReader input = new BufferedReader(new StringReader("my pooch\n")) {
+      private int lines;
+
+      @Override
+      public String readLine() throws IOException {
+        if (++lines > 3) {
+          throw new IOException("disk gone");
+        }
+        return "my pooch";
+      }
+    };
+    try {
+      pipeline.run(input, "input", new StringWriter());
+      Assert.fail("the read failure is passed on");
+    } catch (IOException e) {
+      Assert.assertEquals("disk gone", e.getMessage());
+    }
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if ("annotation writer".equals(thread.getName())) {
+        thread.join(1000);
+        Assert.assertFalse(thread.isAlive());
+      }
+    }
+  }
+
+}
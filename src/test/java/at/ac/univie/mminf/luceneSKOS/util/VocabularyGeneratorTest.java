@@ -0,0 +1,135 @@
+package at.ac.univie.mminf.luceneSKOS.util;
+
+/**
+ * Copyright 2010 Bernhard Haslhofer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+import org.junit.Test;
+
+import at.ac.univie.mminf.luceneSKOS.skos.SKOSEngine;
+import at.ac.univie.mminf.luceneSKOS.skos.impl.SKOSEngineImpl;
+import at.ac.univie.mminf.luceneSKOS.util.VocabularyGenerator.Preset;
+
+/**
+ * Tests the shape of the generated vocabularies and corpora
+ */
+public class VocabularyGeneratorTest {
+
+  protected final Version matchVersion = Version.LUCENE_45;
+
+  @Test
+  public void testHierarchyShape() {
+    VocabularyGenerator generator = new VocabularyGenerator();
+    generator.setConcepts(5000);
+    generator.setDepth(4);
+    generator.setFanOut(5);
+    generator.setMultiParentRatio(0.5);
+
+    int multiParent = 0;
+    int deepest = 0;
+    int[] narrower = new int[generator.getConcepts()];
+    for (int concept = 0; concept < generator.getConcepts(); concept++) {
+      deepest = Math.max(deepest, generator.getLevel(concept));
+      int[] broader = generator.getBroader(concept);
+      if (broader.length > 0) {
+        Assert.assertEquals(generator.getLevel(concept) - 1,
+            generator.getLevel(broader[0]));
+        narrower[broader[0]]++;
+      }
+      for (int parent : broader) {
+        Assert.assertTrue(parent < concept);
+      }
+      if (broader.length > 1) {
+        multiParent++;
+      }
+    }
+    // about half of the concepts below the roots have several parents
+    Assert.assertTrue(multiParent > 2000 && multiParent < 3000);
+    Assert.assertEquals(4, deepest);
+    for (int count : narrower) {
+      Assert.assertTrue(count <= 5);
+    }
+  }
+
+  @Test
+  public void testPresetDepth() {
+    for (Preset preset : Preset.values()) {
+      VocabularyGenerator generator = new VocabularyGenerator();
+      generator.apply(preset);
+      Assert.assertEquals(preset.depth, generator.getLevel(generator
+          .getConcepts() - 1));
+      Assert.assertEquals(1, generator.getLevel(generator.getRoots() - 1));
+    }
+    // fewer concepts than levels form a chain
+    VocabularyGenerator generator = new VocabularyGenerator();
+    generator.setConcepts(3);
+    Assert.assertEquals(3, generator.getLevel(2));
+  }
+
+  @Test
+  public void testMentionDensity() {
+    VocabularyGenerator generator = new VocabularyGenerator();
+    generator.setLabelWords(2.0, 6);
+
+    String[] words = generator.text(20000, 0.25, new Random(1)).split(" ");
+    Assert.assertEquals(20000, words.length);
+
+    int fillers = 0;
+    for (String word : words) {
+      if (word.startsWith("q")) {
+        fillers++;
+      }
+    }
+    double density = 1 - fillers / 20000.0;
+    Assert.assertEquals(0.25, density, 0.03);
+  }
+
+  @Test
+  public void testGeneratedVocabulary() throws IOException {
+    VocabularyGenerator generator = new VocabularyGenerator();
+    generator.setConcepts(300);
+    generator.setDepth(3);
+    generator.setFanOut(4);
+    generator.setMultiParentRatio(0.3);
+    generator.setLanguages("en", "de");
+
+    File file = new File("target/test-data/generated_skos.n3");
+    generator.write(file);
+
+    SKOSEngine skosEngine = new SKOSEngineImpl(matchVersion, file.getPath(),
+        new File("target/test-data/generated-index"), false);
+
+    for (int concept : new int[] {0, 17, 299}) {
+      String uri = generator.getConceptURI(concept);
+      String[] prefLabels = skosEngine.getPrefLabels(uri);
+      Arrays.sort(prefLabels);
+      String[] expected = {generator.getPrefLabel(concept, "en"),
+          generator.getPrefLabel(concept, "de")};
+      Arrays.sort(expected);
+      Assert.assertArrayEquals(expected, prefLabels);
+      Assert.assertEquals(generator.getBroader(concept).length,
+          skosEngine.getBroaderConcepts(uri).length);
+      Assert.assertArrayEquals(new String[] {uri},
+          skosEngine.getConcepts(generator.getPrefLabel(concept, "de")));
+    }
+  }
+}